@@ -1,6 +1,29 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import controller.*;
+import model.Appointment;
+import model.ChangeBus;
+import model.Clinician;
+import model.Facility;
+import model.Patient;
+import model.Prescription;
+import model.Referral;
+import model.Staff;
 import view.*;
 
 public class MainFrame extends JFrame {
@@ -13,6 +36,10 @@ public class MainFrame extends JFrame {
     private PrescriptionController rxCtrl;
     private ReferralController refCtrl;
     private FacilityController facCtrl;
+    private ReferentialIntegrity integrity;
+    private ReportExporter exporter;
+    private QueryEngine queries;
+    private ExportStatusDialog exportStatus;
 
     // panels
     private JTabbedPane tabs;
@@ -23,11 +50,33 @@ public class MainFrame extends JFrame {
     private ReferralPanel referralPanel;
     private FacilityPanel facilityPanel;
     private StaffPanel staffPanel;
+    private DashboardPanel dashboardPanel;
+
+    // data files
+    private static final String PATIENTS_FILE = "patients.csv";
+    private static final String CLINICIANS_FILE = "clinicians.csv";
+    private static final String STAFF_FILE = "staff.csv";
+    private static final String FACILITIES_FILE = "facilities.csv";
+    private static final String APPOINTMENTS_FILE = "appointments.csv";
+    private static final String PRESCRIPTIONS_FILE = "prescriptions.csv";
+    private static final String REFERRALS_FILE = "referrals.csv";
+
+    private static final String[] DATA_FILES = {PATIENTS_FILE, CLINICIANS_FILE, STAFF_FILE,
+            FACILITIES_FILE, APPOINTMENTS_FILE, PRESCRIPTIONS_FILE, REFERRALS_FILE};
+
+    private final FileChangeTracker tracker = new FileChangeTracker();
+    private DataFileWatcher watcher;
+
+    // Live reloads waiting their turn, and in-app changes per file (EDT only, apart from the counts)
+    private final Set<String> reloadQueue = new LinkedHashSet<>();
+    private final Map<String, AtomicLong> editCounts = new HashMap<>();
+    private boolean reloading;
 
     public MainFrame() {
         initControllers();
         loadData();
         setupUI();
+        startWatcher();
     }
 
     private void initControllers() {
@@ -43,13 +92,23 @@ public class MainFrame extends JFrame {
 
     private void loadData() {
         try {
-            patCtrl.loadPatients("patients.csv");
-            clinCtrl.loadClinicians("clinicians.csv");
-            staffCtrl.loadStaff("staff.csv");
-            facCtrl.loadFacilities("facilities.csv");
-            apptCtrl.loadAppointments("appointments.csv");
-            rxCtrl.loadPrescriptions("prescriptions.csv");
-            refCtrl.loadReferrals("referrals.csv");
+            // Taken first, so a file written while we load is seen as changed afterwards
+            List<FileChangeTracker.Fingerprint> loaded = new ArrayList<>();
+            for (String file : DATA_FILES) {
+                loaded.add(tracker.fingerprint(file));
+            }
+
+            patCtrl.loadPatients(PATIENTS_FILE);
+            clinCtrl.loadClinicians(CLINICIANS_FILE);
+            staffCtrl.loadStaff(STAFF_FILE);
+            facCtrl.loadFacilities(FACILITIES_FILE);
+            apptCtrl.loadAppointments(APPOINTMENTS_FILE);
+            rxCtrl.loadPrescriptions(PRESCRIPTIONS_FILE);
+            refCtrl.loadReferrals(REFERRALS_FILE);
+
+            for (FileChangeTracker.Fingerprint fp : loaded) {
+                tracker.record(fp);
+            }
 
             // show success message with counts
             String msg = String.format(
@@ -78,10 +137,243 @@ public class MainFrame extends JFrame {
         }
     }
 
+    // Reload only the CSV files that changed on disk since the last load
+    private void refreshData() {
+        try {
+            // Don't let the reload overwrite referral edits still waiting to be saved
+            refCtrl.flushChanges();
+            StringBuilder summary = new StringBuilder();
+
+            // People and places first so appointments/prescriptions relink to the current objects
+            boolean patientsChanged = reload(PATIENTS_FILE, "Patients", summary,
+                    () -> patCtrl.reloadPatients(PATIENTS_FILE));
+            boolean cliniciansChanged = reload(CLINICIANS_FILE, "Clinicians", summary,
+                    () -> clinCtrl.reloadClinicians(CLINICIANS_FILE));
+            boolean staffChanged = reload(STAFF_FILE, "Staff", summary,
+                    () -> staffCtrl.reloadStaff(STAFF_FILE));
+            boolean facilitiesChanged = reload(FACILITIES_FILE, "Facilities", summary,
+                    () -> facCtrl.reloadFacilities(FACILITIES_FILE));
+            boolean apptsChanged = reload(APPOINTMENTS_FILE, "Appointments", summary,
+                    () -> apptCtrl.reloadAppointments(APPOINTMENTS_FILE));
+            boolean rxChanged = reload(PRESCRIPTIONS_FILE, "Prescriptions", summary,
+                    () -> rxCtrl.reloadPrescriptions(PRESCRIPTIONS_FILE));
+            boolean refsChanged = reload(REFERRALS_FILE, "Referrals", summary,
+                    () -> refCtrl.reloadReferrals(REFERRALS_FILE));
+
+            // Tables that show names looked up from other files need repainting too
+            boolean namesChanged = patientsChanged || cliniciansChanged || facilitiesChanged;
+            if (patientsChanged) patientPanel.loadTable();
+            if (cliniciansChanged) clinicianPanel.loadTable();
+            if (staffChanged) staffPanel.loadTable();
+            if (facilitiesChanged) facilityPanel.loadTable();
+            if (apptsChanged || namesChanged) appointmentPanel.loadTable();
+            if (rxChanged || namesChanged) prescriptionPanel.loadTable();
+            if (refsChanged || namesChanged) referralPanel.loadTable();
+
+            if (summary.length() == 0) {
+                showInfo("No changes - all data files are up to date.");
+            } else {
+                showInfo("Data refreshed!\n" + summary);
+            }
+
+        } catch (Exception ex) {
+            showError("Error refreshing data: " + ex.getMessage());
+        }
+    }
+
+    private boolean reload(String file, String label, StringBuilder summary,
+                           Supplier<RecordDiff<?>> loader) {
+        FileChangeTracker.Fingerprint before = tracker.fingerprint(file);
+        if (!tracker.hasChanged(before)) {
+            return false;
+        }
+
+        RecordDiff<?> diff = loader.get();
+        tracker.record(before);
+
+        if (diff.isEmpty()) {
+            return false;
+        }
+        summary.append(label).append(": ").append(diff).append("\n");
+        return true;
+    }
+
+    // Pick up CSVs dropped in by other processes while the app is running
+    private void startWatcher() {
+        // Our own saves are recorded as they are written, so they don't come back as changes
+        CsvWriter.addSaveListener(tracker::recordSaved);
+        countEdits(Patient.class, PATIENTS_FILE);
+        countEdits(Clinician.class, CLINICIANS_FILE);
+        countEdits(Staff.class, STAFF_FILE);
+        countEdits(Facility.class, FACILITIES_FILE);
+        countEdits(Appointment.class, APPOINTMENTS_FILE);
+        countEdits(Prescription.class, PRESCRIPTIONS_FILE);
+        countEdits(Referral.class, REFERRALS_FILE);
+
+        watcher = new DataFileWatcher(Paths.get("."), Arrays.asList(DATA_FILES), this::onDataFileChanged);
+        try {
+            watcher.start();
+        } catch (Exception ex) {
+            System.err.println("File watching unavailable: " + ex.getMessage());
+        }
+    }
+
+    // Counts changes to the records a file holds, from any thread
+    private <T> void countEdits(Class<T> type, String file) {
+        AtomicLong count = new AtomicLong();
+        editCounts.put(file, count);
+        ChangeBus.getInstance().subscribe(type, changes -> count.incrementAndGet());
+    }
+
+    // Called on the watcher thread once a file has settled
+    private void onDataFileChanged(String file) {
+        SwingUtilities.invokeLater(() -> queueReload(file));
+    }
+
+    // Reloads run one at a time, so each is applied before the next file is read
+    private void queueReload(String file) {
+        reloadQueue.add(file);
+        if (!reloading) {
+            nextReload();
+        }
+    }
+
+    private void nextReload() {
+        Iterator<String> queued = reloadQueue.iterator();
+        if (!queued.hasNext()) {
+            reloading = false;
+            return;
+        }
+        String file = queued.next();
+        queued.remove();
+        reloading = true;
+
+        switch (file) {
+            case PATIENTS_FILE:
+                reloadInBackground(file, () -> DataLoader.loadPatients(file), patCtrl::applyPatients);
+                break;
+            case CLINICIANS_FILE:
+                reloadInBackground(file, () -> DataLoader.loadClinicians(file), clinCtrl::applyClinicians);
+                break;
+            case STAFF_FILE:
+                reloadInBackground(file, () -> DataLoader.loadStaff(file), staffCtrl::applyStaff);
+                break;
+            case FACILITIES_FILE:
+                reloadInBackground(file, () -> DataLoader.loadFacilities(file), facCtrl::applyFacilities);
+                break;
+            // Append-mostly files: only the new tail is parsed
+            case APPOINTMENTS_FILE:
+                reloadInBackground(file, () -> DataLoader.loadNewAppointments(file), apptCtrl::applyNewAppointments);
+                break;
+            case PRESCRIPTIONS_FILE:
+                reloadInBackground(file, () -> DataLoader.loadNewPrescriptions(file), rxCtrl::applyNewPrescriptions);
+                break;
+            case REFERRALS_FILE:
+                reloadInBackground(file, () -> DataLoader.loadNewReferrals(file), refCtrl::applyNewReferrals);
+                break;
+            default:
+                nextReload();
+        }
+    }
+
+    /**
+     * Parse off the EDT, then apply the diff and repaint on it. If the file was
+     * written, or its records edited in the app, while it was being parsed, the
+     * result is stale: it is dropped and the file read again from the start.
+     */
+    private <L> void reloadInBackground(String file, Supplier<L> parser,
+                                        Function<L, RecordDiff<?>> applier) {
+        if (file.equals(REFERRALS_FILE)) {
+            // Unsaved edits win over the file, as they do on Refresh Data
+            refCtrl.flushChanges();
+        }
+        long editsBefore = editCounts.get(file).get();
+
+        new SwingWorker<L, Void>() {
+            private FileChangeTracker.Fingerprint before;
+
+            @Override
+            protected L doInBackground() {
+                before = tracker.fingerprint(file);
+                if (!tracker.hasChanged(before)) {
+                    return null;  // touched but content unchanged, or our own save
+                }
+                return parser.get();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    L parsed = get();
+                    if (parsed == null) {
+                        return;
+                    }
+                    if (editCounts.get(file).get() != editsBefore || !tracker.isCurrent(before)) {
+                        // The parse may have moved the tail checkpoint past rows we never applied
+                        DataLoader.resetIncremental(file);
+                        reloadQueue.add(file);
+                        return;
+                    }
+
+                    RecordDiff<?> diff = applier.apply(parsed);
+                    tracker.record(before);
+                    if (!diff.isEmpty()) {
+                        System.out.println("Reloaded " + file + ": " + diff);
+                        repaintFor(file);
+                    }
+                } catch (Exception ex) {
+                    System.err.println("Live reload of " + file + " failed: " + ex.getMessage());
+                } finally {
+                    nextReload();
+                }
+            }
+        }.execute();
+    }
+
+    private void repaintFor(String file) {
+        switch (file) {
+            case PATIENTS_FILE:
+                patientPanel.loadTable();
+                appointmentPanel.loadTable();
+                prescriptionPanel.loadTable();
+                referralPanel.loadTable();
+                break;
+            case CLINICIANS_FILE:
+                clinicianPanel.loadTable();
+                appointmentPanel.loadTable();
+                prescriptionPanel.loadTable();
+                referralPanel.loadTable();
+                break;
+            case STAFF_FILE:
+                staffPanel.loadTable();
+                break;
+            case FACILITIES_FILE:
+                facilityPanel.loadTable();
+                appointmentPanel.loadTable();
+                referralPanel.loadTable();
+                break;
+            case APPOINTMENTS_FILE:
+                appointmentPanel.loadTable();
+                break;
+            case PRESCRIPTIONS_FILE:
+                prescriptionPanel.loadTable();
+                break;
+            case REFERRALS_FILE:
+                referralPanel.loadTable();
+                break;
+        }
+    }
+
     private void setupUI() {
         setTitle("Healthcare Management System");
         setSize(1200, 800);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                refCtrl.flushChanges();
+            }
+        });
         setLocationRelativeTo(null);
 
         // menu bar
@@ -91,15 +383,21 @@ public class MainFrame extends JFrame {
         tabs = new JTabbedPane();
 
         // create all panels
-        patientPanel = new PatientPanel(patCtrl);
-        clinicianPanel = new ClinicianPanel(clinCtrl);
+        queries = new QueryEngine(patCtrl, clinCtrl, staffCtrl, facCtrl, apptCtrl, rxCtrl, refCtrl);
+        exporter = new ReportExporter(apptCtrl, rxCtrl, refCtrl, clinCtrl);
+        integrity = new ReferentialIntegrity(patCtrl, clinCtrl, staffCtrl, facCtrl, apptCtrl, rxCtrl, refCtrl);
+        patientPanel = new PatientPanel(patCtrl, new PatientTimeline(refCtrl), integrity,
+                new PatientLinkage(patCtrl, apptCtrl, rxCtrl, refCtrl));
+        clinicianPanel = new ClinicianPanel(clinCtrl, integrity, queries);
         staffPanel = new StaffPanel(staffCtrl);
-        facilityPanel = new FacilityPanel(facCtrl);
-        appointmentPanel = new AppointmentPanel(apptCtrl, patCtrl, clinCtrl, facCtrl);
+        facilityPanel = new FacilityPanel(facCtrl, integrity);
+        appointmentPanel = new AppointmentPanel(apptCtrl, patCtrl, clinCtrl, facCtrl, queries);
         prescriptionPanel = new PrescriptionPanel(rxCtrl, patCtrl, clinCtrl);
-        referralPanel = new ReferralPanel(refCtrl, patCtrl, clinCtrl, facCtrl);
+        referralPanel = new ReferralPanel(refCtrl, patCtrl, clinCtrl, facCtrl, queries);
+        dashboardPanel = new DashboardPanel(new DashboardAggregates(apptCtrl, rxCtrl, refCtrl), clinCtrl, facCtrl);
 
         // add tabs
+        tabs.addTab("Dashboard", dashboardPanel);
         tabs.addTab("Patients", patientPanel);
         tabs.addTab("Clinicians", clinicianPanel);
         tabs.addTab("Staff", staffPanel);
@@ -110,10 +408,29 @@ public class MainFrame extends JFrame {
 
         add(tabs, BorderLayout.CENTER);
 
+        // A delete on one tab can cascade into these
+        ChangeBus bus = ChangeBus.getInstance();
+        reloadOnChange(bus, Appointment.class, appointmentPanel::loadTable);
+        reloadOnChange(bus, Prescription.class, prescriptionPanel::loadTable);
+        reloadOnChange(bus, Referral.class, referralPanel::loadTable);
+
         // status bar at bottom
         createStatusBar();
     }
 
+    // A burst of changes (e.g. a bulk send outside a transaction) queues one reload, not one each
+    private static <T> void reloadOnChange(ChangeBus bus, Class<T> type, Runnable reload) {
+        AtomicBoolean queued = new AtomicBoolean();
+        bus.subscribe(type, changes -> {
+            if (queued.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    queued.set(false);
+                    reload.run();
+                });
+            }
+        });
+    }
+
     private void createMenu() {
         JMenuBar menuBar = new JMenuBar();
 
@@ -121,19 +438,26 @@ public class MainFrame extends JFrame {
         JMenu fileMenu = new JMenu("File");
 
         JMenuItem refreshItem = new JMenuItem("Refresh Data");
-        refreshItem.addActionListener(e -> loadData());
+        refreshItem.addActionListener(e -> refreshData());
+
+        JMenuItem orphansItem = new JMenuItem("Find Orphaned Records");
+        orphansItem.addActionListener(e -> showOrphans());
 
         JMenuItem exitItem = new JMenuItem("Exit");
-        exitItem.addActionListener(e -> System.exit(0));
+        exitItem.addActionListener(e -> {
+            refCtrl.flushChanges();
+            System.exit(0);
+        });
 
         fileMenu.add(refreshItem);
+        fileMenu.add(orphansItem);
         fileMenu.addSeparator();
         fileMenu.add(exitItem);
 
         // VIEW menu
         JMenu viewMenu = new JMenu("View");
 
-        String[] tabNames = {"Patients", "Clinicians", "Staff", "Facilities",
+        String[] tabNames = {"Dashboard", "Patients", "Clinicians", "Staff", "Facilities",
                 "Appointments", "Prescriptions", "Referrals"};
 
         for (int i = 0; i < tabNames.length; i++) {
@@ -143,6 +467,15 @@ public class MainFrame extends JFrame {
             viewMenu.add(item);
         }
 
+        // REPORTS menu
+        JMenu reportsMenu = new JMenu("Reports");
+        JMenuItem exportItem = new JMenuItem("New Export...");
+        exportItem.addActionListener(e -> newExport());
+        JMenuItem statusItem = new JMenuItem("Export Status");
+        statusItem.addActionListener(e -> showExports());
+        reportsMenu.add(exportItem);
+        reportsMenu.add(statusItem);
+
         // HELP menu
         JMenu helpMenu = new JMenu("Help");
         JMenuItem aboutItem = new JMenuItem("About");
@@ -151,6 +484,7 @@ public class MainFrame extends JFrame {
 
         menuBar.add(fileMenu);
         menuBar.add(viewMenu);
+        menuBar.add(reportsMenu);
         menuBar.add(helpMenu);
 
         setJMenuBar(menuBar);
@@ -163,6 +497,47 @@ public class MainFrame extends JFrame {
         add(statusBar, BorderLayout.SOUTH);
     }
 
+    private void newExport() {
+        ExportDialog dialog = new ExportDialog(this, facCtrl, clinCtrl);
+        dialog.setVisible(true);
+        if (dialog.getReport() != null) {
+            exporter.submit(dialog.getReport(), null);
+            showExports();
+        }
+    }
+
+    // One status window, brought forward if already open
+    private void showExports() {
+        if (exportStatus == null || !exportStatus.isDisplayable()) {
+            exportStatus = new ExportStatusDialog(this, exporter);
+        }
+        exportStatus.setVisible(true);
+        exportStatus.toFront();
+    }
+
+    // References to patients, clinicians, facilities or appointments that don't exist
+    private void showOrphans() {
+        List<ReferentialIntegrity.Reference> orphans = integrity.findOrphans();
+        if (orphans.isEmpty()) {
+            showInfo("No orphaned records - every reference points at a record that exists.");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(orphans.size()).append(" references to missing records:\n\n");
+        for (ReferentialIntegrity.Reference ref : orphans) {
+            text.append(ref).append("\n");
+        }
+
+        JTextArea area = new JTextArea(text.toString());
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        area.setCaretPosition(0);
+        JScrollPane scroll = new JScrollPane(area);
+        scroll.setPreferredSize(new Dimension(560, 400));
+        JOptionPane.showMessageDialog(this, scroll, "Orphaned Records", JOptionPane.WARNING_MESSAGE);
+    }
+
     private void showAbout() {
         String msg =
                 "Healthcare Management System\n" +
@@ -19,19 +19,95 @@ public class AppointmentController {
 
     public void loadAppointments(String filename) {
         dataFilename = filename;
-        appointments = DataLoader.loadAppointments(filename);
+        for (Appointment apt : appointments) {
+            unlink(apt);
+        }
+        DataLoader.resetIncremental(filename);
+        List<Appointment> old = appointments;
+        appointments = DataLoader.loadNewAppointments(filename).getRows();
 
         // Link appointments with their respective patients and clinicians
         for (Appointment apt : appointments) {
-            Patient patient = patCtrl.getPatientById(apt.getPatientId());
-            if (patient != null) {
-                patient.addAppointment(apt);
-            }
+            link(apt);
+        }
+        RecordDiff.publishLoad(Appointment.class, old, appointments);
+    }
+
+    // Parse only what was appended since the last load; falls back to a full diff if the file was rewritten
+    public RecordDiff<Appointment> reloadAppointments(String filename) {
+        dataFilename = filename;
+        return applyNewAppointments(DataLoader.loadNewAppointments(filename));
+    }
 
-            Clinician clinician = clinCtrl.getClinicianById(apt.getClinicianId());
-            if (clinician != null) {
-                clinician.addAppointment(apt);
+    public RecordDiff<Appointment> applyNewAppointments(IncrementalLoad<Appointment> load) {
+        if (load.isFullLoad()) {
+            return applyAppointments(load.getRows());
+        }
+
+        List<Appointment> added = new ArrayList<>();
+        Map<Appointment, Appointment> replaced = new IdentityHashMap<>();
+
+        for (Appointment apt : load.getRows()) {
+            Appointment old = getAppointmentById(apt.getAppointmentId());
+            if (old != null) {
+                // Row re-appended with an existing id - treat it as an edit
+                appointments.set(appointments.indexOf(old), apt);
+                unlink(old);
+                replaced.put(old, apt);
+            } else {
+                appointments.add(apt);
+                added.add(apt);
             }
+            link(apt);
+        }
+
+        RecordDiff<Appointment> diff = RecordDiff.appended(appointments, added, replaced);
+        diff.publish(Appointment.class);
+        return diff;
+    }
+
+    // Used by the file watcher, which parses off the EDT and applies on it
+    public RecordDiff<Appointment> applyAppointments(List<Appointment> incoming) {
+        RecordDiff<Appointment> diff = RecordDiff.compute(appointments, incoming,
+                Appointment::getAppointmentId, DataLoader::appointmentRow);
+
+        for (Appointment apt : diff.getRemoved()) {
+            unlink(apt);
+        }
+        for (Map.Entry<Appointment, Appointment> e : diff.getReplaced().entrySet()) {
+            unlink(e.getKey());
+            link(e.getValue());
+        }
+        for (Appointment apt : diff.getAdded()) {
+            link(apt);
+        }
+
+        appointments = diff.getMerged();
+        diff.publish(Appointment.class);
+        return diff;
+    }
+
+    private void link(Appointment apt) {
+        Patient patient = patCtrl.getPatientById(apt.getPatientId());
+        if (patient != null) {
+            patient.addAppointment(apt);
+        }
+
+        Clinician clinician = clinCtrl.getClinicianById(apt.getClinicianId());
+        if (clinician != null) {
+            clinician.addAppointment(apt);
+        }
+    }
+
+    private void unlink(Appointment apt) {
+        Patient patient = patCtrl.getPatientById(apt.getPatientId());
+        if (patient != null) {
+            patient.removeAppointment(apt);
+        }
+
+        Clinician clinician = clinCtrl.getClinicianById(apt.getClinicianId());
+        if (clinician != null) {
+            clinician.removeAppointment(apt);
         }
     }
 
@@ -120,26 +196,22 @@ public class AppointmentController {
     public void addAppointment(Appointment apt) {
         appointments.add(apt);
 
-        // Link the appointment to the patient's record
-        Patient patient = patCtrl.getPatientById(apt.getPatientId());
-        if (patient != null) {
-            patient.addAppointment(apt);
-        }
-
-        // Link the appointment to the clinician's schedule
-        Clinician clinician = clinCtrl.getClinicianById(apt.getClinicianId());
-        if (clinician != null) {
-            clinician.addAppointment(apt);
-        }
+        // Link the appointment to the patient's record and the clinician's schedule
+        link(apt);
 
         saveToFile();
+        ChangeBus.getInstance().inserted(Appointment.class, apt);
     }
 
     public boolean updateAppointment(Appointment apt) {
         for (int i = 0; i < appointments.size(); i++) {
             if (appointments.get(i).getAppointmentId().equals(apt.getAppointmentId())) {
+                Appointment old = appointments.get(i);
+                unlink(old);
                 appointments.set(i, apt);
+                link(apt);
                 saveToFile();
+                ChangeBus.getInstance().updated(Appointment.class, old, apt);
                 return true;
             }
         }
@@ -149,20 +221,60 @@ public class AppointmentController {
     public boolean deleteAppointment(String id) {
         for (int i = 0; i < appointments.size(); i++) {
             if (appointments.get(i).getAppointmentId().equals(id)) {
-                appointments.remove(i);
+                Appointment old = appointments.remove(i);
+                unlink(old);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Appointment.class, old);
                 return true;
             }
         }
         return false;
     }
 
+    // Delete several at once (e.g. a cascade from a deleted patient or clinician), saving once
+    public int deleteAppointments(Collection<String> ids) {
+        Set<String> doomed = new HashSet<>(ids);
+        List<Appointment> removed = new ArrayList<>();
+        appointments.removeIf(apt -> doomed.contains(apt.getAppointmentId()) && removed.add(apt));
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        for (Appointment apt : removed) {
+            unlink(apt);
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Appointment apt : removed) {
+                bus.deleted(Appointment.class, apt);
+            }
+        });
+        return removed.size();
+    }
+
+    // Save appointments changed in place (a reference cleared), once for all of them
+    public void saveEdited(Collection<Appointment> edited) {
+        if (edited.isEmpty()) {
+            return;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Appointment apt : edited) {
+                bus.updated(Appointment.class, apt, apt);
+            }
+        });
+    }
+
     public boolean rescheduleAppointment(String id, LocalDate newDate, String newTime) {
         Appointment apt = getAppointmentById(id);
         if (apt != null) {
             boolean success = apt.reschedule(newDate, newTime);
             if (success) {
                 saveToFile();
+                ChangeBus.getInstance().updated(Appointment.class, apt, apt);
             }
             return success;
         }
@@ -175,6 +287,7 @@ public class AppointmentController {
             boolean success = apt.cancel();
             if (success) {
                 saveToFile();
+                ChangeBus.getInstance().updated(Appointment.class, apt, apt);
             }
             return success;
         }
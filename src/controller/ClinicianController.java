@@ -1,5 +1,7 @@
 package controller;
 
+import model.Appointment;
+import model.ChangeBus;
 import model.Clinician;
 import java.time.LocalDate;
 import java.util.*;
@@ -15,7 +17,31 @@ public class ClinicianController {
 
     public void loadClinicians(String filename) {
         dataFilename = filename;
+        List<Clinician> old = clinicians;
         clinicians = DataLoader.loadClinicians(filename);
+        RecordDiff.publishLoad(Clinician.class, old, clinicians);
+    }
+
+    // Re-read the file and only swap in clinicians whose row actually changed
+    public RecordDiff<Clinician> reloadClinicians(String filename) {
+        dataFilename = filename;
+        return applyClinicians(DataLoader.loadClinicians(filename));
+    }
+
+    public RecordDiff<Clinician> applyClinicians(List<Clinician> incoming) {
+        RecordDiff<Clinician> diff = RecordDiff.compute(clinicians, incoming,
+                Clinician::getClinicianId, DataLoader::clinicianRow);
+
+        // Keep the schedule of an edited clinician
+        for (Map.Entry<Clinician, Clinician> e : diff.getReplaced().entrySet()) {
+            for (Appointment apt : e.getKey().getAppointments()) {
+                e.getValue().addAppointment(apt);
+            }
+        }
+
+        clinicians = diff.getMerged();
+        diff.publish(Clinician.class);
+        return diff;
     }
 
     private void saveToFile() {
@@ -77,13 +103,15 @@ public class ClinicianController {
     public void addClinician(Clinician c) {
         clinicians.add(c);
         saveToFile();
+        ChangeBus.getInstance().inserted(Clinician.class, c);
     }
 
     public boolean updateClinician(Clinician c) {
         for (int i = 0; i < clinicians.size(); i++) {
             if (clinicians.get(i).getClinicianId().equals(c.getClinicianId())) {
-                clinicians.set(i, c);
+                Clinician old = clinicians.set(i, c);
                 saveToFile();
+                ChangeBus.getInstance().updated(Clinician.class, old, c);
                 return true;
             }
         }
@@ -93,14 +121,30 @@ public class ClinicianController {
     public boolean deleteClinician(String id) {
         for (int i = 0; i < clinicians.size(); i++) {
             if (clinicians.get(i).getClinicianId().equals(id)) {
-                clinicians.remove(i);
+                Clinician old = clinicians.remove(i);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Clinician.class, old);
                 return true;
             }
         }
         return false;
     }
 
+    // Save clinicians changed in place (a reference cleared), once for all of them
+    public void saveEdited(Collection<Clinician> edited) {
+        if (edited.isEmpty()) {
+            return;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Clinician c : edited) {
+                bus.updated(Clinician.class, c, c);
+            }
+        });
+    }
+
     public List<String> getAllSpecializations() {
         Set<String> specializations = new HashSet<>();
 
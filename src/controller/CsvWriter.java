@@ -0,0 +1,311 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Writes CSV rows straight into a large byte buffer that is drained to a FileChannel.
+ *
+ * Fields are quoted only when RFC 4180 requires it (comma, quote, CR or LF), with
+ * embedded quotes doubled. ASCII text, ints and dates are encoded byte by byte, so
+ * writing a row does not allocate. Output goes to a temp file of its own next to
+ * the target, which replaces the target with an atomic rename on commit(); if the
+ * save fails the original file is left as it was. Two saves of the same file never
+ * share a temp file, and their renames and notifications happen one at a time.
+ *
+ * Usage: open, write fields, endRow() after each row, commit(), then close
+ * (try-with-resources).
+ *
+ * The bytes are checksummed as they are written, and save listeners are told
+ * about each committed file, so readers that track files on disk can tell our
+ * own saves from changes made by someone else without reading the file back.
+ */
+public class CsvWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;  // 1 MB
+
+    // One buffer per thread, reused by every save
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    // What one commit() wrote
+    public static final class Saved {
+        private final Path file;
+        private final long length;
+        private final int lines;
+        private final long checksum;
+        private final long modified;
+
+        private Saved(Path file, long length, int lines, long checksum, long modified) {
+            this.file = file;
+            this.length = length;
+            this.lines = lines;
+            this.checksum = checksum;
+            this.modified = modified;
+        }
+
+        // Absolute and normalised
+        public Path getFile() { return file; }
+        public long getLength() { return length; }
+        // Newlines written, including any inside quoted fields
+        public int getLines() { return lines; }
+        // CRC32 of the whole file
+        public long getChecksum() { return checksum; }
+        public long getModified() { return modified; }
+    }
+
+    private static final List<Consumer<Saved>> saveListeners = new CopyOnWriteArrayList<>();
+
+    // Makes temp file names unique within this process; the pid covers other processes
+    private static final AtomicLong tempCounter = new AtomicLong();
+    private static final Object commitLock = new Object();
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+    private CharsetEncoder encoder;   // only needed for non-ASCII text
+    private boolean firstField = true;
+    private boolean committed;
+    private final CRC32 crc = new CRC32();
+    private long length;
+    private int lines;
+
+    private CsvWriter(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + "." + ProcessHandle.current().pid()
+                + "-" + tempCounter.incrementAndGet() + ".tmp");
+        this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.buf = BUFFERS.get();
+        this.buf.clear();
+    }
+
+    public static CsvWriter open(String filename) throws IOException {
+        return new CsvWriter(Paths.get(filename).toAbsolutePath().normalize());
+    }
+
+    // Called on the saving thread after each successful commit
+    public static void addSaveListener(Consumer<Saved> listener) {
+        saveListeners.add(listener);
+    }
+
+    // Header line, written as-is
+    public CsvWriter header(String header) throws IOException {
+        writeAscii(header);
+        return endRow();
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separator();
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+
+        if (!needsQuotes(value)) {
+            writeText(value, 0, value.length());
+            return this;
+        }
+
+        put((byte) '"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '\n') {
+                lines++;
+            } else if (value.charAt(i) == '"') {
+                writeText(value, start, i + 1);  // includes the quote, then double it
+                put((byte) '"');
+                start = i + 1;
+            }
+        }
+        writeText(value, start, value.length());
+        put((byte) '"');
+        return this;
+    }
+
+    public CsvWriter field(int value) throws IOException {
+        separator();
+        if (value < 0) {
+            put((byte) '-');
+            if (value == Integer.MIN_VALUE) {
+                writeAscii("2147483648");
+                return this;
+            }
+            value = -value;
+        }
+        writeDigits(value);
+        return this;
+    }
+
+    // yyyy-MM-dd, same as LocalDate.toString() for four-digit years
+    public CsvWriter field(LocalDate date) throws IOException {
+        separator();
+        if (date == null) {
+            return this;
+        }
+        ensure(10);
+        int year = date.getYear();
+        buf.put((byte) ('0' + year / 1000 % 10));
+        buf.put((byte) ('0' + year / 100 % 10));
+        buf.put((byte) ('0' + year / 10 % 10));
+        buf.put((byte) ('0' + year % 10));
+        buf.put((byte) '-');
+        twoDigits(date.getMonthValue());
+        buf.put((byte) '-');
+        twoDigits(date.getDayOfMonth());
+        return this;
+    }
+
+    public CsvWriter endRow() throws IOException {
+        put((byte) '\n');
+        lines++;
+        firstField = true;
+        return this;
+    }
+
+    // Flush, sync to disk and swap the temp file in place of the target
+    public void commit() throws IOException {
+        drain();
+        channel.force(true);
+        channel.close();
+
+        // Listeners must hear about saves in the order the files landed
+        synchronized (commitLock) {
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+
+            Saved saved = new Saved(target, length, lines, crc.getValue(),
+                    Files.getLastModifiedTime(target).toMillis());
+            for (Consumer<Saved> listener : saveListeners) {
+                try {
+                    listener.accept(saved);
+                } catch (RuntimeException e) {
+                    System.err.println("Save listener for " + target.getFileName() + " failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        // Save failed part way - drop the temp file and keep the original
+        channel.close();
+        Files.deleteIfExists(temp);
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void separator() throws IOException {
+        if (!firstField) {
+            put((byte) ',');
+        }
+        firstField = false;
+    }
+
+    private void writeText(String s, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                encode(s, i, to);
+                return;
+            }
+            put((byte) c);
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        writeText(s, 0, s.length());
+    }
+
+    // Rest of the string contains non-ASCII - hand it to the charset encoder
+    private void encode(String s, int from, int to) throws IOException {
+        if (encoder == null) {
+            // Same charset and replacement behaviour as the FileWriter this replaced
+            encoder = Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        encoder.reset();
+        CharBuffer chars = CharBuffer.wrap(s, from, to);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buf, true);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void writeDigits(int value) throws IOException {
+        ensure(10);
+        if (value >= 10) {
+            int divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            while (divisor > 0) {
+                buf.put((byte) ('0' + value / divisor % 10));
+                divisor /= 10;
+            }
+        } else {
+            buf.put((byte) ('0' + value));
+        }
+    }
+
+    private void twoDigits(int value) {
+        buf.put((byte) ('0' + value / 10));
+        buf.put((byte) ('0' + value % 10));
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buf.put(b);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buf.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        length += buf.remaining();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+}
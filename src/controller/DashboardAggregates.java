@@ -0,0 +1,192 @@
+package controller;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Running counts for the dashboard, kept up to date from the change bus rather
+ * than recomputed from the full lists.
+ *
+ * For each record it remembers the keys it was counted under (its day, status,
+ * clinician and so on), so a change only has to take the record out of its old
+ * buckets and put it into the new ones. That also copes with edits made in
+ * place, where the "before" object already holds the new values. Inserts of a
+ * record already counted are treated as updates, so seeding from the current
+ * lists after registering is safe.
+ *
+ * Events can come from a background thread (sending referrals), so everything
+ * is synchronized; readers get copies.
+ */
+public class DashboardAggregates {
+
+    private static final String NONE = "(none)";
+
+    // Counts by key for one breakdown; keys are the field values themselves (strings, dates)
+    private static class Tally {
+        private final Map<Object, int[]> counts = new HashMap<>();
+
+        void add(Object key, int delta) {
+            int[] c = counts.computeIfAbsent(key, k -> new int[1]);
+            c[0] += delta;
+            if (c[0] <= 0) {
+                counts.remove(key);
+            }
+        }
+
+        int get(Object key) {
+            int[] c = counts.get(key);
+            return c != null ? c[0] : 0;
+        }
+
+        // The n biggest, largest first (ties by key)
+        Map<String, Integer> top(int n) {
+            List<Map.Entry<Object, int[]>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                    ? Integer.compare(b.getValue()[0], a.getValue()[0])
+                    : a.getKey().toString().compareTo(b.getKey().toString()));
+            Map<String, Integer> top = new LinkedHashMap<>();
+            for (int i = 0; i < entries.size() && i < n; i++) {
+                top.put(entries.get(i).getKey().toString(), entries.get(i).getValue()[0]);
+            }
+            return top;
+        }
+    }
+
+    private final Tally appointmentsByDay = new Tally();
+    private final Tally appointmentsByStatus = new Tally();
+    private final Tally appointmentsByClinician = new Tally();
+    private final Tally appointmentsByFacility = new Tally();
+    private final Tally prescriptionsByMedication = new Tally();
+    private final Tally prescriptionsByPharmacy = new Tally();
+    private final Tally referralsByUrgency = new Tally();
+    private final Tally referralsByStatus = new Tally();
+
+    // Keys each record is currently counted under, by record id
+    private final Map<String, Object[]> appointmentKeys = new HashMap<>();
+    private final Map<String, Object[]> prescriptionKeys = new HashMap<>();
+    private final Map<String, Object[]> referralKeys = new HashMap<>();
+
+    // Bumped on every change, so a view can tell whether it needs to repaint
+    private long version;
+
+    public DashboardAggregates(AppointmentController apptCtrl, PrescriptionController rxCtrl,
+                               ReferralController refCtrl) {
+        // Listen first, then count what is already there - a change in between is just counted once
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.subscribe(Appointment.class, changes -> {
+            for (ChangeEvent<Appointment> c : changes) {
+                appointmentChanged(c.getBefore(), c.getAfter());
+            }
+        });
+        bus.subscribe(Prescription.class, changes -> {
+            for (ChangeEvent<Prescription> c : changes) {
+                prescriptionChanged(c.getBefore(), c.getAfter());
+            }
+        });
+        bus.subscribe(Referral.class, changes -> {
+            for (ChangeEvent<Referral> c : changes) {
+                referralChanged(c.getBefore(), c.getAfter());
+            }
+        });
+
+        for (Appointment apt : apptCtrl.getAllAppointments()) {
+            appointmentChanged(null, apt);
+        }
+        for (Prescription rx : rxCtrl.getAllPrescriptions()) {
+            prescriptionChanged(null, rx);
+        }
+        for (Referral ref : refCtrl.getAllReferrals()) {
+            referralChanged(null, ref);
+        }
+    }
+
+    private synchronized void appointmentChanged(Appointment before, Appointment after) {
+        if (before != null) {
+            move(appointmentKeys, before.getAppointmentId(), null,
+                    appointmentsByDay, appointmentsByStatus, appointmentsByClinician, appointmentsByFacility);
+        }
+        if (after != null) {
+            move(appointmentKeys, after.getAppointmentId(),
+                    keys(after.getAppointmentDate(), after.getStatus(), after.getClinicianId(), after.getFacilityId()),
+                    appointmentsByDay, appointmentsByStatus, appointmentsByClinician, appointmentsByFacility);
+        }
+    }
+
+    private synchronized void prescriptionChanged(Prescription before, Prescription after) {
+        if (before != null) {
+            move(prescriptionKeys, before.getPrescriptionId(), null,
+                    prescriptionsByMedication, prescriptionsByPharmacy);
+        }
+        if (after != null) {
+            move(prescriptionKeys, after.getPrescriptionId(),
+                    keys(after.getMedicationName(), after.getPharmacyName()),
+                    prescriptionsByMedication, prescriptionsByPharmacy);
+        }
+    }
+
+    private synchronized void referralChanged(Referral before, Referral after) {
+        if (before != null) {
+            move(referralKeys, before.getReferralId(), null, referralsByUrgency, referralsByStatus);
+        }
+        if (after != null) {
+            move(referralKeys, after.getReferralId(),
+                    keys(after.getUrgencyLevel(), after.getStatus()), referralsByUrgency, referralsByStatus);
+        }
+    }
+
+    // Take the record out of the buckets it was in and (unless keys is null) into the new ones
+    private void move(Map<String, Object[]> counted, String id, Object[] keys, Tally... tallies) {
+        Object[] old = keys != null ? counted.put(id, keys) : counted.remove(id);
+        if (old != null) {
+            for (int i = 0; i < tallies.length; i++) {
+                tallies[i].add(old[i], -1);
+            }
+        }
+        if (keys != null) {
+            for (int i = 0; i < tallies.length; i++) {
+                tallies[i].add(keys[i], 1);
+            }
+        }
+        version++;
+    }
+
+    // Blank or missing values are counted under "(none)"
+    private static Object[] keys(Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = NONE;
+            } else if (values[i] instanceof String) {
+                String v = ((String) values[i]).trim();
+                values[i] = v.isEmpty() ? NONE : v;
+            }
+        }
+        return values;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int getAppointmentCount() { return appointmentKeys.size(); }
+    public synchronized int getPrescriptionCount() { return prescriptionKeys.size(); }
+    public synchronized int getReferralCount() { return referralKeys.size(); }
+
+    // Appointments on each of the days from start, in date order (zero for empty days)
+    public synchronized Map<String, Integer> getAppointmentsByDay(LocalDate start, int days) {
+        Map<String, Integer> byDay = new LinkedHashMap<>();
+        for (int i = 0; i < days; i++) {
+            LocalDate day = start.plusDays(i);
+            byDay.put(day.toString(), appointmentsByDay.get(day));
+        }
+        return byDay;
+    }
+
+    public synchronized Map<String, Integer> getAppointmentsByStatus(int n) { return appointmentsByStatus.top(n); }
+    public synchronized Map<String, Integer> getAppointmentsByClinician(int n) { return appointmentsByClinician.top(n); }
+    public synchronized Map<String, Integer> getAppointmentsByFacility(int n) { return appointmentsByFacility.top(n); }
+    public synchronized Map<String, Integer> getPrescriptionsByMedication(int n) { return prescriptionsByMedication.top(n); }
+    public synchronized Map<String, Integer> getPrescriptionsByPharmacy(int n) { return prescriptionsByPharmacy.top(n); }
+    public synchronized Map<String, Integer> getReferralsByUrgency(int n) { return referralsByUrgency.top(n); }
+    public synchronized Map<String, Integer> getReferralsByStatus(int n) { return referralsByStatus.top(n); }
+}
@@ -0,0 +1,122 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Watches the data directory for CSV files changed by other processes.
+ * Bursts of events for the same file are collapsed into a single callback
+ * once the file has been quiet for the debounce delay.
+ */
+public class DataFileWatcher {
+
+    private static final long DEFAULT_DEBOUNCE_MS = 500;
+
+    private final Path directory;
+    private final Set<String> watchedFiles;
+    private final Consumer<String> onChange;
+    private final long debounceMs;
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, ScheduledFuture<?>> pendingEvents = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile boolean running;
+
+    public DataFileWatcher(Path directory, Collection<String> files, Consumer<String> onChange) {
+        this(directory, files, onChange, DEFAULT_DEBOUNCE_MS);
+    }
+
+    public DataFileWatcher(Path directory, Collection<String> files,
+                           Consumer<String> onChange, long debounceMs) {
+        this.directory = directory;
+        this.watchedFiles = new HashSet<>(files);
+        this.onChange = onChange;
+        this.debounceMs = debounceMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "data-file-debounce");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() throws IOException {
+        if (running) return;
+
+        watchService = FileSystems.getDefault().newWatchService();
+        // CREATE covers jobs that write a temp file and rename it over ours
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        running = true;
+        watchThread = new Thread(this::watchLoop, "data-file-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        System.out.println("Watching " + directory.toAbsolutePath() + " for data file changes");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing file watcher: " + e.getMessage());
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void watchLoop() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were dropped - check every file
+                    for (String file : watchedFiles) {
+                        schedule(file);
+                    }
+                    continue;
+                }
+
+                String file = ((Path) event.context()).getFileName().toString();
+                if (watchedFiles.contains(file)) {
+                    schedule(file);
+                }
+            }
+
+            if (!key.reset()) {
+                System.err.println("Data directory is no longer accessible, file watching stopped");
+                return;
+            }
+        }
+    }
+
+    // Restart the quiet period for a file; only the last event in a burst fires
+    private void schedule(String file) {
+        ScheduledFuture<?> previous = pendingEvents.put(file,
+                scheduler.schedule(() -> fire(file), debounceMs, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void fire(String file) {
+        pendingEvents.remove(file);
+        try {
+            onChange.accept(file);
+        } catch (Exception e) {
+            System.err.println("Error handling change to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -5,38 +5,89 @@ import java.io.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class DataLoader {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    // Helper to handle CSV parsing with quoted fields
+    // Remembers how far into each append-only file we have already parsed
+    private static final IncrementalCsvReader TAIL_READER = new IncrementalCsvReader();
+
+    static {
+        // Our own save rewrote the file with what is already in memory - only read what comes after it
+        CsvWriter.addSaveListener(TAIL_READER::markWritten);
+    }
+
+    // Files bigger than this are parsed in chunks on several threads
+    private static final long PARALLEL_THRESHOLD = 8L << 20;  // 8 MB
+
+    // Helper to handle CSV parsing with quoted fields ("" inside quotes is a literal quote)
     private static List<String> parseCSVLine(String line) {
         List<String> fields = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\"([^\"]*)\"|(?<=,|^)([^,]*)(?=,|$)");
-        Matcher matcher = pattern.matcher(line);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
 
-        while (matcher.find()) {
-            if (matcher.group(1) != null) {
-                fields.add(matcher.group(1));
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
             } else {
-                fields.add(matcher.group(2));
+                field.append(c);
             }
         }
+        fields.add(field.toString());
         return fields;
     }
 
+    // Read one CSV record, joining lines while a quoted field is still open
+    private static String readRecord(BufferedReader br) throws IOException {
+        String line = br.readLine();
+        if (line == null) {
+            return null;
+        }
+
+        StringBuilder record = null;
+        while (hasOpenQuote(record != null ? record : line)) {
+            String next = br.readLine();
+            if (next == null) break;
+            if (record == null) record = new StringBuilder(line);
+            record.append('\n').append(next);
+        }
+        return record != null ? record.toString() : line;
+    }
+
+    private static boolean hasOpenQuote(CharSequence text) {
+        boolean open = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') open = !open;
+        }
+        return open;
+    }
+
     // Load patients from CSV file
     public static List<Patient> loadPatients(String filename) {
         List<Patient> patients = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine(); // Skip header line
             int lineNumber = 1;
 
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
+            while ((line = readRecord(br)) != null) {
+                lineNumber = br.getLineNumber();
                 if (line.trim().isEmpty()) continue;
 
                 try {
@@ -83,32 +134,29 @@ public class DataLoader {
 
     // Save patients back to CSV
     public static void savePatients(String filename, List<Patient> patients) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("patient_id,first_name,last_name,date_of_birth,nhs_number,gender," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("patient_id,first_name,last_name,date_of_birth,nhs_number,gender," +
                     "phone_number,email,address,postcode,emergency_contact_name," +
                     "emergency_contact_phone,registration_date,gp_surgery_id");
-            bw.newLine();
 
             for (Patient p : patients) {
-                StringBuilder line = new StringBuilder();
-                line.append(p.getPatientId()).append(",");
-                line.append(p.getFirstName()).append(",");
-                line.append(p.getLastName()).append(",");
-                line.append(p.getDateOfBirth()).append(",");
-                line.append(p.getNhsNumber()).append(",");
-                line.append(p.getGender()).append(",");
-                line.append(p.getPhoneNumber()).append(",");
-                line.append(p.getEmail()).append(",");
-                line.append("\"").append(p.getAddress()).append("\",");
-                line.append(p.getPostcode()).append(",");
-                line.append("\"").append(p.getEmergencyContactName()).append("\",");
-                line.append(p.getEmergencyContactPhone()).append(",");
-                line.append(p.getRegistrationDate()).append(",");
-                line.append(p.getGpSurgeryId());
-
-                bw.write(line.toString());
-                bw.newLine();
+                out.field(p.getPatientId())
+                        .field(p.getFirstName())
+                        .field(p.getLastName())
+                        .field(p.getDateOfBirth())
+                        .field(p.getNhsNumber())
+                        .field(p.getGender())
+                        .field(p.getPhoneNumber())
+                        .field(p.getEmail())
+                        .field(p.getAddress())
+                        .field(p.getPostcode())
+                        .field(p.getEmergencyContactName())
+                        .field(p.getEmergencyContactPhone())
+                        .field(p.getRegistrationDate())
+                        .field(p.getGpSurgeryId())
+                        .endRow();
             }
+            out.commit();
             System.out.println("Saved " + patients.size() + " patients to " + filename);
 
         } catch (IOException e) {
@@ -121,12 +169,12 @@ public class DataLoader {
     public static List<Staff> loadStaff(String filename) {
         List<Staff> staffList = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine();
             int lineNumber = 1;
 
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
+            while ((line = readRecord(br)) != null) {
+                lineNumber = br.getLineNumber();
                 if (line.trim().isEmpty()) continue;
 
                 try {
@@ -170,29 +218,26 @@ public class DataLoader {
     }
 
     public static void saveStaff(String filename, List<Staff> staffList) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("staff_id,first_name,last_name,role,department,facility_id," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("staff_id,first_name,last_name,role,department,facility_id," +
                     "phone_number,email,employment_status,start_date,line_manager,access_level");
-            bw.newLine();
 
             for (Staff s : staffList) {
-                StringBuilder line = new StringBuilder();
-                line.append(s.getStaffId()).append(",");
-                line.append(s.getFirstName()).append(",");
-                line.append(s.getLastName()).append(",");
-                line.append(s.getRole()).append(",");
-                line.append("\"").append(s.getDepartment()).append("\",");
-                line.append(s.getFacilityId()).append(",");
-                line.append(s.getPhoneNumber()).append(",");
-                line.append(s.getEmail()).append(",");
-                line.append(s.getEmploymentStatus()).append(",");
-                line.append(s.getStartDate()).append(",");
-                line.append("\"").append(s.getLineManager()).append("\",");
-                line.append(s.getAccessLevel());
-
-                bw.write(line.toString());
-                bw.newLine();
+                out.field(s.getStaffId())
+                        .field(s.getFirstName())
+                        .field(s.getLastName())
+                        .field(s.getRole())
+                        .field(s.getDepartment())
+                        .field(s.getFacilityId())
+                        .field(s.getPhoneNumber())
+                        .field(s.getEmail())
+                        .field(s.getEmploymentStatus())
+                        .field(s.getStartDate())
+                        .field(s.getLineManager())
+                        .field(s.getAccessLevel())
+                        .endRow();
             }
+            out.commit();
             System.out.println("Successfully saved " + staffList.size() + " staff members");
 
         } catch (IOException e) {
@@ -205,12 +250,12 @@ public class DataLoader {
     public static List<Clinician> loadClinicians(String filename) {
         List<Clinician> clinicians = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine();
             int lineNumber = 1;
 
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
+            while ((line = readRecord(br)) != null) {
+                lineNumber = br.getLineNumber();
                 if (line.trim().isEmpty()) continue;
 
                 try {
@@ -253,29 +298,26 @@ public class DataLoader {
     }
 
     public static void saveClinicians(String filename, List<Clinician> clinicians) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("clinician_id,first_name,last_name,title,specialization,license_number," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("clinician_id,first_name,last_name,title,specialization,license_number," +
                     "phone_number,email,facility_id,workplace_type,employment_status,start_date");
-            bw.newLine();
 
             for (Clinician c : clinicians) {
-                StringBuilder line = new StringBuilder();
-                line.append(c.getClinicianId()).append(",");
-                line.append(c.getFirstName()).append(",");
-                line.append(c.getLastName()).append(",");
-                line.append("\"").append(c.getTitle()).append("\",");
-                line.append("\"").append(c.getSpecialization()).append("\",");
-                line.append(c.getLicenseNumber()).append(",");
-                line.append(c.getPhoneNumber()).append(",");
-                line.append(c.getEmail()).append(",");
-                line.append(c.getFacilityId()).append(",");
-                line.append("\"").append(c.getWorkplaceType()).append("\",");
-                line.append(c.getEmploymentStatus()).append(",");
-                line.append(c.getStartDate());
-
-                bw.write(line.toString());
-                bw.newLine();
+                out.field(c.getClinicianId())
+                        .field(c.getFirstName())
+                        .field(c.getLastName())
+                        .field(c.getTitle())
+                        .field(c.getSpecialization())
+                        .field(c.getLicenseNumber())
+                        .field(c.getPhoneNumber())
+                        .field(c.getEmail())
+                        .field(c.getFacilityId())
+                        .field(c.getWorkplaceType())
+                        .field(c.getEmploymentStatus())
+                        .field(c.getStartDate())
+                        .endRow();
             }
+            out.commit();
             System.out.println("Saved " + clinicians.size() + " clinicians");
 
         } catch (IOException e) {
@@ -288,12 +330,12 @@ public class DataLoader {
     public static List<Facility> loadFacilities(String filename) {
         List<Facility> facilities = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine();
             int lineNumber = 1;
 
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
+            while ((line = readRecord(br)) != null) {
+                lineNumber = br.getLineNumber();
                 if (line.trim().isEmpty()) continue;
 
                 try {
@@ -345,35 +387,25 @@ public class DataLoader {
     }
 
     public static void saveFacilities(String filename, List<Facility> facilities) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("facility_id,facility_name,facility_type,address,postcode," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("facility_id,facility_name,facility_type,address,postcode," +
                     "phone_number,email,opening_hours,manager_name,capacity,specialities");
-            bw.newLine();
 
             for (Facility f : facilities) {
-                StringBuilder line = new StringBuilder();
-                line.append(f.getFacilityId()).append(",");
-                line.append(f.getFacilityName()).append(",");
-                line.append(f.getFacilityType()).append(",");
-                line.append("\"").append(f.getAddress()).append("\",");
-                line.append(f.getPostcode()).append(",");
-                line.append(f.getPhoneNumber()).append(",");
-                line.append(f.getEmail()).append(",");
-                line.append("\"").append(f.getOpeningHours()).append("\",");
-                line.append(f.getManagerName()).append(",");
-                line.append(f.getCapacity()).append(",");
-
-                // Combine specialities with semicolons
-                List<String> specs = f.getSpecialitiesOffered();
-                if (specs.isEmpty()) {
-                    line.append("");
-                } else {
-                    line.append("\"").append(String.join(";", specs)).append("\"");
-                }
-
-                bw.write(line.toString());
-                bw.newLine();
+                out.field(f.getFacilityId())
+                        .field(f.getFacilityName())
+                        .field(f.getFacilityType())
+                        .field(f.getAddress())
+                        .field(f.getPostcode())
+                        .field(f.getPhoneNumber())
+                        .field(f.getEmail())
+                        .field(f.getOpeningHours())
+                        .field(f.getManagerName())
+                        .field(f.getCapacity())
+                        .field(String.join(";", f.getSpecialitiesOffered()))
+                        .endRow();
             }
+            out.commit();
             System.out.println("Facilities saved successfully - " + facilities.size() + " records");
 
         } catch (IOException e) {
@@ -384,28 +416,20 @@ public class DataLoader {
 
     // Load appointments
     public static List<Appointment> loadAppointments(String filename) {
+        if (new File(filename).length() > PARALLEL_THRESHOLD) {
+            return loadAppointmentsParallel(filename).getRows();
+        }
+
         List<Appointment> appointments = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine();
 
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-
-                if (data.length >= 10) {
-                    Appointment appt = new Appointment(
-                            data[0].trim(),
-                            data[1].trim(),
-                            data[2].trim(),
-                            data[3].trim(),
-                            parseDate(data[4].trim()),
-                            data[5].trim(),
-                            parseInt(data[6].trim()),
-                            data[7].trim(),
-                            data[8].trim(),
-                            data[9].trim(),
-                            data.length > 10 ? data[10].trim() : ""
-                    );
+            while ((line = readRecord(br)) != null) {
+                if (line.trim().isEmpty()) continue;
+
+                Appointment appt = parseAppointmentRow(line, br.getLineNumber());
+                if (appt != null) {
                     appointments.add(appt);
                 }
             }
@@ -418,31 +442,108 @@ public class DataLoader {
         return appointments;
     }
 
+    // Make the next incremental load read the whole file again
+    public static void resetIncremental(String filename) {
+        TAIL_READER.reset(filename);
+    }
+
+    // Load only appointments appended since the last call (full load the first time)
+    public static IncrementalLoad<Appointment> loadNewAppointments(String filename) {
+        IncrementalLoad<Appointment> result = new IncrementalLoad<>();
+
+        try {
+            // A big file read from scratch goes through the parallel loader instead
+            if (new File(filename).length() > PARALLEL_THRESHOLD && TAIL_READER.needsFullRead(filename)) {
+                ParallelCsvLoader.Result<Appointment> loaded = loadAppointmentsParallel(filename);
+                TAIL_READER.markRead(filename, loaded.getRecordsEnd(), loaded.getBytesRead(),
+                        loaded.getCompleteLines());
+                result.setFullLoad(true);
+                result.getRows().addAll(loaded.getRows());
+                return result;
+            }
+
+            IncrementalCsvReader.Chunk chunk = TAIL_READER.read(filename);
+            result.setFullLoad(chunk.isFullRead());
+
+            List<String> lines = chunk.getLines();
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).trim().isEmpty()) continue;
+
+                Appointment appt = parseAppointmentRow(lines.get(i), chunk.getLineNumber(i));
+                if (appt != null) {
+                    result.getRows().add(appt);
+                }
+            }
+            System.out.println("Read " + result.getRows().size() + " new appointments");
+
+        } catch (IOException e) {
+            System.err.println("Error loading appointments: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    // Split a large appointments file into record-aligned chunks and parse them in parallel
+    public static ParallelCsvLoader.Result<Appointment> loadAppointmentsParallel(String filename) {
+        try {
+            ParallelCsvLoader.Result<Appointment> result =
+                    ParallelCsvLoader.load(filename, DataLoader::parseAppointmentRow);
+            System.out.println("Loaded " + result.getRows().size() + " appointments (parallel)");
+            return result;
+
+        } catch (IOException e) {
+            System.err.println("Error loading appointments: " + e.getMessage());
+            return new ParallelCsvLoader.Result<>(new ArrayList<>(), 0, 0, 0);
+        }
+    }
+
+    static Appointment parseAppointmentRow(String line, int lineNumber) {
+        try {
+            String[] data = parseCSVLine(line).toArray(new String[0]);
+            if (data.length >= 10) {
+                return new Appointment(
+                        data[0].trim(),
+                        data[1].trim(),
+                        data[2].trim(),
+                        data[3].trim(),
+                        parseDate(data[4].trim()),
+                        data[5].trim(),
+                        parseInt(data[6].trim()),
+                        data[7].trim(),
+                        data[8].trim(),
+                        data[9].trim(),
+                        data.length > 10 ? data[10].trim() : ""
+                );
+            }
+            System.err.println("Appointments line " + lineNumber + " has incorrect format. Expected at least 10 columns, got " + data.length);
+
+        } catch (Exception e) {
+            System.err.println("Error parsing appointments line " + lineNumber + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public static void saveAppointments(String filename, List<Appointment> appointments) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("appointment_id,patient_id,clinician_id,facility_id,appointment_date," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("appointment_id,patient_id,clinician_id,facility_id,appointment_date," +
                     "appointment_time,duration_minutes,appointment_type,status,reason_for_visit,notes");
-            bw.newLine();
 
             for (Appointment a : appointments) {
-                StringBuilder line = new StringBuilder();
-                line.append(a.getAppointmentId()).append(",");
-                line.append(a.getPatientId()).append(",");
-                line.append(a.getClinicianId()).append(",");
-                line.append(a.getFacilityId()).append(",");
-                line.append(a.getAppointmentDate()).append(",");
-                line.append(a.getAppointmentTime()).append(",");
-                line.append(a.getDurationMinutes()).append(",");
-                line.append(a.getAppointmentType()).append(",");
-                line.append(a.getStatus()).append(",");
-                line.append(a.getReasonForVisit()).append(",");
-
-                String notes = a.getNotes();
-                line.append(notes != null ? notes : "");
-
-                bw.write(line.toString());
-                bw.newLine();
+                out.field(a.getAppointmentId())
+                        .field(a.getPatientId())
+                        .field(a.getClinicianId())
+                        .field(a.getFacilityId())
+                        .field(a.getAppointmentDate())
+                        .field(a.getAppointmentTime())
+                        .field(a.getDurationMinutes())
+                        .field(a.getAppointmentType())
+                        .field(a.getStatus())
+                        .field(a.getReasonForVisit())
+                        .field(a.getNotes())
+                        .endRow();
             }
+            out.commit();
             System.out.println("Saved " + appointments.size() + " appointments");
 
         } catch (IOException e) {
@@ -453,44 +554,23 @@ public class DataLoader {
 
     // Load prescriptions
     public static List<Prescription> loadPrescriptions(String filename) {
+        if (new File(filename).length() > PARALLEL_THRESHOLD) {
+            return loadPrescriptionsParallel(filename).getRows();
+        }
+
         List<Prescription> prescriptions = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line = br.readLine(); // Skip header
             int lineNumber = 1;
 
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
+            while ((line = readRecord(br)) != null) {
+                lineNumber = br.getLineNumber();
                 if (line.trim().isEmpty()) continue;
 
-                try {
-                    List<String> data = parseCSVLine(line);
-                    if (data.size() >= 15) {
-                        Prescription rx = new Prescription(
-                                data.get(0).trim(),
-                                data.get(1).trim(),
-                                data.get(2).trim(),
-                                data.get(3).trim(),
-                                parseDate(data.get(4).trim()),
-                                data.get(5).trim(),
-                                data.get(6).trim(),
-                                data.get(7).trim(),
-                                parseInt(data.get(8).trim()),
-                                data.get(9).trim(),
-                                data.get(10).trim(),
-                                data.get(11).trim(),
-                                data.get(12).trim(),
-                                parseDate(data.get(13).trim()),
-                                parseDate(data.get(14).trim())
-                        );
-                        prescriptions.add(rx);
-                    } else {
-                        System.err.println("Line " + lineNumber + " has incorrect format. Expected 15 columns, got " + data.size());
-                    }
-
-                } catch (Exception e) {
-                    System.err.println("Error parsing line " + lineNumber + ": " + e.getMessage());
-                    e.printStackTrace();
+                Prescription rx = parsePrescriptionRow(line, lineNumber);
+                if (rx != null) {
+                    prescriptions.add(rx);
                 }
             }
             System.out.println("Successfully loaded " + prescriptions.size() + " prescriptions");
@@ -503,43 +583,112 @@ public class DataLoader {
         return prescriptions;
     }
 
-    public static void savePrescriptions(String filename, List<Prescription> prescriptions) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            bw.write("prescription_id,patient_id,clinician_id,appointment_id,prescription_date," +
-                    "medication_name,dosage,frequency,duration_days,quantity,instructions," +
-                    "pharmacy_name,status,issue_date,collection_date");
-            bw.newLine();
+    // Load only prescriptions appended since the last call
+    public static IncrementalLoad<Prescription> loadNewPrescriptions(String filename) {
+        IncrementalLoad<Prescription> result = new IncrementalLoad<>();
 
-            for (Prescription p : prescriptions) {
-                StringBuilder line = new StringBuilder();
-                line.append(p.getPrescriptionId()).append(",");
-                line.append(p.getPatientId()).append(",");
-                line.append(p.getClinicianId()).append(",");
+        try {
+            // A big file read from scratch goes through the parallel loader instead
+            if (new File(filename).length() > PARALLEL_THRESHOLD && TAIL_READER.needsFullRead(filename)) {
+                ParallelCsvLoader.Result<Prescription> loaded = loadPrescriptionsParallel(filename);
+                TAIL_READER.markRead(filename, loaded.getRecordsEnd(), loaded.getBytesRead(),
+                        loaded.getCompleteLines());
+                result.setFullLoad(true);
+                result.getRows().addAll(loaded.getRows());
+                return result;
+            }
 
-                String apptId = p.getAppointmentId();
-                line.append(apptId != null ? apptId : "").append(",");
-                line.append(p.getPrescriptionDate()).append(",");
+            IncrementalCsvReader.Chunk chunk = TAIL_READER.read(filename);
+            result.setFullLoad(chunk.isFullRead());
 
-                line.append(p.getMedicationName()).append(",");
-                line.append(p.getDosage()).append(",");
-                line.append(p.getFrequency()).append(",");
+            List<String> lines = chunk.getLines();
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).trim().isEmpty()) continue;
 
-                line.append(p.getDurationDays()).append(",");
-                line.append(p.getQuantity()).append(",");
+                Prescription rx = parsePrescriptionRow(lines.get(i), chunk.getLineNumber(i));
+                if (rx != null) {
+                    result.getRows().add(rx);
+                }
+            }
+            System.out.println("Read " + result.getRows().size() + " new prescriptions");
+
+        } catch (IOException e) {
+            System.err.println("Error reading prescriptions file: " + e.getMessage());
+        }
 
-                line.append(p.getInstructions()).append(",");
-                line.append(p.getPharmacyName()).append(",");
+        return result;
+    }
 
-                line.append(p.getStatus()).append(",");
+    // Split a large prescriptions file into record-aligned chunks and parse them in parallel
+    public static ParallelCsvLoader.Result<Prescription> loadPrescriptionsParallel(String filename) {
+        try {
+            ParallelCsvLoader.Result<Prescription> result =
+                    ParallelCsvLoader.load(filename, DataLoader::parsePrescriptionRow);
+            System.out.println("Successfully loaded " + result.getRows().size() + " prescriptions (parallel)");
+            return result;
 
-                LocalDate issueDate = p.getIssueDate();
-                LocalDate collectionDate = p.getCollectionDate();
-                line.append(issueDate != null ? issueDate.toString() : "").append(",");
-                line.append(collectionDate != null ? collectionDate.toString() : "");
+        } catch (IOException e) {
+            System.err.println("Error reading prescriptions file: " + e.getMessage());
+            return new ParallelCsvLoader.Result<>(new ArrayList<>(), 0, 0, 0);
+        }
+    }
 
-                bw.write(line.toString());
-                bw.newLine();
+    static Prescription parsePrescriptionRow(String line, int lineNumber) {
+        try {
+            List<String> data = parseCSVLine(line);
+            if (data.size() >= 15) {
+                return new Prescription(
+                        data.get(0).trim(),
+                        data.get(1).trim(),
+                        data.get(2).trim(),
+                        data.get(3).trim(),
+                        parseDate(data.get(4).trim()),
+                        data.get(5).trim(),
+                        data.get(6).trim(),
+                        data.get(7).trim(),
+                        parseInt(data.get(8).trim()),
+                        data.get(9).trim(),
+                        data.get(10).trim(),
+                        data.get(11).trim(),
+                        data.get(12).trim(),
+                        parseDate(data.get(13).trim()),
+                        parseDate(data.get(14).trim())
+                );
             }
+            System.err.println("Line " + lineNumber + " has incorrect format. Expected 15 columns, got " + data.size());
+
+        } catch (Exception e) {
+            System.err.println("Error parsing line " + lineNumber + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public static void savePrescriptions(String filename, List<Prescription> prescriptions) {
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("prescription_id,patient_id,clinician_id,appointment_id,prescription_date," +
+                    "medication_name,dosage,frequency,duration_days,quantity,instructions," +
+                    "pharmacy_name,status,issue_date,collection_date");
+
+            for (Prescription p : prescriptions) {
+                out.field(p.getPrescriptionId())
+                        .field(p.getPatientId())
+                        .field(p.getClinicianId())
+                        .field(p.getAppointmentId())
+                        .field(p.getPrescriptionDate())
+                        .field(p.getMedicationName())
+                        .field(p.getDosage())
+                        .field(p.getFrequency())
+                        .field(p.getDurationDays())
+                        .field(p.getQuantity())
+                        .field(p.getInstructions())
+                        .field(p.getPharmacyName())
+                        .field(p.getStatus())
+                        .field(p.getIssueDate())
+                        .field(p.getCollectionDate())
+                        .endRow();
+            }
+            out.commit();
             System.out.println("Saved " + prescriptions.size() + " prescriptions");
 
         } catch (IOException e) {
@@ -552,38 +701,18 @@ public class DataLoader {
     public static List<Referral> loadReferrals(String filename) {
         List<Referral> referrals = new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+        try (LineNumberReader br = new LineNumberReader(new FileReader(filename))) {
             String line;
             boolean isFirstLine = true;
 
-            while ((line = br.readLine()) != null) {
+            while ((line = readRecord(br)) != null) {
                 if (isFirstLine) {
                     isFirstLine = false;
                     continue;
                 }
 
-                List<String> partsList = parseCSVLine(line);
-                String[] parts = partsList.toArray(new String[0]);
-
-                if (parts.length >= 16) {
-                    Referral ref = new Referral(
-                            parts[0].trim(),
-                            parts[1].trim(),
-                            parts[2].trim(),
-                            parts[3].trim(),
-                            parts[4].trim(),
-                            parts[5].trim(),
-                            parseDate(parts[6].trim()),
-                            parts[7].trim(),
-                            parts[8].trim(),
-                            parts[9].trim(),
-                            parts[10].trim(),
-                            parts[11].trim(),
-                            parts[12].trim(),
-                            parts[13].trim(),
-                            parseDate(parts[14].trim()),
-                            parseDate(parts[15].trim())
-                    );
+                Referral ref = parseReferralRow(line);
+                if (ref != null) {
                     referrals.add(ref);
                 }
             }
@@ -595,43 +724,239 @@ public class DataLoader {
         return referrals;
     }
 
+    // Load only referrals appended since the last call
+    public static IncrementalLoad<Referral> loadNewReferrals(String filename) {
+        IncrementalLoad<Referral> result = new IncrementalLoad<>();
+
+        try {
+            IncrementalCsvReader.Chunk chunk = TAIL_READER.read(filename);
+            result.setFullLoad(chunk.isFullRead());
+
+            for (String line : chunk.getLines()) {
+                Referral ref = parseReferralRow(line);
+                if (ref != null) {
+                    result.getRows().add(ref);
+                }
+            }
+            System.out.println("Read " + result.getRows().size() + " new referrals");
+        } catch (IOException e) {
+            System.err.println("Error loading referrals: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private static Referral parseReferralRow(String line) {
+        List<String> partsList = parseCSVLine(line);
+        String[] parts = partsList.toArray(new String[0]);
+
+        if (parts.length < 16) {
+            return null;
+        }
+
+        return new Referral(
+                parts[0].trim(),
+                parts[1].trim(),
+                parts[2].trim(),
+                parts[3].trim(),
+                parts[4].trim(),
+                parts[5].trim(),
+                parseDate(parts[6].trim()),
+                parts[7].trim(),
+                parts[8].trim(),
+                parts[9].trim(),
+                parts[10].trim(),
+                parts[11].trim(),
+                parts[12].trim(),
+                parts[13].trim(),
+                parseDate(parts[14].trim()),
+                parseDate(parts[15].trim())
+        );
+    }
+
     public static void saveReferrals(String filename, List<Referral> referrals) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
-            pw.println("referral_id,patient_id,referring_clinician_id,referred_to_clinician_id," +
+        try (CsvWriter out = CsvWriter.open(filename)) {
+            out.header("referral_id,patient_id,referring_clinician_id,referred_to_clinician_id," +
                     "referring_facility_id,referred_to_facility_id,referral_date,urgency_level," +
                     "referral_reason,clinical_summary,requested_investigations,status," +
                     "appointment_id,notes,created_date,last_updated");
 
             for (Referral r : referrals) {
-                String referralDate = r.getReferralDate() != null ? r.getReferralDate().toString() : "";
-                String createdDate = r.getCreatedDate() != null ? r.getCreatedDate().toString() : "";
-                String lastUpdated = r.getLastUpdated() != null ? r.getLastUpdated().toString() : "";
-
-                pw.println(String.join(",",
-                        escapeCSV(r.getReferralId()),
-                        escapeCSV(r.getPatientId()),
-                        escapeCSV(r.getReferringClinicianId()),
-                        escapeCSV(r.getReferredToClinicianId()),
-                        escapeCSV(r.getReferringFacilityId()),
-                        escapeCSV(r.getReferredToFacilityId()),
-                        referralDate,
-                        escapeCSV(r.getUrgencyLevel()),
-                        escapeCSV(r.getReferralReason()),
-                        escapeCSV(r.getClinicalSummary()),
-                        escapeCSV(r.getRequestedInvestigations()),
-                        escapeCSV(r.getStatus()),
-                        escapeCSV(r.getAppointmentId()),
-                        escapeCSV(r.getNotes()),
-                        createdDate,
-                        lastUpdated
-                ));
+                out.field(r.getReferralId())
+                        .field(r.getPatientId())
+                        .field(r.getReferringClinicianId())
+                        .field(r.getReferredToClinicianId())
+                        .field(r.getReferringFacilityId())
+                        .field(r.getReferredToFacilityId())
+                        .field(r.getReferralDate())
+                        .field(r.getUrgencyLevel())
+                        .field(r.getReferralReason())
+                        .field(r.getClinicalSummary())
+                        .field(r.getRequestedInvestigations())
+                        .field(r.getStatus())
+                        .field(r.getAppointmentId())
+                        .field(r.getNotes())
+                        .field(r.getCreatedDate())
+                        .field(r.getLastUpdated())
+                        .endRow();
             }
+            out.commit();
             System.out.println("Referrals saved - " + referrals.size() + " records written");
+
         } catch (IOException e) {
             System.err.println("Error saving referrals: " + e.getMessage());
         }
     }
 
+    // Row builders - the refresh diff compares records by these
+    static String patientRow(Patient p) {
+        StringBuilder line = new StringBuilder();
+        line.append(p.getPatientId()).append(",");
+        line.append(p.getFirstName()).append(",");
+        line.append(p.getLastName()).append(",");
+        line.append(p.getDateOfBirth()).append(",");
+        line.append(p.getNhsNumber()).append(",");
+        line.append(p.getGender()).append(",");
+        line.append(p.getPhoneNumber()).append(",");
+        line.append(p.getEmail()).append(",");
+        line.append("\"").append(p.getAddress()).append("\",");
+        line.append(p.getPostcode()).append(",");
+        line.append("\"").append(p.getEmergencyContactName()).append("\",");
+        line.append(p.getEmergencyContactPhone()).append(",");
+        line.append(p.getRegistrationDate()).append(",");
+        line.append(p.getGpSurgeryId());
+        return line.toString();
+    }
+
+    static String staffRow(Staff s) {
+        StringBuilder line = new StringBuilder();
+        line.append(s.getStaffId()).append(",");
+        line.append(s.getFirstName()).append(",");
+        line.append(s.getLastName()).append(",");
+        line.append(s.getRole()).append(",");
+        line.append("\"").append(s.getDepartment()).append("\",");
+        line.append(s.getFacilityId()).append(",");
+        line.append(s.getPhoneNumber()).append(",");
+        line.append(s.getEmail()).append(",");
+        line.append(s.getEmploymentStatus()).append(",");
+        line.append(s.getStartDate()).append(",");
+        line.append("\"").append(s.getLineManager()).append("\",");
+        line.append(s.getAccessLevel());
+        return line.toString();
+    }
+
+    static String clinicianRow(Clinician c) {
+        StringBuilder line = new StringBuilder();
+        line.append(c.getClinicianId()).append(",");
+        line.append(c.getFirstName()).append(",");
+        line.append(c.getLastName()).append(",");
+        line.append("\"").append(c.getTitle()).append("\",");
+        line.append("\"").append(c.getSpecialization()).append("\",");
+        line.append(c.getLicenseNumber()).append(",");
+        line.append(c.getPhoneNumber()).append(",");
+        line.append(c.getEmail()).append(",");
+        line.append(c.getFacilityId()).append(",");
+        line.append("\"").append(c.getWorkplaceType()).append("\",");
+        line.append(c.getEmploymentStatus()).append(",");
+        line.append(c.getStartDate());
+        return line.toString();
+    }
+
+    static String facilityRow(Facility f) {
+        StringBuilder line = new StringBuilder();
+        line.append(f.getFacilityId()).append(",");
+        line.append(f.getFacilityName()).append(",");
+        line.append(f.getFacilityType()).append(",");
+        line.append("\"").append(f.getAddress()).append("\",");
+        line.append(f.getPostcode()).append(",");
+        line.append(f.getPhoneNumber()).append(",");
+        line.append(f.getEmail()).append(",");
+        line.append("\"").append(f.getOpeningHours()).append("\",");
+        line.append(f.getManagerName()).append(",");
+        line.append(f.getCapacity()).append(",");
+
+        // Combine specialities with semicolons
+        List<String> specs = f.getSpecialitiesOffered();
+        if (specs.isEmpty()) {
+            line.append("");
+        } else {
+            line.append("\"").append(String.join(";", specs)).append("\"");
+        }
+        return line.toString();
+    }
+
+    static String appointmentRow(Appointment a) {
+        StringBuilder line = new StringBuilder();
+        line.append(a.getAppointmentId()).append(",");
+        line.append(a.getPatientId()).append(",");
+        line.append(a.getClinicianId()).append(",");
+        line.append(a.getFacilityId()).append(",");
+        line.append(a.getAppointmentDate()).append(",");
+        line.append(a.getAppointmentTime()).append(",");
+        line.append(a.getDurationMinutes()).append(",");
+        line.append(a.getAppointmentType()).append(",");
+        line.append(a.getStatus()).append(",");
+        line.append(a.getReasonForVisit()).append(",");
+
+        String notes = a.getNotes();
+        line.append(notes != null ? notes : "");
+        return line.toString();
+    }
+
+    static String prescriptionRow(Prescription p) {
+        StringBuilder line = new StringBuilder();
+        line.append(p.getPrescriptionId()).append(",");
+        line.append(p.getPatientId()).append(",");
+        line.append(p.getClinicianId()).append(",");
+
+        String apptId = p.getAppointmentId();
+        line.append(apptId != null ? apptId : "").append(",");
+        line.append(p.getPrescriptionDate()).append(",");
+
+        line.append(p.getMedicationName()).append(",");
+        line.append(p.getDosage()).append(",");
+        line.append(p.getFrequency()).append(",");
+
+        line.append(p.getDurationDays()).append(",");
+        line.append(p.getQuantity()).append(",");
+
+        line.append(p.getInstructions()).append(",");
+        line.append(p.getPharmacyName()).append(",");
+
+        line.append(p.getStatus()).append(",");
+
+        LocalDate issueDate = p.getIssueDate();
+        LocalDate collectionDate = p.getCollectionDate();
+        line.append(issueDate != null ? issueDate.toString() : "").append(",");
+        line.append(collectionDate != null ? collectionDate.toString() : "");
+        return line.toString();
+    }
+
+    static String referralRow(Referral r) {
+        String referralDate = r.getReferralDate() != null ? r.getReferralDate().toString() : "";
+        String createdDate = r.getCreatedDate() != null ? r.getCreatedDate().toString() : "";
+        String lastUpdated = r.getLastUpdated() != null ? r.getLastUpdated().toString() : "";
+
+        return String.join(",",
+                escapeCSV(r.getReferralId()),
+                escapeCSV(r.getPatientId()),
+                escapeCSV(r.getReferringClinicianId()),
+                escapeCSV(r.getReferredToClinicianId()),
+                escapeCSV(r.getReferringFacilityId()),
+                escapeCSV(r.getReferredToFacilityId()),
+                referralDate,
+                escapeCSV(r.getUrgencyLevel()),
+                escapeCSV(r.getReferralReason()),
+                escapeCSV(r.getClinicalSummary()),
+                escapeCSV(r.getRequestedInvestigations()),
+                escapeCSV(r.getStatus()),
+                escapeCSV(r.getAppointmentId()),
+                escapeCSV(r.getNotes()),
+                createdDate,
+                lastUpdated
+        );
+    }
+
     // Handle CSV escaping for special characters
     private static String escapeCSV(String value) {
         if (value == null) return "";
@@ -0,0 +1,45 @@
+package controller;
+
+import model.Referral;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts referral document completions as the pipeline threads report them, so a
+ * panel can pick them up in batches on a timer instead of one EDT hop per referral.
+ * Accepting a completion only bumps a counter (or queues the failed referral).
+ */
+public class DocumentProgress implements BiConsumer<Referral, Throwable> {
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final Queue<Referral> failed = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void accept(Referral ref, Throwable error) {
+        if (error != null) {
+            failed.add(ref);
+        } else {
+            written.incrementAndGet();
+        }
+    }
+
+    // Referrals whose documents were written since the last call
+    public int drainWritten() {
+        return written.getAndSet(0);
+    }
+
+    // Referrals whose documents failed since the last call, oldest first
+    public List<Referral> drainFailed() {
+        List<Referral> out = new ArrayList<>();
+        Referral ref;
+        while ((ref = failed.poll()) != null) {
+            out.add(ref);
+        }
+        return out;
+    }
+}
@@ -1,5 +1,6 @@
 package controller;
 
+import model.ChangeBus;
 import model.Facility;
 import java.util.*;
 
@@ -13,7 +14,22 @@ public class FacilityController {
 
     public void loadFacilities(String filename) {
         dataFilename = filename;
+        List<Facility> old = facilities;
         facilities = DataLoader.loadFacilities(filename);
+        RecordDiff.publishLoad(Facility.class, old, facilities);
+    }
+
+    public RecordDiff<Facility> reloadFacilities(String filename) {
+        dataFilename = filename;
+        return applyFacilities(DataLoader.loadFacilities(filename));
+    }
+
+    public RecordDiff<Facility> applyFacilities(List<Facility> incoming) {
+        RecordDiff<Facility> diff = RecordDiff.compute(facilities, incoming,
+                Facility::getFacilityId, DataLoader::facilityRow);
+        facilities = diff.getMerged();
+        diff.publish(Facility.class);
+        return diff;
     }
 
     private void saveToFile() {
@@ -50,13 +66,15 @@ public class FacilityController {
     public void addFacility(Facility facility) {
         facilities.add(facility);
         saveToFile();
+        ChangeBus.getInstance().inserted(Facility.class, facility);
     }
 
     public boolean updateFacility(Facility facility) {
         for (int i = 0; i < facilities.size(); i++) {
             if (facilities.get(i).getFacilityId().equals(facility.getFacilityId())) {
-                facilities.set(i, facility);
+                Facility old = facilities.set(i, facility);
                 saveToFile();
+                ChangeBus.getInstance().updated(Facility.class, old, facility);
                 return true;
             }
         }
@@ -66,8 +84,9 @@ public class FacilityController {
     public boolean deleteFacility(String facilityId) {
         for (int i = 0; i < facilities.size(); i++) {
             if (facilities.get(i).getFacilityId().equals(facilityId)) {
-                facilities.remove(i);
+                Facility old = facilities.remove(i);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Facility.class, old);
                 return true;
             }
         }
@@ -0,0 +1,118 @@
+package controller;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers size, modification time and checksum of each CSV file so
+ * a refresh can skip files that have not been touched since the last load.
+ *
+ * Take a fingerprint before parsing a file and record that one afterwards: if
+ * the file is written again while it is being parsed, it no longer matches and
+ * the next check reloads it. Files are keyed by absolute path, so the
+ * fingerprint CsvWriter reports for our own saves (recordSaved) matches the
+ * name the file was loaded under.
+ */
+public class FileChangeTracker {
+
+    private final Map<String, Fingerprint> seen = new HashMap<>();
+
+    // Snapshot of a file at one moment
+    public static final class Fingerprint {
+        private final String filename;
+        private final long size;
+        private final long modified;
+        private final long checksum;
+
+        private Fingerprint(String filename, long size, long modified, long checksum) {
+            this.filename = filename;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+    }
+
+    /**
+     * The file as it is now. Reads the file for its checksum only if size or
+     * timestamp differ from what was last recorded.
+     */
+    public Fingerprint fingerprint(String filename) {
+        filename = key(filename);
+        File file = new File(filename);
+        long size = file.length();
+        long modified = file.lastModified();
+
+        synchronized (this) {
+            Fingerprint old = seen.get(filename);
+            if (old != null && size == old.size && modified == old.modified) {
+                return old;
+            }
+        }
+        return new Fingerprint(filename, size, modified, checksum(file));
+    }
+
+    // True if the fingerprint differs from the last recorded state of its file
+    public synchronized boolean hasChanged(Fingerprint now) {
+        Fingerprint old = seen.get(now.filename);
+        if (old == null) {
+            return true;
+        }
+        if (now == old) {
+            return false;
+        }
+
+        // Timestamp moved but content may be identical (e.g. file was re-saved)
+        if (now.size == old.size && now.checksum == old.checksum) {
+            seen.put(now.filename, now);
+            return false;
+        }
+        return true;
+    }
+
+    // Record the state a file was in when it was parsed
+    public synchronized void record(Fingerprint loaded) {
+        seen.put(loaded.filename, loaded);
+    }
+
+    // Record a file we wrote ourselves, so the change isn't mistaken for someone else's
+    public synchronized void recordSaved(CsvWriter.Saved saved) {
+        String filename = saved.getFile().toString();
+        seen.put(filename, new Fingerprint(filename, saved.getLength(), saved.getModified(), saved.getChecksum()));
+    }
+
+    // Cheap check that the file hasn't been written since the fingerprint was taken
+    public boolean isCurrent(Fingerprint fp) {
+        File file = new File(fp.filename);
+        return file.length() == fp.size && file.lastModified() == fp.modified;
+    }
+
+    public synchronized void forget(String filename) {
+        seen.remove(key(filename));
+    }
+
+    private static String key(String filename) {
+        return Paths.get(filename).toAbsolutePath().normalize().toString();
+    }
+
+    private static long checksum(File file) {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                crc.update(buf, 0, n);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not checksum " + file + ": " + e.getMessage());
+            return -1;
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,356 @@
+package controller;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Reads only the records appended to a CSV file since the previous read.
+ * A record ends at a newline outside quotes, so quoted fields may span lines.
+ *
+ * For each file it keeps a checkpoint: the byte offset just after the last complete
+ * record, and a CRC of a few sampled blocks before it - the first, the last (which
+ * holds the last record consumed) and some evenly spaced between. Before the next
+ * read the file must be no shorter and the sampled blocks unchanged; otherwise it
+ * was edited rather than appended to and is read again from the start. That costs
+ * O(samples + tail) in I/O however big the file is. Files up to SAMPLES blocks long
+ * are covered completely.
+ *
+ * The trade-off: in a bigger file, a same-length edit that falls between the sampled
+ * blocks goes unnoticed until the next full load. -Dcsv.verify=full checks a CRC of
+ * every byte before the offset instead, which catches any edit but makes each tail
+ * read O(file size) in I/O.
+ *
+ * A last line without a newline (our CSVs usually end that way) is returned, but the
+ * checkpoint stays at its start so a writer that was mid-line can finish it. The next
+ * read only returns that line again if its bytes have changed.
+ */
+public class IncrementalCsvReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SAMPLE_BYTES = 4096;
+    private static final int SAMPLES = 8;
+    private static final boolean FULL_VERIFY = "full".equals(System.getProperty("csv.verify"));
+
+    private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+
+    private static class Checkpoint {
+        long offset;          // first byte not yet processed
+        int lineNumber;       // physical lines before offset (header is line 1)
+        long prefixCrc;       // CRC32 of bytes [0, offset), with -Dcsv.verify=full
+        long sampleCrc;       // CRC32 of the sampled blocks before offset otherwise
+        int partialLength;    // unterminated line starting at offset, already returned
+        long partialCrc;
+    }
+
+    // Data lines read in one pass, with their line numbers in the file
+    public static class Chunk {
+        private final List<String> lines = new ArrayList<>();
+        private final List<Integer> lineNumbers = new ArrayList<>();
+        private boolean fullRead;
+
+        public List<String> getLines() { return lines; }
+        public int getLineNumber(int index) { return lineNumbers.get(index); }
+        public boolean isFullRead() { return fullRead; }
+    }
+
+    public synchronized Chunk read(String filename) throws IOException {
+        filename = key(filename);
+        File file = new File(filename);
+        Checkpoint cp = checkpoints.get(filename);
+
+        // With full verification, the running CRC of everything consumed so far,
+        // carried on from the verified prefix; null otherwise
+        CRC32 prefix = null;
+        if (cp != null) {
+            if (FULL_VERIFY) {
+                prefix = verifiedPrefix(file, cp);
+            }
+            if (FULL_VERIFY ? prefix == null : !isAppendedTo(file, cp)) {
+                System.out.println(filename + " was rewritten - reading it again in full");
+                cp = null;
+            }
+        }
+        if (FULL_VERIFY && prefix == null) {
+            prefix = new CRC32();
+        }
+
+        Chunk chunk = new Chunk();
+        chunk.fullRead = (cp == null);
+        Checkpoint next = new Checkpoint();
+        if (cp != null) {
+            next.offset = cp.offset;
+            next.lineNumber = cp.lineNumber;
+        }
+        int seenPartialLength = (cp != null) ? cp.partialLength : 0;
+        long seenPartialCrc = (cp != null) ? cp.partialCrc : 0;
+        next.partialLength = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(next.offset);
+            InputStream in = new BufferedInputStream(new FileInputStream(raf.getFD()), BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+            long pos = next.offset;
+            long lineStart = pos;
+            int physicalLine = next.lineNumber;
+            boolean inQuotes = false;
+            int b;
+
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                }
+                if (b != '\n' || inQuotes) {
+                    if (b == '\n') physicalLine++;
+                    line.write(b);
+                    continue;
+                }
+
+                byte[] bytes = line.toByteArray();
+                line.reset();
+                if (prefix != null) {
+                    prefix.update(bytes);
+                    prefix.update('\n');
+                }
+                int recordLine = next.lineNumber + 1;
+                next.lineNumber = ++physicalLine;
+
+                if (recordLine == 1) {
+                    // Header
+                } else if (lineStart == next.offset && isSame(bytes, seenPartialLength, seenPartialCrc)) {
+                    // Newline added after a line we already returned - nothing new
+                } else {
+                    chunk.lines.add(decode(bytes));
+                    chunk.lineNumbers.add(recordLine);
+                }
+                lineStart = pos;
+            }
+
+            // Unterminated last line
+            if (line.size() > 0 && next.lineNumber > 0) {
+                byte[] bytes = line.toByteArray();
+                long crc = checksum(bytes, 0, bytes.length);
+                boolean seen = lineStart == next.offset && isSame(bytes, seenPartialLength, seenPartialCrc);
+                if (!seen) {
+                    chunk.lines.add(decode(bytes));
+                    chunk.lineNumbers.add(next.lineNumber + 1);
+                }
+                next.partialLength = bytes.length;
+                next.partialCrc = crc;
+            }
+            next.offset = lineStart;
+        }
+        if (prefix != null) {
+            next.prefixCrc = prefix.getValue();
+        }
+        if (!FULL_VERIFY) {
+            next.sampleCrc = sampleCrc(file, next.offset);
+        }
+
+        checkpoints.put(filename, next);
+        return chunk;
+    }
+
+    // True if the next read would have to start from the beginning anyway
+    public synchronized boolean needsFullRead(String filename) {
+        filename = key(filename);
+        Checkpoint cp = checkpoints.get(filename);
+        if (cp == null) {
+            return true;
+        }
+        File file = new File(filename);
+        return FULL_VERIFY ? verifiedPrefix(file, cp) == null : !isAppendedTo(file, cp);
+    }
+
+    /**
+     * Record that the first {@code end} bytes were parsed by another loader (e.g. the
+     * parallel one), so the next read only returns what comes after them.
+     * {@code recordsEnd} is the offset just after the last complete record; anything
+     * between it and {@code end} is an unterminated record that was already returned.
+     * With -Dcsv.verify=full the parsed records are read once more, sequentially, for
+     * the prefix checksum; otherwise only the sampled blocks are read.
+     */
+    public synchronized void markRead(String filename, long recordsEnd, long end,
+                                      int completeLines) throws IOException {
+        filename = key(filename);
+        File file = new File(filename);
+        Checkpoint cp = new Checkpoint();
+        cp.offset = recordsEnd;
+        cp.lineNumber = completeLines;
+        cp.partialLength = (int) (end - recordsEnd);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < end) {
+                return;   // shrank under us - leave no checkpoint, so the next read starts over
+            }
+            if (FULL_VERIFY) {
+                CRC32 prefix = new CRC32();
+                checksumPrefix(new FileInputStream(raf.getFD()), recordsEnd, prefix);
+                cp.prefixCrc = prefix.getValue();
+            }
+            if (cp.partialLength > 0) {
+                cp.partialCrc = checksumAt(raf, recordsEnd, cp.partialLength);
+            }
+        }
+        if (!FULL_VERIFY) {
+            cp.sampleCrc = sampleCrc(file, cp.offset);
+        }
+        checkpoints.put(filename, cp);
+    }
+
+    /**
+     * Record that we just wrote the whole file ourselves, so it holds exactly what is
+     * already in memory and the next read only needs what is appended after it.
+     * Files with no checkpoint are left for their first read to load in full.
+     */
+    public synchronized void markWritten(CsvWriter.Saved saved) {
+        String filename = saved.getFile().toString();
+        if (!checkpoints.containsKey(filename)) {
+            return;
+        }
+        Checkpoint cp = new Checkpoint();
+        cp.offset = saved.getLength();       // every row CsvWriter writes ends in a newline
+        cp.lineNumber = saved.getLines();
+        cp.prefixCrc = saved.getChecksum();
+        try {
+            cp.sampleCrc = FULL_VERIFY ? 0 : sampleCrc(new File(filename), cp.offset);
+        } catch (IOException e) {
+            checkpoints.remove(filename);    // the next read starts over
+            return;
+        }
+        checkpoints.put(filename, cp);
+    }
+
+    // Forget a file so the next read starts from the beginning
+    public synchronized void reset(String filename) {
+        checkpoints.remove(key(filename));
+    }
+
+    // Same file, same checkpoint, however the name was written
+    private static String key(String filename) {
+        return Paths.get(filename).toAbsolutePath().normalize().toString();
+    }
+
+    // True if the file is no shorter and has the same sampled blocks and partial last line
+    private static boolean isAppendedTo(File file, Checkpoint cp) {
+        if (!file.exists() || file.length() < cp.offset + cp.partialLength) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (sampleCrc(raf, cp.offset) != cp.sampleCrc) {
+                return false;
+            }
+            // A partial line may only have grown, never changed
+            return cp.partialLength == 0 || checksumAt(raf, cp.offset, cp.partialLength) == cp.partialCrc;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long sampleCrc(File file, long end) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return sampleCrc(raf, end);
+        }
+    }
+
+    /**
+     * CRC of the blocks sampled from [0, end): all of it if it is short, else
+     * SAMPLES blocks evenly spaced from the first to the one ending at end.
+     */
+    private static long sampleCrc(RandomAccessFile raf, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        if (end <= (long) SAMPLES * SAMPLE_BYTES) {
+            update(crc, raf, 0, (int) end);
+            return crc.getValue();
+        }
+        for (int k = 0; k < SAMPLES; k++) {
+            update(crc, raf, (end - SAMPLE_BYTES) * k / (SAMPLES - 1), SAMPLE_BYTES);
+        }
+        return crc.getValue();
+    }
+
+    private static long checksumAt(RandomAccessFile raf, long pos, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        update(crc, raf, pos, length);
+        return crc.getValue();
+    }
+
+    // Feed 'length' bytes from pos to crc; throws EOFException if the file is shorter
+    private static void update(CRC32 crc, RandomAccessFile raf, long pos, int length) throws IOException {
+        byte[] buf = new byte[Math.min(length, BUFFER_SIZE)];
+        raf.seek(pos);
+        int done = 0;
+        while (done < length) {
+            int n = Math.min(buf.length, length - done);
+            raf.readFully(buf, 0, n);
+            crc.update(buf, 0, n);
+            done += n;
+        }
+    }
+
+    /**
+     * With -Dcsv.verify=full: if the file still starts with exactly the bytes the checkpoint covers, returns
+     * the CRC of those bytes ready to be continued; null if the file was edited.
+     */
+    private CRC32 verifiedPrefix(File file, Checkpoint cp) {
+        if (!file.exists() || file.length() < cp.offset + cp.partialLength) {
+            return null;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            CRC32 prefix = new CRC32();
+            if (checksumPrefix(in, cp.offset, prefix) != cp.offset || prefix.getValue() != cp.prefixCrc) {
+                return null;
+            }
+
+            // A partial line may only have grown, never changed
+            if (cp.partialLength > 0) {
+                byte[] partial = in.readNBytes(cp.partialLength);
+                if (partial.length != cp.partialLength
+                        || checksum(partial, 0, partial.length) != cp.partialCrc) {
+                    return null;
+                }
+            }
+            return prefix;
+
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Feed the first 'length' bytes of the stream to crc; returns how many there were
+    private static long checksumPrefix(InputStream in, long length, CRC32 crc) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long done = 0;
+        while (done < length) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, length - done));
+            if (n < 0) break;
+            crc.update(buf, 0, n);
+            done += n;
+        }
+        return done;
+    }
+
+    private static boolean isSame(byte[] bytes, int length, long crc) {
+        return length > 0 && bytes.length == length && checksum(bytes, 0, bytes.length) == crc;
+    }
+
+    private static long checksum(byte[] bytes, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, off, len);
+        return crc.getValue();
+    }
+
+    // Same charset FileReader uses, so tail reads match full loads
+    private static String decode(byte[] bytes) {
+        int len = bytes.length;
+        if (len > 0 && bytes[len - 1] == '\r') {
+            len--;
+        }
+        return new String(bytes, 0, len, Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,20 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows returned by an incremental load. When fullLoad is true the file was read
+ * from the start (first load, or the file was rewritten) and the rows replace
+ * everything in memory; otherwise they are only the newly appended rows.
+ */
+public class IncrementalLoad<T> {
+
+    private final List<T> rows = new ArrayList<>();
+    private boolean fullLoad;
+
+    public List<T> getRows() { return rows; }
+
+    public boolean isFullLoad() { return fullLoad; }
+    public void setFullLoad(boolean fullLoad) { this.fullLoad = fullLoad; }
+}
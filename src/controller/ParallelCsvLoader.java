@@ -0,0 +1,210 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parses one large CSV file on several threads.
+ *
+ * A quick sequential pass over the raw bytes finds record boundaries (newlines that
+ * are not inside quotes) roughly every chunk-size bytes and counts lines up to each
+ * one. Each chunk is then memory-mapped, decoded and parsed as a separate task on a
+ * fork-join pool, and the per-chunk results are joined back together in file order.
+ * The boundary pass only compares bytes, so it is far cheaper than the field parsing
+ * that runs in parallel.
+ */
+public class ParallelCsvLoader {
+
+    private static final long MIN_CHUNK_BYTES = 1L << 20;   // 1 MB
+    private static final long MAX_CHUNK_BYTES = 64L << 20;  // keep each mapping modest
+    private static final int CHUNKS_PER_THREAD = 4;         // spare chunks for load balancing
+    private static final int SCAN_BUFFER = 1 << 20;
+
+    // Parses one record; lineNumber is the physical line the record starts on
+    public interface RowParser<T> {
+        T parse(String record, int lineNumber);
+    }
+
+    public static class Result<T> {
+        private final List<T> rows;
+        private final long bytesRead;
+        private final long recordsEnd;
+        private final int completeLines;
+        private final int chunks;
+
+        Result(List<T> rows, long bytesRead, long recordsEnd, int completeLines) {
+            this(rows, bytesRead, recordsEnd, completeLines, 0);
+        }
+
+        Result(List<T> rows, long bytesRead, long recordsEnd, int completeLines, int chunks) {
+            this.rows = rows;
+            this.bytesRead = bytesRead;
+            this.recordsEnd = recordsEnd;
+            this.completeLines = completeLines;
+            this.chunks = chunks;
+        }
+
+        public List<T> getRows() { return rows; }
+        // File size when the load started - anything written later was not read
+        public long getBytesRead() { return bytesRead; }
+        // Offset just after the last newline-terminated record
+        public long getRecordsEnd() { return recordsEnd; }
+        // Number of newline-terminated lines, header included
+        public int getCompleteLines() { return completeLines; }
+        // Number of chunks the body was split into
+        int getChunks() { return chunks; }
+    }
+
+    // Byte range [start, end) holding whole records, starting on firstLine
+    private static class Chunk {
+        final long start;
+        final long end;
+        final int firstLine;
+
+        Chunk(long start, long end, int firstLine) {
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+    }
+
+    public static <T> Result<T> load(String filename, RowParser<T> parser) throws IOException {
+        return load(filename, parser, ForkJoinPool.commonPool());
+    }
+
+    public static <T> Result<T> load(String filename, RowParser<T> parser, ForkJoinPool pool) throws IOException {
+        long size = Files.size(Paths.get(filename));
+        long target = Math.max(MIN_CHUNK_BYTES,
+                Math.min(MAX_CHUNK_BYTES, size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD)));
+        return load(filename, parser, pool, target);
+    }
+
+    // Cut chunks of about target bytes; the checks use tiny targets to put boundaries everywhere
+    static <T> Result<T> load(String filename, RowParser<T> parser, ForkJoinPool pool,
+                              long target) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long[] scan = new long[2];   // line count, end of last complete record
+            List<Chunk> chunks = findChunks(channel, size, target, scan);
+
+            List<Callable<List<T>>> tasks = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                tasks.add(() -> parseChunk(channel, chunk, parser));
+            }
+
+            List<T> rows = new ArrayList<>();
+            for (Future<List<T>> f : pool.invokeAll(tasks)) {
+                rows.addAll(f.get());
+            }
+            return new Result<>(rows, size, scan[1], (int) scan[0], chunks.size());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + filename, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing " + filename + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Sequential pass: cut the file after the header and then every ~target bytes on a record boundary
+    private static List<Chunk> findChunks(FileChannel channel, long size, long target,
+                                          long[] scan) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocateDirect(SCAN_BUFFER);
+
+        boolean inQuotes = false;
+        boolean headerDone = false;
+        long chunkStart = 0;
+        int chunkFirstLine = 0;
+        int lines = 0;
+        long pos = 0;
+        long recordsEnd = 0;
+
+        channel.position(0);
+        while (channel.read(buf) > 0) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                byte b = buf.get();
+                pos++;
+
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n') {
+                    lines++;
+                    if (inQuotes) continue;
+                    recordsEnd = pos;
+
+                    if (!headerDone) {
+                        headerDone = true;
+                        chunkStart = pos;
+                        chunkFirstLine = lines + 1;
+                    } else if (pos - chunkStart >= target) {
+                        chunks.add(new Chunk(chunkStart, pos, chunkFirstLine));
+                        chunkStart = pos;
+                        chunkFirstLine = lines + 1;
+                    }
+                }
+            }
+            buf.clear();
+        }
+
+        if (headerDone && chunkStart < size) {
+            chunks.add(new Chunk(chunkStart, size, chunkFirstLine));
+        }
+        scan[0] = lines;
+        scan[1] = recordsEnd;
+        return chunks;
+    }
+
+    private static <T> List<T> parseChunk(FileChannel channel, Chunk chunk,
+                                          RowParser<T> parser) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                chunk.start, chunk.end - chunk.start);
+        String text = Charset.defaultCharset().decode(mapped).toString();
+
+        List<T> rows = new ArrayList<>();
+        boolean inQuotes = false;
+        int recordStart = 0;
+        int recordLine = chunk.firstLine;
+        int line = chunk.firstLine;
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : '\n';
+
+            if (c == '"') {
+                inQuotes = !inQuotes;
+                continue;
+            }
+            if (c != '\n' || (inQuotes && i < text.length())) {
+                if (c == '\n') line++;
+                continue;
+            }
+
+            int recordEnd = i;
+            if (recordEnd > recordStart && text.charAt(recordEnd - 1) == '\r') {
+                recordEnd--;
+            }
+            String record = text.substring(recordStart, recordEnd);
+            if (!record.trim().isEmpty()) {
+                T row = parser.parse(record, recordLine);
+                if (row != null) {
+                    rows.add(row);
+                }
+            }
+
+            line++;
+            recordStart = i + 1;
+            recordLine = line;
+        }
+        return rows;
+    }
+}
@@ -1,8 +1,15 @@
 package controller;
 
+import model.Appointment;
+import model.ChangeBus;
 import model.Patient;
+import model.Prescription;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PatientController {
     private List<Patient> patients;
@@ -14,7 +21,35 @@ public class PatientController {
 
     public void loadPatients(String filename) {
         dataFilename = filename;
+        List<Patient> old = patients;
         patients = DataLoader.loadPatients(filename);
+        RecordDiff.publishLoad(Patient.class, old, patients);
+    }
+
+    // Re-read the file and only swap in patients whose row actually changed
+    public RecordDiff<Patient> reloadPatients(String filename) {
+        dataFilename = filename;
+        return applyPatients(DataLoader.loadPatients(filename));
+    }
+
+    // Apply rows already parsed from the data file (e.g. on a background thread)
+    public RecordDiff<Patient> applyPatients(List<Patient> incoming) {
+        RecordDiff<Patient> diff = RecordDiff.compute(patients, incoming,
+                Patient::getPatientId, DataLoader::patientRow);
+
+        // Carry appointment and prescription links over to the new objects
+        for (Map.Entry<Patient, Patient> e : diff.getReplaced().entrySet()) {
+            for (Appointment apt : e.getKey().getAppointments()) {
+                e.getValue().addAppointment(apt);
+            }
+            for (Prescription rx : e.getKey().getPrescriptions()) {
+                e.getValue().addPrescription(rx);
+            }
+        }
+
+        patients = diff.getMerged();
+        diff.publish(Patient.class);
+        return diff;
     }
 
     private void saveToFile() {
@@ -64,13 +99,15 @@ public class PatientController {
     public void addPatient(Patient patient) {
         patients.add(patient);
         saveToFile();
+        ChangeBus.getInstance().inserted(Patient.class, patient);
     }
 
     public boolean updatePatient(Patient patient) {
         for (int i = 0; i < patients.size(); i++) {
             if (patients.get(i).getPatientId().equals(patient.getPatientId())) {
-                patients.set(i, patient);
+                Patient old = patients.set(i, patient);
                 saveToFile();
+                ChangeBus.getInstance().updated(Patient.class, old, patient);
                 return true;
             }
         }
@@ -80,14 +117,49 @@ public class PatientController {
     public boolean deletePatient(String patientId) {
         for (int i = 0; i < patients.size(); i++) {
             if (patients.get(i).getPatientId().equals(patientId)) {
-                patients.remove(i);
+                Patient old = patients.remove(i);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Patient.class, old);
                 return true;
             }
         }
         return false;
     }
 
+    // Delete several patients with one save (e.g. duplicates merged away)
+    public int deletePatients(Collection<String> ids) {
+        Set<String> doomed = new HashSet<>(ids);
+        List<Patient> removed = new ArrayList<>();
+        patients.removeIf(p -> doomed.contains(p.getPatientId()) && removed.add(p));
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Patient p : removed) {
+                bus.deleted(Patient.class, p);
+            }
+        });
+        return removed.size();
+    }
+
+    // Save patients changed in place (a reference cleared), once for all of them
+    public void saveEdited(Collection<Patient> edited) {
+        if (edited.isEmpty()) {
+            return;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Patient p : edited) {
+                bus.updated(Patient.class, p, p);
+            }
+        });
+    }
+
     public int getPatientCount() {
         return patients.size();
     }
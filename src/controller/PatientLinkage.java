@@ -0,0 +1,853 @@
+package controller;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Finds patients entered more than once - typically lists merged from several
+ * surgeries, where one person has a different patient id and a slightly
+ * different name, phone or postcode in each - and merges them.
+ *
+ * Comparing every pair is quadratic, so candidates are blocked: only patients
+ * sharing an NHS number, a postcode or a date of birth are compared, and a pair
+ * sharing several keys is compared once, in the first block they share. A
+ * postcode or birthday block too big to compare pairwise (a care home, 1 Jan) is
+ * split by the first letter of the surname, and skipped if still too big, so the
+ * work stays near linear in the number of patients.
+ *
+ * A pair is scored from 0 to 1: a weighted average over the fields both have of
+ * NHS number, date of birth, name (Jaro-Winkler, either way round), phone,
+ * email and postcode, each allowing small typos. Two valid NHS numbers that
+ * differ mean different people whatever else matches - the mod-11 check digit
+ * rules out a typo. Matches are joined transitively into clusters; pairs below
+ * the match threshold but above the review one are offered separately.
+ *
+ * Normalising, and then scoring blocks, run on the fork-join pool in chunks.
+ *
+ * merge() keeps one patient per cluster (the most complete), fills its blank
+ * fields from the others, adds their allergies, conditions and medications to
+ * its record, moves their appointments, prescriptions and referrals to it and
+ * deletes the rest, publishing it all as one change-bus transaction.
+ */
+public class PatientLinkage {
+
+    private static final double MATCH = Double.parseDouble(System.getProperty("dedup.match", "0.88"));
+    private static final double REVIEW = Double.parseDouble(System.getProperty("dedup.review", "0.75"));
+    private static final int MAX_BLOCK = Integer.getInteger("dedup.max.block", 500);
+    private static final int TASKS_PER_THREAD = 4;   // spare tasks for load balancing
+
+    // Field weights - identifiers count for more than contact details
+    private static final double W_NHS = 3.0;
+    private static final double W_DOB = 2.0;
+    private static final double W_NAME = 3.0;
+    private static final double W_PHONE = 1.5;
+    private static final double W_EMAIL = 1.0;
+    private static final double W_POSTCODE = 1.0;
+
+    // Two patients judged to be the same person (or possibly)
+    public static final class Link {
+        private final Patient a;
+        private final Patient b;
+        private final double score;
+        private final String evidence;
+
+        private Link(Patient a, Patient b, double score, String evidence) {
+            this.a = a;
+            this.b = b;
+            this.score = score;
+            this.evidence = evidence;
+        }
+
+        public Patient getA() { return a; }
+        public Patient getB() { return b; }
+        public double getScore() { return score; }
+        // The fields that agreed, e.g. "dob, name 0.95, phone"
+        public String getEvidence() { return evidence; }
+    }
+
+    // Patients to be merged into one
+    public static final class Cluster {
+        private final Patient survivor;
+        private final List<Patient> duplicates;
+        private final List<Link> links;
+        private final double score;
+        private final boolean certain;
+
+        private Cluster(Patient survivor, List<Patient> duplicates, List<Link> links, boolean certain) {
+            this.survivor = survivor;
+            this.duplicates = duplicates;
+            this.links = links;
+            this.certain = certain;
+            double min = 1.0;
+            for (Link l : links) {
+                min = Math.min(min, l.score);
+            }
+            this.score = min;
+        }
+
+        public Patient getSurvivor() { return survivor; }
+        public List<Patient> getDuplicates() { return duplicates; }
+        public List<Link> getLinks() { return links; }
+        // Weakest link in the cluster
+        public double getScore() { return score; }
+        // False for a pair in the review band - worth a look before merging
+        public boolean isCertain() { return certain; }
+    }
+
+    public static final class Result {
+        private final List<Cluster> clusters;
+        private final int patients;
+        private final int blocks;
+        private final int skippedBlocks;
+        private final long comparisons;
+        private final long millis;
+
+        private Result(List<Cluster> clusters, int patients, int blocks, int skippedBlocks,
+                       long comparisons, long millis) {
+            this.clusters = clusters;
+            this.patients = patients;
+            this.blocks = blocks;
+            this.skippedBlocks = skippedBlocks;
+            this.comparisons = comparisons;
+            this.millis = millis;
+        }
+
+        // Certain clusters first, then review pairs; strongest first within each
+        public List<Cluster> getClusters() { return clusters; }
+        public int getPatientCount() { return patients; }
+        public int getBlockCount() { return blocks; }
+        // Blocks too large to compare even after splitting
+        public int getSkippedBlocks() { return skippedBlocks; }
+        public long getComparisons() { return comparisons; }
+        public long getMillis() { return millis; }
+
+        public String summary() {
+            int certain = 0;
+            int duplicates = 0;
+            for (Cluster c : clusters) {
+                if (c.certain) {
+                    certain++;
+                    duplicates += c.duplicates.size();
+                }
+            }
+            return String.format("%d patients, %d blocks, %d comparisons in %d ms: %d duplicates in %d clusters, " +
+                            "%d pairs to review%s", patients, blocks, comparisons, millis, duplicates, certain,
+                    clusters.size() - certain, skippedBlocks > 0 ? ", " + skippedBlocks + " blocks too large" : "");
+        }
+    }
+
+    // What merge() did
+    public static final class MergeSummary {
+        private int patientsRemoved;
+        private int appointments;
+        private int prescriptions;
+        private int referrals;
+        private int records;
+
+        public int getPatientsRemoved() { return patientsRemoved; }
+        public int getAppointmentsMoved() { return appointments; }
+        public int getPrescriptionsMoved() { return prescriptions; }
+        public int getReferralsMoved() { return referrals; }
+        public int getRecordsMerged() { return records; }
+
+        @Override
+        public String toString() {
+            return patientsRemoved + " duplicate patients merged; moved " + appointments + " appointments, " +
+                    prescriptions + " prescriptions and " + referrals + " referrals; merged " + records +
+                    " medical histories";
+        }
+    }
+
+    // A patient's fields, normalised once for all its comparisons
+    private static final class Profile {
+        final Patient patient;
+        final String nhs;          // digits only
+        final boolean nhsValid;
+        final String postcode;     // upper case, no spaces
+        final String outward;      // "B911AA" -> "B91": the inward code is always three characters
+        final LocalDate dob;
+        final String dobText;
+        final String first;        // lower-case letters only
+        final String last;
+        final char initial;        // of the surname, '?' if none
+        final String phone;        // last 10 digits
+        final String email;        // lower case
+        final String emailLocal;   // before the @
+
+        Profile(Patient p) {
+            patient = p;
+            nhs = digits(p.getNhsNumber(), 10);
+            nhsValid = nhs != null && validNhs(nhs);
+            postcode = p.getPostcode() != null ? blankToNull(p.getPostcode().replace(" ", "").toUpperCase(Locale.ROOT)) : null;
+            outward = postcode != null && postcode.length() > 3 ? postcode.substring(0, postcode.length() - 3) : postcode;
+            dob = p.getDateOfBirth();
+            dobText = dob != null ? dob.toString() : null;
+            first = letters(p.getFirstName());
+            last = letters(p.getLastName());
+            initial = last != null ? last.charAt(0) : '?';
+            phone = digits(p.getPhoneNumber(), 10);
+            email = p.getEmail() != null ? blankToNull(p.getEmail().trim().toLowerCase(Locale.ROOT)) : null;
+            emailLocal = email != null && email.indexOf('@') > 0 ? email.substring(0, email.indexOf('@')) : email;
+        }
+
+        // Blocking key of each kind, in the order pairs are claimed
+        Object key(int kind) {
+            switch (kind) {
+                case 0: return nhs;
+                case 1: return postcode;
+                default: return dob;
+            }
+        }
+    }
+
+    private static final int KINDS = 3;
+
+    // Patients sharing one key, to be compared pairwise
+    private static final class Block {
+        final int kind;
+        final int[] members;
+
+        Block(int kind, int[] members) {
+            this.kind = kind;
+            this.members = members;
+        }
+    }
+
+    private final PatientController patCtrl;
+    private final AppointmentController apptCtrl;
+    private final PrescriptionController rxCtrl;
+    private final ReferralController refCtrl;
+    private final ForkJoinPool pool;
+
+    public PatientLinkage(PatientController pc, AppointmentController ac,
+                          PrescriptionController rc, ReferralController refc) {
+        this(pc, ac, rc, refc, ForkJoinPool.commonPool());
+    }
+
+    public PatientLinkage(PatientController pc, AppointmentController ac,
+                          PrescriptionController rc, ReferralController refc, ForkJoinPool pool) {
+        patCtrl = pc;
+        apptCtrl = ac;
+        rxCtrl = rc;
+        refCtrl = refc;
+        this.pool = pool;
+    }
+
+    // Duplicates among the current patients; safe to call off the EDT
+    public Result findDuplicates() {
+        return findDuplicates(patCtrl.getAllPatients());
+    }
+
+    public Result findDuplicates(List<Patient> patients) {
+        long start = System.currentTimeMillis();
+        int n = patients.size();
+        int tasks = Math.max(1, pool.getParallelism() * TASKS_PER_THREAD);
+
+        Profile[] profiles = new Profile[n];
+        List<Callable<Void>> normalise = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int from = (int) ((long) n * t / tasks);
+            int to = (int) ((long) n * (t + 1) / tasks);
+            normalise.add(() -> {
+                for (int i = from; i < to; i++) {
+                    profiles[i] = new Profile(patients.get(i));
+                }
+                return null;
+            });
+        }
+        runAll(normalise);
+
+        int[] skipped = new int[1];
+        List<Block> blocks = new ArrayList<>();
+        // Per kind: keys whose block was split -> surname initials whose part was too big to compare
+        List<Map<Object, Set<Character>>> splits = new ArrayList<>();
+        for (int kind = 0; kind < KINDS; kind++) {
+            Map<Object, Set<Character>> split = new HashMap<>();
+            splits.add(split);
+            for (int[] members : group(profiles, kind)) {
+                if (members.length <= MAX_BLOCK) {
+                    blocks.add(new Block(kind, members));
+                } else {
+                    split.put(profiles[members[0]].key(kind), split(profiles, kind, members, blocks, skipped));
+                }
+            }
+        }
+
+        // Biggest blocks first, dealt round-robin so each task gets a similar share of pairs
+        blocks.sort((x, y) -> Integer.compare(y.members.length, x.members.length));
+        List<List<Block>> shares = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            shares.get(i % tasks).add(blocks.get(i));
+        }
+
+        long[] comparisons = new long[tasks];
+        List<List<Link>> found = new ArrayList<>();
+        List<Callable<Void>> compare = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int task = t;
+            List<Link> links = new ArrayList<>();
+            found.add(links);
+            compare.add(() -> {
+                for (Block block : shares.get(task)) {
+                    comparisons[task] += compareBlock(profiles, block, splits, links);
+                }
+                return null;
+            });
+        }
+        runAll(compare);
+
+        long total = 0;
+        for (long c : comparisons) {
+            total += c;
+        }
+        List<Cluster> clusters = cluster(profiles, found);
+        return new Result(clusters, n, blocks.size(), skipped[0], total, System.currentTimeMillis() - start);
+    }
+
+    private void runAll(List<Callable<Void>> tasks) {
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Duplicate search interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Duplicate search failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    // Patients sharing a key of this kind, in groups of two or more
+    private static List<int[]> group(Profile[] profiles, int kind) {
+        // Count first, then fill - no boxing per patient
+        Map<Object, int[]> counts = new HashMap<>();
+        for (Profile p : profiles) {
+            Object key = p.key(kind);
+            if (key != null) {
+                counts.computeIfAbsent(key, k -> new int[1])[0]++;
+            }
+        }
+        Map<Object, int[]> members = new HashMap<>();
+        for (Map.Entry<Object, int[]> e : counts.entrySet()) {
+            if (e.getValue()[0] > 1) {
+                // slot 0 is the fill position
+                members.put(e.getKey(), new int[e.getValue()[0] + 1]);
+            }
+        }
+        for (int i = 0; i < profiles.length; i++) {
+            Object key = profiles[i].key(kind);
+            int[] m = key != null ? members.get(key) : null;
+            if (m != null) {
+                m[++m[0]] = i;
+            }
+        }
+
+        List<int[]> blocks = new ArrayList<>(members.size());
+        for (int[] m : members.values()) {
+            blocks.add(Arrays.copyOfRange(m, 1, m.length));
+        }
+        return blocks;
+    }
+
+    // Break an oversized block up by surname initial; returns the initials whose part is still too big
+    private static Set<Character> split(Profile[] profiles, int kind, int[] members, List<Block> blocks,
+                                        int[] skipped) {
+        Map<Character, List<Integer>> byInitial = new HashMap<>();
+        for (int i : members) {
+            byInitial.computeIfAbsent(profiles[i].initial, k -> new ArrayList<>()).add(i);
+        }
+        Set<Character> tooBig = new HashSet<>();
+        for (Map.Entry<Character, List<Integer>> e : byInitial.entrySet()) {
+            List<Integer> part = e.getValue();
+            if (part.size() < 2) {
+                continue;
+            }
+            if (part.size() > MAX_BLOCK) {
+                tooBig.add(e.getKey());
+                skipped[0]++;
+                continue;
+            }
+            int[] b = new int[part.size()];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = part.get(i);
+            }
+            blocks.add(new Block(kind, b));
+        }
+        return tooBig;
+    }
+
+    // Score every pair in the block that an earlier kind of key hasn't already compared
+    private static long compareBlock(Profile[] profiles, Block block, List<Map<Object, Set<Character>>> splits,
+                                     List<Link> links) {
+        int[] members = block.members;
+        long compared = 0;
+        for (int i = 0; i < members.length; i++) {
+            Profile a = profiles[members[i]];
+            for (int j = i + 1; j < members.length; j++) {
+                Profile b = profiles[members[j]];
+                if (comparedEarlier(a, b, block.kind, splits)) {
+                    continue;
+                }
+                compared++;
+                double score = score(a, b, null);
+                if (score >= REVIEW) {
+                    // Most pairs fail - only say why for the ones kept
+                    StringBuilder evidence = new StringBuilder();
+                    score(a, b, evidence);
+                    links.add(new Link(a.patient, b.patient, score, evidence.toString()));
+                }
+            }
+        }
+        return compared;
+    }
+
+    // Did a block of an earlier kind hold both? Not if it was split between them or skipped
+    private static boolean comparedEarlier(Profile a, Profile b, int kind, List<Map<Object, Set<Character>>> splits) {
+        for (int k = 0; k < kind; k++) {
+            Object key = a.key(k);
+            if (key == null || !key.equals(b.key(k))) {
+                continue;
+            }
+            Set<Character> tooBig = splits.get(k).get(key);
+            if (tooBig == null || (a.initial == b.initial && !tooBig.contains(a.initial))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 0 (different people) to 1 (certainly the same), over the fields both have; evidence may be null
+    static double score(Profile a, Profile b, StringBuilder evidence) {
+        if (a.last == null || b.last == null) {
+            return 0;   // no surname to go on
+        }
+        double sum = 0;
+        double weight = 0;
+
+        if (a.nhs != null && b.nhs != null) {
+            if (a.nhs.equals(b.nhs)) {
+                sum += W_NHS;
+                note(evidence, "NHS number");
+            } else if (a.nhsValid && b.nhsValid) {
+                return 0;   // two genuine NHS numbers - two people
+            } else {
+                sum += W_NHS * (editDistance(a.nhs, b.nhs, 1) <= 1 ? 0.6 : 0);
+            }
+            weight += W_NHS;
+        }
+
+        if (a.dob != null && b.dob != null) {
+            double s = dobSimilarity(a, b);
+            sum += W_DOB * s;
+            weight += W_DOB;
+            if (s == 1) {
+                note(evidence, "dob");
+            }
+        }
+
+        // A name alone isn't enough - need a date of birth or NHS number as well
+        if (weight == 0) {
+            return 0;
+        }
+
+        if (a.phone != null && b.phone != null) {
+            double s = a.phone.equals(b.phone) ? 1 : editDistance(a.phone, b.phone, 1) <= 1 ? 0.7 : 0;
+            sum += W_PHONE * s;
+            weight += W_PHONE;
+            if (s == 1) {
+                note(evidence, "phone");
+            }
+        }
+
+        if (a.email != null && b.email != null) {
+            double s = a.email.equals(b.email) ? 1 : a.emailLocal.equals(b.emailLocal) ? 0.7 : 0;
+            sum += W_EMAIL * s;
+            weight += W_EMAIL;
+            if (s == 1) {
+                note(evidence, "email");
+            }
+        }
+
+        if (a.postcode != null && b.postcode != null) {
+            double s = a.postcode.equals(b.postcode) ? 1 : a.outward.equals(b.outward) ? 0.5 : 0;
+            sum += W_POSTCODE * s;
+            weight += W_POSTCODE;
+            if (s == 1) {
+                note(evidence, "postcode");
+            }
+        }
+
+        // Names are the dear part; most pairs in a block can't reach REVIEW even with identical names
+        weight += W_NAME;
+        if ((sum + W_NAME) / weight < REVIEW) {
+            return 0;
+        }
+        double s = nameSimilarity(a, b);
+        sum += W_NAME * s;
+        if (s >= 0.85 && evidence != null) {
+            note(evidence, String.format("name %.2f", s));
+        }
+        return sum / weight;
+    }
+
+    private static void note(StringBuilder evidence, String field) {
+        if (evidence == null) {
+            return;
+        }
+        if (evidence.length() > 0) {
+            evidence.append(", ");
+        }
+        evidence.append(field);
+    }
+
+    // Same date, day and month swapped, or one digit off
+    private static double dobSimilarity(Profile p, Profile q) {
+        LocalDate a = p.dob;
+        LocalDate b = q.dob;
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.getYear() == b.getYear() && a.getMonthValue() == b.getDayOfMonth() && a.getDayOfMonth() == b.getMonthValue()) {
+            return 0.8;
+        }
+        return editDistance(p.dobText, q.dobText, 1) <= 1 ? 0.7 : 0;
+    }
+
+    // Surname and first name, allowing them to be swapped and the first name to be an initial
+    private static double nameSimilarity(Profile a, Profile b) {
+        double last = jaroWinkler(a.last, b.last);
+        double first = firstNameSimilarity(a.first, b.first);
+        double straight = 0.6 * last + 0.4 * first;
+        if (a.first != null && b.first != null) {
+            double swapped = 0.6 * jaroWinkler(a.last, b.first) + 0.4 * jaroWinkler(a.first, b.last);
+            return Math.max(straight, swapped);
+        }
+        return straight;
+    }
+
+    private static double firstNameSimilarity(String a, String b) {
+        if (a == null || b == null) {
+            return 0.5;
+        }
+        if (a.length() == 1 || b.length() == 1) {
+            return a.charAt(0) == b.charAt(0) ? 0.9 : 0;
+        }
+        return jaroWinkler(a, b);
+    }
+
+    static double jaroWinkler(String s, String t) {
+        if (s.equals(t)) {
+            return 1;
+        }
+        int range = Math.max(0, Math.max(s.length(), t.length()) / 2 - 1);
+        boolean[] sMatched = new boolean[s.length()];
+        boolean[] tMatched = new boolean[t.length()];
+        int matches = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int from = Math.max(0, i - range);
+            int to = Math.min(t.length() - 1, i + range);
+            for (int j = from; j <= to; j++) {
+                if (!tMatched[j] && s.charAt(i) == t.charAt(j)) {
+                    sMatched[i] = true;
+                    tMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < s.length(); i++) {
+            if (sMatched[i]) {
+                while (!tMatched[j]) {
+                    j++;
+                }
+                if (s.charAt(i) != t.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double m = matches;
+        double jaro = (m / s.length() + m / t.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < 4 && prefix < s.length() && prefix < t.length() && s.charAt(prefix) == t.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+
+    // Levenshtein distance, giving up (returning max + 1) once it must exceed max
+    static int editDistance(String s, String t, int max) {
+        if (Math.abs(s.length() - t.length()) > max) {
+            return max + 1;
+        }
+        int[] prev = new int[t.length() + 1];
+        int[] cur = new int[t.length() + 1];
+        for (int j = 0; j <= t.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= s.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[t.length()];
+    }
+
+    // Modulus 11 check digit
+    private static boolean validNhs(String nhs) {
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (nhs.charAt(i) - '0') * (10 - i);
+        }
+        int check = 11 - sum % 11;
+        if (check == 11) {
+            check = 0;
+        }
+        return check != 10 && check == nhs.charAt(9) - '0';
+    }
+
+    // The last n digits, or null if there are fewer than n
+    private static String digits(String s, int n) {
+        if (s == null) {
+            return null;
+        }
+        StringBuilder d = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                d.append(c);
+            }
+        }
+        return d.length() >= n ? d.substring(d.length() - n) : null;
+    }
+
+    private static String letters(String s) {
+        if (s == null) {
+            return null;
+        }
+        StringBuilder l = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetter(c)) {
+                l.append(Character.toLowerCase(c));
+            }
+        }
+        return l.length() > 0 ? l.toString() : null;
+    }
+
+    private static String blankToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    // Union the matches into clusters; review-band pairs not already clustered become pairs of their own
+    private static List<Cluster> cluster(Profile[] profiles, List<List<Link>> found) {
+        Map<Patient, Integer> indexOf = new IdentityHashMap<>(profiles.length);
+        for (int i = 0; i < profiles.length; i++) {
+            indexOf.put(profiles[i].patient, i);
+        }
+        int[] parent = new int[profiles.length];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+
+        List<Link> review = new ArrayList<>();
+        for (List<Link> links : found) {
+            for (Link l : links) {
+                if (l.score >= MATCH) {
+                    int ra = root(parent, indexOf.get(l.a));
+                    int rb = root(parent, indexOf.get(l.b));
+                    if (ra != rb) {
+                        parent[Math.max(ra, rb)] = Math.min(ra, rb);
+                    }
+                } else {
+                    review.add(l);
+                }
+            }
+        }
+
+        Map<Integer, List<Patient>> members = new HashMap<>();
+        Map<Integer, List<Link>> clusterLinks = new HashMap<>();
+        for (List<Link> links : found) {
+            for (Link l : links) {
+                if (l.score >= MATCH) {
+                    int r = root(parent, indexOf.get(l.a));
+                    clusterLinks.computeIfAbsent(r, k -> new ArrayList<>()).add(l);
+                }
+            }
+        }
+        for (int r : clusterLinks.keySet()) {
+            members.put(r, new ArrayList<>());
+        }
+        for (int i = 0; i < profiles.length; i++) {
+            List<Patient> m = members.get(root(parent, i));
+            if (m != null) {
+                m.add(profiles[i].patient);
+            }
+        }
+
+        List<Cluster> clusters = new ArrayList<>();
+        for (Map.Entry<Integer, List<Patient>> e : members.entrySet()) {
+            clusters.add(cluster(e.getValue(), clusterLinks.get(e.getKey()), true));
+        }
+        for (Link l : review) {
+            if (root(parent, indexOf.get(l.a)) != root(parent, indexOf.get(l.b))) {
+                clusters.add(cluster(new ArrayList<>(Arrays.asList(l.a, l.b)), Collections.singletonList(l), false));
+            }
+        }
+        clusters.sort((x, y) -> x.certain != y.certain ? (x.certain ? -1 : 1) : Double.compare(y.score, x.score));
+        return clusters;
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // Keep the most complete record; ties go to the earliest registered, then the lowest id
+    private static Cluster cluster(List<Patient> patients, List<Link> links, boolean certain) {
+        Comparator<Patient> keep = Comparator.comparingInt(PatientLinkage::completeness).reversed()
+                .thenComparing(Patient::getRegistrationDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(Patient::getPatientId);
+        patients.sort(keep);
+        return new Cluster(patients.get(0), new ArrayList<>(patients.subList(1, patients.size())), links, certain);
+    }
+
+    private static int completeness(Patient p) {
+        int n = 0;
+        for (Object field : new Object[]{p.getNhsNumber(), p.getDateOfBirth(), p.getFirstName(), p.getLastName(),
+                p.getPhoneNumber(), p.getEmail(), p.getAddress(), p.getPostcode(), p.getGpSurgeryId()}) {
+            if (field != null && !field.toString().isBlank()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Merge each cluster into its survivor. A patient already merged away by an
+     * earlier cluster in the list is followed to where it went, so overlapping
+     * review pairs are safe to merge together. Call on the EDT.
+     */
+    public MergeSummary merge(Collection<Cluster> clusters) {
+        // duplicate id -> the patient it becomes
+        Map<String, Patient> mergedInto = new HashMap<>();
+        for (Cluster c : clusters) {
+            Patient survivor = follow(mergedInto, c.survivor);
+            for (Patient dup : c.duplicates) {
+                Patient from = follow(mergedInto, dup);
+                if (from != survivor) {
+                    mergedInto.put(from.getPatientId(), survivor);
+                }
+            }
+        }
+        for (Map.Entry<String, Patient> e : mergedInto.entrySet()) {
+            e.setValue(follow(mergedInto, e.getValue()));
+        }
+
+        MergeSummary summary = new MergeSummary();
+        if (mergedInto.isEmpty()) {
+            return summary;
+        }
+
+        ChangeBus.getInstance().transaction(() -> {
+            List<Appointment> appointments = new ArrayList<>();
+            for (Appointment a : apptCtrl.getAllAppointments()) {
+                Patient to = mergedInto.get(a.getPatientId());
+                if (to != null) {
+                    a.setPatientId(to.getPatientId());
+                    to.addAppointment(a);
+                    appointments.add(a);
+                }
+            }
+            apptCtrl.saveEdited(appointments);
+
+            List<Prescription> prescriptions = new ArrayList<>();
+            for (Prescription rx : rxCtrl.getAllPrescriptions()) {
+                Patient to = mergedInto.get(rx.getPatientId());
+                if (to != null) {
+                    rx.setPatientId(to.getPatientId());
+                    to.addPrescription(rx);
+                    prescriptions.add(rx);
+                }
+            }
+            rxCtrl.saveEdited(prescriptions);
+
+            // Patient id is a referral index key - ReferralManager makes the change
+            for (Map.Entry<String, Patient> e : mergedInto.entrySet()) {
+                String survivorId = e.getValue().getPatientId();
+                for (Referral r : refCtrl.getReferralsByPatient(e.getKey())) {
+                    if (refCtrl.editReferral(r.getReferralId(), "patient " + e.getKey() + " merged into " + survivorId,
+                            ref -> ref.setPatientId(survivorId))) {
+                        summary.referrals++;
+                    }
+                }
+            }
+
+            Set<Patient> survivors = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Map.Entry<String, Patient> e : mergedInto.entrySet()) {
+                Patient dup = patCtrl.getPatientById(e.getKey());
+                if (dup != null) {
+                    fillBlanks(e.getValue(), dup);
+                    // Allergies, conditions and medications live in the record store, not the patient
+                    if (e.getValue().getPatientRecord().mergeFrom(dup.getPatientRecord())) {
+                        summary.records++;
+                    }
+                }
+                survivors.add(e.getValue());
+            }
+            patCtrl.saveEdited(survivors);
+            summary.patientsRemoved = patCtrl.deletePatients(mergedInto.keySet());
+            summary.appointments = appointments.size();
+            summary.prescriptions = prescriptions.size();
+        });
+        System.out.println("Patient merge: " + summary);
+        return summary;
+    }
+
+    private static Patient follow(Map<String, Patient> mergedInto, Patient p) {
+        Patient next;
+        while ((next = mergedInto.get(p.getPatientId())) != null && next != p) {
+            p = next;
+        }
+        return p;
+    }
+
+    // Copy over what the survivor is missing
+    private static void fillBlanks(Patient to, Patient from) {
+        if (isBlank(to.getNhsNumber())) to.setNhsNumber(from.getNhsNumber());
+        if (to.getDateOfBirth() == null) to.setDateOfBirth(from.getDateOfBirth());
+        if (isBlank(to.getPhoneNumber())) to.setPhoneNumber(from.getPhoneNumber());
+        if (isBlank(to.getEmail())) to.setEmail(from.getEmail());
+        if (isBlank(to.getAddress())) to.setAddress(from.getAddress());
+        if (isBlank(to.getPostcode())) to.setPostcode(from.getPostcode());
+        if (isBlank(to.getGpSurgeryId())) to.setGpSurgeryId(from.getGpSurgeryId());
+        if (isBlank(to.getEmergencyContactName())) to.setEmergencyContactName(from.getEmergencyContactName());
+        if (isBlank(to.getEmergencyContactPhone())) to.setEmergencyContactPhone(from.getEmergencyContactPhone());
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
@@ -0,0 +1,176 @@
+package controller;
+
+import model.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A patient's appointments, prescriptions and referrals as one history, newest
+ * first, a page at a time.
+ *
+ * Only the patient's own records are touched: appointments and prescriptions are
+ * already linked to the Patient, and referrals come from the referral index.
+ * Each source is sorted once and kept for the patient, so a page is a binary
+ * search to the cursor in each source and a merge of their heads - O(log total + n)
+ * for n events, however long the history is. A change to one of the patient's
+ * records (seen on the ChangeBus) drops the sorted lists, and the next page
+ * sorts again. The cursor is the position of the last event returned, so a page
+ * stays correct even if records are added between requests.
+ */
+public class PatientTimeline {
+
+    private static final int CACHED_PATIENTS = 64;
+
+    // One page of events and the cursor for the next (null when there are no more)
+    public static class Page {
+        private final List<TimelineEvent> events;
+        private final String nextCursor;
+
+        Page(List<TimelineEvent> events, String nextCursor) {
+            this.events = events;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<TimelineEvent> getEvents() { return events; }
+        public String getNextCursor() { return nextCursor; }
+        public boolean hasMore() { return nextCursor != null; }
+    }
+
+    // A patient's events, each source sorted newest first
+    private static final class Sorted {
+        final Patient patient;
+        final int appointments;
+        final int prescriptions;
+        final List<List<TimelineEvent>> sources = new ArrayList<>(3);
+
+        Sorted(Patient patient) {
+            this.patient = patient;
+            this.appointments = patient.getAppointments().size();
+            this.prescriptions = patient.getPrescriptions().size();
+        }
+
+        // Appointments and prescriptions can be relinked without an event for this patient
+        boolean isCurrent(Patient p) {
+            return p == patient && p.getAppointments().size() == appointments
+                    && p.getPrescriptions().size() == prescriptions;
+        }
+    }
+
+    private final ReferralController refCtrl;
+
+    // Sorted events of recently viewed patients, by patient id, least recently used first
+    private final Map<String, Sorted> sorted = new LinkedHashMap<String, Sorted>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Sorted> eldest) {
+            return size() > CACHED_PATIENTS;
+        }
+    };
+
+    public PatientTimeline(ReferralController rc) {
+        refCtrl = rc;
+
+        forgetOnChange(Appointment.class, Appointment::getPatientId);
+        forgetOnChange(Prescription.class, Prescription::getPatientId);
+        forgetOnChange(Referral.class, Referral::getPatientId);
+        forgetOnChange(Patient.class, Patient::getPatientId);
+    }
+
+    // Drop the sorted events of every patient a change of this type touches
+    private <T> void forgetOnChange(Class<T> type, Function<T, String> patientId) {
+        ChangeBus.getInstance().subscribe(type, changes -> {
+            for (ChangeEvent<T> c : changes) {
+                if (c.getBefore() != null) {
+                    forget(patientId.apply(c.getBefore()));
+                }
+                if (c.getAfter() != null) {
+                    forget(patientId.apply(c.getAfter()));
+                }
+            }
+        });
+    }
+
+    // The newest pageSize events
+    public Page firstPage(Patient patient, int pageSize) {
+        return page(patient, null, pageSize);
+    }
+
+    /**
+     * The pageSize events after the cursor (null cursor means from the newest).
+     * Throws IllegalArgumentException if the cursor isn't one this class handed out.
+     */
+    public Page page(Patient patient, String cursor, int pageSize) {
+        TimelineEvent after = cursor != null ? TimelineEvent.fromCursor(cursor) : null;
+        List<List<TimelineEvent>> sources = sortedEvents(patient).sources;
+
+        // Next unread event in each source
+        int[] next = new int[sources.size()];
+        for (int s = 0; s < next.length; s++) {
+            next[s] = after != null ? firstAfter(sources.get(s), after) : 0;
+        }
+
+        List<TimelineEvent> events = new ArrayList<>(pageSize);
+        boolean more = false;
+        while (true) {
+            int newest = -1;
+            for (int s = 0; s < next.length; s++) {
+                if (next[s] < sources.get(s).size() && (newest < 0
+                        || sources.get(s).get(next[s]).compareTo(sources.get(newest).get(next[newest])) < 0)) {
+                    newest = s;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+            if (events.size() == pageSize) {
+                more = true;
+                break;
+            }
+            events.add(sources.get(newest).get(next[newest]++));
+        }
+
+        String nextCursor = more && !events.isEmpty() ? events.get(events.size() - 1).toCursor() : null;
+        return new Page(events, nextCursor);
+    }
+
+    private synchronized Sorted sortedEvents(Patient patient) {
+        Sorted s = sorted.get(patient.getPatientId());
+        if (s == null || !s.isCurrent(patient)) {
+            s = new Sorted(patient);
+            s.sources.add(sort(patient.getAppointments(), TimelineEvent::of));
+            s.sources.add(sort(patient.getPrescriptions(), TimelineEvent::of));
+            s.sources.add(sort(refCtrl.getReferralsByPatient(patient.getPatientId()), TimelineEvent::of));
+            sorted.put(patient.getPatientId(), s);
+        }
+        return s;
+    }
+
+    private synchronized void forget(String patientId) {
+        if (patientId != null) {
+            sorted.remove(patientId);
+        }
+    }
+
+    private static <T> List<TimelineEvent> sort(List<T> records, Function<T, TimelineEvent> toEvent) {
+        List<TimelineEvent> events = new ArrayList<>(records.size());
+        for (T record : records) {
+            events.add(toEvent.apply(record));
+        }
+        Collections.sort(events);
+        return events;
+    }
+
+    // Index of the first event older than the cursor
+    private static int firstAfter(List<TimelineEvent> events, TimelineEvent after) {
+        int lo = 0;
+        int hi = events.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (events.get(mid).compareTo(after) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
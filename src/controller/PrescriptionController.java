@@ -2,8 +2,7 @@ package controller;
 
 import model.*;
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.*;
 
 public class PrescriptionController {
@@ -12,7 +11,18 @@ public class PrescriptionController {
     private PatientController patCtrl;
     private ClinicianController clinCtrl;
     private String dataFilename;
-    private static final String OUTPUT_FILE = "output_prescriptions.txt";
+
+    // Generated e-prescriptions, stored by prescription id, under prescriptions.dir if set
+    private static final String ARCHIVE_DIR = "archive/prescriptions";
+    private final DocumentArchive archive = new DocumentArchive(System.getProperty("prescriptions.dir", ARCHIVE_DIR),
+            4L * 1024 * 1024, !"false".equalsIgnoreCase(System.getProperty("archive.compress")));
+
+    // Drug-allergy and duplicate therapy screening; replaced whole when the dictionary is reloaded
+    private static final String DRUG_DICTIONARY_FILE = System.getProperty("drug.dictionary", "drug_classes.csv");
+    private volatile PrescriptionChecker checker = PrescriptionChecker.load(DRUG_DICTIONARY_FILE);
+
+    // Expiry and completion by date, and per-pharmacy counts of uncollected items
+    private final PrescriptionLifecycle lifecycle = new PrescriptionLifecycle(LocalDate.now());
 
     public PrescriptionController(PatientController pc, ClinicianController cc) {
         prescriptions = new ArrayList<>();
@@ -22,14 +32,86 @@ public class PrescriptionController {
 
     public void loadPrescriptions(String filename) {
         dataFilename = filename;
-        prescriptions = DataLoader.loadPrescriptions(filename);
+        for (Prescription rx : prescriptions) {
+            unlink(rx);
+        }
+        DataLoader.resetIncremental(filename);
+        List<Prescription> old = prescriptions;
+        prescriptions = DataLoader.loadNewPrescriptions(filename).getRows();
 
         // Link prescriptions to their patients
         for (Prescription rx : prescriptions) {
-            Patient p = patCtrl.getPatientById(rx.getPatientId());
-            if (p != null) {
-                p.addPrescription(rx);
+            link(rx);
+        }
+        RecordDiff.publishLoad(Prescription.class, old, prescriptions);
+    }
+
+    // Re-read only the appended tail of the file (or diff everything if it was rewritten)
+    public RecordDiff<Prescription> reloadPrescriptions(String filename) {
+        dataFilename = filename;
+        return applyNewPrescriptions(DataLoader.loadNewPrescriptions(filename));
+    }
+
+    public RecordDiff<Prescription> applyNewPrescriptions(IncrementalLoad<Prescription> load) {
+        if (load.isFullLoad()) {
+            return applyPrescriptions(load.getRows());
+        }
+
+        List<Prescription> added = new ArrayList<>();
+        Map<Prescription, Prescription> replaced = new IdentityHashMap<>();
+
+        for (Prescription rx : load.getRows()) {
+            Prescription old = getPrescriptionById(rx.getPrescriptionId());
+            if (old != null) {
+                prescriptions.set(prescriptions.indexOf(old), rx);
+                unlink(old);
+                replaced.put(old, rx);
+            } else {
+                prescriptions.add(rx);
+                added.add(rx);
             }
+            link(rx);
+        }
+
+        RecordDiff<Prescription> diff = RecordDiff.appended(prescriptions, added, replaced);
+        diff.publish(Prescription.class);
+        return diff;
+    }
+
+    public RecordDiff<Prescription> applyPrescriptions(List<Prescription> incoming) {
+        RecordDiff<Prescription> diff = RecordDiff.compute(prescriptions, incoming,
+                Prescription::getPrescriptionId, DataLoader::prescriptionRow);
+
+        for (Prescription rx : diff.getRemoved()) {
+            unlink(rx);
+        }
+        for (Map.Entry<Prescription, Prescription> e : diff.getReplaced().entrySet()) {
+            unlink(e.getKey());
+            link(e.getValue());
+        }
+        for (Prescription rx : diff.getAdded()) {
+            link(rx);
+        }
+
+        prescriptions = diff.getMerged();
+        diff.publish(Prescription.class);
+        return diff;
+    }
+
+    // Attach to the patient and start the lifecycle clock
+    private void link(Prescription rx) {
+        lifecycle.track(rx);
+        Patient p = patCtrl.getPatientById(rx.getPatientId());
+        if (p != null) {
+            p.addPrescription(rx);
+        }
+    }
+
+    private void unlink(Prescription rx) {
+        lifecycle.untrack(rx.getPrescriptionId());
+        Patient p = patCtrl.getPatientById(rx.getPatientId());
+        if (p != null) {
+            p.removePrescription(rx);
         }
     }
 
@@ -87,24 +169,24 @@ public class PrescriptionController {
 
     public void addPrescription(Prescription rx) {
         prescriptions.add(rx);
-
-        // Link to patient record
-        Patient p = patCtrl.getPatientById(rx.getPatientId());
-        if (p != null) {
-            p.addPrescription(rx);
-        }
+        link(rx);
 
         // Generate prescription document
         generateDoc(rx);
 
         saveToFile();
+        ChangeBus.getInstance().inserted(Prescription.class, rx);
     }
 
     public boolean updatePrescription(Prescription rx) {
         for (int i = 0; i < prescriptions.size(); i++) {
             if (prescriptions.get(i).getPrescriptionId().equals(rx.getPrescriptionId())) {
+                Prescription old = prescriptions.get(i);
+                unlink(old);
                 prescriptions.set(i, rx);
+                link(rx);
                 saveToFile();
+                ChangeBus.getInstance().updated(Prescription.class, old, rx);
                 return true;
             }
         }
@@ -114,14 +196,129 @@ public class PrescriptionController {
     public boolean deletePrescription(String id) {
         for (int i = 0; i < prescriptions.size(); i++) {
             if (prescriptions.get(i).getPrescriptionId().equals(id)) {
-                prescriptions.remove(i);
+                Prescription old = prescriptions.remove(i);
+                unlink(old);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Prescription.class, old);
                 return true;
             }
         }
         return false;
     }
 
+    // Delete several at once (e.g. a cascade from a deleted patient or clinician), saving once
+    public int deletePrescriptions(Collection<String> ids) {
+        Set<String> doomed = new HashSet<>(ids);
+        List<Prescription> removed = new ArrayList<>();
+        prescriptions.removeIf(rx -> doomed.contains(rx.getPrescriptionId()) && removed.add(rx));
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        for (Prescription rx : removed) {
+            unlink(rx);
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Prescription rx : removed) {
+                bus.deleted(Prescription.class, rx);
+            }
+        });
+        return removed.size();
+    }
+
+    // Save prescriptions changed in place (a reference cleared), once for all of them
+    public void saveEdited(Collection<Prescription> edited) {
+        if (edited.isEmpty()) {
+            return;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Prescription rx : edited) {
+                bus.updated(Prescription.class, rx, rx);
+            }
+        });
+    }
+
+    /**
+     * Expire uncollected prescriptions and complete finished courses that have
+     * fallen due by today, saving if any changed. Returns the ones that did.
+     */
+    public List<Prescription> advanceLifecycle() {
+        List<Prescription> changed = lifecycle.advance(LocalDate.now());
+        if (!changed.isEmpty()) {
+            saveToFile();
+            ChangeBus bus = ChangeBus.getInstance();
+            bus.transaction(() -> {
+                for (Prescription rx : changed) {
+                    bus.updated(Prescription.class, rx, rx);
+                }
+            });
+        }
+        return changed;
+    }
+
+    public List<PrescriptionLifecycle.PharmacyCounts> getPharmacyCounts() {
+        return lifecycle.getPharmacyCounts();
+    }
+
+    public int getExpiryWarningDays() {
+        return lifecycle.getWarningDays();
+    }
+
+    // Allergy and duplicate therapy alerts for a new or edited prescription
+    public List<String> checkPrescription(Prescription rx) {
+        Patient p = patCtrl.getPatientById(rx.getPatientId());
+        // link() keeps the patient's own list current, so only an unknown patient needs the full scan
+        List<Prescription> theirs = p != null ? p.getPrescriptions() : prescriptions;
+        List<Prescription> current = new ArrayList<>();
+        for (Prescription other : theirs) {
+            if (other.getPatientId().equals(rx.getPatientId()) && isActive(other)) {
+                current.add(other);
+            }
+        }
+        return checker.check(rx, p != null ? p.getPatientRecord() : null, current);
+    }
+
+    /**
+     * Re-read the drug dictionary and screen every active prescription against
+     * it. Returns the alerts by prescription, for those that have any.
+     */
+    public Map<Prescription, List<String>> rescreenActivePrescriptions() {
+        checker = PrescriptionChecker.load(DRUG_DICTIONARY_FILE);
+
+        // One pass to group by patient, so each check only looks at that patient's list
+        Map<String, List<Prescription>> byPatient = new HashMap<>();
+        for (Prescription rx : prescriptions) {
+            if (isActive(rx)) {
+                byPatient.computeIfAbsent(rx.getPatientId(), k -> new ArrayList<>()).add(rx);
+            }
+        }
+
+        Map<Prescription, List<String>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Prescription>> e : byPatient.entrySet()) {
+            Patient p = patCtrl.getPatientById(e.getKey());
+            PatientRecord rec = p != null ? p.getPatientRecord() : null;
+            for (Prescription rx : e.getValue()) {
+                List<String> alerts = checker.check(rx, rec, e.getValue());
+                if (!alerts.isEmpty()) {
+                    results.put(rx, alerts);
+                }
+            }
+        }
+        return results;
+    }
+
+    // Issued and collected prescriptions count; cancelled, completed or expired ones don't
+    private static boolean isActive(Prescription rx) {
+        String status = rx.getStatus();
+        return status == null || !(status.equalsIgnoreCase("Cancelled") ||
+                status.equalsIgnoreCase("Completed") || status.equalsIgnoreCase("Expired"));
+    }
+
     // Generate a formatted prescription document
     private void generateDoc(Prescription rx) {
         Patient pat = patCtrl.getPatientById(rx.getPatientId());
@@ -129,70 +326,56 @@ public class PrescriptionController {
 
         if (pat == null || clin == null) return;
 
-        StringBuilder doc = new StringBuilder();
-
-        doc.append("=====================================\n");
-        doc.append("  NHS ELECTRONIC PRESCRIPTION\n");
-        doc.append("=====================================\n\n");
-
-        doc.append(">> PRESCRIPTION DETAILS\n");
-        doc.append("ID: ").append(rx.getPrescriptionId()).append("\n");
-        doc.append("Date: ").append(rx.getPrescriptionDate()).append("\n");
-        doc.append("Status: ").append(rx.getStatus()).append("\n\n");
-
-        doc.append(">> PATIENT\n");
-        doc.append("Name: ").append(pat.getFullName()).append("\n");
-        doc.append("NHS#: ").append(pat.getNhsNumber()).append("\n");
-        doc.append("DOB: ").append(pat.getDateOfBirth()).append("\n");
-        doc.append("Address: ").append(pat.getAddress()).append(", ")
-                .append(pat.getPostcode()).append("\n\n");
-
-        doc.append(">> PRESCRIBER\n");
-        doc.append("Dr. ").append(clin.getFullName()).append("\n");
-        doc.append("License: ").append(clin.getLicenseNumber()).append("\n");
-        doc.append("Specialty: ").append(clin.getSpecialization()).append("\n");
-        doc.append("Contact: ").append(clin.getEmail()).append("\n\n");
-
-        doc.append(">> MEDICATION\n");
-        doc.append("Name: ").append(rx.getMedicationName()).append("\n");
-        doc.append("Dosage: ").append(rx.getDosage()).append("\n");
-        doc.append("Frequency: ").append(rx.getFrequency()).append("\n");
-        doc.append("Duration: ").append(rx.getDurationDays()).append(" days\n");
-        doc.append("Quantity: ").append(rx.getQuantity()).append("\n");
-        doc.append("Instructions: ").append(rx.getInstructions()).append("\n\n");
-
-        doc.append(">> PHARMACY\n");
-        doc.append("Name: ").append(rx.getPharmacyName()).append("\n");
-
-        String collectionStatus = rx.getCollectionDate() != null ?
-                rx.getCollectionDate().toString() : "Not collected";
-        doc.append("Collection: ").append(collectionStatus).append("\n\n");
-
-        doc.append(">> ALLERGIES & WARNINGS\n");
         PatientRecord rec = pat.getPatientRecord();
-        if (!rec.getAllergies().isEmpty()) {
-            doc.append("⚠ ALLERGIES: ").append(String.join(", ", rec.getAllergies())).append("\n");
-        } else {
-            doc.append("No known allergies\n");
+        String doc = DocumentTemplates.get(DocumentTemplates.PRESCRIPTION).values()
+                .put("prescriptionId", rx.getPrescriptionId())
+                .put("prescriptionDate", rx.getPrescriptionDate())
+                .put("status", rx.getStatus())
+                .put("patientName", pat.getFullName())
+                .put("nhsNumber", pat.getNhsNumber())
+                .put("dateOfBirth", pat.getDateOfBirth())
+                .put("address", pat.getAddress())
+                .put("postcode", pat.getPostcode())
+                .put("clinicianName", clin.getFullName())
+                .put("licenseNumber", clin.getLicenseNumber())
+                .put("specialization", clin.getSpecialization())
+                .put("clinicianEmail", clin.getEmail())
+                .put("medication", rx.getMedicationName())
+                .put("dosage", rx.getDosage())
+                .put("frequency", rx.getFrequency())
+                .put("durationDays", rx.getDurationDays())
+                .put("quantity", rx.getQuantity())
+                .put("instructions", rx.getInstructions())
+                .put("pharmacy", rx.getPharmacyName())
+                .put("collection", rx.getCollectionDate() != null ? rx.getCollectionDate() : "Not collected")
+                .put("allergies", String.join(", ", rec.getAllergies()))
+                .put("alerts", alertLines(checkPrescription(rx)))
+                .put("generated", DocumentTemplates.timestamp())
+                .render();
+
+        // Store it under the prescription id, replacing any earlier version
+        try {
+            archive.put(rx.getPrescriptionId(), doc);
+        } catch (IOException e) {
+            System.err.println("Error storing prescription " + rx.getPrescriptionId() + ": " + e.getMessage());
         }
-        doc.append("\n");
-
-        doc.append("=====================================\n");
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        doc.append("Generated: ").append(LocalDateTime.now().format(formatter)).append("\n");
-        doc.append("Valid for 28 days\n");
-        doc.append("=====================================\n\n\n");
+    }
 
-        // Write to output file
-        writeToFile(OUTPUT_FILE, doc.toString());
+    private static String alertLines(List<String> alerts) {
+        StringBuilder lines = new StringBuilder();
+        for (String alert : alerts) {
+            lines.append("⚠ ").append(alert).append("\n");
+        }
+        return lines.toString();
     }
 
-    private void writeToFile(String filename, String content) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(
-                new FileWriter(filename, true)))) {
-            out.print(content);
+    // The generated e-prescription, or null if none was stored
+    public String getStoredDocument(String prescriptionId) {
+        try {
+            return archive.get(prescriptionId);
         } catch (IOException e) {
-            System.err.println("Error writing to " + filename + ": " + e.getMessage());
+            System.err.println("Error reading prescription " + prescriptionId + ": " + e.getMessage());
+            return null;
         }
     }
 
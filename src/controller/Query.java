@@ -0,0 +1,155 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * A query over one record type: conditions that must all hold, optionally
+ * ordered by a field. Run it with QueryEngine, which decides how.
+ *
+ * Fields are named by their CSV columns (appointment_date, gp_surgery_id, ...).
+ * Text compares ignoring case and treats "" as missing. Dates and numbers may be
+ * given as text - "2025-09-01", "30".
+ *
+ *   Query.from(Appointment.class)
+ *        .where(Query.between("appointment_date", from, to))
+ *        .where(Query.in("patient_id", Query.from(Patient.class).where(Query.eq("gp_surgery_id", "S001"))))
+ *        .orderBy("appointment_date");
+ *
+ * in() is the join: the field must hold the id (or another field) of a record
+ * the inner query finds.
+ */
+public final class Query<T> {
+
+    enum Op { EQ, NOT_EQ, RANGE, PREFIX, CONTAINS, IN, ANY_OF }
+
+    // One condition on a field; anyOf() combines several
+    public static final class Condition {
+        final Op op;
+        final String field;
+        final Object value;         // EQ, NOT_EQ, PREFIX, CONTAINS; RANGE lower bound
+        final Object to;            // RANGE upper bound
+        final Query<?> sub;         // IN
+        final String subField;      // IN - null means the inner type's id
+        final List<Condition> any;  // ANY_OF
+
+        private Condition(Op op, String field, Object value, Object to, Query<?> sub, String subField,
+                          List<Condition> any) {
+            this.op = op;
+            this.field = field;
+            this.value = value;
+            this.to = to;
+            this.sub = sub;
+            this.subField = subField;
+            this.any = any;
+        }
+
+        @Override
+        public String toString() {
+            switch (op) {
+                case EQ: return field + " = " + value;
+                case NOT_EQ: return field + " != " + value;
+                case RANGE:
+                    if (value == null) return field + " <= " + to;
+                    if (to == null) return field + " >= " + value;
+                    return field + " in [" + value + ", " + to + "]";
+                case PREFIX: return field + " starts with '" + value + "'";
+                case CONTAINS: return field + " contains '" + value + "'";
+                case IN:
+                    return field + " in (" + sub.type.getSimpleName() +
+                            (subField != null ? "." + subField : "") + " where " + sub.describeConditions() + ")";
+                default:
+                    StringJoiner or = new StringJoiner(" or ", "(", ")");
+                    for (Condition c : any) {
+                        or.add(c.toString());
+                    }
+                    return or.toString();
+            }
+        }
+    }
+
+    final Class<T> type;
+    final List<Condition> conditions = new ArrayList<>();
+    String orderBy;
+
+    private Query(Class<T> type) {
+        this.type = type;
+    }
+
+    public static <T> Query<T> from(Class<T> type) {
+        return new Query<>(type);
+    }
+
+    public Query<T> where(Condition condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    // Ascending, missing values last
+    public Query<T> orderBy(String field) {
+        orderBy = field;
+        return this;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public static Condition eq(String field, Object value) {
+        return new Condition(Op.EQ, field, value, null, null, null, null);
+    }
+
+    public static Condition notEq(String field, Object value) {
+        return new Condition(Op.NOT_EQ, field, value, null, null, null, null);
+    }
+
+    // Inclusive; a null bound is open
+    public static Condition between(String field, Object from, Object to) {
+        return new Condition(Op.RANGE, field, from, to, null, null, null);
+    }
+
+    // An empty prefix matches every record with a value in the field
+    public static Condition prefix(String field, String prefix) {
+        return new Condition(Op.PREFIX, field, prefix, null, null, null, null);
+    }
+
+    // Can't use an index - always checked row by row. Empty text matches any value
+    public static Condition contains(String field, String text) {
+        return new Condition(Op.CONTAINS, field, text, null, null, null, null);
+    }
+
+    // field holds the id of a record the inner query finds
+    public static Condition in(String field, Query<?> sub) {
+        return new Condition(Op.IN, field, null, null, sub, null, null);
+    }
+
+    // field holds the subField value of a record the inner query finds
+    public static Condition in(String field, Query<?> sub, String subField) {
+        return new Condition(Op.IN, field, null, null, sub, subField, null);
+    }
+
+    public static Condition anyOf(Condition... conditions) {
+        return new Condition(Op.ANY_OF, null, null, null, null, null,
+                Collections.unmodifiableList(Arrays.asList(conditions)));
+    }
+
+    String describeConditions() {
+        if (conditions.isEmpty()) {
+            return "true";
+        }
+        StringJoiner and = new StringJoiner(" and ");
+        for (Condition c : conditions) {
+            and.add(c.toString());
+        }
+        return and.toString();
+    }
+
+    @Override
+    public String toString() {
+        return type.getSimpleName() + " where " + describeConditions() +
+                (orderBy != null ? " order by " + orderBy : "");
+    }
+}
@@ -0,0 +1,741 @@
+package controller;
+
+import model.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Runs Query objects over all seven record types.
+ *
+ * Each type is held as a table keyed by id, with sorted indexes on the fields
+ * screens filter by (ids, foreign keys, dates, status and the like). Tables and
+ * indexes follow the change bus, so they stay current without the controllers
+ * knowing about them. An index remembers the key it filed each record under,
+ * so a record edited in place moves to the right bucket.
+ *
+ * Planning: every condition an index can answer - equality, range, prefix, a
+ * join's id set, or an anyOf whose branches all can - is costed by counting the
+ * rows it would fetch, reading bucket sizes from the index and giving up once
+ * it passes the cheapest so far. The cheapest is used if it fetches less than
+ * INDEX_MAX_FRACTION of the table; otherwise, and when nothing is indexable,
+ * the table is scanned. The other conditions are checked on each row fetched.
+ * A join runs its inner query first (planned the same way) and becomes a set
+ * of keys for the outer one.
+ *
+ * explain() shows the plan, what else was considered, and the actual rows.
+ * executeNaive() checks every row of every table, joins as nested loops - the
+ * way the screens used to - for comparison.
+ */
+public class QueryEngine {
+
+    // Above this share of the table, walking index buckets costs more than a scan
+    private static final double INDEX_MAX_FRACTION = 0.25;
+
+    // -Dquery.explain=true prints every plan as it runs
+    private static final boolean LOG_PLANS = Boolean.getBoolean("query.explain");
+
+    private enum Kind { TEXT, DATE, NUMBER }
+
+    private static final class Field {
+        final String name;
+        final Kind kind;
+        final Function<Object, Object> get;
+        final boolean indexed;
+
+        Field(String name, Kind kind, Function<Object, Object> get, boolean indexed) {
+            this.name = name;
+            this.kind = kind;
+            this.get = get;
+            this.indexed = indexed;
+        }
+
+        // Comparable form of the record's value; null if missing
+        Object keyOf(Object record) {
+            return key(get.apply(record));
+        }
+
+        // Comparable form of a value from a query
+        Object operand(Object value) {
+            if (value instanceof String && kind != Kind.TEXT) {
+                String s = ((String) value).trim();
+                if (s.isEmpty()) {
+                    return null;
+                }
+                return kind == Kind.DATE ? LocalDate.parse(s) : (Object) Integer.valueOf(s);
+            }
+            return key(value);
+        }
+
+        static Object key(Object value) {
+            if (value instanceof String) {
+                String s = (String) value;
+                return s.isEmpty() ? null : s.toLowerCase(Locale.ROOT);
+            }
+            return value;
+        }
+    }
+
+    // The fields of one record type
+    private static final class Schema<T> {
+        final Class<T> type;
+        final String idField;
+        final Map<String, Field> fields = new LinkedHashMap<>();
+
+        Schema(Class<T> type, String idField) {
+            this.type = type;
+            this.idField = idField;
+        }
+
+        @SuppressWarnings("unchecked")
+        Schema<T> add(String name, Kind kind, Function<T, ?> get, boolean indexed) {
+            fields.put(name, new Field(name, kind, (Function<Object, Object>) get, indexed));
+            return this;
+        }
+
+        Schema<T> text(String name, Function<T, ?> get, boolean indexed) {
+            return add(name, Kind.TEXT, get, indexed);
+        }
+
+        Schema<T> date(String name, Function<T, ?> get, boolean indexed) {
+            return add(name, Kind.DATE, get, indexed);
+        }
+
+        Schema<T> number(String name, Function<T, ?> get) {
+            return add(name, Kind.NUMBER, get, false);
+        }
+
+        Field field(String name) {
+            Field f = fields.get(name);
+            if (f == null) {
+                throw new IllegalArgumentException(type.getSimpleName() + " has no field " + name +
+                        " - expected one of " + fields.keySet());
+            }
+            return f;
+        }
+
+        String idOf(Object record) {
+            return (String) fields.get(idField).get.apply(record);
+        }
+    }
+
+    private static final Map<Class<?>, Schema<?>> SCHEMAS = new LinkedHashMap<>();
+    static {
+        register(new Schema<>(Patient.class, "patient_id")
+                .text("patient_id", Patient::getPatientId, true)
+                .text("first_name", Patient::getFirstName, false)
+                .text("last_name", Patient::getLastName, true)
+                .text("full_name", Patient::getFullName, false)
+                .date("date_of_birth", Patient::getDateOfBirth, true)
+                .text("nhs_number", Patient::getNhsNumber, true)
+                .text("gender", Patient::getGender, false)
+                .text("email", Patient::getEmail, false)
+                .text("postcode", Patient::getPostcode, true)
+                .date("registration_date", Patient::getRegistrationDate, false)
+                .text("gp_surgery_id", Patient::getGpSurgeryId, true));
+        register(new Schema<>(Clinician.class, "clinician_id")
+                .text("clinician_id", Clinician::getClinicianId, true)
+                .text("first_name", Clinician::getFirstName, false)
+                .text("last_name", Clinician::getLastName, true)
+                .text("full_name", Clinician::getFullName, false)
+                .text("title", Clinician::getTitle, false)
+                .text("specialization", Clinician::getSpecialization, true)
+                .text("workplace_id", Clinician::getFacilityId, true)
+                .text("workplace_type", Clinician::getWorkplaceType, false)
+                .text("email", Clinician::getEmail, false));
+        register(new Schema<>(Staff.class, "staff_id")
+                .text("staff_id", Staff::getStaffId, true)
+                .text("first_name", Staff::getFirstName, false)
+                .text("last_name", Staff::getLastName, true)
+                .text("full_name", Staff::getFullName, false)
+                .text("role", Staff::getRole, true)
+                .text("department", Staff::getDepartment, true)
+                .text("facility_id", Staff::getFacilityId, true)
+                .text("employment_status", Staff::getEmploymentStatus, false)
+                .date("start_date", Staff::getStartDate, false));
+        register(new Schema<>(Facility.class, "facility_id")
+                .text("facility_id", Facility::getFacilityId, true)
+                .text("facility_name", Facility::getFacilityName, true)
+                .text("facility_type", Facility::getFacilityType, true)
+                .text("postcode", Facility::getPostcode, true)
+                .number("capacity", Facility::getCapacity));
+        register(new Schema<>(Appointment.class, "appointment_id")
+                .text("appointment_id", Appointment::getAppointmentId, true)
+                .text("patient_id", Appointment::getPatientId, true)
+                .text("clinician_id", Appointment::getClinicianId, true)
+                .text("facility_id", Appointment::getFacilityId, true)
+                .date("appointment_date", Appointment::getAppointmentDate, true)
+                .text("appointment_time", Appointment::getAppointmentTime, false)
+                .number("duration_minutes", Appointment::getDurationMinutes)
+                .text("appointment_type", Appointment::getAppointmentType, true)
+                .text("status", Appointment::getStatus, true)
+                .text("reason_for_visit", Appointment::getReasonForVisit, false));
+        register(new Schema<>(Prescription.class, "prescription_id")
+                .text("prescription_id", Prescription::getPrescriptionId, true)
+                .text("patient_id", Prescription::getPatientId, true)
+                .text("clinician_id", Prescription::getClinicianId, true)
+                .text("appointment_id", Prescription::getAppointmentId, true)
+                .date("prescription_date", Prescription::getPrescriptionDate, true)
+                .text("medication_name", Prescription::getMedicationName, true)
+                .number("duration_days", Prescription::getDurationDays)
+                .text("pharmacy_name", Prescription::getPharmacyName, true)
+                .text("status", Prescription::getStatus, true)
+                .date("issue_date", Prescription::getIssueDate, false)
+                .date("collection_date", Prescription::getCollectionDate, false));
+        register(new Schema<>(Referral.class, "referral_id")
+                .text("referral_id", Referral::getReferralId, true)
+                .text("patient_id", Referral::getPatientId, true)
+                .text("referring_clinician_id", Referral::getReferringClinicianId, true)
+                .text("referred_to_clinician_id", Referral::getReferredToClinicianId, true)
+                .text("referring_facility_id", Referral::getReferringFacilityId, true)
+                .text("referred_to_facility_id", Referral::getReferredToFacilityId, true)
+                .date("referral_date", Referral::getReferralDate, true)
+                .text("urgency_level", Referral::getUrgencyLevel, true)
+                .text("referral_reason", Referral::getReferralReason, false)
+                .text("status", Referral::getStatus, true)
+                .text("appointment_id", Referral::getAppointmentId, true));
+    }
+
+    private static void register(Schema<?> schema) {
+        SCHEMAS.put(schema.type, schema);
+    }
+
+    // Sorted index on one field: key -> records by id
+    private static final class Index {
+        final Field field;
+        final TreeMap<Object, Map<String, Object>> buckets = new TreeMap<>();
+        final Map<String, Object> filedUnder = new HashMap<>();
+
+        Index(Field field) {
+            this.field = field;
+        }
+
+        void add(String id, Object record) {
+            Object key = field.keyOf(record);
+            if (key != null) {
+                buckets.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(id, record);
+                filedUnder.put(id, key);
+            }
+        }
+
+        void remove(String id) {
+            Object key = filedUnder.remove(id);
+            if (key != null) {
+                Map<String, Object> bucket = buckets.get(key);
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+
+        // Buckets holding the keys a condition matches
+        Collection<Map<String, Object>> lookup(Bound b) {
+            switch (b.op) {
+                case EQ: {
+                    Map<String, Object> bucket = b.value != null ? buckets.get(b.value) : null;
+                    return bucket != null ? Collections.singletonList(bucket) : Collections.emptyList();
+                }
+                case RANGE: {
+                    NavigableMap<Object, Map<String, Object>> range = buckets;
+                    if (b.value != null) {
+                        range = range.tailMap(b.value, true);
+                    }
+                    if (b.to != null) {
+                        range = range.headMap(b.to, true);
+                    }
+                    return range.values();
+                }
+                case PREFIX: {
+                    if (b.value == null) {
+                        return buckets.values();   // empty prefix - every key
+                    }
+                    String p = (String) b.value;
+                    return buckets.subMap(p, true, p + Character.MAX_VALUE, false).values();
+                }
+                case IN: {
+                    List<Map<String, Object>> found = new ArrayList<>();
+                    for (Object key : b.set) {
+                        Map<String, Object> bucket = buckets.get(key);
+                        if (bucket != null) {
+                            found.add(bucket);
+                        }
+                    }
+                    return found;
+                }
+                default:
+                    throw new IllegalStateException("No index lookup for " + b.op);
+            }
+        }
+    }
+
+    private static final class Table {
+        final Schema<?> schema;
+        final Map<String, Object> rows = new LinkedHashMap<>();
+        final Map<String, Index> indexes = new HashMap<>();
+
+        Table(Schema<?> schema) {
+            this.schema = schema;
+            for (Field f : schema.fields.values()) {
+                if (f.indexed) {
+                    indexes.put(f.name, new Index(f));
+                }
+            }
+        }
+
+        void add(Object record) {
+            String id = schema.idOf(record);
+            remove(id);
+            rows.put(id, record);
+            for (Index index : indexes.values()) {
+                index.add(id, record);
+            }
+        }
+
+        void remove(String id) {
+            if (rows.remove(id) != null) {
+                for (Index index : indexes.values()) {
+                    index.remove(id);
+                }
+            }
+        }
+    }
+
+    // A condition resolved against a schema: operands converted, joins run
+    private static final class Bound {
+        final Query.Condition source;
+        final Query.Op op;
+        final Field field;
+        final Object value;
+        final Object to;
+        final List<Bound> any;
+        Plan sub;
+        Set<Object> set;
+
+        Bound(Query.Condition source, Field field, Object value, Object to, List<Bound> any) {
+            this.source = source;
+            this.op = source.op;
+            this.field = field;
+            this.value = value;
+            this.to = to;
+            this.any = any;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        boolean test(Object record) {
+            if (op == Query.Op.ANY_OF) {
+                for (Bound b : any) {
+                    if (b.test(record)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            Object key = field.keyOf(record);
+            switch (op) {
+                case EQ: return Objects.equals(key, value);
+                case NOT_EQ: return !Objects.equals(key, value);
+                case RANGE:
+                    return key != null
+                            && (value == null || ((Comparable) key).compareTo(value) >= 0)
+                            && (to == null || ((Comparable) key).compareTo(to) <= 0);
+                // An empty operand matches any value there is
+                case PREFIX: return key != null && (value == null || ((String) key).startsWith((String) value));
+                case CONTAINS: return key != null && (value == null || ((String) key).contains((String) value));
+                case IN: return key != null && set.contains(key);
+                default: return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    /**
+     * How a query will run. Made by plan(); join inner queries have already
+     * been run, so executing it only does the outer part.
+     */
+    public static final class Plan {
+        private final Query<?> query;
+        private final Table table;
+        private final List<Bound> conditions;
+        private final Bound access;          // null for a full scan
+        private final long estimate;
+        private final List<String> considered;
+        private final Field orderBy;
+        private final boolean indexOrder;    // rows already come out in orderBy order
+
+        private Plan(Query<?> query, Table table, List<Bound> conditions, Bound access, long estimate,
+                     List<String> considered, Field orderBy, boolean indexOrder) {
+            this.query = query;
+            this.table = table;
+            this.conditions = conditions;
+            this.access = access;
+            this.estimate = estimate;
+            this.considered = considered;
+            this.orderBy = orderBy;
+            this.indexOrder = indexOrder;
+        }
+
+        public boolean usesIndex() {
+            return access != null;
+        }
+
+        public long getEstimatedRows() {
+            return estimate;
+        }
+
+        private void describe(StringBuilder out, String indent) {
+            out.append(indent).append(query.type.getSimpleName()).append(" (").append(table.rows.size())
+                    .append(" rows)\n");
+            if (access == null) {
+                out.append(indent).append("  access: full scan\n");
+            } else {
+                out.append(indent).append("  access: index on ").append(accessFields(access)).append(": ")
+                        .append(access).append(" ~ ").append(estimate).append(" rows\n");
+            }
+            for (Bound b : conditions) {
+                if (b != access) {
+                    out.append(indent).append("  filter: ").append(b).append("\n");
+                }
+            }
+            if (orderBy != null) {
+                out.append(indent).append("  order: ").append(orderBy.name)
+                        .append(indexOrder ? " (from index)" : " (sort)").append("\n");
+            }
+            if (!considered.isEmpty()) {
+                out.append(indent).append("  considered: ").append(String.join("; ", considered)).append("\n");
+            }
+            for (Bound b : conditions) {
+                describeJoins(b, out, indent);
+            }
+        }
+
+        private static void describeJoins(Bound b, StringBuilder out, String indent) {
+            if (b.sub != null) {
+                out.append(indent).append("  join ").append(b.field.name).append(" -> ")
+                        .append(b.set.size()).append(" keys from:\n");
+                b.sub.describe(out, indent + "    ");
+            }
+            if (b.any != null) {
+                for (Bound a : b.any) {
+                    describeJoins(a, out, indent);
+                }
+            }
+        }
+
+        private static String accessFields(Bound b) {
+            if (b.any == null) {
+                return b.field.name;
+            }
+            StringJoiner names = new StringJoiner(", ");
+            for (Bound a : b.any) {
+                names.add(a.field.name);
+            }
+            return names.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            describe(out, "");
+            return out.toString();
+        }
+    }
+
+    private final Map<Class<?>, Table> tables = new HashMap<>();
+
+    public QueryEngine(PatientController pc, ClinicianController cc, StaffController sc,
+                       FacilityController fc, AppointmentController ac,
+                       PrescriptionController rc, ReferralController refc) {
+        for (Schema<?> schema : SCHEMAS.values()) {
+            tables.put(schema.type, new Table(schema));
+        }
+
+        // Listen first, then load what is already there - adding twice is harmless
+        for (Class<?> type : SCHEMAS.keySet()) {
+            follow(type);
+        }
+        load(Patient.class, pc.getAllPatients());
+        load(Clinician.class, cc.getAllClinicians());
+        load(Staff.class, sc.getAllStaff());
+        load(Facility.class, fc.getAllFacilities());
+        load(Appointment.class, ac.getAllAppointments());
+        load(Prescription.class, rc.getAllPrescriptions());
+        load(Referral.class, refc.getAllReferrals());
+    }
+
+    private <T> void follow(Class<T> type) {
+        Table table = tables.get(type);
+        ChangeBus.getInstance().subscribe(type, changes -> {
+            synchronized (this) {
+                for (ChangeEvent<T> c : changes) {
+                    if (c.getBefore() != null) {
+                        table.remove(table.schema.idOf(c.getBefore()));
+                    }
+                    if (c.getAfter() != null) {
+                        table.add(c.getAfter());
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized void load(Class<?> type, List<?> records) {
+        Table table = tables.get(type);
+        for (Object record : records) {
+            table.add(record);
+        }
+    }
+
+    public synchronized <T> List<T> execute(Query<T> query) {
+        Plan plan = plan(query);
+        if (LOG_PLANS) {
+            System.out.print(plan);
+        }
+        return run(plan);
+    }
+
+    // The plan, with the rows it actually returned and how long that took
+    public synchronized String explain(Query<?> query) {
+        long start = System.nanoTime();
+        Plan plan = plan(query);
+        int rows = run(plan).size();
+        long micros = (System.nanoTime() - start) / 1000;
+        return plan + "-> " + rows + " rows in " + micros + " us\n";
+    }
+
+    public synchronized Plan plan(Query<?> query) {
+        Table table = table(query.type);
+        List<Bound> conditions = new ArrayList<>();
+        for (Query.Condition c : query.conditions) {
+            conditions.add(bind(table.schema, c));
+        }
+
+        // Cheapest indexable condition, if it beats the share of the table a scan is worth
+        long rows = table.rows.size();
+        Bound best = null;
+        long bestCost = (long) (rows * INDEX_MAX_FRACTION);
+        Map<Bound, String> costs = new LinkedHashMap<>();
+        for (Bound b : conditions) {
+            if (indexable(table, b)) {
+                long cost = estimate(table, b, bestCost);
+                costs.put(b, cost > bestCost ? "> " + bestCost : "~ " + cost);
+                if (cost < bestCost) {
+                    best = b;
+                    bestCost = cost;
+                }
+            }
+        }
+
+        List<String> considered = new ArrayList<>();
+        for (Map.Entry<Bound, String> e : costs.entrySet()) {
+            if (e.getKey() != best) {
+                considered.add("index " + e.getKey() + " " + e.getValue());
+            }
+        }
+        if (best != null) {
+            considered.add("full scan ~ " + rows);
+        }
+
+        Field orderBy = query.orderBy != null ? table.schema.field(query.orderBy) : null;
+        boolean indexOrder = orderBy != null && best != null && best.field == orderBy
+                && (best.op == Query.Op.EQ || best.op == Query.Op.RANGE || best.op == Query.Op.PREFIX);
+        return new Plan(query, table, conditions, best, best != null ? bestCost : rows, considered,
+                orderBy, indexOrder);
+    }
+
+    private Table table(Class<?> type) {
+        Table table = tables.get(type);
+        if (table == null) {
+            throw new IllegalArgumentException("Can't query " + type.getSimpleName());
+        }
+        return table;
+    }
+
+    private Bound bind(Schema<?> schema, Query.Condition c) {
+        if (c.op == Query.Op.ANY_OF) {
+            List<Bound> any = new ArrayList<>();
+            for (Query.Condition a : c.any) {
+                any.add(bind(schema, a));
+            }
+            return new Bound(c, null, null, null, any);
+        }
+
+        Field field = schema.field(c.field);
+        if ((c.op == Query.Op.PREFIX || c.op == Query.Op.CONTAINS) && field.kind != Kind.TEXT) {
+            throw new IllegalArgumentException(c.op + " needs a text field, not " + field.name);
+        }
+        Bound b = new Bound(c, field, field.operand(c.value), field.operand(c.to), null);
+        if (c.op == Query.Op.IN) {
+            b.sub = plan(c.sub);
+            Field key = c.subField != null ? b.sub.table.schema.field(c.subField)
+                    : b.sub.table.schema.field(b.sub.table.schema.idField);
+            b.set = new HashSet<>();
+            for (Object record : run(b.sub)) {
+                Object k = key.keyOf(record);
+                if (k != null) {
+                    b.set.add(k);
+                }
+            }
+        }
+        return b;
+    }
+
+    private static boolean indexable(Table table, Bound b) {
+        switch (b.op) {
+            case EQ: return b.value != null && table.indexes.containsKey(b.field.name);
+            case RANGE: return (b.value != null || b.to != null) && table.indexes.containsKey(b.field.name);
+            case PREFIX: return b.value != null && table.indexes.containsKey(b.field.name);
+            case IN: return table.indexes.containsKey(b.field.name);
+            case ANY_OF:
+                for (Bound a : b.any) {
+                    if (!indexable(table, a)) {
+                        return false;
+                    }
+                }
+                return true;
+            default: return false;
+        }
+    }
+
+    // Rows the condition would fetch through its index, counting no further than cap + 1
+    private static long estimate(Table table, Bound b, long cap) {
+        if (b.op == Query.Op.ANY_OF) {
+            long total = 0;
+            for (Bound a : b.any) {
+                total += estimate(table, a, cap - total);
+                if (total > cap) {
+                    break;
+                }
+            }
+            return total;
+        }
+        long total = 0;
+        for (Map<String, Object> bucket : table.indexes.get(b.field.name).lookup(b)) {
+            total += bucket.size();
+            if (total > cap) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> run(Plan plan) {
+        List<Object> out = new ArrayList<>();
+        if (plan.access == null) {
+            for (Object record : plan.table.rows.values()) {
+                if (matches(plan, record)) {
+                    out.add(record);
+                }
+            }
+        } else if (plan.access.op == Query.Op.ANY_OF) {
+            // A record can turn up under more than one branch
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Bound branch : plan.access.any) {
+                for (Map<String, Object> bucket : plan.table.indexes.get(branch.field.name).lookup(branch)) {
+                    for (Object record : bucket.values()) {
+                        if (seen.add(record) && matches(plan, record)) {
+                            out.add(record);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (Map<String, Object> bucket : plan.table.indexes.get(plan.access.field.name).lookup(plan.access)) {
+                for (Object record : bucket.values()) {
+                    if (matches(plan, record)) {
+                        out.add(record);
+                    }
+                }
+            }
+        }
+
+        if (plan.orderBy != null && !plan.indexOrder) {
+            out.sort(byField(plan.orderBy));
+        }
+        return (List<T>) out;
+    }
+
+    private static boolean matches(Plan plan, Object record) {
+        for (Bound b : plan.conditions) {
+            if (b != plan.access && !b.test(record)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Object> byField(Field field) {
+        return (a, b) -> {
+            Comparable x = (Comparable) field.keyOf(a);
+            Comparable y = (Comparable) field.keyOf(b);
+            if (x == null || y == null) {
+                return x == null ? (y == null ? 0 : 1) : -1;
+            }
+            return x.compareTo(y);
+        };
+    }
+
+    /**
+     * The same query without a plan: every row is checked against every
+     * condition, and a join looks for a matching inner row by scanning the
+     * inner table each time. Same results as execute(), for comparison.
+     */
+    public synchronized <T> List<T> executeNaive(Query<T> query) {
+        Table table = table(query.type);
+        List<Object> out = new ArrayList<>();
+        for (Object record : table.rows.values()) {
+            if (matchesNaive(table.schema, query.conditions, record)) {
+                out.add(record);
+            }
+        }
+        if (query.orderBy != null) {
+            out.sort(byField(table.schema.field(query.orderBy)));
+        }
+        @SuppressWarnings("unchecked")
+        List<T> typed = (List<T>) out;
+        return typed;
+    }
+
+    private boolean matchesNaive(Schema<?> schema, List<Query.Condition> conditions, Object record) {
+        for (Query.Condition c : conditions) {
+            if (!testNaive(schema, c, record)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean testNaive(Schema<?> schema, Query.Condition c, Object record) {
+        if (c.op == Query.Op.ANY_OF) {
+            for (Query.Condition a : c.any) {
+                if (testNaive(schema, a, record)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (c.op != Query.Op.IN) {
+            Field field = schema.field(c.field);
+            return new Bound(c, field, field.operand(c.value), field.operand(c.to), null).test(record);
+        }
+
+        Object key = schema.field(c.field).keyOf(record);
+        if (key == null) {
+            return false;
+        }
+        Table inner = table(c.sub.type);
+        Field innerKey = inner.schema.field(c.subField != null ? c.subField : inner.schema.idField);
+        for (Object candidate : inner.rows.values()) {
+            if (key.equals(innerKey.keyOf(candidate)) && matchesNaive(inner.schema, c.sub.conditions, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,118 @@
+package controller;
+
+import model.ChangeBus;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Result of comparing freshly parsed CSV rows against the records already in memory.
+ * Records are matched by id and compared by their CSV row, so unchanged records
+ * keep their existing object (and any links held by other objects).
+ */
+public class RecordDiff<T> {
+
+    private final List<T> merged;
+    private final List<T> added;
+    private final List<T> removed;
+    private final Map<T, T> replaced;   // old object -> new object
+
+    private RecordDiff(List<T> merged, List<T> added, List<T> removed, Map<T, T> replaced) {
+        this.merged = merged;
+        this.added = added;
+        this.removed = removed;
+        this.replaced = replaced;
+    }
+
+    public static <T> RecordDiff<T> compute(List<T> current, List<T> incoming,
+                                            Function<T, String> idOf,
+                                            Function<T, String> rowOf) {
+        Map<String, T> existing = new HashMap<>();
+        for (T item : current) {
+            existing.put(idOf.apply(item), item);
+        }
+
+        List<T> merged = new ArrayList<>(incoming.size());
+        List<T> added = new ArrayList<>();
+        Map<T, T> replaced = new IdentityHashMap<>();
+
+        for (T fresh : incoming) {
+            T old = existing.remove(idOf.apply(fresh));
+
+            if (old == null) {
+                added.add(fresh);
+                merged.add(fresh);
+            } else if (rowOf.apply(old).equals(rowOf.apply(fresh))) {
+                merged.add(old);
+            } else {
+                replaced.put(old, fresh);
+                merged.add(fresh);
+            }
+        }
+
+        // Anything left over was deleted from the file
+        List<T> removed = new ArrayList<>();
+        for (T item : current) {
+            if (existing.get(idOf.apply(item)) == item) {
+                removed.add(item);
+            }
+        }
+
+        return new RecordDiff<>(merged, added, removed, replaced);
+    }
+
+    // For rows appended to the end of a file - nothing can have been removed
+    public static <T> RecordDiff<T> appended(List<T> merged, List<T> added, Map<T, T> replaced) {
+        return new RecordDiff<>(merged, added, new ArrayList<>(), replaced);
+    }
+
+    // Full list in file order, reusing unchanged objects
+    public List<T> getMerged() { return merged; }
+    public List<T> getAdded() { return added; }
+    public List<T> getRemoved() { return removed; }
+    public Map<T, T> getReplaced() { return replaced; }
+
+    // Tell the change bus what the reload changed, as one batch
+    public void publish(Class<T> type) {
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (T old : removed) {
+                bus.deleted(type, old);
+            }
+            for (Map.Entry<T, T> e : replaced.entrySet()) {
+                bus.updated(type, e.getKey(), e.getValue());
+            }
+            for (T fresh : added) {
+                bus.inserted(type, fresh);
+            }
+        });
+    }
+
+    // A full load replaces everything: the old records go and the new ones arrive, as one batch
+    public static <T> void publishLoad(Class<T> type, List<T> old, List<T> loaded) {
+        ChangeBus bus = ChangeBus.getInstance();
+        if (!bus.hasSubscribers(type)) {
+            return;
+        }
+        bus.transaction(() -> {
+            for (T record : old) {
+                bus.deleted(type, record);
+            }
+            for (T record : loaded) {
+                bus.inserted(type, record);
+            }
+        });
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && replaced.isEmpty();
+    }
+
+    public int getChangeCount() {
+        return added.size() + removed.size() + replaced.size();
+    }
+
+    @Override
+    public String toString() {
+        return added.size() + " added, " + replaced.size() + " updated, " + removed.size() + " removed";
+    }
+}
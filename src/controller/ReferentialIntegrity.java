@@ -0,0 +1,430 @@
+package controller;
+
+import model.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reverse references between records: for every patient, clinician, facility
+ * and appointment, the records that point at it and through which field.
+ *
+ * The index follows the change bus, so it is always current, and it remembers
+ * the target ids each record was indexed under, which keeps it right even when a
+ * record is edited in place. Finding what refers to an entity costs the number
+ * of references, not a scan of every list; so does a delete that cascades,
+ * clears or is blocked by them. The orphan report (references to ids that don't
+ * exist - common in CSVs from other systems) only looks at each referenced id
+ * once.
+ *
+ * A reference is either required (an appointment's patient) or optional (an
+ * appointment's facility, a prescription's appointment). Cascading deletes the
+ * records that require the entity and clears the optional references; clearing
+ * is refused if anything requires it.
+ */
+public class ReferentialIntegrity {
+
+    public enum Policy {
+        CASCADE,   // delete what requires the entity, clear optional references
+        NULLIFY,   // clear optional references; refused if anything requires the entity
+        BLOCK      // refused if anything refers to the entity at all
+    }
+
+    // A reference field: source.field holds a target id
+    private static final class Link<S> {
+        final Class<S> source;
+        final String field;
+        final Class<?> target;
+        final Function<S, String> get;
+        final BiConsumer<S, String> set;   // null if the reference is required
+
+        Link(Class<S> source, String field, Class<?> target, Function<S, String> get, BiConsumer<S, String> set) {
+            this.source = source;
+            this.field = field;
+            this.target = target;
+            this.get = get;
+            this.set = set;
+        }
+
+        @SuppressWarnings("unchecked")
+        String targetOf(Object record) {
+            return get.apply((S) record);
+        }
+
+        @SuppressWarnings("unchecked")
+        void clear(Object record) {
+            set.accept((S) record, null);
+        }
+    }
+
+    // Field names are the CSV column names
+    private static final List<Link<?>> LINKS = List.of(
+            new Link<>(Appointment.class, "patient_id", Patient.class, Appointment::getPatientId, null),
+            new Link<>(Appointment.class, "clinician_id", Clinician.class, Appointment::getClinicianId, null),
+            new Link<>(Appointment.class, "facility_id", Facility.class,
+                    Appointment::getFacilityId, Appointment::setFacilityId),
+            new Link<>(Prescription.class, "patient_id", Patient.class, Prescription::getPatientId, null),
+            new Link<>(Prescription.class, "clinician_id", Clinician.class, Prescription::getClinicianId, null),
+            new Link<>(Prescription.class, "appointment_id", Appointment.class,
+                    Prescription::getAppointmentId, Prescription::setAppointmentId),
+            new Link<>(Referral.class, "patient_id", Patient.class, Referral::getPatientId, null),
+            new Link<>(Referral.class, "referring_clinician_id", Clinician.class,
+                    Referral::getReferringClinicianId, null),
+            new Link<>(Referral.class, "referred_to_clinician_id", Clinician.class,
+                    Referral::getReferredToClinicianId, Referral::setReferredToClinicianId),
+            new Link<>(Referral.class, "referring_facility_id", Facility.class,
+                    Referral::getReferringFacilityId, Referral::setReferringFacilityId),
+            new Link<>(Referral.class, "referred_to_facility_id", Facility.class,
+                    Referral::getReferredToFacilityId, Referral::setReferredToFacilityId),
+            new Link<>(Referral.class, "appointment_id", Appointment.class,
+                    Referral::getAppointmentId, Referral::setAppointmentId),
+            new Link<>(Patient.class, "gp_surgery_id", Facility.class, Patient::getGpSurgeryId, Patient::setGpSurgeryId),
+            new Link<>(Clinician.class, "workplace_id", Facility.class, Clinician::getFacilityId, Clinician::setFacilityId),
+            new Link<>(Staff.class, "facility_id", Facility.class, Staff::getFacilityId, Staff::setFacilityId));
+
+    private static final Map<Class<?>, List<Link<?>>> LINKS_FROM = new HashMap<>();
+    static {
+        for (Link<?> link : LINKS) {
+            LINKS_FROM.computeIfAbsent(link.source, k -> new ArrayList<>()).add(link);
+        }
+    }
+
+    private static final List<Class<?>> TARGETS = List.of(Patient.class, Clinician.class, Facility.class,
+            Appointment.class);
+
+    // One record pointing at another through one field
+    public static final class Reference {
+        private final Link<?> link;
+        private final String sourceId;
+        private final String targetId;
+        private final Object record;
+
+        private Reference(Link<?> link, String sourceId, String targetId, Object record) {
+            this.link = link;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.record = record;
+        }
+
+        public Class<?> getSourceType() { return link.source; }
+        public String getSourceId() { return sourceId; }
+        public String getField() { return link.field; }
+        public Class<?> getTargetType() { return link.target; }
+        public String getTargetId() { return targetId; }
+        public boolean isRequired() { return link.set == null; }
+        public Object getRecord() { return record; }
+
+        @Override
+        public String toString() {
+            return link.source.getSimpleName() + " " + sourceId + "." + link.field + " -> " +
+                    link.target.getSimpleName() + " " + targetId;
+        }
+    }
+
+    /**
+     * What deleting an entity under a policy would do: the records deleted along
+     * with it, the references cleared, and (if it is refused) the references in
+     * the way.
+     */
+    public static final class Impact {
+        private final Map<Class<?>, Set<String>> deletes = new LinkedHashMap<>();
+        private final List<Reference> clears = new ArrayList<>();
+        private final List<Reference> blockers = new ArrayList<>();
+
+        public boolean isBlocked() { return !blockers.isEmpty(); }
+        public List<Reference> getBlockers() { return blockers; }
+        public List<Reference> getClears() { return clears; }
+
+        public Set<String> getDeletes(Class<?> type) {
+            return deletes.getOrDefault(type, Collections.emptySet());
+        }
+
+        public int getDeleteCount() {
+            int n = 0;
+            for (Set<String> ids : deletes.values()) {
+                n += ids.size();
+            }
+            return n;
+        }
+
+        public boolean isEmpty() {
+            return deletes.isEmpty() && clears.isEmpty() && blockers.isEmpty();
+        }
+
+        // e.g. "3 Appointments, 1 Referral deleted; 2 references cleared"
+        public String describe() {
+            StringJoiner parts = new StringJoiner(", ");
+            for (Map.Entry<Class<?>, Set<String>> e : deletes.entrySet()) {
+                parts.add(count(e.getValue().size(), e.getKey().getSimpleName()));
+            }
+            String text = parts.length() > 0 ? parts + " deleted" : "nothing else deleted";
+            if (!clears.isEmpty()) {
+                text += "; " + count(clears.size(), "reference") + " cleared";
+            }
+            if (isBlocked()) {
+                text += "; blocked by " + count(blockers.size(), "reference");
+            }
+            return text;
+        }
+
+        private static String count(int n, String noun) {
+            return n + " " + noun + (n == 1 ? "" : "s");
+        }
+    }
+
+    private final PatientController patCtrl;
+    private final ClinicianController clinCtrl;
+    private final StaffController staffCtrl;
+    private final FacilityController facCtrl;
+    private final AppointmentController apptCtrl;
+    private final PrescriptionController rxCtrl;
+    private final ReferralController refCtrl;
+
+    // target type -> target id -> references to it
+    private final Map<Class<?>, Map<String, Set<Reference>>> incoming = new HashMap<>();
+    // source type -> source id -> its references, as indexed
+    private final Map<Class<?>, Map<String, List<Reference>>> outgoing = new HashMap<>();
+    // ids that exist, for each target type
+    private final Map<Class<?>, Set<String>> present = new HashMap<>();
+
+    public ReferentialIntegrity(PatientController pc, ClinicianController cc, StaffController sc,
+                                FacilityController fc, AppointmentController ac,
+                                PrescriptionController rc, ReferralController refc) {
+        patCtrl = pc;
+        clinCtrl = cc;
+        staffCtrl = sc;
+        facCtrl = fc;
+        apptCtrl = ac;
+        rxCtrl = rc;
+        refCtrl = refc;
+        for (Class<?> type : TARGETS) {
+            incoming.put(type, new HashMap<>());
+            present.put(type, new HashSet<>());
+        }
+
+        // Listen first, then index what is already there - indexing twice is harmless
+        follow(Patient.class);
+        follow(Clinician.class);
+        follow(Staff.class);
+        follow(Facility.class);
+        follow(Appointment.class);
+        follow(Prescription.class);
+        follow(Referral.class);
+
+        index(pc.getAllPatients());
+        index(cc.getAllClinicians());
+        index(sc.getAllStaff());
+        index(fc.getAllFacilities());
+        index(ac.getAllAppointments());
+        index(rc.getAllPrescriptions());
+        index(refc.getAllReferrals());
+    }
+
+    private <T> void follow(Class<T> type) {
+        ChangeBus.getInstance().subscribe(type, changes -> {
+            synchronized (this) {
+                for (ChangeEvent<T> c : changes) {
+                    if (c.getBefore() != null) {
+                        remove(type, idOf(c.getBefore()));
+                    }
+                    if (c.getAfter() != null) {
+                        add(type, c.getAfter());
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized void index(List<?> records) {
+        for (Object record : records) {
+            add(record.getClass(), record);
+        }
+    }
+
+    // (Re-)index a record: its own id if it can be referred to, and what it refers to
+    private void add(Class<?> type, Object record) {
+        String id = idOf(record);
+        remove(type, id);
+        Set<String> ids = present.get(type);
+        if (ids != null) {
+            ids.add(id);
+        }
+
+        List<Link<?>> links = LINKS_FROM.get(type);
+        if (links == null) {
+            return;
+        }
+        List<Reference> refs = new ArrayList<>(links.size());
+        for (Link<?> link : links) {
+            String target = link.targetOf(record);
+            if (target == null || target.isBlank()) {
+                continue;
+            }
+            Reference ref = new Reference(link, id, target, record);
+            incoming.get(link.target).computeIfAbsent(target, k -> new LinkedHashSet<>()).add(ref);
+            refs.add(ref);
+        }
+        if (!refs.isEmpty()) {
+            outgoing.computeIfAbsent(type, k -> new HashMap<>()).put(id, refs);
+        }
+    }
+
+    // Drop a record's own id and the references it was indexed with
+    private void remove(Class<?> type, String id) {
+        Set<String> ids = present.get(type);
+        if (ids != null) {
+            ids.remove(id);
+        }
+
+        Map<String, List<Reference>> bySource = outgoing.get(type);
+        List<Reference> refs = bySource != null ? bySource.remove(id) : null;
+        if (refs == null) {
+            return;
+        }
+        for (Reference ref : refs) {
+            Map<String, Set<Reference>> byTarget = incoming.get(ref.getTargetType());
+            Set<Reference> bucket = byTarget.get(ref.targetId);
+            if (bucket != null && bucket.remove(ref) && bucket.isEmpty()) {
+                byTarget.remove(ref.targetId);
+            }
+        }
+    }
+
+    private static String idOf(Object record) {
+        if (record instanceof Patient) return ((Patient) record).getPatientId();
+        if (record instanceof Clinician) return ((Clinician) record).getClinicianId();
+        if (record instanceof Staff) return ((Staff) record).getStaffId();
+        if (record instanceof Facility) return ((Facility) record).getFacilityId();
+        if (record instanceof Appointment) return ((Appointment) record).getAppointmentId();
+        if (record instanceof Prescription) return ((Prescription) record).getPrescriptionId();
+        if (record instanceof Referral) return ((Referral) record).getReferralId();
+        throw new IllegalArgumentException("Not a record type: " + record.getClass().getSimpleName());
+    }
+
+    // Everything that refers to the entity
+    public synchronized List<Reference> referencesTo(Class<?> type, String id) {
+        Map<String, Set<Reference>> byTarget = incoming.get(type);
+        Set<Reference> refs = byTarget != null ? byTarget.get(id) : null;
+        return refs != null ? new ArrayList<>(refs) : new ArrayList<>();
+    }
+
+    // References to ids that don't exist, grouped by the missing entity
+    public synchronized List<Reference> findOrphans() {
+        List<Reference> orphans = new ArrayList<>();
+        for (Class<?> type : TARGETS) {
+            Set<String> ids = present.get(type);
+            for (Map.Entry<String, Set<Reference>> e : incoming.get(type).entrySet()) {
+                if (!ids.contains(e.getKey())) {
+                    orphans.addAll(e.getValue());
+                }
+            }
+        }
+        return orphans;
+    }
+
+    public synchronized Impact impactOf(Class<?> type, String id, Policy policy) {
+        Impact impact = new Impact();
+        if (policy == Policy.BLOCK) {
+            impact.blockers.addAll(referencesTo(type, id));
+            return impact;
+        }
+        if (policy == Policy.NULLIFY) {
+            for (Reference ref : referencesTo(type, id)) {
+                (ref.isRequired() ? impact.blockers : impact.clears).add(ref);
+            }
+            return impact;
+        }
+
+        // Cascade: follow required references down, collecting optional ones to clear
+        Set<String> root = new HashSet<>(Collections.singleton(id));
+        Map<Class<?>, Set<String>> doomed = new HashMap<>();
+        doomed.put(type, root);
+        Deque<Reference> work = new ArrayDeque<>(referencesTo(type, id));
+        List<Reference> optional = new ArrayList<>();
+        while (!work.isEmpty()) {
+            Reference ref = work.poll();
+            if (!ref.isRequired()) {
+                optional.add(ref);
+                continue;
+            }
+            Set<String> ids = doomed.computeIfAbsent(ref.getSourceType(), k -> new LinkedHashSet<>());
+            if (ids.add(ref.sourceId)) {
+                impact.deletes.computeIfAbsent(ref.getSourceType(), k -> new LinkedHashSet<>()).add(ref.sourceId);
+                work.addAll(referencesTo(ref.getSourceType(), ref.sourceId));
+            }
+        }
+        // No point clearing a field on a record that is going anyway
+        for (Reference ref : optional) {
+            Set<String> ids = doomed.get(ref.getSourceType());
+            if (ids == null || !ids.contains(ref.sourceId)) {
+                impact.clears.add(ref);
+            }
+        }
+        return impact;
+    }
+
+    /**
+     * Delete a patient, clinician, facility or appointment under the policy.
+     * Returns the impact; if it is blocked nothing was changed. All the changes
+     * are published on the change bus as one transaction.
+     */
+    public Impact delete(Class<?> type, String id, Policy policy) {
+        Impact impact = impactOf(type, id, policy);
+        if (impact.isBlocked()) {
+            return impact;
+        }
+
+        ChangeBus.getInstance().transaction(() -> {
+            clear(impact.clears);
+            refCtrl.deleteReferrals(impact.getDeletes(Referral.class));
+            rxCtrl.deletePrescriptions(impact.getDeletes(Prescription.class));
+            apptCtrl.deleteAppointments(impact.getDeletes(Appointment.class));
+
+            if (type == Patient.class) {
+                patCtrl.deletePatient(id);
+            } else if (type == Clinician.class) {
+                clinCtrl.deleteClinician(id);
+            } else if (type == Facility.class) {
+                facCtrl.deleteFacility(id);
+            } else if (type == Appointment.class) {
+                apptCtrl.deleteAppointment(id);
+            } else {
+                throw new IllegalArgumentException("Nothing refers to a " + type.getSimpleName());
+            }
+        });
+        return impact;
+    }
+
+    // Clear each optional reference, then save each kind of record once
+    private void clear(List<Reference> refs) {
+        Map<Class<?>, List<Object>> edited = new HashMap<>();
+        for (Reference ref : refs) {
+            if (ref.getSourceType() == Referral.class) {
+                // Referral fields are index keys inside ReferralManager - it has to make the change
+                refCtrl.editReferral(ref.sourceId, ref.link.field + " cleared (" + ref.targetId + " deleted)",
+                        ref.link::clear);
+            } else {
+                ref.link.clear(ref.record);
+                edited.computeIfAbsent(ref.getSourceType(), k -> new ArrayList<>()).add(ref.record);
+            }
+        }
+        for (Map.Entry<Class<?>, List<Object>> e : edited.entrySet()) {
+            saveEdited(e.getKey(), e.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void saveEdited(Class<?> type, List<?> records) {
+        if (type == Appointment.class) {
+            apptCtrl.saveEdited((List<Appointment>) records);
+        } else if (type == Prescription.class) {
+            rxCtrl.saveEdited((List<Prescription>) records);
+        } else if (type == Patient.class) {
+            patCtrl.saveEdited((List<Patient>) records);
+        } else if (type == Clinician.class) {
+            clinCtrl.saveEdited((List<Clinician>) records);
+        } else if (type == Staff.class) {
+            staffCtrl.saveEdited((List<Staff>) records);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package controller;
 
 import model.*;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import javax.swing.Timer;
 
 public class ReferralController {
 
@@ -11,28 +14,97 @@ public class ReferralController {
     private FacilityController facCtrl;
     private String dataFilename;
 
+    // Edits are saved together shortly after the last one rather than once per edit
+    private static final int SAVE_DELAY_MS = 1000;
+    private final Timer saveTimer;
+
     public ReferralController(PatientController pc, ClinicianController cc,
                               FacilityController fc) {
         manager = ReferralManager.getInstance();
         patCtrl = pc;
         clinCtrl = cc;
         facCtrl = fc;
+
+        // Swing timer, so the deferred save runs on the EDT like every other save
+        saveTimer = new Timer(SAVE_DELAY_MS, e -> flushChanges());
+        saveTimer.setRepeats(false);
     }
 
     public void loadReferrals(String filename) {
         dataFilename = filename;
-        List<Referral> refs = DataLoader.loadReferrals(filename);
+        DataLoader.resetIncremental(filename);
+        List<Referral> refs = DataLoader.loadNewReferrals(filename).getRows();
 
-        for (Referral ref : refs) {
-            manager.addExistingReferral(ref);
-        }
+        ChangeBus.getInstance().transaction(() -> {
+            for (Referral ref : refs) {
+                manager.addExistingReferral(ref);
+            }
+        });
 
         System.out.println("Loaded " + refs.size() + " referrals");
     }
 
+    // Only the referrals appended since the last load are parsed
+    public RecordDiff<Referral> reloadReferrals(String filename) {
+        dataFilename = filename;
+        return applyNewReferrals(DataLoader.loadNewReferrals(filename));
+    }
+
+    public RecordDiff<Referral> applyNewReferrals(IncrementalLoad<Referral> load) {
+        if (load.isFullLoad()) {
+            return applyReferrals(load.getRows());
+        }
+
+        List<Referral> added = new ArrayList<>();
+        Map<Referral, Referral> replaced = new IdentityHashMap<>();
+
+        ChangeBus.getInstance().transaction(() -> {
+            for (Referral ref : load.getRows()) {
+                Referral old = manager.getReferralById(ref.getReferralId());
+                if (old != null) {
+                    manager.replaceReferral(old, ref);
+                    replaced.put(old, ref);
+                } else {
+                    manager.addExistingReferral(ref);
+                    added.add(ref);
+                }
+            }
+        });
+
+        return RecordDiff.appended(manager.getAllReferrals(), added, replaced);
+    }
+
+    public RecordDiff<Referral> applyReferrals(List<Referral> incoming) {
+        RecordDiff<Referral> diff = RecordDiff.compute(manager.getAllReferrals(), incoming,
+                Referral::getReferralId, DataLoader::referralRow);
+
+        ChangeBus.getInstance().transaction(() -> {
+            for (Referral ref : diff.getRemoved()) {
+                manager.removeReferral(ref.getReferralId());
+            }
+            for (Map.Entry<Referral, Referral> e : diff.getReplaced().entrySet()) {
+                manager.replaceReferral(e.getKey(), e.getValue());
+            }
+            for (Referral ref : diff.getAdded()) {
+                manager.addExistingReferral(ref);
+            }
+        });
+
+        return diff;
+    }
+
     private void saveToFile() {
         if (dataFilename != null) {
             DataLoader.saveReferrals(dataFilename, manager.getAllReferrals());
+            manager.markSaved();
+            saveTimer.stop();
+        }
+    }
+
+    // Write out any edits still waiting for the deferred save
+    public void flushChanges() {
+        if (manager.hasUnsavedChanges()) {
+            saveToFile();
         }
     }
 
@@ -86,14 +158,13 @@ public class ReferralController {
     }
 
     public boolean updateReferral(Referral referral) {
-        Referral existing = manager.getReferralById(referral.getReferralId());
-        if (existing != null) {
-            manager.removeReferral(existing.getReferralId());
-            manager.addExistingReferral(referral);
-            saveToFile();
-            return true;
+        if (!manager.updateReferral(referral)) {
+            return false;
         }
-        return false;
+        if (manager.hasUnsavedChanges()) {
+            saveTimer.restart();
+        }
+        return true;
     }
 
     public boolean deleteReferral(String referralId) {
@@ -107,7 +178,95 @@ public class ReferralController {
         return false;
     }
 
+    // Delete several at once (e.g. a cascade from a deleted patient), saving once
+    public int deleteReferrals(Collection<String> referralIds) {
+        int[] removed = {0};
+        ChangeBus.getInstance().transaction(() -> {
+            for (String id : referralIds) {
+                if (manager.removeReferral(id)) {
+                    removed[0]++;
+                }
+            }
+        });
+        if (removed[0] > 0) {
+            saveToFile();
+        }
+        return removed[0];
+    }
+
+    // Change a referral in place; saved with the next deferred save
+    public boolean editReferral(String referralId, String description, Consumer<Referral> edit) {
+        if (!manager.editReferral(referralId, description, edit)) {
+            return false;
+        }
+        saveTimer.restart();
+        return true;
+    }
+
     public boolean sendReferral(String refId, String facilityId) {
+        boolean sent = send(refId, facilityId);
+        if (sent) {
+            saveToFile();
+        }
+        return sent;
+    }
+
+    /**
+     * Send every pending referral to the facility it names, most urgent first.
+     * Documents are written in the background; this blocks whenever the document
+     * pipeline is full, so call it off the Swing thread. It does not save: the sent
+     * referrals are left dirty, and the caller calls flushChanges() back on the EDT,
+     * where every other referral save happens. The change events are held back and
+     * published as one batch on the calling thread when the loop ends; the panels
+     * subscribe through invokeLater, the indexes are synchronized.
+     */
+    public int sendPendingReferrals() {
+        int[] sent = {0};
+        ChangeBus.getInstance().transaction(() -> {
+            // Snapshot in priority order, so sending doesn't disturb the loop
+            for (Referral ref : manager.getPendingReferrals()) {
+                if (send(ref.getReferralId(), ref.getReferredToFacilityId())) {
+                    sent[0]++;
+                }
+            }
+        });
+        return sent[0];
+    }
+
+    // Listener runs on a background thread once a sent referral's documents are written
+    public void addDocumentListener(BiConsumer<Referral, Throwable> listener) {
+        manager.addDocumentListener(listener);
+    }
+
+    // Completions counted for a caller that polls them, e.g. a panel on a Swing timer
+    public DocumentProgress trackDocuments() {
+        DocumentProgress progress = new DocumentProgress();
+        manager.addDocumentListener(progress);
+        return progress;
+    }
+
+    // Listener runs on a background thread when a pending referral passes its SLA deadline
+    public void addSlaBreachListener(Consumer<Referral> listener) {
+        manager.addSlaBreachListener(listener);
+    }
+
+    public List<Referral> getSlaBreaches() {
+        return manager.getSlaBreaches();
+    }
+
+    public int getSlaBreachCount() {
+        return manager.getSlaBreachCount();
+    }
+
+    public int getDocumentsInFlight() {
+        return manager.getDocumentsInFlight();
+    }
+
+    public String getStoredDocument(String refId, String kind) {
+        return manager.getStoredDocument(refId, kind);
+    }
+
+    private boolean send(String refId, String facilityId) {
         Referral ref = manager.getReferralById(refId);
         if (ref == null) {
             System.err.println("Referral not found: " + refId);
@@ -116,7 +275,7 @@ public class ReferralController {
 
         Patient pat = patCtrl.getPatientById(ref.getPatientId());
         Clinician clin = clinCtrl.getClinicianById(ref.getReferringClinicianId());
-        Facility fac = facCtrl.getFacilityById(facilityId);
+        Facility fac = facilityId != null ? facCtrl.getFacilityById(facilityId) : null;
 
         // Validate all entities exist
         if (pat == null) {
@@ -132,11 +291,7 @@ public class ReferralController {
             return false;
         }
 
-        boolean sent = manager.sendReferral(ref, pat, clin, fac);
-        if (sent) {
-            saveToFile();
-        }
-        return sent;
+        return manager.sendReferral(ref, pat, clin, fac);
     }
 
     public List<Referral> getAllReferrals() {
@@ -0,0 +1,576 @@
+package controller;
+
+import model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports appointments, prescriptions or referrals for a date range, optionally
+ * for one facility and/or clinician, as CSV or JSON Lines, optionally gzipped.
+ *
+ * Candidates come from the narrowest index there is - a clinician's own
+ * appointment list, the referral indexes by clinician and facility - and are
+ * taken on the calling thread when the export is submitted, as a list of
+ * references to the live records. A background thread then filters and writes
+ * them one row at a time through a buffered stream, so memory doesn't grow with
+ * the size of the extract. Output goes to a temp file of the export's own that
+ * replaces the target when the export finishes; a failed or cancelled export
+ * leaves no file behind. An export to a file another export is still writing
+ * is refused.
+ *
+ * Exports run on a small pool (-Dreports.threads, default 2), so several can
+ * run at once while the UI carries on.
+ */
+public class ReportExporter {
+
+    public enum Kind {
+        APPOINTMENTS("Appointments"),
+        PRESCRIPTIONS("Prescriptions"),
+        REFERRALS("Referrals");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum Format {
+        CSV("CSV", ".csv"),
+        JSON_LINES("JSON Lines", ".jsonl");
+
+        private final String label;
+        private final String extension;
+
+        Format(String label, String extension) {
+            this.label = label;
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum State { RUNNING, DONE, FAILED, CANCELLED }
+
+    /**
+     * What to export and where to. Dates are inclusive and either may be null
+     * for an open range; a null facility or clinician means all of them.
+     *
+     * A prescription has no facility of its own, so the facility filter matches
+     * prescriptions written by clinicians who work there. Referrals match on
+     * either end - referring or referred-to - the same as the referral indexes.
+     */
+    public static final class Report {
+        private final Kind kind;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final String facilityId;
+        private final String clinicianId;
+        private final Format format;
+        private final boolean gzip;
+        private final String filename;
+
+        public Report(Kind kind, LocalDate from, LocalDate to, String facilityId, String clinicianId,
+                      Format format, boolean gzip, String filename) {
+            this.kind = kind;
+            this.from = from;
+            this.to = to;
+            this.facilityId = blankToNull(facilityId);
+            this.clinicianId = blankToNull(clinicianId);
+            this.format = format;
+            this.gzip = gzip;
+            this.filename = filename;
+        }
+
+        public Kind getKind() { return kind; }
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+        public String getFacilityId() { return facilityId; }
+        public String getClinicianId() { return clinicianId; }
+        public Format getFormat() { return format; }
+        public boolean isGzip() { return gzip; }
+        public String getFilename() { return filename; }
+
+        // e.g. "Appointments 2025-09-01 to 2025-09-30, facility S001"
+        public String describe() {
+            StringBuilder s = new StringBuilder(kind.toString());
+            s.append(" ").append(from != null ? from : "start").append(" to ").append(to != null ? to : "end");
+            if (facilityId != null) {
+                s.append(", facility ").append(facilityId);
+            }
+            if (clinicianId != null) {
+                s.append(", clinician ").append(clinicianId);
+            }
+            return s.toString();
+        }
+
+        private boolean inRange(LocalDate date) {
+            if (date == null) {
+                return from == null && to == null;
+            }
+            return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+        }
+    }
+
+    // A submitted export; state and progress can be read from any thread
+    public static final class Export {
+        private final int number;
+        private final Report report;
+        private final int candidates;
+        private final long started = System.currentTimeMillis();
+        private volatile State state = State.RUNNING;
+        private volatile long rows;
+        private volatile long finished;
+        private volatile boolean cancelRequested;
+        private volatile String error;
+
+        private Export(int number, Report report, int candidates) {
+            this.number = number;
+            this.report = report;
+            this.candidates = candidates;
+        }
+
+        public int getNumber() { return number; }
+        public Report getReport() { return report; }
+        public State getState() { return state; }
+        public long getRows() { return rows; }
+        public int getCandidates() { return candidates; }
+        public String getError() { return error; }
+
+        public long getElapsedMillis() {
+            long end = finished != 0 ? finished : System.currentTimeMillis();
+            return end - started;
+        }
+
+        // Stops at the next row; the partial file is deleted
+        public void cancel() {
+            cancelRequested = true;
+        }
+    }
+
+    private static final int THREADS = Integer.getInteger("reports.threads", 2);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AppointmentController apptCtrl;
+    private final PrescriptionController rxCtrl;
+    private final ReferralController refCtrl;
+    private final ClinicianController clinCtrl;
+
+    private final ExecutorService pool;
+    private final AtomicInteger numbers = new AtomicInteger();
+    private final List<Export> exports = new CopyOnWriteArrayList<>();
+    private final Map<Path, Export> writing = new ConcurrentHashMap<>();   // target -> running export
+
+    public ReportExporter(AppointmentController ac, PrescriptionController rc,
+                          ReferralController refc, ClinicianController cc) {
+        apptCtrl = ac;
+        rxCtrl = rc;
+        refCtrl = refc;
+        clinCtrl = cc;
+        pool = Executors.newFixedThreadPool(Math.max(1, THREADS), r -> {
+            Thread t = new Thread(r, "report-export");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start an export. Call on the thread that changes the records (the EDT) -
+     * the candidates are picked here, everything else happens in the background.
+     * onDone, if given, is called on the export's thread when it stops.
+     *
+     * If another export is still writing the same file, this one fails straight
+     * away (onDone is then called before submit returns).
+     */
+    public Export submit(Report report, Consumer<Export> onDone) {
+        Path target = Paths.get(report.filename).toAbsolutePath().normalize();
+        List<?> candidates = candidates(report);
+        Set<String> facilityClinicians = report.kind == Kind.PRESCRIPTIONS && report.facilityId != null
+                ? cliniciansAt(report.facilityId) : null;
+        Export export = new Export(numbers.incrementAndGet(), report, candidates.size());
+        exports.add(export);
+
+        Export busy = writing.putIfAbsent(target, export);
+        if (busy != null) {
+            export.error = "export " + busy.number + " is still writing " + target.getFileName();
+            finish(export, State.FAILED);
+            System.err.println("Export to " + target.getFileName() + " refused: " + export.error);
+            if (onDone != null) {
+                onDone.accept(export);
+            }
+            return export;
+        }
+
+        pool.execute(() -> {
+            try {
+                run(export, target, candidates, facilityClinicians);
+            } finally {
+                writing.remove(target, export);
+            }
+            if (onDone != null) {
+                onDone.accept(export);
+            }
+        });
+        return export;
+    }
+
+    // Every export submitted, oldest first
+    public List<Export> getExports() {
+        return new ArrayList<>(exports);
+    }
+
+    // Forget the exports that have stopped
+    public void clearFinished() {
+        exports.removeIf(e -> e.state != State.RUNNING);
+    }
+
+    // Smallest list known to contain every match
+    private List<?> candidates(Report report) {
+        switch (report.kind) {
+            case APPOINTMENTS:
+                if (report.clinicianId != null) {
+                    Clinician c = clinCtrl.getClinicianById(report.clinicianId);
+                    return c != null ? new ArrayList<>(c.getAppointments()) : Collections.emptyList();
+                }
+                return apptCtrl.getAllAppointments();
+            case PRESCRIPTIONS:
+                return rxCtrl.getAllPrescriptions();
+            case REFERRALS:
+                // Already snapshots - nothing is copied for the unfiltered case
+                if (report.clinicianId != null) {
+                    return refCtrl.getReferralsByClinician(report.clinicianId);
+                }
+                if (report.facilityId != null) {
+                    return refCtrl.getReferralsByFacility(report.facilityId);
+                }
+                return refCtrl.getAllReferrals();
+            default:
+                throw new IllegalArgumentException("Unknown report: " + report.kind);
+        }
+    }
+
+    private void run(Export export, Path target, List<?> candidates, Set<String> facilityClinicians) {
+        Report report = export.report;
+        Path temp = target.resolveSibling(target.getFileName() + "." + export.number + ".part");
+
+        try {
+            try (OutputStream file = Files.newOutputStream(temp);
+                 OutputStream out = report.gzip ? new GZIPOutputStream(file, BUFFER_SIZE) : file;
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+                RowWriter rows = report.format == Format.CSV
+                        ? new CsvRows(writer, columns(report.kind))
+                        : new JsonRows(writer, columns(report.kind));
+                rows.begin();
+
+                long written = 0;
+                for (Object record : candidates) {
+                    if (export.cancelRequested) {
+                        break;
+                    }
+                    if (matches(report, record, facilityClinicians)) {
+                        writeRow(rows, record);
+                        export.rows = ++written;
+                    }
+                }
+            }
+
+            if (export.cancelRequested) {
+                Files.deleteIfExists(temp);
+                finish(export, State.CANCELLED);
+                return;
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finish(export, State.DONE);
+            System.out.println("Exported " + export.rows + " rows to " + target.getFileName() +
+                    " in " + export.getElapsedMillis() + " ms");
+
+        } catch (IOException | RuntimeException e) {
+            export.error = e.getMessage();
+            finish(export, State.FAILED);
+            System.err.println("Export to " + target.getFileName() + " failed: " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // nothing more to do - the target was never touched
+            }
+        }
+    }
+
+    private static void finish(Export export, State state) {
+        export.finished = System.currentTimeMillis();
+        export.state = state;
+    }
+
+    // Taken in submit, with the candidates, so the pool never walks the live clinician list
+    private Set<String> cliniciansAt(String facilityId) {
+        Set<String> ids = new HashSet<>();
+        for (Clinician c : clinCtrl.getAllClinicians()) {
+            if (facilityId.equals(c.getFacilityId())) {
+                ids.add(c.getClinicianId());
+            }
+        }
+        return ids;
+    }
+
+    private static boolean matches(Report r, Object record, Set<String> facilityClinicians) {
+        if (record instanceof Appointment) {
+            Appointment a = (Appointment) record;
+            return r.inRange(a.getAppointmentDate())
+                    && (r.facilityId == null || r.facilityId.equals(a.getFacilityId()))
+                    && (r.clinicianId == null || r.clinicianId.equals(a.getClinicianId()));
+        }
+        if (record instanceof Prescription) {
+            Prescription p = (Prescription) record;
+            return r.inRange(p.getPrescriptionDate())
+                    && (facilityClinicians == null || facilityClinicians.contains(p.getClinicianId()))
+                    && (r.clinicianId == null || r.clinicianId.equals(p.getClinicianId()));
+        }
+        Referral ref = (Referral) record;
+        return r.inRange(ref.getReferralDate())
+                && (r.facilityId == null || r.facilityId.equals(ref.getReferringFacilityId())
+                        || r.facilityId.equals(ref.getReferredToFacilityId()))
+                && (r.clinicianId == null || r.clinicianId.equals(ref.getReferringClinicianId())
+                        || r.clinicianId.equals(ref.getReferredToClinicianId()));
+    }
+
+    // Same columns as the data files
+    private static String[] columns(Kind kind) {
+        switch (kind) {
+            case APPOINTMENTS:
+                return new String[]{"appointment_id", "patient_id", "clinician_id", "facility_id",
+                        "appointment_date", "appointment_time", "duration_minutes", "appointment_type",
+                        "status", "reason_for_visit", "notes"};
+            case PRESCRIPTIONS:
+                return new String[]{"prescription_id", "patient_id", "clinician_id", "appointment_id",
+                        "prescription_date", "medication_name", "dosage", "frequency", "duration_days",
+                        "quantity", "instructions", "pharmacy_name", "status", "issue_date", "collection_date"};
+            default:
+                return new String[]{"referral_id", "patient_id", "referring_clinician_id",
+                        "referred_to_clinician_id", "referring_facility_id", "referred_to_facility_id",
+                        "referral_date", "urgency_level", "referral_reason", "clinical_summary",
+                        "requested_investigations", "status", "appointment_id", "notes",
+                        "created_date", "last_updated"};
+        }
+    }
+
+    private static void writeRow(RowWriter out, Object record) throws IOException {
+        if (record instanceof Appointment) {
+            Appointment a = (Appointment) record;
+            out.field(a.getAppointmentId())
+                    .field(a.getPatientId())
+                    .field(a.getClinicianId())
+                    .field(a.getFacilityId())
+                    .field(a.getAppointmentDate())
+                    .field(a.getAppointmentTime())
+                    .field(a.getDurationMinutes())
+                    .field(a.getAppointmentType())
+                    .field(a.getStatus())
+                    .field(a.getReasonForVisit())
+                    .field(a.getNotes());
+        } else if (record instanceof Prescription) {
+            Prescription p = (Prescription) record;
+            out.field(p.getPrescriptionId())
+                    .field(p.getPatientId())
+                    .field(p.getClinicianId())
+                    .field(p.getAppointmentId())
+                    .field(p.getPrescriptionDate())
+                    .field(p.getMedicationName())
+                    .field(p.getDosage())
+                    .field(p.getFrequency())
+                    .field(p.getDurationDays())
+                    .field(p.getQuantity())
+                    .field(p.getInstructions())
+                    .field(p.getPharmacyName())
+                    .field(p.getStatus())
+                    .field(p.getIssueDate())
+                    .field(p.getCollectionDate());
+        } else {
+            Referral r = (Referral) record;
+            out.field(r.getReferralId())
+                    .field(r.getPatientId())
+                    .field(r.getReferringClinicianId())
+                    .field(r.getReferredToClinicianId())
+                    .field(r.getReferringFacilityId())
+                    .field(r.getReferredToFacilityId())
+                    .field(r.getReferralDate())
+                    .field(r.getUrgencyLevel())
+                    .field(r.getReferralReason())
+                    .field(r.getClinicalSummary())
+                    .field(r.getRequestedInvestigations())
+                    .field(r.getStatus())
+                    .field(r.getAppointmentId())
+                    .field(r.getNotes())
+                    .field(r.getCreatedDate())
+                    .field(r.getLastUpdated());
+        }
+        out.endRow();
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+
+    // One output format: fields in column order, endRow() after each record
+    private abstract static class RowWriter {
+        final Writer out;
+        final String[] columns;
+        int column;
+
+        RowWriter(Writer out, String[] columns) {
+            this.out = out;
+            this.columns = columns;
+        }
+
+        abstract void begin() throws IOException;
+
+        abstract RowWriter field(String value) throws IOException;
+
+        abstract RowWriter field(int value) throws IOException;
+
+        abstract void endRow() throws IOException;
+
+        RowWriter field(LocalDate date) throws IOException {
+            return field(date != null ? date.toString() : null);
+        }
+    }
+
+    // RFC 4180, quoting only where needed - the same as CsvWriter
+    private static final class CsvRows extends RowWriter {
+        CsvRows(Writer out, String[] columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void begin() throws IOException {
+            out.write(String.join(",", columns));
+            out.write('\n');
+        }
+
+        private void separator() throws IOException {
+            if (column++ > 0) {
+                out.write(',');
+            }
+        }
+
+        @Override
+        RowWriter field(String value) throws IOException {
+            separator();
+            if (value == null || value.isEmpty()) {
+                return this;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(value);
+                return this;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+            return this;
+        }
+
+        @Override
+        RowWriter field(int value) throws IOException {
+            separator();
+            out.write(Integer.toString(value));
+            return this;
+        }
+
+        @Override
+        void endRow() throws IOException {
+            out.write('\n');
+            column = 0;
+        }
+    }
+
+    // One JSON object per line, keyed by column name; empty text is null
+    private static final class JsonRows extends RowWriter {
+        JsonRows(Writer out, String[] columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void begin() {
+            // no header - every line names its fields
+        }
+
+        private void key() throws IOException {
+            out.write(column == 0 ? "{\"" : ",\"");
+            out.write(columns[column++]);
+            out.write("\":");
+        }
+
+        @Override
+        RowWriter field(String value) throws IOException {
+            key();
+            if (value == null || value.isEmpty()) {
+                out.write("null");
+                return this;
+            }
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            out.write('"');
+            return this;
+        }
+
+        @Override
+        RowWriter field(int value) throws IOException {
+            key();
+            out.write(Integer.toString(value));
+            return this;
+        }
+
+        @Override
+        void endRow() throws IOException {
+            out.write("}\n");
+            column = 0;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package controller;
 
+import model.ChangeBus;
 import model.Staff;
 import java.util.*;
 
@@ -14,7 +15,22 @@ public class StaffController {
 
     public void loadStaff(String filename) {
         dataFilename = filename;
+        List<Staff> old = staffList;
         staffList = DataLoader.loadStaff(filename);
+        RecordDiff.publishLoad(Staff.class, old, staffList);
+    }
+
+    public RecordDiff<Staff> reloadStaff(String filename) {
+        dataFilename = filename;
+        return applyStaff(DataLoader.loadStaff(filename));
+    }
+
+    public RecordDiff<Staff> applyStaff(List<Staff> incoming) {
+        RecordDiff<Staff> diff = RecordDiff.compute(staffList, incoming,
+                Staff::getStaffId, DataLoader::staffRow);
+        staffList = diff.getMerged();
+        diff.publish(Staff.class);
+        return diff;
     }
 
     private void saveToFile() {
@@ -77,13 +93,15 @@ public class StaffController {
     public void addStaff(Staff staff) {
         staffList.add(staff);
         saveToFile();
+        ChangeBus.getInstance().inserted(Staff.class, staff);
     }
 
     public boolean updateStaff(Staff staff) {
         for (int i = 0; i < staffList.size(); i++) {
             if (staffList.get(i).getStaffId().equals(staff.getStaffId())) {
-                staffList.set(i, staff);
+                Staff old = staffList.set(i, staff);
                 saveToFile();
+                ChangeBus.getInstance().updated(Staff.class, old, staff);
                 return true;
             }
         }
@@ -93,14 +111,30 @@ public class StaffController {
     public boolean deleteStaff(String staffId) {
         for (int i = 0; i < staffList.size(); i++) {
             if (staffList.get(i).getStaffId().equals(staffId)) {
-                staffList.remove(i);
+                Staff old = staffList.remove(i);
                 saveToFile();
+                ChangeBus.getInstance().deleted(Staff.class, old);
                 return true;
             }
         }
         return false;
     }
 
+    // Save staff changed in place (a reference cleared), once for all of them
+    public void saveEdited(Collection<Staff> edited) {
+        if (edited.isEmpty()) {
+            return;
+        }
+        saveToFile();
+
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (Staff s : edited) {
+                bus.updated(Staff.class, s, s);
+            }
+        });
+    }
+
     public List<String> getAllRoles() {
         Set<String> roles = new HashSet<>();
 
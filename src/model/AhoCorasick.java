@@ -0,0 +1,176 @@
+package model;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds every occurrence of a set of words in a text in a single pass
+ * (Aho-Corasick). Matching ignores case and punctuation and only counts whole
+ * words, so "aspirin" matches "Aspirin 75mg" but not "Aspirinex".
+ *
+ * Add the patterns, call build() once, then match as often as needed; after
+ * build() the matcher is read-only and safe to share between threads.
+ */
+public class AhoCorasick<T> {
+
+    // a-z, 0-9 and a single separator for everything else
+    private static final int ALPHABET = 37;
+    private static final int SEPARATOR = 36;
+
+    // A pattern ending at a node: its length and the value it was added with
+    private static class Hit<T> {
+        final int length;
+        final T value;
+
+        Hit(int length, T value) {
+            this.length = length;
+            this.value = value;
+        }
+    }
+
+    private int[][] next = new int[1][ALPHABET];
+    private int size = 1;
+    private final List<List<Hit<T>>> outputs = new ArrayList<>(Collections.singletonList(null));
+    private boolean built;
+
+    // Register a word or phrase; several values can share a pattern
+    public void add(String pattern, T value) {
+        if (built) {
+            throw new IllegalStateException("matcher already built");
+        }
+        String p = normalise(pattern);
+        if (p.isEmpty()) {
+            return;
+        }
+        int node = 0;
+        for (int i = 0; i < p.length(); i++) {
+            int c = code(p.charAt(i));
+            if (next[node][c] == 0) {
+                next[node][c] = newNode();
+            }
+            node = next[node][c];
+        }
+        if (outputs.get(node) == null) {
+            outputs.set(node, new ArrayList<>(1));
+        }
+        outputs.get(node).add(new Hit<>(p.length(), value));
+    }
+
+    private int newNode() {
+        int n = size++;
+        if (n == next.length) {
+            next = Arrays.copyOf(next, n * 2);
+        }
+        next[n] = new int[ALPHABET];
+        outputs.add(null);
+        return n;
+    }
+
+    /**
+     * Add the failure links and turn the trie into a full transition table, so
+     * matching is one array lookup per character. Each node's outputs also get
+     * those of its suffixes, so with patterns "co codamol" and "codamol" both are
+     * reported in "Co-codamol 30/500".
+     */
+    public void build() {
+        int n = size;
+        next = Arrays.copyOf(next, n);
+        int[] fail = new int[n];
+        Deque<Integer> queue = new ArrayDeque<>();
+
+        for (int c = 0; c < ALPHABET; c++) {
+            if (next[0][c] != 0) {
+                queue.add(next[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Hit<T>> inherited = outputs.get(fail[node]);
+            if (inherited != null) {
+                if (outputs.get(node) == null) {
+                    outputs.set(node, new ArrayList<>(inherited));
+                } else {
+                    outputs.get(node).addAll(inherited);
+                }
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = next[node][c];
+                if (child != 0) {
+                    fail[child] = next[fail[node]][c];
+                    queue.add(child);
+                } else {
+                    next[node][c] = next[fail[node]][c];
+                }
+            }
+        }
+        built = true;
+    }
+
+    /**
+     * Call back with the pattern length and value of each whole-word match. A
+     * pattern that occurs more than once is reported each time.
+     */
+    public void match(String text, BiConsumer<Integer, T> found) {
+        if (!built) {
+            throw new IllegalStateException("call build() first");
+        }
+        String t = normalise(text);
+        int node = 0;
+        for (int i = 0; i < t.length(); i++) {
+            node = next[node][code(t.charAt(i))];
+            List<Hit<T>> out = outputs.get(node);
+            if (out == null) {
+                continue;
+            }
+            boolean endsWord = i + 1 == t.length() || t.charAt(i + 1) == ' ';
+            if (!endsWord) {
+                continue;
+            }
+            for (Hit<T> hit : out) {
+                // Outputs inherited from suffixes are shorter; check each one starts a word
+                int start = i + 1 - hit.length;
+                if (start == 0 || t.charAt(start - 1) == ' ') {
+                    found.accept(hit.length, hit.value);
+                }
+            }
+        }
+    }
+
+    // Distinct values of every whole-word match in the text
+    public Set<T> findAll(String text) {
+        Set<T> values = new LinkedHashSet<>();
+        match(text, (length, value) -> values.add(value));
+        return values;
+    }
+
+    public int getNodeCount() {
+        return size;
+    }
+
+    // Lower case letters and digits; every run of anything else becomes one space
+    static String normalise(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        boolean space = true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = Character.toLowerCase(s.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                out.append(c);
+                space = false;
+            } else if (!space) {
+                out.append(' ');
+                space = true;
+            }
+        }
+        int end = out.length();
+        if (end > 0 && out.charAt(end - 1) == ' ') {
+            out.setLength(end - 1);
+        }
+        return out.toString();
+    }
+
+    private static int code(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= '0' && c <= '9') return 26 + (c - '0');
+        return SEPARATOR;
+    }
+}
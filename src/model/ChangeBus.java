@@ -0,0 +1,226 @@
+package model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Singleton bus for record changes. Controllers (and ReferralManager) publish an
+ * event for each insert, update and delete; panels, indexes and counters
+ * subscribe by record type instead of being told by whoever made the change.
+ *
+ * Changes published inside a transaction are held back and delivered as one
+ * batch per type when the outermost transaction closes, so a file reload is one
+ * call per listener rather than one per row. Outside a transaction each change
+ * is a batch of one.
+ *
+ * A listener is called either synchronously, on the publishing thread before
+ * publish (or close) returns, or asynchronously through an executor - its own
+ * background thread, or one given when subscribing, e.g. SwingUtilities::invokeLater.
+ * Either way a listener sees batches in the order they were published.
+ *
+ * Publishing a type nobody listens to costs one map lookup and allocates nothing.
+ */
+public final class ChangeBus {
+
+    // A listener registered for one record type
+    public static final class Subscription {
+        private final Class<?> type;
+        private final ChangeListener<?> listener;
+        private final Executor executor;              // null means synchronous
+        private final ExecutorService ownExecutor;    // shut down on unsubscribe
+
+        private Subscription(Class<?> type, ChangeListener<?> listener, Executor executor, ExecutorService own) {
+            this.type = type;
+            this.listener = listener;
+            this.executor = executor;
+            this.ownExecutor = own;
+        }
+
+        public boolean isAsync() {
+            return executor != null;
+        }
+    }
+
+    /**
+     * Groups the changes made on this thread until close(). Transactions nest:
+     * only closing the outermost one delivers. Usually easier through transaction().
+     */
+    public final class Transaction implements AutoCloseable {
+        private final List<ChangeEvent<?>> events = new ArrayList<>();
+        private int depth = 1;
+
+        private Transaction() {
+        }
+
+        @Override
+        public void close() {
+            if (--depth == 0) {
+                current.remove();
+                deliver(events);
+            }
+        }
+    }
+
+    private final Map<Class<?>, Subscription[]> subscribers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    private ChangeBus() {
+    }
+
+    private static class Holder {
+        static final ChangeBus INSTANCE = new ChangeBus();
+    }
+
+    public static ChangeBus getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // Called on the publishing thread
+    public <T> Subscription subscribe(Class<T> type, ChangeListener<T> listener) {
+        return add(new Subscription(type, listener, null, null));
+    }
+
+    // Called on a background thread of the listener's own, in order
+    public <T> Subscription subscribeAsync(Class<T> type, ChangeListener<T> listener) {
+        ExecutorService own = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "change-bus-" + type.getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+        return add(new Subscription(type, listener, own, own));
+    }
+
+    // Handed to the executor (which must run tasks in order) for each batch
+    public <T> Subscription subscribe(Class<T> type, ChangeListener<T> listener, Executor executor) {
+        return add(new Subscription(type, listener, executor, null));
+    }
+
+    public void unsubscribe(Subscription sub) {
+        subscribers.computeIfPresent(sub.type, (type, subs) -> {
+            List<Subscription> rest = new ArrayList<>(Arrays.asList(subs));
+            rest.remove(sub);
+            return rest.isEmpty() ? null : rest.toArray(new Subscription[0]);
+        });
+        if (sub.ownExecutor != null) {
+            sub.ownExecutor.shutdown();
+        }
+    }
+
+    private Subscription add(Subscription sub) {
+        subscribers.merge(sub.type, new Subscription[]{sub}, (subs, one) -> {
+            Subscription[] more = Arrays.copyOf(subs, subs.length + 1);
+            more[subs.length] = sub;
+            return more;
+        });
+        return sub;
+    }
+
+    public boolean hasSubscribers(Class<?> type) {
+        return subscribers.containsKey(type);
+    }
+
+    public Transaction begin() {
+        Transaction tx = current.get();
+        if (tx != null) {
+            tx.depth++;
+            return tx;
+        }
+        tx = new Transaction();
+        current.set(tx);
+        return tx;
+    }
+
+    // Run body in a transaction, delivering its changes as one batch when it returns (or throws)
+    public void transaction(Runnable body) {
+        Transaction tx = begin();
+        try {
+            body.run();
+        } finally {
+            tx.close();
+        }
+    }
+
+    public <T> void inserted(Class<T> type, T record) {
+        publish(type, ChangeEvent.Kind.INSERT, null, record);
+    }
+
+    public <T> void updated(Class<T> type, T before, T after) {
+        publish(type, ChangeEvent.Kind.UPDATE, before, after);
+    }
+
+    public <T> void deleted(Class<T> type, T record) {
+        publish(type, ChangeEvent.Kind.DELETE, record, null);
+    }
+
+    private <T> void publish(Class<T> type, ChangeEvent.Kind kind, T before, T after) {
+        Subscription[] subs = subscribers.get(type);
+        if (subs == null) {
+            return;
+        }
+        ChangeEvent<T> event = new ChangeEvent<>(type, kind, before, after);
+        Transaction tx = current.get();
+        if (tx != null) {
+            tx.events.add(event);
+        } else {
+            deliver(subs, Collections.singletonList(event));
+        }
+    }
+
+    // A closed transaction's events, one batch per type in order of first appearance
+    private void deliver(List<ChangeEvent<?>> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Class<?> first = events.get(0).getType();
+        boolean oneType = true;
+        for (int i = 1; i < events.size() && oneType; i++) {
+            oneType = events.get(i).getType() == first;
+        }
+        if (oneType) {
+            // The usual case - a reload or a batch edit of one kind of record
+            Subscription[] subs = subscribers.get(first);
+            if (subs != null) {
+                deliver(subs, Collections.unmodifiableList(events));
+            }
+            return;
+        }
+
+        Map<Class<?>, List<ChangeEvent<?>>> byType = new LinkedHashMap<>();
+        for (ChangeEvent<?> e : events) {
+            byType.computeIfAbsent(e.getType(), k -> new ArrayList<>()).add(e);
+        }
+        for (Map.Entry<Class<?>, List<ChangeEvent<?>>> e : byType.entrySet()) {
+            Subscription[] subs = subscribers.get(e.getKey());
+            if (subs != null) {
+                deliver(subs, Collections.unmodifiableList(e.getValue()));
+            }
+        }
+    }
+
+    private void deliver(Subscription[] subs, List<? extends ChangeEvent<?>> batch) {
+        for (Subscription sub : subs) {
+            if (sub.executor == null) {
+                call(sub, batch);
+            } else {
+                try {
+                    sub.executor.execute(() -> call(sub, batch));
+                } catch (RuntimeException e) {
+                    System.err.println("Change listener for " + sub.type.getSimpleName() +
+                            " not scheduled: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void call(Subscription sub, List<? extends ChangeEvent<?>> batch) {
+        try {
+            ((ChangeListener) sub.listener).onChanges(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Change listener for " + sub.type.getSimpleName() + " failed: " + e.getMessage());
+        }
+    }
+}
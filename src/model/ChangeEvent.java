@@ -0,0 +1,38 @@
+package model;
+
+/**
+ * One insert, update or delete of a record. before is null for an insert and
+ * after is null for a delete. An edit made in place (a cancel, a status change)
+ * has the same object as both, already changed.
+ */
+public final class ChangeEvent<T> {
+
+    public enum Kind { INSERT, UPDATE, DELETE }
+
+    private final Class<T> type;
+    private final Kind kind;
+    private final T before;
+    private final T after;
+
+    ChangeEvent(Class<T> type, Kind kind, T before, T after) {
+        this.type = type;
+        this.kind = kind;
+        this.before = before;
+        this.after = after;
+    }
+
+    public Class<T> getType() { return type; }
+    public Kind getKind() { return kind; }
+    public T getBefore() { return before; }
+    public T getAfter() { return after; }
+
+    // The record as it is now, or as it was if deleted
+    public T getRecord() {
+        return after != null ? after : before;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + type.getSimpleName() + " " + getRecord();
+    }
+}
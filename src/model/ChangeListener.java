@@ -0,0 +1,12 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Receives the changes to one record type, a batch at a time: everything
+ * published in one transaction, in order, or a single change made outside one.
+ */
+@FunctionalInterface
+public interface ChangeListener<T> {
+    void onChanges(List<ChangeEvent<T>> changes);
+}
@@ -97,6 +97,10 @@ public class Clinician extends Staff {
         this.appointments.add(appointment);
     }
 
+    public void removeAppointment(Appointment appointment) {
+        this.appointments.remove(appointment);
+    }
+
     // business methods
 
     public Prescription createPrescription(
@@ -0,0 +1,464 @@
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores generated documents by key so one can be read back with a single seek.
+ *
+ * Documents are appended to the active segment file in a directory. An in-memory
+ * index maps each key to the segment, offset and length of its latest version.
+ * When the active segment passes the size limit it is sealed: the live records are
+ * copied to a fresh file (each one deflated if compression is on), and a small
+ * .idx file is written beside it so start-up doesn't have to scan it. Once most
+ * of a sealed segment's records have been replaced by newer versions, the rest
+ * are moved into the active segment and the old file is deleted.
+ *
+ * Record layout: int length, int crc32 of the payload, then the payload:
+ * key (writeUTF), uncompressed length, content bytes.
+ */
+public class DocumentArchive {
+
+    private static final int MAGIC = 0x444f4341;   // "DOCA"
+    private static final int FLAG_DEFLATED = 1;
+    private static final int HEADER = 5;          // magic + flags
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d{6})\\.log");
+
+    // Where the latest version of a document is
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;   // whole record, including the length and crc
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean compress;
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final Map<Integer, Long> liveBytes = new HashMap<>();    // per segment
+    private final Map<Integer, Boolean> deflated = new HashMap<>();  // per segment
+    private final Map<Integer, RandomAccessFile> readers = new HashMap<>();
+
+    private int active;
+    private long activeSize;
+    private FileOutputStream activeFile;   // under out; kept to sync the segment to disk
+    private OutputStream out;
+
+    public DocumentArchive(String directory, long segmentBytes, boolean compress) {
+        this.dir = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.compress = compress;
+        try {
+            Files.createDirectories(dir);
+            open();
+        } catch (IOException e) {
+            System.err.println("Error opening document archive " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // Store a document, replacing any earlier version with the same key
+    public void put(String key, String content) throws IOException {
+        putAll(Collections.singletonMap(key, content));
+    }
+
+    // Store several documents with one flush
+    public synchronized void putAll(Map<String, String> documents) throws IOException {
+        if (out == null) {
+            startSegment(active + 1);
+        }
+        for (Map.Entry<String, String> doc : documents.entrySet()) {
+            byte[] record = record(doc.getKey(), doc.getValue().getBytes(StandardCharsets.UTF_8), false);
+            out.write(record);
+            move(doc.getKey(), new Location(active, activeSize, record.length));
+            activeSize += record.length;
+        }
+        out.flush();
+
+        if (activeSize >= segmentBytes) {
+            roll();
+        }
+    }
+
+    // The latest version of the document, or null if there isn't one
+    public synchronized String get(String key) throws IOException {
+        Location loc = index.get(key);
+        if (loc == null) {
+            return null;
+        }
+        RandomAccessFile file = reader(loc.segment);
+        byte[] record = new byte[loc.length];
+        file.seek(loc.offset);
+        file.readFully(record);
+        return new String(content(record, deflated.get(loc.segment)), StandardCharsets.UTF_8);
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return liveBytes.size();
+    }
+
+    public synchronized void close() {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+                activeFile = null;
+            }
+            for (RandomAccessFile r : readers.values()) {
+                r.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing document archive " + dir + ": " + e.getMessage());
+        }
+        readers.clear();
+    }
+
+    // Seal the active segment and start a new one
+    private void roll() throws IOException {
+        int sealed = active;
+        out.close();
+        out = null;
+        activeFile = null;
+        rewrite(sealed, compress);
+        startSegment(sealed + 1);
+
+        // Sealed segments that are now mostly superseded have their live records moved
+        // into the new segment, so they don't pile up as many small files
+        for (Map.Entry<Integer, Long> seg : new ArrayList<>(liveBytes.entrySet())) {
+            int n = seg.getKey();
+            if (n != active && n != sealed && seg.getValue() * 2 < Files.size(segmentFile(n))) {
+                relocate(n);
+            }
+        }
+        out.flush();
+    }
+
+    // Append a segment's live records to the active one and delete it
+    private void relocate(int segment) throws IOException {
+        List<String> keys = liveKeys(segment);
+        boolean isDeflated = deflated.get(segment);
+        RandomAccessFile in = reader(segment);
+        for (String key : keys) {
+            Location loc = index.get(key);
+            byte[] record = new byte[loc.length];
+            in.seek(loc.offset);
+            in.readFully(record);
+            if (isDeflated) {
+                record = record(key, content(record, true), false);
+            }
+            out.write(record);
+            move(key, new Location(active, activeSize, record.length));
+            activeSize += record.length;
+        }
+        // The copies must be on disk before the only other copy is deleted
+        syncActive();
+        closeReader(segment);
+        Files.deleteIfExists(indexFile(segment));
+        Files.deleteIfExists(segmentFile(segment));
+        liveBytes.remove(segment);
+        deflated.remove(segment);
+    }
+
+    // Keys whose latest version is in the segment, in file order
+    private List<String> liveKeys(int segment) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Location> e : index.entrySet()) {
+            if (e.getValue().segment == segment) {
+                keys.add(e.getKey());
+            }
+        }
+        keys.sort(Comparator.comparingLong(k -> index.get(k).offset));
+        return keys;
+    }
+
+    /**
+     * Copy the live records of a segment into a new file, deflating them if asked,
+     * and swap it in along with a fresh .idx. A segment with nothing live left is
+     * simply deleted.
+     */
+    private void rewrite(int segment, boolean deflate) throws IOException {
+        List<String> keys = liveKeys(segment);
+
+        closeReader(segment);
+        if (keys.isEmpty()) {
+            Files.deleteIfExists(segmentFile(segment));
+            Files.deleteIfExists(indexFile(segment));
+            liveBytes.remove(segment);
+            deflated.remove(segment);
+            return;
+        }
+
+        boolean wasDeflated = deflated.get(segment);
+        Path temp = segmentFile(segment).resolveSibling(segmentFile(segment).getFileName() + ".tmp");
+        Map<String, Location> moved = new LinkedHashMap<>();
+        try (RandomAccessFile in = new RandomAccessFile(segmentFile(segment).toFile(), "r");
+             FileOutputStream tempFile = new FileOutputStream(temp.toFile());
+             DataOutputStream copy = new DataOutputStream(new BufferedOutputStream(tempFile))) {
+            copy.writeInt(MAGIC);
+            copy.writeByte(deflate ? FLAG_DEFLATED : 0);
+            long offset = HEADER;
+            for (String key : keys) {
+                Location loc = index.get(key);
+                byte[] record = new byte[loc.length];
+                in.seek(loc.offset);
+                in.readFully(record);
+                if (wasDeflated != deflate) {
+                    record = record(key, content(record, wasDeflated), deflate);
+                }
+                copy.write(record);
+                moved.put(key, new Location(segment, offset, record.length));
+                offset += record.length;
+            }
+            // On disk before it replaces the segment
+            copy.flush();
+            tempFile.getFD().sync();
+        }
+        Files.move(temp, segmentFile(segment), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long live = 0;
+        for (Map.Entry<String, Location> e : moved.entrySet()) {
+            index.put(e.getKey(), e.getValue());
+            live += e.getValue().length;
+        }
+        liveBytes.put(segment, live);
+        deflated.put(segment, deflate);
+        writeIndex(segment, moved);
+    }
+
+    private void syncActive() throws IOException {
+        out.flush();
+        activeFile.getFD().sync();
+    }
+
+    private void move(String key, Location loc) {
+        Location old = index.put(key, loc);
+        if (old != null) {
+            liveBytes.merge(old.segment, (long) -old.length, Long::sum);
+        }
+        liveBytes.merge(loc.segment, (long) loc.length, Long::sum);
+    }
+
+    private void startSegment(int segment) throws IOException {
+        active = segment;
+        activeFile = new FileOutputStream(segmentFile(segment).toFile());
+        DataOutputStream header = new DataOutputStream(new BufferedOutputStream(activeFile, 64 * 1024));
+        header.writeInt(MAGIC);
+        header.writeByte(0);
+        header.flush();
+        out = header;
+        activeSize = HEADER;
+        liveBytes.putIfAbsent(segment, 0L);
+        deflated.put(segment, false);
+    }
+
+    // Load every segment; the newest one without an .idx becomes the active segment again
+    private void open() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.log")) {
+            for (Path f : files) {
+                Matcher m = SEGMENT.matcher(f.getFileName().toString());
+                if (m.matches()) {
+                    segments.add(Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        // Oldest first, so a newer version of a key replaces an older one
+        for (int n : segments) {
+            if (Files.exists(indexFile(n))) {
+                loadIndex(n);
+            } else {
+                scan(n);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            startSegment(1);
+            return;
+        }
+        int last = segments.get(segments.size() - 1);
+        if (Files.exists(indexFile(last)) || deflated.getOrDefault(last, false)) {
+            startSegment(last + 1);
+        } else {
+            active = last;
+            activeSize = Files.size(segmentFile(last));
+            activeFile = new FileOutputStream(segmentFile(last).toFile(), true);
+            out = new BufferedOutputStream(activeFile, 64 * 1024);
+        }
+    }
+
+    private void loadIndex(int segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile(segment))))) {
+            deflated.put(segment, in.readBoolean());
+            liveBytes.putIfAbsent(segment, 0L);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                move(in.readUTF(), new Location(segment, in.readLong(), in.readInt()));
+            }
+        }
+    }
+
+    private void writeIndex(int segment, Map<String, Location> entries) throws IOException {
+        Path temp = indexFile(segment).resolveSibling(indexFile(segment).getFileName() + ".tmp");
+        try (DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            idx.writeBoolean(deflated.get(segment));
+            idx.writeInt(entries.size());
+            for (Map.Entry<String, Location> e : entries.entrySet()) {
+                idx.writeUTF(e.getKey());
+                idx.writeLong(e.getValue().offset);
+                idx.writeInt(e.getValue().length);
+            }
+        }
+        Files.move(temp, indexFile(segment), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Rebuild a segment's entries by reading it through; a torn record at the end is cut off
+    private void scan(int segment) throws IOException {
+        Path file = segmentFile(segment);
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "rw")) {
+            if (in.length() < HEADER || in.readInt() != MAGIC) {
+                System.err.println("Not an archive segment, skipped: " + file);
+                return;
+            }
+            boolean isDeflated = (in.readByte() & FLAG_DEFLATED) != 0;
+            deflated.put(segment, isDeflated);
+            liveBytes.putIfAbsent(segment, 0L);
+
+            long offset = HEADER;
+            while (offset + 8 <= in.length()) {
+                in.seek(offset);
+                int length = in.readInt();
+                if (length < 0 || offset + 8 + length > in.length()) {
+                    break;
+                }
+                byte[] record = new byte[8 + length];
+                in.seek(offset);
+                in.readFully(record);
+                String key = checkedKey(record);
+                if (key == null) {
+                    break;
+                }
+                move(key, new Location(segment, offset, record.length));
+                offset += record.length;
+            }
+            if (offset < in.length()) {
+                System.err.println("Truncating damaged tail of " + file + " at " + offset);
+                in.setLength(offset);
+            }
+        }
+    }
+
+    private static byte[] record(String key, byte[] content, boolean deflate) throws IOException {
+        byte[] body = deflate ? deflate(content) : content;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(body.length + key.length() + 16);
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeUTF(key);
+        p.writeInt(content.length);
+        p.write(body);
+        byte[] bytes = payload.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 8);
+        DataOutputStream r = new DataOutputStream(record);
+        r.writeInt(bytes.length);
+        r.writeInt((int) crc.getValue());
+        r.write(bytes);
+        return record.toByteArray();
+    }
+
+    // The key of a whole record, or null if its checksum doesn't match
+    private static String checkedKey(byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.readInt();
+        if (in.readInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+
+    private static byte[] content(byte[] record, boolean isDeflated) throws IOException {
+        if (checkedKey(record) == null) {
+            throw new IOException("archive record is corrupt");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 8, record.length - 8));
+        in.readUTF();
+        byte[] content = new byte[in.readInt()];
+        if (!isDeflated) {
+            in.readFully(content);
+            return content;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.readAllBytes());
+            inflater.inflate(content);
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("archive record is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private RandomAccessFile reader(int segment) throws IOException {
+        RandomAccessFile r = readers.get(segment);
+        if (r == null) {
+            r = new RandomAccessFile(segmentFile(segment).toFile(), "r");
+            readers.put(segment, r);
+        }
+        return r;
+    }
+
+    private void closeReader(int segment) throws IOException {
+        RandomAccessFile r = readers.remove(segment);
+        if (r != null) {
+            r.close();
+        }
+    }
+
+    private Path segmentFile(int segment) {
+        return dir.resolve(String.format("segment-%06d.log", segment));
+    }
+
+    private Path indexFile(int segment) {
+        return dir.resolve(String.format("segment-%06d.idx", segment));
+    }
+}
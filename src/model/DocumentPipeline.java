@@ -0,0 +1,212 @@
+package model;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two-stage background pipeline for outbound documents.
+ *
+ * Render jobs run on a small thread pool and produce the text of one or more
+ * documents. A single writer thread then appends them, draining whatever has
+ * queued up and opening each output file once per batch instead of once per
+ * document. At most {@code capacity} jobs can be in flight; submit() blocks
+ * when the pipeline is full, which slows a bulk sender down to disk speed.
+ * Small lines such as audit entries can be appended without a render step.
+ * A document can go to a DocumentArchive under a key instead of to a text file.
+ */
+public class DocumentPipeline {
+
+    // One finished document waiting to be appended to its file, or stored in an archive
+    public static class Document {
+        final String file;
+        final DocumentArchive archive;
+        final String key;
+        final String content;
+
+        public Document(String file, String content) {
+            this.file = file;
+            this.archive = null;
+            this.key = null;
+            this.content = content;
+        }
+
+        public Document(DocumentArchive archive, String key, String content) {
+            this.file = null;
+            this.archive = archive;
+            this.key = key;
+            this.content = content;
+        }
+    }
+
+    private static class WriteJob {
+        final List<Document> documents;
+        final CompletableFuture<Void> done;
+
+        WriteJob(List<Document> documents, CompletableFuture<Void> done) {
+            this.documents = documents;
+            this.done = done;
+        }
+    }
+
+    private static final WriteJob POISON = new WriteJob(Collections.emptyList(), null);
+
+    private final ExecutorService renderPool;
+    private final BlockingQueue<WriteJob> writeQueue;
+    private final Semaphore capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Thread writer;
+
+    public DocumentPipeline(int renderThreads, int capacity) {
+        this.capacity = new Semaphore(capacity);
+        this.writeQueue = new LinkedBlockingQueue<>();  // bounded by the semaphore
+        this.renderPool = Executors.newFixedThreadPool(renderThreads, r -> {
+            Thread t = new Thread(r, "doc-render");
+            t.setDaemon(true);
+            return t;
+        });
+        this.writer = new Thread(this::writeLoop, "doc-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        // Don't lose queued documents when the app exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(10, TimeUnit.SECONDS)));
+    }
+
+    /**
+     * Queue a render job. Blocks while the pipeline is full.
+     * The returned future completes once every document from the job is on disk.
+     */
+    public CompletableFuture<Void> submit(Callable<List<Document>> render) {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        inFlight.incrementAndGet();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        done.whenComplete((v, err) -> {
+            inFlight.decrementAndGet();
+            capacity.release();
+        });
+
+        try {
+            renderPool.execute(() -> {
+                try {
+                    writeQueue.add(new WriteJob(render.call(), done));
+                } catch (Exception e) {
+                    done.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    // Append already-formatted text, in order with the documents ahead of it (no back-pressure)
+    public void append(String file, String content) {
+        writeQueue.add(new WriteJob(Collections.singletonList(new Document(file, content)),
+                new CompletableFuture<>()));
+    }
+
+    // Jobs submitted but not yet written
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    private void writeLoop() {
+        List<WriteJob> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            writeQueue.drainTo(batch);
+
+            boolean stop = batch.remove(POISON);
+            writeBatch(batch);
+            batch.clear();
+            if (stop) return;
+        }
+    }
+
+    private void writeBatch(List<WriteJob> batch) {
+        // Group by file (or archive), keeping submission order within each
+        Map<String, List<WriteJob>> byFile = new LinkedHashMap<>();
+        Map<DocumentArchive, List<WriteJob>> byArchive = new IdentityHashMap<>();
+        for (WriteJob job : batch) {
+            for (Document doc : job.documents) {
+                if (doc.archive != null) {
+                    byArchive.computeIfAbsent(doc.archive, a -> new ArrayList<>()).add(job);
+                } else {
+                    byFile.computeIfAbsent(doc.file, f -> new ArrayList<>()).add(job);
+                }
+            }
+        }
+
+        Map<WriteJob, Exception> failures = new IdentityHashMap<>();
+        for (Map.Entry<DocumentArchive, List<WriteJob>> entry : byArchive.entrySet()) {
+            Map<String, String> docs = new LinkedHashMap<>();
+            for (WriteJob job : new LinkedHashSet<>(entry.getValue())) {
+                for (Document doc : job.documents) {
+                    if (doc.archive == entry.getKey()) {
+                        docs.put(doc.key, doc.content);
+                    }
+                }
+            }
+            try {
+                entry.getKey().putAll(docs);
+            } catch (IOException e) {
+                System.err.println("Archive write error: " + e.getMessage());
+                for (WriteJob job : entry.getValue()) {
+                    failures.put(job, e);
+                }
+            }
+        }
+        for (Map.Entry<String, List<WriteJob>> entry : byFile.entrySet()) {
+            String file = entry.getKey();
+            try (Writer out = new BufferedWriter(new FileWriter(file, true), 64 * 1024)) {
+                for (WriteJob job : new LinkedHashSet<>(entry.getValue())) {
+                    for (Document doc : job.documents) {
+                        if (file.equals(doc.file)) {
+                            out.write(doc.content);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Write error " + file + ": " + e.getMessage());
+                for (WriteJob job : entry.getValue()) {
+                    failures.put(job, e);
+                }
+            }
+        }
+
+        for (WriteJob job : batch) {
+            Exception e = failures.get(job);
+            if (e != null) {
+                job.done.completeExceptionally(e);
+            } else {
+                job.done.complete(null);
+            }
+        }
+    }
+
+    // Finish everything already queued, then stop the threads
+    public void close(long timeout, TimeUnit unit) {
+        renderPool.shutdown();
+        try {
+            renderPool.awaitTermination(timeout, unit);
+            writeQueue.add(POISON);
+            writer.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package model;
+
+import java.util.*;
+
+/**
+ * A document template, parsed once into a flat list of segments.
+ *
+ * Placeholders are ${name}. A section ${#name}...${/name} is kept only when the
+ * field has a value, and ${^name}...${/name} only when it doesn't; sections can
+ * be nested. $${ gives a literal ${. Field names are resolved to slots at compile
+ * time, so rendering is a walk over the segments with no parsing or lookups, into
+ * a per-thread buffer that is reused from one render to the next.
+ */
+public class DocumentTemplate {
+
+    private static final byte LITERAL = 0;
+    private static final byte FIELD = 1;
+    private static final byte IF_SET = 2;     // skip to jump[i] if the field is empty
+    private static final byte IF_EMPTY = 3;   // skip to jump[i] if the field has a value
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    private final String name;
+    private final byte[] kind;
+    private final String[] literal;
+    private final int[] slot;
+    private final int[] jump;
+    private final Map<String, Integer> slots;
+
+    private DocumentTemplate(String name, List<Object[]> segments, Map<String, Integer> slots) {
+        this.name = name;
+        this.slots = slots;
+        int n = segments.size();
+        kind = new byte[n];
+        literal = new String[n];
+        slot = new int[n];
+        jump = new int[n];
+        for (int i = 0; i < n; i++) {
+            Object[] s = segments.get(i);
+            kind[i] = (Byte) s[0];
+            literal[i] = (String) s[1];
+            slot[i] = (Integer) s[2];
+            jump[i] = (Integer) s[3];
+        }
+    }
+
+    // Parse a template; throws IllegalArgumentException if a section isn't closed properly
+    public static DocumentTemplate compile(String name, String text) {
+        List<Object[]> segments = new ArrayList<>();
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        Deque<Integer> open = new ArrayDeque<>();
+        StringBuilder pending = new StringBuilder();
+
+        int i = 0;
+        while (i < text.length()) {
+            if (text.startsWith("$${", i)) {
+                pending.append("${");
+                i += 3;
+                continue;
+            }
+            if (!text.startsWith("${", i)) {
+                pending.append(text.charAt(i++));
+                continue;
+            }
+            int end = text.indexOf('}', i + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException(name + ": unclosed ${ at offset " + i);
+            }
+            String tag = text.substring(i + 2, end).trim();
+            i = end + 1;
+
+            if (pending.length() > 0) {
+                segments.add(new Object[] {LITERAL, pending.toString(), -1, 0});
+                pending.setLength(0);
+            }
+            char c = tag.isEmpty() ? ' ' : tag.charAt(0);
+            if (c == '#' || c == '^') {
+                int s = slots.computeIfAbsent(tag.substring(1).trim(), k -> slots.size());
+                open.push(segments.size());
+                segments.add(new Object[] {c == '#' ? IF_SET : IF_EMPTY, null, s, 0});
+            } else if (c == '/') {
+                String field = tag.substring(1).trim();
+                if (open.isEmpty()) {
+                    throw new IllegalArgumentException(name + ": ${/" + field + "} without a matching section");
+                }
+                Object[] start = segments.get(open.pop());
+                if (!field.equals(nameOf(slots, (Integer) start[2]))) {
+                    throw new IllegalArgumentException(name + ": ${/" + field + "} closes section "
+                            + nameOf(slots, (Integer) start[2]));
+                }
+                start[3] = segments.size();
+            } else {
+                segments.add(new Object[] {FIELD, null, slots.computeIfAbsent(tag, k -> slots.size()), 0});
+            }
+        }
+        if (pending.length() > 0) {
+            segments.add(new Object[] {LITERAL, pending.toString(), -1, 0});
+        }
+        if (!open.isEmpty()) {
+            throw new IllegalArgumentException(name + ": section " + nameOf(slots, (Integer) segments.get(open.pop())[2])
+                    + " is not closed");
+        }
+        return new DocumentTemplate(name, segments, slots);
+    }
+
+    private static String nameOf(Map<String, Integer> slots, int slot) {
+        for (Map.Entry<String, Integer> e : slots.entrySet()) {
+            if (e.getValue() == slot) {
+                return e.getKey();
+            }
+        }
+        return "?";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Field names used by the template, in order of first use
+    public Set<String> getFields() {
+        return Collections.unmodifiableSet(slots.keySet());
+    }
+
+    // A fresh set of values to fill in and render
+    public Values values() {
+        return new Values();
+    }
+
+    // Render with values indexed by slot; null and "" both count as empty
+    String render(String[] values) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        int n = kind.length;
+        int i = 0;
+        while (i < n) {
+            switch (kind[i]) {
+                case LITERAL:
+                    out.append(literal[i]);
+                    break;
+                case FIELD:
+                    String v = values[slot[i]];
+                    if (v != null) {
+                        out.append(v);
+                    }
+                    break;
+                case IF_SET:
+                    if (isEmpty(values[slot[i]])) {
+                        i = jump[i];
+                        continue;
+                    }
+                    break;
+                default:
+                    if (!isEmpty(values[slot[i]])) {
+                        i = jump[i];
+                        continue;
+                    }
+                    break;
+            }
+            i++;
+        }
+        String result = out.toString();
+        if (out.capacity() > 1 << 20) {
+            BUFFER.remove();   // don't hold on to a buffer grown by one huge document
+        }
+        return result;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * Values for one render. Fields the template doesn't use are ignored, so a site
+     * template can leave out anything it doesn't want to show.
+     */
+    public class Values {
+        private final String[] values = new String[slots.size()];
+
+        public Values put(String field, Object value) {
+            Integer s = slots.get(field);
+            if (s != null) {
+                values[s] = value == null ? null : value.toString();
+            }
+            return this;
+        }
+
+        public String render() {
+            return DocumentTemplate.this.render(values);
+        }
+    }
+}
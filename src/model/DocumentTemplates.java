@@ -0,0 +1,318 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The templates for generated documents, compiled once and cached.
+ *
+ * A site can replace any of them by putting a file called <name>.txt in the
+ * templates directory (-Dtemplates.dir, default "templates"); otherwise the
+ * built-in text below is used. A file that doesn't compile is reported and the
+ * built-in template is used instead.
+ */
+public final class DocumentTemplates {
+
+    public static final String REFERRAL = "referral";
+    public static final String EMAIL = "email";
+    public static final String EMAIL_SUBJECT = "email_subject";
+    public static final String EMAIL_BODY = "email_body";
+    public static final String EHR_UPDATE = "ehr_update";
+    public static final String PRESCRIPTION = "prescription";
+    public static final String REFERRAL_DETAILS = "referral_details";
+
+    private static final Map<String, String> BUILT_IN = Map.of(
+            REFERRAL, """
+                    =====================================
+                         MEDICAL REFERRAL DOCUMENT
+                    =====================================
+
+                    >> REFERRAL INFO
+                    ID:       ${referralId}
+                    Date:     ${referralDate}
+                    Urgency:  ${urgency}
+                    Status:   ${status}
+
+                    >> PATIENT
+                    Name:     ${patientName}
+                    NHS#:     ${nhsNumber}
+                    DOB:      ${dateOfBirth}
+                    Age:      ${age} years
+                    Gender:   ${gender}
+                    Phone:    ${patientPhone}
+                    Email:    ${patientEmail}
+
+                    >> REFERRING CLINICIAN
+                    Name:     Dr. ${clinicianName}
+                    License:  ${licenseNumber}
+                    Specialty: ${specialization}
+                    Email:    ${clinicianEmail}
+
+                    >> DESTINATION FACILITY
+                    Facility: ${facilityName}
+                    Type:     ${facilityType}
+                    Address:  ${facilityAddress}
+                    Phone:    ${facilityPhone}
+                    Email:    ${facilityEmail}
+
+                    >> CLINICAL INFO
+                    Reason:
+                    ${reasonOrNA}
+
+                    Clinical Summary:
+                    ${clinicalSummaryOrNA}
+
+                    Requested Investigations:
+                    ${investigationsOrNA}
+
+                    Additional Notes:
+                    ${notesOrNA}
+
+                    >> MEDICAL HISTORY
+                    ${#hasRecord}Allergies:   ${allergies}
+                    Conditions:  ${conditions}
+                    Medications: ${medications}
+
+                    ${/hasRecord}${^hasRecord}No medical history available.
+
+                    ${/hasRecord}=====================================
+                    Generated: ${generated}
+                    =====================================
+
+
+                    """,
+            EMAIL, """
+                    =====================================
+                          EMAIL - REFERRAL NOTICE
+                    =====================================
+
+                    To:      ${to}
+                    From:    ${from}
+                    Subject: ${subject}
+                    Date:    ${generated}
+
+                    ${body}
+                    =====================================
+
+
+                    """,
+            EMAIL_SUBJECT, "New Patient Referral - ${urgency} Priority",
+            EMAIL_BODY, """
+                    Dear Specialist Team,
+
+                    I am referring the following patient for consultation:
+
+                    Patient:   ${patientName}
+                    NHS#:      ${nhsNumber}
+                    Ref ID:    ${referralId}
+                    Urgency:   ${urgency}
+                    Facility:  ${facilityName}
+
+                    Reason for Referral:
+                    ${reasonOrNA}
+
+                    Clinical Summary:
+                    ${clinicalSummaryOrNA}
+
+                    ${#investigations}Requested Investigations:
+                    ${investigations}
+
+                    ${/investigations}Full documentation attached.
+                    Patient contact: ${patientPhone}
+
+                    Best regards,
+                    Dr. ${clinicianName}
+                    ${specialization}
+                    License: ${licenseNumber}
+                    """,
+            EHR_UPDATE, """
+                    =====================================
+                            NHS EHR SYSTEM UPDATE
+                    =====================================
+
+                    Type:      REFERRAL_SENT
+                    Timestamp: ${generated}
+                    NHS#:      ${nhsNumber}
+                    Ref ID:    ${referralId}
+
+                    ACTION:    Add referral to patient EHR
+                    Facility:  ${facilityId}
+                    Urgency:   ${urgency}
+                    Status:    ${status}
+                    Date:      ${referralDate}
+                    Reason:    ${reasonOrNA}
+
+                    SYNC:      QUEUED as ${eventId}
+                    =====================================
+
+
+                    """,
+            PRESCRIPTION, """
+                    =====================================
+                      NHS ELECTRONIC PRESCRIPTION
+                    =====================================
+
+                    >> PRESCRIPTION DETAILS
+                    ID: ${prescriptionId}
+                    Date: ${prescriptionDate}
+                    Status: ${status}
+
+                    >> PATIENT
+                    Name: ${patientName}
+                    NHS#: ${nhsNumber}
+                    DOB: ${dateOfBirth}
+                    Address: ${address}, ${postcode}
+
+                    >> PRESCRIBER
+                    Dr. ${clinicianName}
+                    License: ${licenseNumber}
+                    Specialty: ${specialization}
+                    Contact: ${clinicianEmail}
+
+                    >> MEDICATION
+                    Name: ${medication}
+                    Dosage: ${dosage}
+                    Frequency: ${frequency}
+                    Duration: ${durationDays} days
+                    Quantity: ${quantity}
+                    Instructions: ${instructions}
+
+                    >> PHARMACY
+                    Name: ${pharmacy}
+                    Collection: ${collection}
+
+                    >> ALLERGIES & WARNINGS
+                    ${#allergies}⚠ ALLERGIES: ${allergies}
+                    ${/allergies}${^allergies}No known allergies
+                    ${/allergies}${alerts}
+                    =====================================
+                    Generated: ${generated}
+                    Valid for 28 days
+                    =====================================
+
+
+                    """,
+            REFERRAL_DETAILS, """
+                    =====================================
+                             REFERRAL DETAILS
+                    =====================================
+
+                    >> REFERRAL INFO
+                    ID:          ${referralId}
+                    Date:        ${referralDate}
+                    Urgency:     ${urgency}
+                    Status:      ${status}
+                    Created:     ${created}
+                    Updated:     ${updated}
+
+                    >> PATIENT
+                    ${#patientName}Name:        ${patientName}
+                    NHS#:        ${nhsNumber}
+                    DOB:         ${dateOfBirth}
+                    ${/patientName}${^patientName}ID:          ${patientId}
+                    ${/patientName}
+                    >> REFERRING FROM
+                    ${#clinicianName}Clinician:   Dr. ${clinicianName}
+                    Specialty:   ${specialization}
+                    ${/clinicianName}${^clinicianName}Clinician ID: ${clinicianId}
+                    ${/clinicianName}${#facilityName}Facility:    ${facilityName}
+                    ${/facilityName}${^facilityName}${#facilityId}Facility ID: ${facilityId}
+                    ${/facilityId}${/facilityName}
+                    >> REFERRED TO
+                    ${#targetFacilityName}Facility:    ${targetFacilityName}
+                    Address:     ${targetAddress}
+                    Phone:       ${targetPhone}
+                    ${/targetFacilityName}${^targetFacilityName}${#targetFacilityId}Facility ID: ${targetFacilityId}
+                    ${/targetFacilityId}${/targetFacilityName}${#targetClinicianName}Clinician:   Dr. ${targetClinicianName}
+                    ${/targetClinicianName}${^targetClinicianName}${#targetClinicianId}Clinician ID: ${targetClinicianId}
+                    ${/targetClinicianId}${/targetClinicianName}
+                    >> CLINICAL DETAILS
+                    Reason:
+                    ${reasonOrNA}
+
+                    Clinical Summary:
+                    ${clinicalSummaryOrNA}
+
+                    Requested Investigations:
+                    ${investigationsOrNA}
+
+                    Notes:
+                    ${notesOrNA}
+                    ${#appointmentId}
+                    >> APPOINTMENT
+                    Appointment ID: ${appointmentId}
+                    ${/appointmentId}
+                    =====================================
+                    """);
+
+    private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final Map<String, DocumentTemplate> compiled = new ConcurrentHashMap<>();
+
+    // The timestamp string for the current second, formatted once per second
+    private static final class Stamp {
+        final long second;
+        final String text;
+
+        Stamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    private static volatile Stamp stamp = new Stamp(-1, "");
+
+    private DocumentTemplates() {
+    }
+
+    public static DocumentTemplate get(String name) {
+        return compiled.computeIfAbsent(name, DocumentTemplates::load);
+    }
+
+    // Text of a built-in template, or null
+    static String builtIn(String name) {
+        return BUILT_IN.get(name);
+    }
+
+    // Drop the cache so edited template files are picked up on next use
+    public static void reload() {
+        compiled.clear();
+    }
+
+    // "yyyy-MM-dd HH:mm:ss" for now
+    public static String timestamp() {
+        long second = System.currentTimeMillis() / 1000;
+        Stamp s = stamp;
+        if (s.second != second) {
+            s = new Stamp(second, LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault()).format(DTF));
+            stamp = s;
+        }
+        return s.text;
+    }
+
+    private static DocumentTemplate load(String name) {
+        String builtIn = BUILT_IN.get(name);
+        Path file = Paths.get(System.getProperty("templates.dir", "templates"), name + ".txt");
+        if (Files.exists(file)) {
+            try {
+                return DocumentTemplate.compile(name, Files.readString(file, StandardCharsets.UTF_8));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error in template " + file + ": " + e.getMessage()
+                        + (builtIn != null ? " - using the built-in one" : ""));
+            }
+        }
+        if (builtIn == null) {
+            throw new IllegalArgumentException("No template named " + name);
+        }
+        return DocumentTemplate.compile(name, builtIn);
+    }
+}
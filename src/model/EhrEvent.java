@@ -0,0 +1,88 @@
+package model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One update for the EHR system, e.g. REFERRAL_SENT. The event id is unique per
+ * update and is what the EHR acknowledges. Ordered by when it may next be sent.
+ */
+public class EhrEvent implements Delayed {
+
+    private final String eventId;
+    private final String type;
+    private final Map<String, String> fields;
+    private int attempts;
+    private long nextAttemptAt;   // epoch millis
+
+    public EhrEvent(String eventId, String type, Map<String, String> fields) {
+        this.eventId = eventId;
+        this.type = type;
+        this.fields = new LinkedHashMap<>(fields);
+    }
+
+    public String getEventId() { return eventId; }
+    public String getType() { return type; }
+    public Map<String, String> getFields() { return fields; }
+    public int getAttempts() { return attempts; }
+
+    void retryAfter(long delayMillis) {
+        attempts++;
+        nextAttemptAt = System.currentTimeMillis() + delayMillis;
+    }
+
+    // {"eventId":..., "type":..., then the fields}
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        appendField(json, "eventId", eventId);
+        json.append(',');
+        appendField(json, "type", type);
+        for (Map.Entry<String, String> f : fields.entrySet()) {
+            json.append(',');
+            appendField(json, f.getKey(), f.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendField(StringBuilder json, String name, String value) {
+        json.append('"').append(escape(name)).append("\":");
+        if (value == null) {
+            json.append("null");
+        } else {
+            json.append('"').append(escape(value)).append('"');
+        }
+    }
+
+    static String escape(String s) {
+        StringBuilder out = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(nextAttemptAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        return Long.compare(nextAttemptAt, ((EhrEvent) o).nextAttemptAt);
+    }
+}
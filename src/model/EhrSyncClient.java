@@ -0,0 +1,296 @@
+package model;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends EHR events to the EHR system in batches over HTTP.
+ *
+ * Events are journaled (ENQ/ACK/FAIL, like the email outbox) so nothing is lost
+ * across restarts, and queued in memory for a single sender thread. The sender
+ * collects up to batchSize due events, waiting briefly for more to arrive, and
+ * POSTs them as {"events":[...]}. One HttpClient is reused, so the connection
+ * stays open between batches. The EHR answers with
+ * {"acknowledged":[ids...],"rejected":[ids...]}: acknowledged events are done,
+ * rejected ones are failed for good, and any event missing from both lists, or a
+ * whole batch that got an error, is retried with exponential backoff.
+ *
+ * enqueue() only touches the journal and the queue, so an EHR outage never slows
+ * the code that raises events.
+ */
+public class EhrSyncClient {
+
+    private static final long MIN_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 10 * 60_000;
+    private static final long LINGER_MS = 200;   // wait this long to fill a batch
+    private static final Pattern STRING = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final JournalFile journal;
+    private final DelayQueue<EhrEvent> ready = new DelayQueue<>();
+    private final Set<String> known = new HashSet<>();
+    private final Set<String> open = new HashSet<>();
+    private final Set<String> acknowledged = new HashSet<>();
+
+    private URI endpoint;
+    private int batchSize = 100;
+    private HttpClient http;
+    private Thread sender;
+    private volatile boolean running;
+
+    public EhrSyncClient(String queueFile) {
+        this.journal = new JournalFile(queueFile);
+        try {
+            replay();
+        } catch (IOException e) {
+            System.err.println("Error reading EHR queue " + queueFile + ": " + e.getMessage());
+        }
+    }
+
+    // Start posting to the endpoint; until this is called events only queue up
+    public synchronized void start(URI endpoint, int batchSize) {
+        if (running) {
+            return;
+        }
+        this.endpoint = endpoint;
+        this.batchSize = batchSize;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        running = true;
+        sender = new Thread(this::run, "ehr-sync");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (sender != null) {
+            sender.interrupt();
+            sender = null;
+        }
+    }
+
+    // Returns false if an event with this id was already queued or finished
+    public synchronized boolean enqueue(EhrEvent event) {
+        if (!known.add(event.getEventId())) {
+            return false;
+        }
+        journal.append(enqRecord(event));
+        open.add(event.getEventId());
+        ready.add(event);
+        return true;
+    }
+
+    public synchronized boolean isAcknowledged(String eventId) {
+        return acknowledged.contains(eventId);
+    }
+
+    // True if any acknowledged event id starts with the prefix
+    public synchronized boolean isAnyAcknowledged(String prefix) {
+        for (String id : acknowledged) {
+            if (id.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Events queued or in flight
+    public synchronized int getPendingCount() {
+        return open.size();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<EhrEvent> batch = takeBatch();
+                if (!batch.isEmpty()) {
+                    post(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private List<EhrEvent> takeBatch() throws InterruptedException {
+        List<EhrEvent> batch = new ArrayList<>(batchSize);
+        EhrEvent first = ready.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+
+        long deadline = System.currentTimeMillis() + LINGER_MS;
+        while (batch.size() < batchSize) {
+            ready.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || wait <= 0) {
+                break;
+            }
+            EhrEvent next = ready.poll(wait, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    void post(List<EhrEvent> batch) throws InterruptedException {
+        StringBuilder body = new StringBuilder("{\"events\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) body.append(',');
+            body.append(batch.get(i).toJson());
+        }
+        body.append("]}");
+
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        try {
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+
+            Set<String> acked = idsIn(response.body(), "acknowledged");
+            Set<String> rejected = idsIn(response.body(), "rejected");
+            for (EhrEvent event : batch) {
+                if (acked.contains(event.getEventId())) {
+                    finish(event, "ACK", null);
+                } else if (rejected.contains(event.getEventId())) {
+                    System.err.println("EHR rejected event " + event.getEventId());
+                    finish(event, "FAIL", "rejected by EHR");
+                } else {
+                    retry(event);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("EHR sync to " + endpoint + " failed: " + e.getMessage() +
+                    " - " + batch.size() + " events will be retried");
+            for (EhrEvent event : batch) {
+                retry(event);
+            }
+        }
+    }
+
+    private synchronized void finish(EhrEvent event, String outcome, String reason) {
+        if (reason != null) {
+            journal.append(outcome, event.getEventId(), JournalFile.encode(reason));
+        } else {
+            journal.append(outcome, event.getEventId());
+            acknowledged.add(event.getEventId());
+        }
+        open.remove(event.getEventId());
+    }
+
+    private void retry(EhrEvent event) {
+        event.retryAfter(Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(event.getAttempts(), 20)));
+        ready.add(event);
+    }
+
+    // The strings inside "name":[...] in the response
+    private static Set<String> idsIn(String json, String name) {
+        Set<String> ids = new HashSet<>();
+        Matcher list = Pattern.compile("\"" + name + "\"\\s*:\\s*\\[(.*?)\\]", Pattern.DOTALL).matcher(json);
+        if (list.find()) {
+            Matcher item = STRING.matcher(list.group(1));
+            while (item.find()) {
+                ids.add(item.group(1));
+            }
+        }
+        return ids;
+    }
+
+    private void replay() throws IOException {
+        Map<String, EhrEvent> queued = new LinkedHashMap<>();
+        Map<String, String[]> finished = new LinkedHashMap<>();
+
+        for (String[] f : journal.readAll()) {
+            switch (f[0]) {
+                case "ENQ":
+                    if (f.length == 4) {
+                        queued.put(f[1], new EhrEvent(f[1], f[2], decodeFields(f[3])));
+                    }
+                    break;
+                case "ACK":
+                    acknowledged.add(f[1]);
+                    queued.remove(f[1]);
+                    finished.put(f[1], f);
+                    break;
+                case "FAIL":
+                    queued.remove(f[1]);
+                    finished.put(f[1], f);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (finished.isEmpty() && queued.isEmpty()) {
+            return;
+        }
+
+        List<String[]> records = new ArrayList<>(finished.values());
+        for (EhrEvent e : queued.values()) {
+            records.add(enqRecord(e));
+        }
+        journal.rewrite(records);
+
+        known.addAll(finished.keySet());
+        known.addAll(queued.keySet());
+        open.addAll(queued.keySet());
+        ready.addAll(queued.values());
+        if (!queued.isEmpty()) {
+            System.out.println("EHR sync: " + queued.size() + " events still to send");
+        }
+    }
+
+    private static String[] enqRecord(EhrEvent e) {
+        return new String[] {"ENQ", e.getEventId(), e.getType(), encodeFields(e.getFields())};
+    }
+
+    // name=value pairs, each part encoded, joined with '&'
+    private static String encodeFields(Map<String, String> fields) {
+        StringJoiner out = new StringJoiner("&");
+        for (Map.Entry<String, String> f : fields.entrySet()) {
+            out.add(JournalFile.encode(f.getKey()) + "=" + JournalFile.encode(f.getValue()));
+        }
+        return out.toString();
+    }
+
+    // The '=' after the name. Base64 pads only at offsets 4k+2 and 4k+3, so it is the first at a multiple of 4
+    private static int separator(String pair) {
+        for (int i = pair.indexOf('='); i >= 0; i = pair.indexOf('=', i + 1)) {
+            if (i % 4 == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no name=value separator in " + pair);
+    }
+
+    private static Map<String, String> decodeFields(String encoded) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (encoded.isEmpty()) {
+            return fields;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = separator(pair);
+            fields.put(JournalFile.decode(pair.substring(0, eq)), JournalFile.decode(pair.substring(eq + 1)));
+        }
+        return fields;
+    }
+}
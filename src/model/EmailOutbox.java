@@ -0,0 +1,139 @@
+package model;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue of emails waiting to be delivered.
+ *
+ * Every change is appended to a journal file before it takes effect in memory:
+ * ENQ when an email is queued, ACK when it was delivered and FAIL when the server
+ * rejected it for good. On start-up the journal is replayed, anything queued but
+ * not finished goes back in the queue, and the journal is rewritten without the
+ * bodies of finished emails. Finished ids are remembered, so queueing the same
+ * send again is ignored even after a restart.
+ *
+ * Emails that fail are put back with an exponential backoff.
+ */
+public class EmailOutbox {
+
+    private static final long MIN_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 10 * 60_000;
+
+    private final JournalFile journal;
+    private final DelayQueue<OutboundEmail> ready = new DelayQueue<>();
+    private final Set<String> known = new HashSet<>();   // queued, in flight or finished
+    private final Set<String> open = new HashSet<>();    // queued or in flight
+
+    public EmailOutbox(String filename) {
+        this.journal = new JournalFile(filename);
+        try {
+            replay();
+        } catch (IOException e) {
+            System.err.println("Error reading email outbox " + filename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue an email. Returns false if an email with this id was already queued or sent.
+     * The journal entry is flushed before this returns.
+     */
+    public synchronized boolean enqueue(OutboundEmail email) {
+        if (!known.add(email.getId())) {
+            return false;
+        }
+        journal.append(enqRecord(email));
+        open.add(email.getId());
+        ready.add(email);
+        return true;
+    }
+
+    /**
+     * Wait up to the timeout for at least one email that is due, then take up to
+     * max of them. Returns an empty list on timeout.
+     */
+    public List<OutboundEmail> takeBatch(int max, long timeout, TimeUnit unit) throws InterruptedException {
+        List<OutboundEmail> batch = new ArrayList<>(max);
+        OutboundEmail first = ready.poll(timeout, unit);
+        if (first != null) {
+            batch.add(first);
+            ready.drainTo(batch, max - 1);   // only takes those already due
+        }
+        return batch;
+    }
+
+    public synchronized void delivered(OutboundEmail email) {
+        journal.append("ACK", email.getId());
+        open.remove(email.getId());
+    }
+
+    // Permanently rejected - don't try again
+    public synchronized void failed(OutboundEmail email, String reason) {
+        journal.append("FAIL", email.getId(), JournalFile.encode(reason));
+        open.remove(email.getId());
+    }
+
+    // Temporary failure - try again later, backing off each time
+    public void retry(OutboundEmail email) {
+        long delay = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(email.getAttempts(), 20));
+        email.retryAfter(delay);
+        ready.add(email);
+    }
+
+    // Emails queued or being delivered
+    public synchronized int getPendingCount() {
+        return open.size();
+    }
+
+    public synchronized boolean isKnown(String id) {
+        return known.contains(id);
+    }
+
+    private void replay() throws IOException {
+        Map<String, OutboundEmail> queued = new LinkedHashMap<>();
+        Map<String, String[]> finished = new LinkedHashMap<>();
+
+        for (String[] f : journal.readAll()) {
+            switch (f[0]) {
+                case "ENQ":
+                    if (f.length == 6) {
+                        queued.put(f[1], new OutboundEmail(f[1], JournalFile.decode(f[2]),
+                                JournalFile.decode(f[3]), JournalFile.decode(f[4]), JournalFile.decode(f[5])));
+                    }
+                    break;
+                case "ACK":
+                case "FAIL":
+                    queued.remove(f[1]);
+                    finished.put(f[1], f);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (finished.isEmpty() && queued.isEmpty()) {
+            return;
+        }
+
+        // Keep just the finished ids and the emails still to send
+        List<String[]> records = new ArrayList<>(finished.values());
+        for (OutboundEmail e : queued.values()) {
+            records.add(enqRecord(e));
+        }
+        journal.rewrite(records);
+
+        known.addAll(finished.keySet());
+        known.addAll(queued.keySet());
+        open.addAll(queued.keySet());
+        ready.addAll(queued.values());
+        if (!queued.isEmpty()) {
+            System.out.println("Email outbox: " + queued.size() + " emails still to send");
+        }
+    }
+
+    private static String[] enqRecord(OutboundEmail e) {
+        return new String[] {"ENQ", e.getId(), JournalFile.encode(e.getFrom()), JournalFile.encode(e.getTo()),
+                JournalFile.encode(e.getSubject()), JournalFile.encode(e.getBody())};
+    }
+}
@@ -0,0 +1,93 @@
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only record file behind the durable queues (email outbox, EHR sync).
+ * One record per line, fields separated by tabs; free text should be passed
+ * through encode() first. Each append is flushed before it returns.
+ */
+public class JournalFile {
+
+    private final Path path;
+    private Writer out;
+
+    public JournalFile(String filename) {
+        this.path = Paths.get(filename);
+    }
+
+    // Every record in the file, oldest first; a torn last line is skipped
+    public List<String[]> readAll() throws IOException {
+        List<String[]> records = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return records;
+        }
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length >= 2) {
+                    records.add(fields);
+                }
+            }
+        }
+        return records;
+    }
+
+    // Replace the whole file, e.g. to drop finished entries after a replay
+    public synchronized void rewrite(List<String[]> records) throws IOException {
+        close();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String[] record : records) {
+                w.write(String.join("\t", record));
+                w.write('\n');
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized void append(String... fields) {
+        try {
+            if (out == null) {
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            out.write(String.join("\t", fields));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Write error " + path + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("Error closing " + path + ": " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    public String getFilename() {
+        return path.toString();
+    }
+
+    // Free text as a single tab- and newline-free field
+    public static String encode(String value) {
+        if (value == null) {
+            return "";
+        }
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String value) {
+        return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One email waiting in the outbox. The id identifies one send of a referral
+ * (referral id plus a unique suffix), so a send is only ever emailed once.
+ * Ordered by when it may next be attempted.
+ */
+public class OutboundEmail implements Delayed {
+
+    private final String id;
+    private final String from;
+    private final String to;
+    private final String subject;
+    private final String body;
+    private int attempts;
+    private long nextAttemptAt;   // epoch millis
+
+    public OutboundEmail(String id, String from, String to, String subject, String body) {
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public String getId() { return id; }
+    public String getFrom() { return from; }
+    public String getTo() { return to; }
+    public String getSubject() { return subject; }
+    public String getBody() { return body; }
+    public int getAttempts() { return attempts; }
+
+    // Push the next attempt back after a failure
+    void retryAfter(long delayMillis) {
+        attempts++;
+        nextAttemptAt = System.currentTimeMillis() + delayMillis;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(nextAttemptAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        return Long.compare(nextAttemptAt, ((OutboundEmail) o).nextAttemptAt);
+    }
+}
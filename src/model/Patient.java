@@ -16,7 +16,6 @@ public class Patient extends User {
     private String emergencyContactPhone;
     private LocalDate registrationDate;
     private String gpSurgeryId;
-    private PatientRecord patientRecord;
     private List<Appointment> appointments;
     private List<Prescription> prescriptions;
 
@@ -37,7 +36,6 @@ public class Patient extends User {
         this.gpSurgeryId = gpSurgeryId;
         this.appointments = new ArrayList<>();
         this.prescriptions = new ArrayList<>();
-        this.patientRecord = new PatientRecord(this);
     }
 
     // Getters and Setters
@@ -71,17 +69,26 @@ public class Patient extends User {
     public String getGpSurgeryId() { return gpSurgeryId; }
     public void setGpSurgeryId(String id) { this.gpSurgeryId = id; }
 
-    public PatientRecord getPatientRecord() { return patientRecord; }
+    // Loaded from the record store on first use rather than held here
+    public PatientRecord getPatientRecord() {
+        return PatientRecordStore.getInstance().get(this);
+    }
 
     public List<Appointment> getAppointments() { return appointments; }
     public void addAppointment(Appointment appointment) {
         this.appointments.add(appointment);
     }
+    public void removeAppointment(Appointment appointment) {
+        this.appointments.remove(appointment);
+    }
 
     public List<Prescription> getPrescriptions() { return prescriptions; }
     public void addPrescription(Prescription prescription) {
         this.prescriptions.add(prescription);
     }
+    public void removePrescription(Prescription prescription) {
+        this.prescriptions.remove(prescription);
+    }
 
     public int getAge() {
         return Period.between(dateOfBirth, LocalDate.now()).getYears();
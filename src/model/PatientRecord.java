@@ -2,8 +2,15 @@ package model;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
+/**
+ * A patient's clinical history. Records are loaded and cached by
+ * PatientRecordStore, and every change is saved through it immediately - so the
+ * lists are handed out read-only, and changes go through the add/update methods.
+ */
 public class PatientRecord {
     private String recordId;
     private Patient patient;
@@ -14,7 +21,7 @@ public class PatientRecord {
     private LocalDateTime lastUpdated;
 
     public PatientRecord(Patient patient) {
-        this.recordId = java.util.UUID.randomUUID().toString();
+        this.recordId = UUID.randomUUID().toString();
         this.patient = patient;
         this.allergies = new ArrayList<>();
         this.conditions = new ArrayList<>();
@@ -22,17 +29,33 @@ public class PatientRecord {
         this.lastUpdated = LocalDateTime.now();
     }
 
+    // A record read back from the store
+    PatientRecord(Patient patient, String recordId, String bloodType, List<String> allergies,
+                  List<String> conditions, List<String> medications, LocalDateTime lastUpdated) {
+        this.recordId = recordId != null ? recordId : UUID.randomUUID().toString();
+        this.patient = patient;
+        this.bloodType = bloodType;
+        this.allergies = allergies;
+        this.conditions = conditions;
+        this.medications = medications;
+        this.lastUpdated = lastUpdated != null ? lastUpdated : LocalDateTime.now();
+    }
+
+    void attach(Patient patient) {
+        this.patient = patient;
+    }
+
     // Getters and Setters
     public String getRecordId() { return recordId; }
     public Patient getPatient() { return patient; }
 
-    public List<String> getAllergies() { return allergies; }
+    public List<String> getAllergies() { return Collections.unmodifiableList(allergies); }
     public void addAllergy(String allergy) {
         this.allergies.add(allergy);
         updateLastModified();
     }
 
-    public List<String> getConditions() { return conditions; }
+    public List<String> getConditions() { return Collections.unmodifiableList(conditions); }
     public void addCondition(String condition) {
         this.conditions.add(condition);
         updateLastModified();
@@ -44,15 +67,58 @@ public class PatientRecord {
         updateLastModified();
     }
 
-    public List<String> getMedications() { return medications; }
+    public List<String> getMedications() { return Collections.unmodifiableList(medications); }
     public void updateMedications(List<String> medications) {
-        this.medications = medications;
+        this.medications = new ArrayList<>(medications);
         updateLastModified();
     }
 
+    public LocalDateTime getLastUpdated() { return lastUpdated; }
+
+    /**
+     * Take in a duplicate patient's record: entries this one lacks (compared
+     * ignoring case) and the blood type if this one has none. Saved once;
+     * false if there was nothing to add.
+     */
+    public boolean mergeFrom(PatientRecord other) {
+        if (other == this) {
+            return false;
+        }
+        boolean changed = addMissing(allergies, other.allergies);
+        changed |= addMissing(conditions, other.conditions);
+        changed |= addMissing(medications, other.medications);
+        if ((bloodType == null || bloodType.isBlank()) && other.bloodType != null && !other.bloodType.isBlank()) {
+            bloodType = other.bloodType;
+            changed = true;
+        }
+        if (changed) {
+            updateLastModified();
+        }
+        return changed;
+    }
+
+    private static boolean addMissing(List<String> to, List<String> from) {
+        boolean added = false;
+        for (String item : from) {
+            boolean present = false;
+            for (String have : to) {
+                if (have.trim().equalsIgnoreCase(item.trim())) {
+                    present = true;
+                    break;
+                }
+            }
+            if (!present) {
+                to.add(item);
+                added = true;
+            }
+        }
+        return added;
+    }
 
     private void updateLastModified() {
+        LocalDateTime previous = lastUpdated;
         this.lastUpdated = LocalDateTime.now();
+        PatientRecordStore.getInstance().save(this, previous);
     }
 
     public String getFullRecord() {
@@ -0,0 +1,172 @@
+package model;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Singleton store for patients' clinical records, keyed by patient id.
+ *
+ * Records live in a DocumentArchive, so fetching one is a single seek and saving
+ * one appends just that record. Nothing is read until a patient's record is
+ * first asked for; after that it stays in a small LRU cache, and the least
+ * recently used records are dropped once the cache is full. Every change to a
+ * record is written straight away, so an evicted record never has unsaved edits.
+ */
+public class PatientRecordStore {
+
+    private static final String ARCHIVE_DIR = "archive/patient_records";
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+
+    private final DocumentArchive archive;
+    private final Map<String, PatientRecord> cache;
+    private int loads;
+
+    private PatientRecordStore() {
+        archive = new DocumentArchive(System.getProperty("patient.records.dir", ARCHIVE_DIR), SEGMENT_BYTES, true);
+        int capacity = Integer.getInteger("patient.records.cache", 256);
+        cache = new LinkedHashMap<String, PatientRecord>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PatientRecord> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static class Holder {
+        static final PatientRecordStore INSTANCE = new PatientRecordStore();
+    }
+
+    public static PatientRecordStore getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    // The patient's record, read from disk on first use; an empty one if none was saved
+    public synchronized PatientRecord get(Patient patient) {
+        String id = patient.getPatientId();
+        PatientRecord rec = cache.get(id);
+        if (rec == null) {
+            rec = load(patient);
+            cache.put(id, rec);
+        } else if (rec.getPatient() != patient) {
+            rec.attach(patient);   // the patient list was reloaded
+        }
+        return rec;
+    }
+
+    /**
+     * Called by PatientRecord whenever it changes; previous is its lastUpdated before
+     * the change. A copy that was evicted is put back in the cache if the stored record
+     * is still the one it was read as. If the patient's record was read again and changed
+     * since, the stale copy's change is refused rather than written over the newer one.
+     */
+    synchronized void save(PatientRecord rec, LocalDateTime previous) {
+        String id = rec.getPatient().getPatientId();
+        try {
+            PatientRecord cached = cache.get(id);
+            if (cached != rec) {
+                if (cached != null || !isStoredAs(id, previous)) {
+                    System.err.println("Record for patient " + id + " changed since this copy was read - not saved");
+                    return;
+                }
+                cache.put(id, rec);
+            }
+            archive.put(id, format(rec));
+        } catch (IOException e) {
+            System.err.println("Error saving record for patient " + id + ": " + e.getMessage());
+        }
+    }
+
+    // True if the stored record was last saved at this time, or nothing is stored yet
+    private boolean isStoredAs(String patientId, LocalDateTime lastUpdated) throws IOException {
+        String text = archive.get(patientId);
+        if (text == null) {
+            return true;
+        }
+        LocalDateTime stored = parse(null, text).getLastUpdated();
+        return stored.equals(lastUpdated);
+    }
+
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    // Records read from disk so far, including ones read again after eviction
+    public synchronized int getLoadCount() {
+        return loads;
+    }
+
+    private PatientRecord load(Patient patient) {
+        loads++;
+        String text = null;
+        try {
+            text = archive.get(patient.getPatientId());
+        } catch (IOException e) {
+            System.err.println("Error reading record for patient " + patient.getPatientId() + ": " + e.getMessage());
+        }
+        return text != null ? parse(patient, text) : new PatientRecord(patient);
+    }
+
+    // One "name: value" line per field, list fields repeated once per item
+    static String format(PatientRecord rec) {
+        StringBuilder out = new StringBuilder();
+        line(out, "recordId", rec.getRecordId());
+        line(out, "bloodType", rec.getBloodType());
+        line(out, "lastUpdated", rec.getLastUpdated());
+        for (String a : rec.getAllergies()) {
+            line(out, "allergy", a);
+        }
+        for (String c : rec.getConditions()) {
+            line(out, "condition", c);
+        }
+        for (String m : rec.getMedications()) {
+            line(out, "medication", m);
+        }
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String name, Object value) {
+        if (value != null) {
+            out.append(name).append(": ").append(value.toString().replace('\n', ' ')).append('\n');
+        }
+    }
+
+    static PatientRecord parse(Patient patient, String text) {
+        String recordId = null;
+        String bloodType = null;
+        LocalDateTime lastUpdated = null;
+        List<String> allergies = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        List<String> medications = new ArrayList<>();
+
+        for (String line : text.split("\n")) {
+            int colon = line.indexOf(": ");
+            if (colon < 0) {
+                continue;
+            }
+            String value = line.substring(colon + 2);
+            switch (line.substring(0, colon)) {
+                case "recordId": recordId = value; break;
+                case "bloodType": bloodType = value; break;
+                case "lastUpdated": lastUpdated = parseTime(patient, value); break;
+                case "allergy": allergies.add(value); break;
+                case "condition": conditions.add(value); break;
+                case "medication": medications.add(value); break;
+                default: break;
+            }
+        }
+        return new PatientRecord(patient, recordId, bloodType, allergies, conditions, medications, lastUpdated);
+    }
+
+    // A damaged timestamp shouldn't lose the record; it is stamped as read now instead
+    private static LocalDateTime parseTime(Patient patient, String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            System.err.println("Bad lastUpdated in record for patient "
+                    + (patient != null ? patient.getPatientId() : "?") + ": " + value);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Pending referrals ordered by urgency (Emergency, Urgent, Routine, then anything
+ * else) and then by referral date, oldest first. Referrals with the same urgency
+ * and date keep the order they were queued in.
+ *
+ * Entries are kept in a sorted tree with a second map from referral id to tree key,
+ * so offer, remove and reprioritise are all O(log n) and the queue can be iterated
+ * in priority order without copying it.
+ */
+public class PendingReferralQueue {
+
+    private static class Key implements Comparable<Key> {
+        final int rank;
+        final LocalDate date;
+        final long seq;
+
+        Key(int rank, LocalDate date, long seq) {
+            this.rank = rank;
+            this.date = date;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            if (rank != o.rank) {
+                return Integer.compare(rank, o.rank);
+            }
+            if (date != null && o.date != null) {
+                int c = date.compareTo(o.date);
+                if (c != 0) return c;
+            } else if (date != o.date) {
+                return date == null ? 1 : -1;   // undated last
+            }
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    private final TreeMap<Key, Referral> queue = new TreeMap<>();
+    private final Map<String, Key> keys = new HashMap<>();
+    private final Collection<Referral> view = Collections.unmodifiableCollection(queue.values());
+    private long nextSeq;
+
+    public static int urgencyRank(String urgencyLevel) {
+        if (urgencyLevel == null) return 3;
+        switch (urgencyLevel.trim().toLowerCase()) {
+            case "emergency": return 0;
+            case "urgent":    return 1;
+            case "routine":   return 2;
+            default:          return 3;
+        }
+    }
+
+    // Adds the referral, or moves it if its id is already queued
+    public void offer(Referral ref) {
+        Key old = keys.remove(ref.getReferralId());
+        long seq = nextSeq++;
+        if (old != null) {
+            queue.remove(old);
+            seq = old.seq;   // keep its place among equals
+        }
+        Key key = new Key(urgencyRank(ref.getUrgencyLevel()), ref.getReferralDate(), seq);
+        keys.put(ref.getReferralId(), key);
+        queue.put(key, ref);
+    }
+
+    public Referral remove(String referralId) {
+        Key key = keys.remove(referralId);
+        return key != null ? queue.remove(key) : null;
+    }
+
+    // Re-sort a queued referral after its urgency or date changed
+    public boolean reprioritise(String referralId) {
+        Key key = keys.get(referralId);
+        if (key == null) {
+            return false;
+        }
+        offer(queue.get(key));
+        return true;
+    }
+
+    public boolean contains(String referralId) {
+        return keys.containsKey(referralId);
+    }
+
+    // Highest priority referral, or null
+    public Referral peek() {
+        Map.Entry<Key, Referral> first = queue.firstEntry();
+        return first != null ? first.getValue() : null;
+    }
+
+    public Referral poll() {
+        Map.Entry<Key, Referral> first = queue.pollFirstEntry();
+        if (first == null) {
+            return null;
+        }
+        keys.remove(first.getValue().getReferralId());
+        return first.getValue();
+    }
+
+    // Live read-only view in priority order
+    public Collection<Referral> view() {
+        return view;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public void clear() {
+        queue.clear();
+        keys.clear();
+    }
+}
@@ -0,0 +1,149 @@
+package model;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Screens a prescription against the patient's allergies, recorded medications
+ * and other active prescriptions.
+ *
+ * The drug dictionary (term,drug_class rows, e.g. "amoxicillin,penicillin") is
+ * compiled once into an Aho-Corasick matcher; each class name is a term too, so
+ * an allergy written as "Penicillin" or "NSAIDs" is understood. A free-text
+ * medication or allergy is reduced to the set of classes it mentions, and a
+ * check is just a few set intersections:
+ *  - an allergy class shared with the new medication is an allergy alert;
+ *  - a class shared with another current medication is a duplicate therapy alert.
+ *
+ * Instances are immutable; load a new one to pick up an edited dictionary.
+ */
+public class PrescriptionChecker {
+
+    private final AhoCorasick<Integer> matcher = new AhoCorasick<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final int termCount;
+
+    private PrescriptionChecker(Map<String, Set<String>> dictionary) {
+        Map<String, Integer> classIds = new HashMap<>();
+        for (Map.Entry<String, Set<String>> term : dictionary.entrySet()) {
+            for (String drugClass : term.getValue()) {
+                Integer id = classIds.get(drugClass);
+                if (id == null) {
+                    id = classNames.size();
+                    classIds.put(drugClass, id);
+                    classNames.add(drugClass);
+                    matcher.add(drugClass, id);
+                }
+                matcher.add(term.getKey(), id);
+            }
+        }
+        matcher.build();
+        termCount = dictionary.size();
+    }
+
+    // Read the dictionary file; a missing or unreadable file gives a checker that never alerts
+    public static PrescriptionChecker load(String filename) {
+        File file = new File(filename);
+        if (!file.exists()) {
+            System.err.println("Drug dictionary " + filename + " not found - prescriptions will not be screened");
+            return new PrescriptionChecker(new LinkedHashMap<>());
+        }
+        try (Reader in = new FileReader(file)) {
+            return read(in);
+        } catch (IOException e) {
+            System.err.println("Error reading drug dictionary " + filename + ": " + e.getMessage());
+            return new PrescriptionChecker(new LinkedHashMap<>());
+        }
+    }
+
+    // Build from term,drug_class CSV text (header first), e.g. a dictionary held in memory
+    public static PrescriptionChecker read(Reader reader) throws IOException {
+        Map<String, Set<String>> dictionary = new LinkedHashMap<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line = in.readLine();   // header
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.split(",");
+            if (parts.length < 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                continue;
+            }
+            dictionary.computeIfAbsent(parts[0].trim().toLowerCase(), k -> new LinkedHashSet<>())
+                    .add(parts[1].trim().toLowerCase());
+        }
+        return new PrescriptionChecker(dictionary);
+    }
+
+    /**
+     * Alerts for giving rx to the patient with this record, who is also on the
+     * other prescriptions (rx itself is skipped if it's among them). Empty if
+     * nothing was found.
+     */
+    public List<String> check(Prescription rx, PatientRecord record, Collection<Prescription> others) {
+        List<String> alerts = new ArrayList<>();
+        String medication = rx.getMedicationName();
+        if (medication == null) {
+            return alerts;
+        }
+        BitSet classes = classesOf(medication);
+        if (classes.isEmpty()) {
+            return alerts;
+        }
+
+        if (record != null) {
+            for (String allergy : record.getAllergies()) {
+                BitSet shared = shared(classes, allergy);
+                if (!shared.isEmpty()) {
+                    alerts.add("ALLERGY: " + medication + " (" + describe(shared) +
+                            ") - patient is allergic to " + allergy);
+                }
+            }
+            for (String current : record.getMedications()) {
+                BitSet shared = shared(classes, current);
+                if (!shared.isEmpty()) {
+                    alerts.add("DUPLICATE THERAPY: " + medication + " and current medication " +
+                            current + " are both " + describe(shared));
+                }
+            }
+        }
+
+        for (Prescription other : others) {
+            if (other.getPrescriptionId().equals(rx.getPrescriptionId()) || other.getMedicationName() == null) {
+                continue;
+            }
+            BitSet shared = shared(classes, other.getMedicationName());
+            if (!shared.isEmpty()) {
+                alerts.add("DUPLICATE THERAPY: " + medication + " and " + other.getMedicationName() +
+                        " (" + other.getPrescriptionId() + ") are both " + describe(shared));
+            }
+        }
+        return alerts;
+    }
+
+    // Drug classes mentioned anywhere in the text
+    public BitSet classesOf(String text) {
+        BitSet classes = new BitSet(classNames.size());
+        matcher.match(text, (length, id) -> classes.set(id));
+        return classes;
+    }
+
+    private BitSet shared(BitSet classes, String text) {
+        BitSet shared = classesOf(text);
+        shared.and(classes);
+        return shared;
+    }
+
+    private String describe(BitSet classes) {
+        StringJoiner names = new StringJoiner(", ");
+        for (int i = classes.nextSetBit(0); i >= 0; i = classes.nextSetBit(i + 1)) {
+            names.add(classNames.get(i));
+        }
+        return names.toString();
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getClassCount() {
+        return classNames.size();
+    }
+}
@@ -0,0 +1,274 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Moves prescriptions through their lifecycle by date:
+ *  - an uncollected prescription is valid for VALID_DAYS from issue, and is
+ *    "expiring soon" for the last few of them (-Dprescription.expiry.warning.days,
+ *    default 7); if it still hasn't been collected by then it is Expired;
+ *  - a collected prescription is Completed once its course (durationDays from
+ *    collection) has run out.
+ *
+ * Each tracked prescription has just its next transition waiting in a queue
+ * ordered by date, so advancing to a new day only looks at what falls due then,
+ * not at every prescription. Re-tracking or untracking leaves the old entry in
+ * the queue marked dead; dead entries are skipped when they come up and the
+ * queue is rebuilt if they start to outnumber the live ones.
+ *
+ * Counts of uncollected and expiring-soon items are kept per pharmacy as things
+ * change, so reading them costs nothing. Not thread-safe: use it from one thread
+ * (PrescriptionController keeps it on the EDT).
+ */
+public class PrescriptionLifecycle {
+
+    public static final int VALID_DAYS = 28;
+
+    public static final String ISSUED = "Issued";
+    public static final String COLLECTED = "Collected";
+    public static final String EXPIRED = "Expired";
+    public static final String COMPLETED = "Completed";
+
+    private static final String NO_PHARMACY = "(no pharmacy)";
+
+    private enum Stage { UNCOLLECTED, EXPIRING, COLLECTED }
+
+    // A tracked prescription; replaced, not changed, when it is tracked again
+    private static class Entry {
+        final Prescription rx;
+        final String pharmacy;
+        final LocalDate expiry;      // uncollected: no longer valid from this day
+        final LocalDate completion;  // collected: course over from this day
+        Stage stage;
+        boolean dead;
+
+        Entry(Prescription rx, String pharmacy, LocalDate expiry, LocalDate completion, Stage stage) {
+            this.rx = rx;
+            this.pharmacy = pharmacy;
+            this.expiry = expiry;
+            this.completion = completion;
+            this.stage = stage;
+        }
+    }
+
+    // The next thing due for an entry, on a given day
+    private static class Event implements Comparable<Event> {
+        final LocalDate date;
+        final Entry entry;
+
+        Event(LocalDate date, Entry entry) {
+            this.date = date;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return date.compareTo(o.date);
+        }
+    }
+
+    // Uncollected and expiring-soon items at one pharmacy
+    public static class PharmacyCounts {
+        private final String pharmacy;
+        private int uncollected;
+        private int expiringSoon;
+
+        PharmacyCounts(String pharmacy) {
+            this.pharmacy = pharmacy;
+        }
+
+        PharmacyCounts(PharmacyCounts c) {
+            this(c.pharmacy);
+            uncollected = c.uncollected;
+            expiringSoon = c.expiringSoon;
+        }
+
+        public String getPharmacy() { return pharmacy; }
+
+        // Not yet collected and still valid, including those expiring soon
+        public int getUncollected() { return uncollected; }
+
+        public int getExpiringSoon() { return expiringSoon; }
+    }
+
+    private final int warningDays = Integer.getInteger("prescription.expiry.warning.days", 7);
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, PharmacyCounts> counts = new TreeMap<>();
+    private int deadEvents;
+    private LocalDate today;
+
+    public PrescriptionLifecycle(LocalDate today) {
+        this.today = today;
+    }
+
+    // Issued or collected prescriptions move on by date; anything else is left alone
+    public static boolean isTracked(Prescription rx) {
+        return ISSUED.equalsIgnoreCase(rx.getStatus()) || COLLECTED.equalsIgnoreCase(rx.getStatus());
+    }
+
+    // The first day an uncollected prescription is no longer valid
+    public static LocalDate expiryOf(Prescription rx) {
+        LocalDate issued = rx.getIssueDate() != null ? rx.getIssueDate() : rx.getPrescriptionDate();
+        return issued != null ? issued.plusDays(VALID_DAYS) : null;
+    }
+
+    // The day a collected prescription's course runs out
+    public static LocalDate completionOf(Prescription rx) {
+        LocalDate collected = rx.getCollectionDate() != null ? rx.getCollectionDate() : rx.getIssueDate();
+        return collected != null && rx.getDurationDays() > 0 ? collected.plusDays(rx.getDurationDays()) : null;
+    }
+
+    /**
+     * Start (or restart, after an edit) tracking a prescription. If it is
+     * already overdue the transition is made on the next advance().
+     */
+    public void track(Prescription rx) {
+        untrack(rx.getPrescriptionId());
+        if (!isTracked(rx)) {
+            return;
+        }
+
+        boolean collected = rx.getCollectionDate() != null || COLLECTED.equalsIgnoreCase(rx.getStatus());
+        String pharmacy = rx.getPharmacyName() == null || rx.getPharmacyName().isBlank()
+                ? NO_PHARMACY : rx.getPharmacyName();
+        Entry e;
+        if (collected) {
+            LocalDate completion = completionOf(rx);
+            if (completion == null) {
+                return;   // no course length - nothing to wait for
+            }
+            e = new Entry(rx, pharmacy, null, completion, Stage.COLLECTED);
+            queue.add(new Event(completion, e));
+        } else {
+            LocalDate expiry = expiryOf(rx);
+            if (expiry == null) {
+                return;
+            }
+            LocalDate warnFrom = expiry.minusDays(warningDays);
+            e = new Entry(rx, pharmacy, expiry, null, today.isBefore(warnFrom) ? Stage.UNCOLLECTED : Stage.EXPIRING);
+            queue.add(new Event(e.stage == Stage.UNCOLLECTED ? warnFrom : expiry, e));
+            count(e, 1);
+        }
+        entries.put(rx.getPrescriptionId(), e);
+    }
+
+    // Stop tracking (deleted, cancelled, or about to be tracked again)
+    public void untrack(String prescriptionId) {
+        Entry e = entries.remove(prescriptionId);
+        if (e != null) {
+            e.dead = true;
+            deadEvents++;
+            count(e, -1);
+            compactIfNeeded();
+        }
+    }
+
+    public void clear() {
+        queue.clear();
+        entries.clear();
+        counts.clear();
+        deadEvents = 0;
+    }
+
+    /**
+     * Make every transition due up to and including the given day, setting the
+     * prescriptions' status. Returns those whose status changed, oldest
+     * transition first.
+     */
+    public List<Prescription> advance(LocalDate to) {
+        if (to.isAfter(today)) {
+            today = to;
+        }
+        List<Prescription> changed = new ArrayList<>();
+        while (!queue.isEmpty() && !queue.peek().date.isAfter(today)) {
+            Event ev = queue.poll();
+            Entry e = ev.entry;
+            if (e.dead) {
+                deadEvents--;
+                continue;
+            }
+            switch (e.stage) {
+                case UNCOLLECTED:
+                    count(e, -1);
+                    e.stage = Stage.EXPIRING;
+                    count(e, 1);
+                    queue.add(new Event(e.expiry, e));
+                    break;
+                case EXPIRING:
+                    finish(e, EXPIRED);
+                    changed.add(e.rx);
+                    break;
+                case COLLECTED:
+                    finish(e, COMPLETED);
+                    changed.add(e.rx);
+                    break;
+            }
+        }
+        return changed;
+    }
+
+    private void finish(Entry e, String status) {
+        count(e, -1);
+        entries.remove(e.rx.getPrescriptionId());
+        e.rx.setStatus(status);
+    }
+
+    private void count(Entry e, int delta) {
+        if (e.stage == Stage.COLLECTED) {
+            return;
+        }
+        PharmacyCounts c = counts.computeIfAbsent(e.pharmacy, PharmacyCounts::new);
+        c.uncollected += delta;
+        if (e.stage == Stage.EXPIRING) {
+            c.expiringSoon += delta;
+        }
+        if (c.uncollected == 0) {
+            counts.remove(e.pharmacy);
+        }
+    }
+
+    // Dead entries only leave the queue when they reach the front; drop them early if they pile up
+    private void compactIfNeeded() {
+        if (deadEvents < 64 || deadEvents < queue.size() / 2) {
+            return;
+        }
+        List<Event> live = new ArrayList<>(queue.size() - deadEvents);
+        for (Event ev : queue) {
+            if (!ev.entry.dead) {
+                live.add(ev);
+            }
+        }
+        queue.clear();
+        queue.addAll(live);
+        deadEvents = 0;
+    }
+
+    // Counts for every pharmacy with something uncollected, by name
+    public List<PharmacyCounts> getPharmacyCounts() {
+        List<PharmacyCounts> list = new ArrayList<>(counts.size());
+        for (PharmacyCounts c : counts.values()) {
+            list.add(new PharmacyCounts(c));
+        }
+        return list;
+    }
+
+    public int getUncollectedCount(String pharmacy) {
+        PharmacyCounts c = counts.get(pharmacy);
+        return c != null ? c.uncollected : 0;
+    }
+
+    public int getExpiringSoonCount(String pharmacy) {
+        PharmacyCounts c = counts.get(pharmacy);
+        return c != null ? c.expiringSoon : 0;
+    }
+
+    public int getTrackedCount() {
+        return entries.size();
+    }
+
+    public int getWarningDays() {
+        return warningDays;
+    }
+}
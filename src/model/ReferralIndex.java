@@ -0,0 +1,87 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Lookup tables from patient, clinician, facility and status to referrals.
+ * A referral is listed under both its referring and referred-to clinician and
+ * facility. Status keys are case-insensitive. Each bucket keeps the order
+ * referrals were indexed in, and a lookup costs only the size of its result.
+ *
+ * Fields used as keys must not change while a referral is indexed - remove it,
+ * change it, then add it again.
+ */
+public class ReferralIndex {
+
+    private final Map<String, Set<Referral>> byPatient = new HashMap<>();
+    private final Map<String, Set<Referral>> byClinician = new HashMap<>();
+    private final Map<String, Set<Referral>> byFacility = new HashMap<>();
+    private final Map<String, Set<Referral>> byStatus = new HashMap<>();
+
+    public void add(Referral ref) {
+        put(byPatient, ref.getPatientId(), ref);
+        put(byClinician, ref.getReferringClinicianId(), ref);
+        put(byClinician, ref.getReferredToClinicianId(), ref);
+        put(byFacility, ref.getReferringFacilityId(), ref);
+        put(byFacility, ref.getReferredToFacilityId(), ref);
+        put(byStatus, statusKey(ref.getStatus()), ref);
+    }
+
+    public void remove(Referral ref) {
+        take(byPatient, ref.getPatientId(), ref);
+        take(byClinician, ref.getReferringClinicianId(), ref);
+        take(byClinician, ref.getReferredToClinicianId(), ref);
+        take(byFacility, ref.getReferringFacilityId(), ref);
+        take(byFacility, ref.getReferredToFacilityId(), ref);
+        take(byStatus, statusKey(ref.getStatus()), ref);
+    }
+
+    public List<Referral> byPatient(String patientId) {
+        return get(byPatient, patientId);
+    }
+
+    public List<Referral> byClinician(String clinicianId) {
+        return get(byClinician, clinicianId);
+    }
+
+    public List<Referral> byFacility(String facilityId) {
+        return get(byFacility, facilityId);
+    }
+
+    public List<Referral> byStatus(String status) {
+        return get(byStatus, statusKey(status));
+    }
+
+    public void clear() {
+        byPatient.clear();
+        byClinician.clear();
+        byFacility.clear();
+        byStatus.clear();
+    }
+
+    private static String statusKey(String status) {
+        return status != null ? status.toLowerCase() : null;
+    }
+
+    private static void put(Map<String, Set<Referral>> index, String key, Referral ref) {
+        if (key == null || key.isEmpty()) {
+            return;
+        }
+        index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(ref);
+    }
+
+    private static void take(Map<String, Set<Referral>> index, String key, Referral ref) {
+        if (key == null) {
+            return;
+        }
+        Set<Referral> bucket = index.get(key);
+        if (bucket != null && bucket.remove(ref) && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static List<Referral> get(Map<String, Set<Referral>> index, String key) {
+        Set<Referral> bucket = (key != null) ? index.get(key) : null;
+        return bucket != null ? new ArrayList<>(bucket) : new ArrayList<>();
+    }
+}
@@ -1,44 +1,100 @@
 package model;
 
-import java.io.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Singleton class for managing referrals, emails, and EHR updates
+ *
+ * Safe to use from any thread. Writes are serialised on a StampedLock. Reads never
+ * block each other: single lookups use an optimistic read that is retried under
+ * the read lock if a write got in the way, and the full and pending lists are
+ * served from immutable snapshots that are rebuilt only after something changed.
  */
 public class ReferralManager {
 
-    private static ReferralManager instance;
+    private final StampedLock lock = new StampedLock();
 
-    private List<Referral> referrals;
-    private Map<String, Referral> registry;
-    private Queue<Referral> pending;
-    private List<String> auditLog;
-
-    // Output file paths
-    private static final String REFERRAL_FILE = "output_referrals.txt";
-    private static final String EMAIL_FILE = "output_emails.txt";
-    private static final String EHR_FILE = "output_ehr_updates.txt";
-    private static final String AUDIT_FILE = "referral_audit_log.txt";
+    // Rebuilt on the next read after a write; null means stale
+    private volatile List<Referral> allSnapshot;
+    private volatile List<Referral> pendingSnapshot;
 
-    private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private Map<String, Referral> registry;     // in insertion order - also the full list
+    private PendingReferralQueue pending;
+    private ReferralIndex index;
+    private List<String> auditLog;
+    private Set<String> dirty;                 // edited in memory, not yet saved
+    private int lastIdNumber;                  // highest R-number seen, so deleted ids are not handed out again
+
+    // Documents are rendered in the background once a referral is sent and stored by referral id
+    private final DocumentPipeline documents = new DocumentPipeline(2, 256);
+    private final DocumentArchive archive = new DocumentArchive(ARCHIVE_DIR, SEGMENT_BYTES,
+            !"false".equalsIgnoreCase(System.getProperty("archive.compress")));
+    private final List<BiConsumer<Referral, Throwable>> documentListeners = new CopyOnWriteArrayList<>();
+
+    // Deadlines for pending referrals; breaches are audited and passed to listeners
+    private final ReferralSlaMonitor sla = new ReferralSlaMonitor(this::onSlaBreach);
+    private final List<Consumer<Referral>> slaListeners = new CopyOnWriteArrayList<>();
+
+    // Breaches already reported (id and deadline), kept across runs so a restart doesn't repeat them
+    private final JournalFile breachJournal = new JournalFile(SLA_FILE);
+    private final Set<String> reportedBreaches = ConcurrentHashMap.newKeySet();
+
+    // Inserts, updates and deletes are published after the lock is released
+    private final ChangeBus bus = ChangeBus.getInstance();
+
+    // Referral emails are queued durably; they are delivered only if an SMTP host is configured
+    private final EmailOutbox outbox = new EmailOutbox(OUTBOX_FILE);
+    private SmtpDispatcher dispatcher;
+
+    // REFERRAL_SENT events for the EHR; posted only if an endpoint is configured
+    private final EhrSyncClient ehr = new EhrSyncClient(EHR_QUEUE_FILE);
+    private final Map<String, String> lastEhrEventIds = new ConcurrentHashMap<>();   // referral id -> latest send's event
+
+    // Kinds of document kept in the archive for each sent referral
+    public static final String DOC_REFERRAL = "referral";
+    public static final String DOC_EMAIL = "email";
+    public static final String DOC_EHR = "ehr";
+
+    // Output file paths, under the working directory unless referrals.dir says otherwise
+    private static final String OUTPUT_DIR = System.getProperty("referrals.dir", ".");
+    private static final String ARCHIVE_DIR = Paths.get(OUTPUT_DIR, "archive", "referrals").toString();
+    private static final long SEGMENT_BYTES = 4L * 1024 * 1024;
+    private static final String AUDIT_FILE = Paths.get(OUTPUT_DIR, "referral_audit_log.txt").toString();
+    private static final String OUTBOX_FILE = Paths.get(OUTPUT_DIR, "email_outbox.txt").toString();
+    private static final String EHR_QUEUE_FILE = Paths.get(OUTPUT_DIR, "ehr_sync_queue.txt").toString();
+    private static final String SLA_FILE = Paths.get(OUTPUT_DIR, "sla_breaches.txt").toString();
 
     private ReferralManager() {
-        referrals = new ArrayList<>();
-        registry = new HashMap<>();
-        pending = new LinkedList<>();
-        auditLog = new ArrayList<>();
+        registry = new LinkedHashMap<>();
+        pending = new PendingReferralQueue();
+        index = new ReferralIndex();
+        auditLog = Collections.synchronizedList(new ArrayList<>());
+        dirty = new LinkedHashSet<>();
         log("ReferralManager initialized");
+        loadReportedBreaches();
+        sla.start();
+        startEmailDispatcher();
+        startEhrSync();
     }
 
-    public static synchronized ReferralManager getInstance() {
-        if (instance == null) {
-            instance = new ReferralManager();
-        }
-        return instance;
+    // Created on first use by the class loader, so no lock is needed here
+    private static class Holder {
+        static final ReferralManager INSTANCE = new ReferralManager();
+    }
+
+    public static ReferralManager getInstance() {
+        return Holder.INSTANCE;
     }
 
     // Create a new referral with all details
@@ -47,6 +103,24 @@ public class ReferralManager {
                                    String referredToFacilityId, String urgencyLevel,
                                    String referralReason, String clinicalSummary,
                                    String requestedInvestigations, String notes) {
+        Referral ref;
+        long stamp = lock.writeLock();
+        try {
+            ref = create(patientId, referringClinicianId, referredToClinicianId, referringFacilityId,
+                    referredToFacilityId, urgencyLevel, referralReason, clinicalSummary,
+                    requestedInvestigations, notes);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        bus.inserted(Referral.class, ref);
+        return ref;
+    }
+
+    private Referral create(String patientId, String referringClinicianId,
+                            String referredToClinicianId, String referringFacilityId,
+                            String referredToFacilityId, String urgencyLevel,
+                            String referralReason, String clinicalSummary,
+                            String requestedInvestigations, String notes) {
         String id = generateId();
         LocalDate now = LocalDate.now();
 
@@ -69,9 +143,11 @@ public class ReferralManager {
                 now
         );
 
-        referrals.add(ref);
         registry.put(id, ref);
+        index.add(ref);
         pending.offer(ref);
+        sla.track(ref);
+        changed();
 
         log("Referral created: " + id + " for patient: " + patientId);
         return ref;
@@ -97,252 +173,679 @@ public class ReferralManager {
 
     // Add existing referral (for loading from CSV)
     public void addExistingReferral(Referral ref) {
-        if (ref == null || registry.containsKey(ref.getReferralId())) {
+        if (ref == null) {
             return;
         }
 
-        referrals.add(ref);
-        registry.put(ref.getReferralId(), ref);
+        long stamp = lock.writeLock();
+        try {
+            if (registry.containsKey(ref.getReferralId())) {
+                return;
+            }
 
-        String status = ref.getStatus();
-        if ("Pending".equalsIgnoreCase(status) || "New".equalsIgnoreCase(status)) {
-            pending.offer(ref);
+            registry.put(ref.getReferralId(), ref);
+            noteId(ref.getReferralId());
+            index.add(ref);
+
+            String status = ref.getStatus();
+            if ("Pending".equalsIgnoreCase(status) || "New".equalsIgnoreCase(status)) {
+                pending.offer(ref);
+                sla.track(ref);
+            }
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
         }
 
         log("Loaded referral: " + ref.getReferralId() +
                 " patient: " + ref.getPatientId() +
                 " status: " + ref.getStatus());
+        bus.inserted(Referral.class, ref);
     }
 
-    // Send referral and generate all documentation
+    /**
+     * Swap in a freshly loaded copy of a referral (the data file changed under
+     * us). It keeps its place in the list; any unsaved edit to it is dropped,
+     * as the file's version wins.
+     */
+    public boolean replaceReferral(Referral old, Referral fresh) {
+        long stamp = lock.writeLock();
+        try {
+            if (registry.get(old.getReferralId()) != old) {
+                return false;
+            }
+            index.remove(old);
+            pending.remove(old.getReferralId());
+            sla.untrack(old.getReferralId());
+            dirty.remove(old.getReferralId());
+
+            registry.put(fresh.getReferralId(), fresh);   // same key, so it keeps its place
+            noteId(fresh.getReferralId());
+            index.add(fresh);
+            String status = fresh.getStatus();
+            if ("Pending".equalsIgnoreCase(status) || "New".equalsIgnoreCase(status)) {
+                pending.offer(fresh);
+                sla.track(fresh);
+            }
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log("Reloaded referral: " + fresh.getReferralId() + " status: " + fresh.getStatus());
+        bus.updated(Referral.class, old, fresh);
+        return true;
+    }
+
+    /**
+     * Send a referral. The status change happens straight away; the referral letter,
+     * email and EHR update are rendered and written by the document pipeline, and
+     * document listeners are told when they are on disk (or failed).
+     * Blocks only if the pipeline already has a full backlog of documents.
+     */
     public boolean sendReferral(Referral ref, Patient patient,
                                 Clinician clinician, Facility facility) {
-        if (ref == null || "Sent".equalsIgnoreCase(ref.getStatus())) {
+        if (ref == null) {
             return false;
         }
 
+        long stamp = lock.writeLock();
         try {
+            // Checked under the lock so two threads can't both send it
+            if ("Sent".equalsIgnoreCase(ref.getStatus())) {
+                return false;
+            }
+
+            // Status and facility are index keys - take it out while they change
+            index.remove(ref);
             ref.setStatus("Sent");
             ref.setReferredToFacilityId(facility.getFacilityId());
             ref.setLastUpdated(LocalDate.now());
+            index.add(ref);
+            pending.remove(ref.getReferralId());
+            sla.untrack(ref.getReferralId());
+            dirty.add(ref.getReferralId());
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log("Referral sent: " + ref.getReferralId() + " to: " + facility.getFacilityName());
+        bus.updated(Referral.class, ref, ref);
+
+        // Queued (and journalled) before returning, so the email is on disk before the caller
+        // saves the "Sent" status. Each send has its own id: a referral reopened and sent again
+        // is emailed again, and the outbox never mistakes one send for another.
+        String sendId = UUID.randomUUID().toString();
+        String emailId = ref.getReferralId() + "-" + sendId;
+        if (!outbox.enqueue(new OutboundEmail(emailId, clinician.getEmail(), facility.getEmail(),
+                emailSubject(ref), emailBody(ref, patient, clinician, facility)))) {
+            log("ERROR email " + emailId + " was already queued");
+        }
+        String eventId = ehrEventId(ref, sendId);
+        lastEhrEventIds.put(ref.getReferralId(), eventId);
+        if (!ehr.enqueue(referralSentEvent(ref, patient, eventId))) {
+            log("ERROR EHR event " + eventId + " was already queued");
+        }
 
-            writeReferralDoc(ref, patient, clinician, facility);
-            writeEmail(ref, patient, clinician, facility);
-            writeEhrUpdate(ref, patient);
+        CompletableFuture<Void> written = documents.submit(() -> Arrays.asList(
+                new DocumentPipeline.Document(archive, archiveKey(DOC_REFERRAL, ref.getReferralId()),
+                        renderReferralDoc(ref, patient, clinician, facility)),
+                new DocumentPipeline.Document(archive, archiveKey(DOC_EMAIL, ref.getReferralId()),
+                        renderEmail(ref, patient, clinician, facility)),
+                new DocumentPipeline.Document(archive, archiveKey(DOC_EHR, ref.getReferralId()),
+                        renderEhrUpdate(ref, patient, eventId))));
+
+        written.whenComplete((v, err) -> {
+            if (err != null) {
+                log("ERROR writing documents for " + ref.getReferralId() + ": " + err.getMessage());
+            }
+            for (BiConsumer<Referral, Throwable> listener : documentListeners) {
+                listener.accept(ref, err);
+            }
+        });
+        return true;
+    }
 
-            pending.remove(ref);
-            log("Referral sent: " + ref.getReferralId() + " to: " + facility.getFacilityName());
-            return true;
+    // Called on a pipeline thread when a sent referral's documents are written (error is null on success)
+    public void addDocumentListener(BiConsumer<Referral, Throwable> listener) {
+        documentListeners.add(listener);
+    }
 
-        } catch (Exception e) {
-            log("ERROR sending " + ref.getReferralId() + ": " + e.getMessage());
-            return false;
+    // Called on the SLA monitor's thread when a pending referral passes its deadline
+    public void addSlaBreachListener(Consumer<Referral> listener) {
+        slaListeners.add(listener);
+    }
+
+    // Pending referrals already past their deadline
+    public List<Referral> getSlaBreaches() {
+        List<Referral> result = new ArrayList<>();
+        for (String id : sla.getBreachedIds()) {
+            Referral ref = getReferralById(id);
+            if (ref != null) {
+                result.add(ref);
+            }
         }
+        return result;
     }
 
-    private void writeReferralDoc(Referral ref, Patient pat,
-                                  Clinician clin, Facility fac) {
-        StringBuilder doc = new StringBuilder();
-
-        doc.append("=====================================\n");
-        doc.append("     MEDICAL REFERRAL DOCUMENT\n");
-        doc.append("=====================================\n\n");
-
-        doc.append(">> REFERRAL INFO\n");
-        doc.append("ID:       ").append(ref.getReferralId()).append("\n");
-        doc.append("Date:     ").append(ref.getReferralDate()).append("\n");
-        doc.append("Urgency:  ").append(ref.getUrgencyLevel()).append("\n");
-        doc.append("Status:   ").append(ref.getStatus()).append("\n\n");
-
-        doc.append(">> PATIENT\n");
-        doc.append("Name:     ").append(pat.getFullName()).append("\n");
-        doc.append("NHS#:     ").append(pat.getNhsNumber()).append("\n");
-        doc.append("DOB:      ").append(pat.getDateOfBirth()).append("\n");
-        doc.append("Age:      ").append(pat.getAge()).append(" years\n");
-        doc.append("Gender:   ").append(pat.getGender()).append("\n");
-        doc.append("Phone:    ").append(pat.getPhoneNumber()).append("\n");
-        doc.append("Email:    ").append(pat.getEmail()).append("\n\n");
-
-        doc.append(">> REFERRING CLINICIAN\n");
-        doc.append("Name:     Dr. ").append(clin.getFullName()).append("\n");
-        doc.append("License:  ").append(clin.getLicenseNumber()).append("\n");
-        doc.append("Specialty: ").append(clin.getSpecialization()).append("\n");
-        doc.append("Email:    ").append(clin.getEmail()).append("\n\n");
-
-        doc.append(">> DESTINATION FACILITY\n");
-        doc.append("Facility: ").append(fac.getFacilityName()).append("\n");
-        doc.append("Type:     ").append(fac.getFacilityType()).append("\n");
-        doc.append("Address:  ").append(fac.getAddress()).append("\n");
-        doc.append("Phone:    ").append(fac.getPhoneNumber()).append("\n");
-        doc.append("Email:    ").append(fac.getEmail()).append("\n\n");
-
-        doc.append(">> CLINICAL INFO\n");
-        doc.append("Reason:\n").append(nullSafe(ref.getReferralReason())).append("\n\n");
-        doc.append("Clinical Summary:\n").append(nullSafe(ref.getClinicalSummary())).append("\n\n");
-        doc.append("Requested Investigations:\n").append(nullSafe(ref.getRequestedInvestigations())).append("\n\n");
-        doc.append("Additional Notes:\n").append(nullSafe(ref.getNotes())).append("\n\n");
-
-        doc.append(">> MEDICAL HISTORY\n");
-        PatientRecord rec = pat.getPatientRecord();
-        if (rec != null) {
-            doc.append("Allergies:   ").append(listOrNone(rec.getAllergies())).append("\n");
-            doc.append("Conditions:  ").append(listOrNone(rec.getConditions())).append("\n");
-            doc.append("Medications: ").append(listOrNone(rec.getMedications())).append("\n\n");
-        } else {
-            doc.append("No medical history available.\n\n");
+    // Number of pending referrals past their deadline, without building the list
+    public int getSlaBreachCount() {
+        return sla.getBreachedCount();
+    }
+
+    private void loadReportedBreaches() {
+        try {
+            for (String[] record : breachJournal.readAll()) {
+                reportedBreaches.add(breachKey(record[0], Long.parseLong(record[1])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not read reported SLA breaches: " + e.getMessage());
         }
+    }
+
+    private static String breachKey(String referralId, long deadlineMillis) {
+        return referralId + "@" + deadlineMillis;
+    }
 
-        doc.append("=====================================\n");
-        doc.append("Generated: ").append(now()).append("\n");
-        doc.append("=====================================\n\n\n");
+    private void onSlaBreach(Referral ref) {
+        // It may have been sent or edited since the timer fired
+        boolean stillPending = read(() -> registry.get(ref.getReferralId()) == ref
+                && pending.contains(ref.getReferralId()));
+        if (!stillPending) {
+            return;
+        }
 
-        appendToFile(REFERRAL_FILE, doc.toString());
+        // Every overdue referral fires again when it is loaded on startup - report each breach once.
+        // A new deadline (urgency or date changed) is a new breach.
+        long deadline = ReferralSlaMonitor.deadlineOf(ref).toEpochMilli();
+        if (!reportedBreaches.add(breachKey(ref.getReferralId(), deadline))) {
+            return;
+        }
+        breachJournal.append(ref.getReferralId(), String.valueOf(deadline));
+
+        log("SLA BREACH: " + ref.getReferralId() + " (" + ref.getUrgencyLevel() + ") still " +
+                ref.getStatus() + ", referred " + ref.getReferralDate() +
+                ", deadline " + ReferralSlaMonitor.deadlineOf(ref));
+        for (Consumer<Referral> listener : slaListeners) {
+            listener.accept(ref);
+        }
     }
 
-    private void writeEmail(Referral ref, Patient pat,
-                            Clinician clin, Facility fac) {
-        StringBuilder email = new StringBuilder();
+    /**
+     * Start delivering queued emails if an SMTP server is configured with the
+     * system properties smtp.host, smtp.port (default 25), smtp.connections
+     * (default 2) and smtp.batch (default 50). Without smtp.host, emails stay
+     * in the outbox until a later run has one.
+     */
+    private void startEmailDispatcher() {
+        String host = System.getProperty("smtp.host");
+        if (host == null || host.isEmpty()) {
+            return;
+        }
+        try {
+            int port = Integer.parseInt(System.getProperty("smtp.port", "25"));
+            int connections = Integer.parseInt(System.getProperty("smtp.connections", "2"));
+            int batch = Integer.parseInt(System.getProperty("smtp.batch", "50"));
+            dispatcher = new SmtpDispatcher(outbox, host, port, connections, batch);
+            dispatcher.start();
+            log("Email dispatcher started: " + host + ":" + port + " x" + connections);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid SMTP setting: " + e.getMessage());
+        }
+    }
 
-        email.append("=====================================\n");
-        email.append("      EMAIL - REFERRAL NOTICE\n");
-        email.append("=====================================\n\n");
+    /**
+     * Start posting EHR events if -Dehr.endpoint is set to the EHR's URL
+     * (batch size from ehr.batch, default 100). Otherwise they stay queued.
+     */
+    private void startEhrSync() {
+        String endpoint = System.getProperty("ehr.endpoint");
+        if (endpoint == null || endpoint.isEmpty()) {
+            return;
+        }
+        try {
+            int batch = Integer.parseInt(System.getProperty("ehr.batch", "100"));
+            ehr.start(URI.create(endpoint), batch);
+            log("EHR sync started: " + endpoint);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid EHR setting: " + e.getMessage());
+        }
+    }
 
-        email.append("To:      ").append(fac.getEmail()).append("\n");
-        email.append("From:    ").append(clin.getEmail()).append("\n");
-        email.append("Subject: New Patient Referral - ").append(ref.getUrgencyLevel()).append(" Priority\n");
-        email.append("Date:    ").append(now()).append("\n\n");
+    // EHR events queued but not yet acknowledged
+    public int getEhrUpdatesPending() {
+        return ehr.getPendingCount();
+    }
 
-        email.append("Dear Specialist Team,\n\n");
-        email.append("I am referring the following patient for consultation:\n\n");
+    /**
+     * Whether the EHR acknowledged the referral's latest send. For referrals sent before
+     * this run, true if the EHR acknowledged any send of it.
+     */
+    public boolean isEhrUpdateAcknowledged(Referral ref) {
+        String eventId = lastEhrEventIds.get(ref.getReferralId());
+        if (eventId != null) {
+            return ehr.isAcknowledged(eventId);
+        }
+        return ehr.isAnyAcknowledged(ehrEventId(ref, ""));
+    }
 
-        email.append("Patient:   ").append(pat.getFullName()).append("\n");
-        email.append("NHS#:      ").append(pat.getNhsNumber()).append("\n");
-        email.append("Ref ID:    ").append(ref.getReferralId()).append("\n");
-        email.append("Urgency:   ").append(ref.getUrgencyLevel()).append("\n");
-        email.append("Facility:  ").append(fac.getFacilityName()).append("\n\n");
+    // Emails queued but not yet delivered
+    public int getEmailsPending() {
+        return outbox.getPendingCount();
+    }
 
-        email.append("Reason for Referral:\n").append(nullSafe(ref.getReferralReason())).append("\n\n");
-        email.append("Clinical Summary:\n").append(nullSafe(ref.getClinicalSummary())).append("\n\n");
+    // Referrals sent whose documents are not on disk yet
+    public int getDocumentsInFlight() {
+        return documents.getInFlightCount();
+    }
 
-        if (ref.getRequestedInvestigations() != null && !ref.getRequestedInvestigations().isEmpty()) {
-            email.append("Requested Investigations:\n").append(ref.getRequestedInvestigations()).append("\n\n");
+    // A stored document (DOC_REFERRAL, DOC_EMAIL or DOC_EHR), or null if the referral has none yet
+    public String getStoredDocument(String referralId, String kind) {
+        try {
+            return archive.get(archiveKey(kind, referralId));
+        } catch (IOException e) {
+            System.err.println("Error reading " + kind + " document for " + referralId + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        email.append("Full documentation attached.\n");
-        email.append("Patient contact: ").append(pat.getPhoneNumber()).append("\n\n");
+    private static String archiveKey(String kind, String referralId) {
+        return kind + "/" + referralId;
+    }
 
-        email.append("Best regards,\n");
-        email.append("Dr. ").append(clin.getFullName()).append("\n");
-        email.append(clin.getSpecialization()).append("\n");
-        email.append("License: ").append(clin.getLicenseNumber()).append("\n\n");
+    // Fill in every field the referral templates know about; each template uses what it needs
+    private DocumentTemplate.Values referralValues(String template, Referral ref, Patient pat,
+                                                   Clinician clin, Facility fac) {
+        DocumentTemplate.Values v = DocumentTemplates.get(template).values()
+                .put("referralId", ref.getReferralId())
+                .put("referralDate", ref.getReferralDate())
+                .put("urgency", ref.getUrgencyLevel())
+                .put("status", ref.getStatus())
+                .put("reason", ref.getReferralReason())
+                .put("reasonOrNA", nullSafe(ref.getReferralReason()))
+                .put("clinicalSummaryOrNA", nullSafe(ref.getClinicalSummary()))
+                .put("investigations", ref.getRequestedInvestigations())
+                .put("investigationsOrNA", nullSafe(ref.getRequestedInvestigations()))
+                .put("notesOrNA", nullSafe(ref.getNotes()))
+                .put("facilityId", ref.getReferredToFacilityId())
+                .put("generated", DocumentTemplates.timestamp());
+
+        if (pat != null) {
+            v.put("patientName", pat.getFullName())
+                    .put("nhsNumber", pat.getNhsNumber())
+                    .put("dateOfBirth", pat.getDateOfBirth())
+                    .put("age", pat.getAge())
+                    .put("gender", pat.getGender())
+                    .put("patientPhone", pat.getPhoneNumber())
+                    .put("patientEmail", pat.getEmail());
+
+            PatientRecord rec = pat.getPatientRecord();
+            if (rec != null) {
+                v.put("hasRecord", "yes")
+                        .put("allergies", listOrNone(rec.getAllergies()))
+                        .put("conditions", listOrNone(rec.getConditions()))
+                        .put("medications", listOrNone(rec.getMedications()));
+            }
+        }
+        if (clin != null) {
+            v.put("clinicianName", clin.getFullName())
+                    .put("licenseNumber", clin.getLicenseNumber())
+                    .put("specialization", clin.getSpecialization())
+                    .put("clinicianEmail", clin.getEmail());
+        }
+        if (fac != null) {
+            v.put("facilityName", fac.getFacilityName())
+                    .put("facilityType", fac.getFacilityType())
+                    .put("facilityAddress", fac.getAddress())
+                    .put("facilityPhone", fac.getPhoneNumber())
+                    .put("facilityEmail", fac.getEmail());
+        }
+        return v;
+    }
 
-        email.append("=====================================\n\n\n");
+    private String renderReferralDoc(Referral ref, Patient pat,
+                                     Clinician clin, Facility fac) {
+        return referralValues(DocumentTemplates.REFERRAL, ref, pat, clin, fac).render();
+    }
 
-        appendToFile(EMAIL_FILE, email.toString());
+    private String renderEmail(Referral ref, Patient pat,
+                               Clinician clin, Facility fac) {
+        return referralValues(DocumentTemplates.EMAIL, ref, pat, clin, fac)
+                .put("to", fac.getEmail())
+                .put("from", clin.getEmail())
+                .put("subject", emailSubject(ref))
+                .put("body", emailBody(ref, pat, clin, fac))
+                .render();
     }
 
-    private void writeEhrUpdate(Referral ref, Patient pat) {
-        StringBuilder update = new StringBuilder();
+    private String emailSubject(Referral ref) {
+        return referralValues(DocumentTemplates.EMAIL_SUBJECT, ref, null, null, null).render();
+    }
 
-        update.append("=====================================\n");
-        update.append("        NHS EHR SYSTEM UPDATE\n");
-        update.append("=====================================\n\n");
+    // The letter itself - written to the email log and sent through the outbox
+    private String emailBody(Referral ref, Patient pat, Clinician clin, Facility fac) {
+        return referralValues(DocumentTemplates.EMAIL_BODY, ref, pat, clin, fac).render();
+    }
+
+    private EhrEvent referralSentEvent(Referral ref, Patient pat, String eventId) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("timestamp", now());
+        fields.put("nhsNumber", pat.getNhsNumber());
+        fields.put("referralId", ref.getReferralId());
+        fields.put("facilityId", ref.getReferredToFacilityId());
+        fields.put("urgency", ref.getUrgencyLevel());
+        fields.put("status", ref.getStatus());
+        fields.put("referralDate", String.valueOf(ref.getReferralDate()));
+        fields.put("reason", ref.getReferralReason());
+        return new EhrEvent(eventId, "REFERRAL_SENT", fields);
+    }
 
-        update.append("Type:      REFERRAL_SENT\n");
-        update.append("Timestamp: ").append(now()).append("\n");
-        update.append("NHS#:      ").append(pat.getNhsNumber()).append("\n");
-        update.append("Ref ID:    ").append(ref.getReferralId()).append("\n\n");
+    // One per send, like the email id, so the EHR never drops a later send as a repeat
+    private static String ehrEventId(Referral ref, String sendId) {
+        return "REFERRAL_SENT-" + ref.getReferralId() + "-" + sendId;
+    }
 
-        update.append("ACTION:    Add referral to patient EHR\n");
-        update.append("Facility:  ").append(ref.getReferredToFacilityId()).append("\n");
-        update.append("Urgency:   ").append(ref.getUrgencyLevel()).append("\n");
-        update.append("Status:    ").append(ref.getStatus()).append("\n");
-        update.append("Date:      ").append(ref.getReferralDate()).append("\n");
-        update.append("Reason:    ").append(nullSafe(ref.getReferralReason())).append("\n\n");
+    private String renderEhrUpdate(Referral ref, Patient pat, String eventId) {
+        return referralValues(DocumentTemplates.EHR_UPDATE, ref, pat, null, null)
+                .put("eventId", eventId)
+                .render();
+    }
 
-        update.append("SYNC: SUCCESS\n");
-        update.append("=====================================\n\n\n");
+    /**
+     * Replace a referral with an edited copy, keeping its place in the list and the
+     * pending queue. Writes one audit entry listing the fields that changed and marks
+     * the referral dirty; the caller decides when to save.
+     */
+    public boolean updateReferral(Referral updated) {
+        if (updated == null) {
+            return false;
+        }
 
-        appendToFile(EHR_FILE, update.toString());
+        List<String> changes;
+        Referral existing;
+        long stamp = lock.writeLock();
+        try {
+            existing = registry.get(updated.getReferralId());
+            if (existing == null) {
+                return false;
+            }
+
+            changes = describeChanges(existing, updated);
+            if (changes.isEmpty() && existing == updated) {
+                return true;
+            }
+
+            index.remove(existing);
+            registry.put(updated.getReferralId(), updated);   // same key keeps its position
+            index.add(updated);
+
+            requeue(updated);
+
+            if (!changes.isEmpty()) {
+                dirty.add(updated.getReferralId());
+            }
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (!changes.isEmpty()) {
+            log("Referral updated: " + updated.getReferralId() + " " + String.join("; ", changes));
+        }
+        bus.updated(Referral.class, existing, updated);
+        return true;
+    }
+
+    /**
+     * Change a referral in place - used to clear a reference to something that
+     * was deleted. The edit runs under the write lock with the referral out of
+     * the index, so it may change indexed fields, and status or urgency changes
+     * move it in or out of the pending queue. Marks it dirty like an update.
+     */
+    public boolean editReferral(String referralId, String description, Consumer<Referral> edit) {
+        Referral ref;
+        long stamp = lock.writeLock();
+        try {
+            ref = registry.get(referralId);
+            if (ref == null) {
+                return false;
+            }
+            index.remove(ref);
+            edit.accept(ref);
+            ref.setLastUpdated(LocalDate.now());
+            index.add(ref);
+            requeue(ref);
+            dirty.add(referralId);
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log("Referral updated: " + referralId + " " + description);
+        bus.updated(Referral.class, ref, ref);
+        return true;
+    }
+
+    public boolean hasUnsavedChanges() {
+        return read(() -> !dirty.isEmpty());
+    }
+
+    // Call once the referrals have been written out
+    public void markSaved() {
+        long stamp = lock.writeLock();
+        try {
+            dirty.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
+    private static List<String> describeChanges(Referral a, Referral b) {
+        List<String> changes = new ArrayList<>();
+        diff(changes, "patient", a.getPatientId(), b.getPatientId());
+        diff(changes, "referring clinician", a.getReferringClinicianId(), b.getReferringClinicianId());
+        diff(changes, "referred-to clinician", a.getReferredToClinicianId(), b.getReferredToClinicianId());
+        diff(changes, "referring facility", a.getReferringFacilityId(), b.getReferringFacilityId());
+        diff(changes, "referred-to facility", a.getReferredToFacilityId(), b.getReferredToFacilityId());
+        diff(changes, "date", a.getReferralDate(), b.getReferralDate());
+        diff(changes, "urgency", a.getUrgencyLevel(), b.getUrgencyLevel());
+        diff(changes, "reason", a.getReferralReason(), b.getReferralReason());
+        diff(changes, "clinical summary", a.getClinicalSummary(), b.getClinicalSummary());
+        diff(changes, "investigations", a.getRequestedInvestigations(), b.getRequestedInvestigations());
+        diff(changes, "status", a.getStatus(), b.getStatus());
+        diff(changes, "appointment", a.getAppointmentId(), b.getAppointmentId());
+        diff(changes, "notes", a.getNotes(), b.getNotes());
+        diff(changes, "created", a.getCreatedDate(), b.getCreatedDate());
+        return changes;
+    }
+
+    private static void diff(List<String> changes, String field, Object before, Object after) {
+        if (!Objects.equals(blankToNull(before), blankToNull(after))) {
+            changes.add(field + ": " + before + " -> " + after);
+        }
+    }
+
+    // The dialog gives "" where the CSV gave null - don't report that as an edit
+    private static Object blankToNull(Object value) {
+        return (value instanceof String && ((String) value).isEmpty()) ? null : value;
+    }
+
+    // Immutable snapshot - cheap to call repeatedly between writes
     public List<Referral> getAllReferrals() {
-        return new ArrayList<>(referrals);
+        List<Referral> all = allSnapshot;
+        if (all == null) {
+            long stamp = lock.readLock();
+            try {
+                all = Collections.unmodifiableList(new ArrayList<>(registry.values()));
+                allSnapshot = all;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return all;
     }
 
     public Referral getReferralById(String id) {
-        return registry.get(id);
+        return read(() -> registry.get(id));
     }
 
+    // Immutable snapshot, most urgent first
     public List<Referral> getPendingReferrals() {
-        return new ArrayList<>(pending);
+        List<Referral> list = pendingSnapshot;
+        if (list == null) {
+            long stamp = lock.readLock();
+            try {
+                list = Collections.unmodifiableList(new ArrayList<>(pending.view()));
+                pendingSnapshot = list;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return list;
     }
 
-    public List<Referral> getReferralsByPatient(String patientId) {
-        List<Referral> result = new ArrayList<>();
-        for (Referral r : referrals) {
-            if (r.getPatientId().equals(patientId)) {
-                result.add(r);
+    public Referral getNextPendingReferral() {
+        List<Referral> list = getPendingReferrals();
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // Call after changing a pending referral's urgency or date
+    public boolean reprioritise(String referralId) {
+        Referral ref;
+        long stamp = lock.writeLock();
+        try {
+            changed();
+            ref = registry.get(referralId);
+            if (ref == null || !pending.reprioritise(referralId)) {
+                return false;
             }
+            sla.track(ref);
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return result;
+        bus.updated(Referral.class, ref, ref);
+        return true;
     }
 
+    public List<Referral> getReferralsByPatient(String patientId) {
+        return readLocked(() -> index.byPatient(patientId));
+    }
+
+    // Referring or referred-to facility
     public List<Referral> getReferralsByFacility(String facilityId) {
-        List<Referral> result = new ArrayList<>();
-        for (Referral r : referrals) {
-            if (facilityId.equals(r.getReferredToFacilityId()) ||
-                    facilityId.equals(r.getReferringFacilityId())) {
-                result.add(r);
-            }
-        }
-        return result;
+        return readLocked(() -> index.byFacility(facilityId));
     }
 
+    // Referring or referred-to clinician
     public List<Referral> getReferralsByClinician(String clinicianId) {
-        List<Referral> result = new ArrayList<>();
-        for (Referral r : referrals) {
-            if (clinicianId.equals(r.getReferringClinicianId()) ||
-                    clinicianId.equals(r.getReferredToClinicianId())) {
-                result.add(r);
-            }
-        }
-        return result;
+        return readLocked(() -> index.byClinician(clinicianId));
     }
 
     public List<Referral> getReferralsByStatus(String status) {
-        List<Referral> result = new ArrayList<>();
-        for (Referral r : referrals) {
-            if (status.equalsIgnoreCase(r.getStatus())) {
-                result.add(r);
-            }
-        }
-        return result;
+        return readLocked(() -> index.byStatus(status));
     }
 
     public List<String> getAuditLog() {
-        return new ArrayList<>(auditLog);
+        synchronized (auditLog) {
+            return new ArrayList<>(auditLog);
+        }
     }
 
     // Delete a referral
     public boolean removeReferral(String referralId) {
-        Referral ref = registry.get(referralId);
-        if (ref != null) {
-            referrals.remove(ref);
-            registry.remove(referralId);
-            pending.remove(ref);
-            log("Referral deleted: " + referralId);
-            return true;
+        Referral ref;
+        long stamp = lock.writeLock();
+        try {
+            ref = registry.remove(referralId);
+            if (ref == null) {
+                return false;
+            }
+            dirty.remove(referralId);
+            index.remove(ref);
+            pending.remove(referralId);
+            sla.untrack(referralId);
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log("Referral deleted: " + referralId);
+        bus.deleted(Referral.class, ref);
+        return true;
+    }
+
+    /**
+     * Run a read without locking, then check no write happened meanwhile. If one did
+     * (or the read tripped over a half-finished write) run it again under the read lock.
+     * The reader must only read and copy - it may run twice. Only for point lookups
+     * (a get, contains or isEmpty): they touch a few nodes, so a pass racing a writer
+     * ends quickly and validate() throws its result away. Anything that iterates a
+     * collection goes through readLocked().
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Raced with a writer - retry below
+            }
+        }
+        return readLocked(reader);
+    }
+
+    // Under the read lock: for queries that iterate, where an optimistic pass could walk a set
+    // while a writer rehashes it
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return false;
     }
 
+    // With the write lock held: put an edited referral in or out of the pending queue and SLA tracking
+    private void requeue(Referral ref) {
+        String status = ref.getStatus();
+        if ("Pending".equalsIgnoreCase(status) || "New".equalsIgnoreCase(status)) {
+            pending.offer(ref);   // re-sorted if urgency or date changed
+            sla.track(ref);       // new deadline if urgency or date changed
+        } else {
+            pending.remove(ref.getReferralId());
+            sla.untrack(ref.getReferralId());
+        }
+    }
+
+    // Call with the write lock held after any change to the referrals
+    private void changed() {
+        allSnapshot = null;
+        pendingSnapshot = null;
+    }
+
+    // With the write lock held. One past the highest id ever seen, so a deleted referral's
+    // id (and the documents and emails filed under it) never comes back for a new one
     private String generateId() {
-        return "R" + String.format("%03d", referrals.size() + 1);
+        String id;
+        do {
+            id = "R" + String.format("%03d", ++lastIdNumber);
+        } while (registry.containsKey(id));
+        return id;
+    }
+
+    private void noteId(String id) {
+        if (id == null || id.length() < 2 || id.charAt(0) != 'R') {
+            return;
+        }
+        try {
+            lastIdNumber = Math.max(lastIdNumber, Integer.parseInt(id.substring(1)));
+        } catch (NumberFormatException e) {
+            // Not one of ours - can't clash with a generated id
+        }
     }
 
     private String now() {
-        return LocalDateTime.now().format(DTF);
+        return DocumentTemplates.timestamp();
     }
 
     private String nullSafe(String value) {
@@ -356,26 +859,36 @@ public class ReferralManager {
         return String.join(", ", list);
     }
 
+    // Audit lines go through the pipeline's writer so they stay in order with the documents
     private void log(String msg) {
         String entry = "[" + now() + "] " + msg;
-        auditLog.add(entry);
-        appendToFile(AUDIT_FILE, entry + "\n");
-    }
-
-    private void appendToFile(String file, String content) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
-            out.print(content);
-        } catch (IOException e) {
-            System.err.println("Write error " + file + ": " + e.getMessage());
+        synchronized (auditLog) {
+            auditLog.add(entry);
+            documents.append(AUDIT_FILE, entry + "\n");
         }
     }
 
     // Clear all data (for testing)
     public void clearAll() {
-        referrals.clear();
-        registry.clear();
-        pending.clear();
+        List<Referral> removed;
+        long stamp = lock.writeLock();
+        try {
+            removed = new ArrayList<>(registry.values());
+            registry.clear();
+            dirty.clear();
+            index.clear();
+            pending.clear();
+            sla.clear();
+            changed();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
         auditLog.clear();
         log("All data cleared");
+        bus.transaction(() -> {
+            for (Referral ref : removed) {
+                bus.deleted(Referral.class, ref);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package model;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches pending referrals against their target response time.
+ *
+ * Each tracked referral gets a deadline of referral date plus a window set by its
+ * urgency, and a timer in a TimerWheel with one-minute ticks. A background thread
+ * moves the wheel on once a minute and reports the referrals whose timers fired,
+ * so the cost per minute depends on what falls due, not on how many are open.
+ * Referrals already past their deadline when tracked are reported straight away.
+ * Breaches are always reported on the monitor's own thread, never the caller's,
+ * so track() is safe to call while holding other locks.
+ */
+public class ReferralSlaMonitor {
+
+    private static final long TICK_MILLIS = 60_000;
+
+    // Target windows by urgency rank (see PendingReferralQueue.urgencyRank)
+    private static final Duration[] WINDOWS = {
+            Duration.ofHours(24),    // Emergency
+            Duration.ofDays(14),     // Urgent - two week wait
+            Duration.ofDays(126),    // Routine - 18 weeks
+            Duration.ofDays(126)     // anything else
+    };
+
+    private final Consumer<Referral> onBreach;
+    private final TimerWheel<Referral> wheel;
+    private final Map<String, TimerWheel.Timeout<Referral>> timers = new HashMap<>();
+    private final Set<String> breached = new LinkedHashSet<>();
+    private final ScheduledExecutorService clock;
+    private boolean started;
+
+    // onBreach is called on the monitor's thread
+    public ReferralSlaMonitor(Consumer<Referral> onBreach) {
+        this.onBreach = onBreach;
+        this.wheel = new TimerWheel<>(currentTick());
+        this.clock = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "referral-sla");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Start moving the clock once a minute
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        long untilNextTick = TICK_MILLIS - System.currentTimeMillis() % TICK_MILLIS;
+        clock.scheduleAtFixedRate(this::tick, untilNextTick, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        clock.shutdownNow();
+    }
+
+    public static Instant deadlineOf(Referral ref) {
+        LocalDate date = ref.getReferralDate() != null ? ref.getReferralDate() : ref.getCreatedDate();
+        if (date == null) {
+            date = LocalDate.now();
+        }
+        Duration window = WINDOWS[PendingReferralQueue.urgencyRank(ref.getUrgencyLevel())];
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().plus(window);
+    }
+
+    // Start (or restart, after an urgency or date change) the clock for a referral
+    public void track(Referral ref) {
+        List<Referral> due = new ArrayList<>(1);
+        synchronized (this) {
+            String id = ref.getReferralId();
+            wheel.cancel(timers.remove(id));
+            boolean alreadyBreached = breached.remove(id);
+
+            long deadlineTick = deadlineTick(deadlineOf(ref).toEpochMilli());
+            TimerWheel.Timeout<Referral> t = wheel.schedule(deadlineTick, ref, due);
+            if (t != null) {
+                timers.put(id, t);
+            } else {
+                breached.add(id);
+                if (alreadyBreached) {
+                    due.clear();   // still overdue after an edit - reported before
+                }
+            }
+        }
+        report(due);
+    }
+
+    // Stop watching a referral (sent, completed or deleted)
+    public synchronized void untrack(String referralId) {
+        wheel.cancel(timers.remove(referralId));
+        breached.remove(referralId);
+    }
+
+    public synchronized void clear() {
+        wheel.clear();
+        timers.clear();
+        breached.clear();
+    }
+
+    // Ids of tracked referrals already past their deadline
+    public synchronized List<String> getBreachedIds() {
+        return new ArrayList<>(breached);
+    }
+
+    public synchronized int getBreachedCount() {
+        return breached.size();
+    }
+
+    public synchronized int getTrackedCount() {
+        return timers.size() + breached.size();
+    }
+
+    // Move the wheel up to the current time
+    public void tick() {
+        List<Referral> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(currentTick(), due);
+            for (Referral ref : due) {
+                timers.remove(ref.getReferralId());
+                breached.add(ref.getReferralId());
+            }
+        }
+        report(due);
+    }
+
+    private void report(List<Referral> due) {
+        if (due.isEmpty()) {
+            return;
+        }
+        clock.execute(() -> {
+            for (Referral ref : due) {
+                try {
+                    onBreach.accept(ref);
+                } catch (RuntimeException e) {
+                    System.err.println("SLA breach handler failed for " + ref.getReferralId() + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private static long currentTick() {
+        return System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    // Round up, so a timer never fires before its deadline
+    private static long deadlineTick(long millis) {
+        return (millis + TICK_MILLIS - 1) / TICK_MILLIS;
+    }
+}
@@ -0,0 +1,215 @@
+package model;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers emails from an EmailOutbox over SMTP.
+ *
+ * Each of the configured connections runs on its own thread. A thread takes a batch
+ * of due emails, opens one session and sends the whole batch through it before
+ * quitting. If the server offers PIPELINING, each email's MAIL, RCPT and DATA go in
+ * a single write and their replies are read together, so one email costs two round
+ * trips instead of five. A 5xx reply fails that email for good; anything else that
+ * goes wrong puts the rest of the batch back in the outbox for a later retry.
+ */
+public class SmtpDispatcher {
+
+    private static final int TIMEOUT_MS = 30_000;
+
+    private final EmailOutbox outbox;
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int batchSize;
+    private final String heloName;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public SmtpDispatcher(EmailOutbox outbox, String host, int port, int connections, int batchSize) {
+        this.outbox = outbox;
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.batchSize = batchSize;
+        this.heloName = "healthcare-system.local";
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < connections; i++) {
+            Thread t = new Thread(this::run, "smtp-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        workers.clear();
+    }
+
+    private void run() {
+        while (running) {
+            List<OutboundEmail> batch;
+            try {
+                batch = outbox.takeBatch(batchSize, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        }
+    }
+
+    // Send one batch over one connection; returns how many were accepted
+    int deliver(List<OutboundEmail> batch) {
+        int sent = 0;
+        int next = 0;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            expect(in, 220);
+            out.write("EHLO " + heloName + "\r\n");
+            out.flush();
+            boolean pipelining = readReply(in, 250).contains("PIPELINING");
+
+            while (next < batch.size()) {
+                OutboundEmail email = batch.get(next);
+                String rejection = send(in, out, email, pipelining);
+                next++;
+                if (rejection == null) {
+                    outbox.delivered(email);
+                    sent++;
+                } else {
+                    System.err.println("Email " + email.getId() + " rejected: " + rejection);
+                    outbox.failed(email, rejection);
+                    out.write("RSET\r\n");
+                    out.flush();
+                    expect(in, 250);
+                }
+            }
+
+            out.write("QUIT\r\n");
+            out.flush();
+
+        } catch (IOException e) {
+            System.err.println("SMTP delivery to " + host + ":" + port + " failed: " + e.getMessage() +
+                    " - " + (batch.size() - next) + " emails will be retried");
+            // The email being sent when it broke may or may not have arrived; send it again
+            for (int i = next; i < batch.size(); i++) {
+                outbox.retry(batch.get(i));
+            }
+        }
+        return sent;
+    }
+
+    // Returns null if accepted, or the 5xx reply if the server refused the email
+    private String send(BufferedReader in, Writer out, OutboundEmail email,
+                        boolean pipelining) throws IOException {
+        String[] commands = {
+                "MAIL FROM:<" + email.getFrom() + ">\r\n",
+                "RCPT TO:<" + email.getTo() + ">\r\n",
+                "DATA\r\n"
+        };
+        int[] expected = {250, 250, 354};
+
+        if (pipelining) {
+            for (String c : commands) {
+                out.write(c);
+            }
+            out.flush();
+        }
+        String rejection = null;
+        for (int i = 0; i < commands.length; i++) {
+            if (!pipelining) {
+                out.write(commands[i]);
+                out.flush();
+            }
+            String reply = readReply(in, -1);
+            if (!reply.startsWith(String.valueOf(expected[i]))) {
+                if (!reply.startsWith("5")) {
+                    throw new IOException("unexpected reply: " + reply);
+                }
+                if (rejection == null) {
+                    rejection = reply;
+                }
+                if (!pipelining) {
+                    return rejection;
+                }
+            }
+        }
+        if (rejection != null) {
+            return rejection;   // with pipelining the rest of the replies were still read above
+        }
+
+        out.write(message(email));
+        out.write(".\r\n");
+        out.flush();
+        String reply = readReply(in, -1);
+        if (reply.startsWith("250")) {
+            return null;
+        }
+        if (reply.startsWith("5")) {
+            return reply;
+        }
+        throw new IOException("unexpected reply: " + reply);
+    }
+
+    // Headers and body with CRLF line ends and leading dots doubled
+    private static String message(OutboundEmail email) {
+        StringBuilder m = new StringBuilder();
+        m.append("From: <").append(email.getFrom()).append(">\r\n");
+        m.append("To: <").append(email.getTo()).append(">\r\n");
+        m.append("Subject: ").append(email.getSubject()).append("\r\n");
+        m.append("Message-ID: <referral-").append(email.getId()).append("@healthcare-system.local>\r\n");
+        m.append("Content-Type: text/plain; charset=UTF-8\r\n");
+        m.append("\r\n");
+        for (String line : email.getBody().split("\r?\n", -1)) {
+            if (line.startsWith(".")) {
+                m.append('.');
+            }
+            m.append(line).append("\r\n");
+        }
+        return m.toString();
+    }
+
+    private static void expect(BufferedReader in, int code) throws IOException {
+        readReply(in, code);
+    }
+
+    // Reads a (possibly multi-line) reply; checks the code unless expected is -1
+    private static String readReply(BufferedReader in, int expected) throws IOException {
+        StringBuilder reply = new StringBuilder();
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                throw new IOException("connection closed by server");
+            }
+            reply.append(line).append('\n');
+        } while (line.length() > 3 && line.charAt(3) == '-');
+
+        if (expected != -1 && !reply.toString().startsWith(String.valueOf(expected))) {
+            throw new IOException("expected " + expected + ", got: " + reply.toString().trim());
+        }
+        return reply.toString().trim();
+    }
+}
@@ -0,0 +1,82 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * One entry in a patient's history: an appointment, prescription or referral.
+ * Events sort newest first; ties are broken by time, type and id so every event
+ * has a fixed position and can serve as a paging cursor.
+ */
+public class TimelineEvent implements Comparable<TimelineEvent> {
+
+    private final LocalDate date;
+    private final String time;      // "HH:mm" for appointments, "" otherwise
+    private final String type;
+    private final String id;
+    private final String summary;
+    private final String status;
+
+    public TimelineEvent(LocalDate date, String time, String type, String id, String summary, String status) {
+        this.date = date != null ? date : LocalDate.MIN;
+        this.time = time != null ? time : "";
+        this.type = type;
+        this.id = id != null ? id : "";
+        this.summary = summary;
+        this.status = status;
+    }
+
+    public static TimelineEvent of(Appointment a) {
+        return new TimelineEvent(a.getAppointmentDate(), a.getAppointmentTime(), "Appointment", a.getAppointmentId(),
+                a.getAppointmentType() + " - " + a.getReasonForVisit(), a.getStatus());
+    }
+
+    public static TimelineEvent of(Prescription rx) {
+        return new TimelineEvent(rx.getPrescriptionDate(), "", "Prescription", rx.getPrescriptionId(),
+                rx.getMedicationName() + " " + rx.getDosage() + ", " + rx.getFrequency(), rx.getStatus());
+    }
+
+    public static TimelineEvent of(Referral r) {
+        return new TimelineEvent(r.getReferralDate(), "", "Referral", r.getReferralId(),
+                r.getUrgencyLevel() + " - " + r.getReferralReason(), r.getStatus());
+    }
+
+    public LocalDate getDate() { return date; }
+    public String getTime() { return time; }
+    public String getType() { return type; }
+    public String getId() { return id; }
+    public String getSummary() { return summary; }
+    public String getStatus() { return status; }
+
+    // Marks this event's position; the next page starts just after it
+    public String toCursor() {
+        return date + "|" + time + "|" + type + "|" + id;
+    }
+
+    // A position-only event to compare against; throws IllegalArgumentException if the cursor is malformed
+    public static TimelineEvent fromCursor(String cursor) {
+        String[] parts = cursor.split("\\|", 4);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Malformed timeline cursor: " + cursor);
+        }
+        try {
+            return new TimelineEvent(LocalDate.parse(parts[0]), parts[1], parts[2], parts[3], null, null);
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed timeline cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public int compareTo(TimelineEvent o) {
+        int c = o.date.compareTo(date);
+        if (c == 0) c = o.time.compareTo(time);
+        if (c == 0) c = type.compareTo(o.type);
+        if (c == 0) c = o.id.compareTo(id);
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return date + (time.isEmpty() ? "" : " " + time) + "  " + type + " " + id + "  " + summary +
+                (status != null ? " [" + status + "]" : "");
+    }
+}
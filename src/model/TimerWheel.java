@@ -0,0 +1,173 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical hashed timer wheel.
+ *
+ * Time is counted in whole ticks. Level 0 has 64 slots of one tick each, level 1 has
+ * 64 slots of 64 ticks, and so on, so six levels cover 64^6 ticks. A timer goes into
+ * the lowest level whose range reaches its deadline. When the clock reaches one of
+ * the higher-level slots, its timers drop down a level, and they fire from level 0.
+ * Scheduling and cancelling are O(1). Each timer moves down at most once per level,
+ * so advancing the clock never walks all the timers.
+ *
+ * Not thread-safe - the owner synchronises.
+ */
+public class TimerWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    // A scheduled timer; keep it to cancel
+    public static class Timeout<T> {
+        private final long deadline;   // in ticks
+        private final T item;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private boolean scheduled;
+
+        private Timeout(long deadline, T item) {
+            this.deadline = deadline;
+            this.item = item;
+        }
+
+        public T getItem() { return item; }
+        public long getDeadlineTick() { return deadline; }
+        public boolean isScheduled() { return scheduled; }
+    }
+
+    // Sentinel-headed circular list per slot
+    @SuppressWarnings("unchecked")
+    private final Timeout<T>[][] wheel = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long startTick) {
+        currentTick = startTick;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timeout<T> head = new Timeout<>(0, null);
+                head.prev = head;
+                head.next = head;
+                wheel[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Schedule an item. A deadline at or before the current tick is not stored -
+     * the item is added to {@code due} straight away and null is returned.
+     */
+    public Timeout<T> schedule(long deadlineTick, T item, List<T> due) {
+        Timeout<T> t = new Timeout<>(deadlineTick, item);
+        if (!place(t)) {
+            due.add(item);
+            return null;
+        }
+        size++;
+        return t;
+    }
+
+    public boolean cancel(Timeout<T> t) {
+        if (t == null || !t.scheduled) {
+            return false;
+        }
+        unlink(t);
+        size--;
+        return true;
+    }
+
+    /** Move the clock forward to {@code nowTick}, adding every item that came due to {@code due}. */
+    public void advance(long nowTick, List<T> due) {
+        while (currentTick < nowTick) {
+            currentTick++;
+
+            // Highest level first, so cascaded timers land in slots we are about to visit
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    int slot = (int) ((currentTick >>> (BITS * level)) & MASK);
+                    for (Timeout<T> t : drain(wheel[level][slot])) {
+                        if (!place(t)) {
+                            size--;
+                            due.add(t.item);
+                        }
+                    }
+                }
+            }
+
+            for (Timeout<T> t : drain(wheel[0][(int) (currentTick & MASK)])) {
+                size--;
+                due.add(t.item);
+            }
+        }
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (Timeout<T>[] level : wheel) {
+            for (Timeout<T> head : level) {
+                drain(head);
+            }
+        }
+        size = 0;
+    }
+
+    // Put a timer in the lowest level that can hold it; false if already due
+    private boolean place(Timeout<T> t) {
+        if (t.deadline <= currentTick) {
+            return false;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long distance = (t.deadline >>> shift) - (currentTick >>> shift);
+            if (distance < SLOTS || level == LEVELS - 1) {
+                int slot = (int) ((t.deadline >>> shift) & MASK);
+                if (distance >= SLOTS) {
+                    slot = (int) (((currentTick >>> shift) - 1) & MASK);   // beyond range - park in the last slot
+                }
+                link(wheel[level][slot], t);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void link(Timeout<T> head, Timeout<T> t) {
+        t.prev = head.prev;
+        t.next = head;
+        head.prev.next = t;
+        head.prev = t;
+        t.scheduled = true;
+    }
+
+    private void unlink(Timeout<T> t) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.scheduled = false;
+    }
+
+    private List<Timeout<T>> drain(Timeout<T> head) {
+        List<Timeout<T>> out = new ArrayList<>();
+        Timeout<T> t = head.next;
+        while (t != head) {
+            Timeout<T> next = t.next;
+            unlink(t);
+            out.add(t);
+            t = next;
+        }
+        return out;
+    }
+}
@@ -15,6 +15,7 @@ public class AppointmentPanel extends JPanel {
     private PatientController patCtrl;
     private ClinicianController clinCtrl;
     private FacilityController facCtrl;
+    private QueryEngine queries;
 
     // table stuff
     private JTable table;
@@ -25,11 +26,12 @@ public class AppointmentPanel extends JPanel {
     private JLabel countLabel;
 
     public AppointmentPanel(AppointmentController ac, PatientController pc,
-                            ClinicianController cc, FacilityController fc) {
+                            ClinicianController cc, FacilityController fc, QueryEngine queries) {
         this.apptCtrl = ac;
         this.patCtrl = pc;
         this.clinCtrl = cc;
         this.facCtrl = fc;
+        this.queries = queries;
 
         initComponents();
         loadTable();
@@ -130,7 +132,7 @@ public class AppointmentPanel extends JPanel {
     }
 
     // load all appointments into table
-    private void loadTable() {
+    public void loadTable() {
         model.setRowCount(0); // clear first
 
         List<Appointment> list = apptCtrl.getAllAppointments();
@@ -336,7 +338,11 @@ public class AppointmentPanel extends JPanel {
     private void showUpcoming() {
         model.setRowCount(0);
 
-        List<Appointment> upcoming = apptCtrl.getUpcomingAppointments();
+        // Text compares ignore case here, so "Cancelled" rows from the CSV are left out too
+        List<Appointment> upcoming = queries.execute(Query.from(Appointment.class)
+                .where(Query.between("appointment_date", LocalDate.now(), null))
+                .where(Query.notEq("status", "Cancelled"))
+                .orderBy("appointment_date"));
         for (Appointment a : upcoming) {
             addRowToTable(a);
         }
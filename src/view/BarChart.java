@@ -0,0 +1,95 @@
+package view;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A titled horizontal bar chart of label -> count, drawn in the order given.
+ */
+public class BarChart extends JComponent {
+
+    private static final Color BAR = new Color(70, 130, 180);
+    private static final int ROW = 18;
+
+    private final String title;
+    private Map<String, Integer> data = new LinkedHashMap<>();
+
+    public BarChart(String title) {
+        this.title = title;
+        setPreferredSize(new Dimension(280, 200));
+        setBorder(BorderFactory.createEtchedBorder());
+    }
+
+    public void setData(Map<String, Integer> data) {
+        if (!data.equals(this.data)) {
+            this.data = data;
+            repaint();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, getWidth(), getHeight());
+
+        Insets in = getInsets();
+        int x = in.left + 8;
+        int y = in.top + 8;
+        int width = getWidth() - in.left - in.right - 16;
+
+        FontMetrics fm = g2.getFontMetrics();
+        g2.setColor(Color.DARK_GRAY);
+        g2.setFont(g2.getFont().deriveFont(Font.BOLD));
+        g2.drawString(title, x, y + fm.getAscent());
+        g2.setFont(g2.getFont().deriveFont(Font.PLAIN));
+        y += fm.getHeight() + 6;
+
+        if (data.isEmpty()) {
+            g2.setColor(Color.GRAY);
+            g2.drawString("No data", x, y + fm.getAscent());
+            g2.dispose();
+            return;
+        }
+
+        int max = 1;
+        for (int v : data.values()) {
+            max = Math.max(max, v);
+        }
+        int labelWidth = Math.min(width / 2, 110);
+        int countWidth = fm.stringWidth(String.valueOf(max)) + 6;
+        int barSpace = Math.max(1, width - labelWidth - countWidth);
+        int bottom = getHeight() - in.bottom - 4;
+
+        for (Map.Entry<String, Integer> e : data.entrySet()) {
+            if (y + ROW > bottom) {
+                break;
+            }
+            int baseline = y + (ROW + fm.getAscent()) / 2 - 2;
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(clip(e.getKey(), fm, labelWidth - 6), x, baseline);
+
+            int len = (int) Math.round((double) e.getValue() / max * barSpace);
+            g2.setColor(BAR);
+            g2.fillRect(x + labelWidth, y + 3, len, ROW - 6);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(String.valueOf(e.getValue()), x + labelWidth + len + 4, baseline);
+            y += ROW;
+        }
+        g2.dispose();
+    }
+
+    private static String clip(String s, FontMetrics fm, int width) {
+        if (fm.stringWidth(s) <= width) {
+            return s;
+        }
+        int end = s.length();
+        while (end > 0 && fm.stringWidth(s.substring(0, end) + "…") > width) {
+            end--;
+        }
+        return s.substring(0, end) + "…";
+    }
+}
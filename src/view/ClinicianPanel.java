@@ -1,6 +1,9 @@
 package view;
 
 import controller.ClinicianController;
+import controller.Query;
+import controller.QueryEngine;
+import controller.ReferentialIntegrity;
 import model.Clinician;
 
 import javax.swing.*;
@@ -12,13 +15,17 @@ import java.util.List;
 public class ClinicianPanel extends JPanel {
 
     private ClinicianController ctrl;
+    private ReferentialIntegrity integrity;
+    private QueryEngine queries;
     private JTable table;
     private DefaultTableModel model;
     private JTextField searchBox;
     private JLabel countLabel;
 
-    public ClinicianPanel(ClinicianController ctrl) {
+    public ClinicianPanel(ClinicianController ctrl, ReferentialIntegrity integrity, QueryEngine queries) {
         this.ctrl = ctrl;
+        this.integrity = integrity;
+        this.queries = queries;
         buildUI();
         loadTable();
     }
@@ -108,7 +115,7 @@ public class ClinicianPanel extends JPanel {
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         populateTable(ctrl.getAllClinicians());
     }
 
@@ -204,13 +211,7 @@ public class ClinicianPanel extends JPanel {
         String id = (String) model.getValueAt(row, 0);
         String name = (String) model.getValueAt(row, 1);
 
-        int choice = JOptionPane.showConfirmDialog(this,
-                "Delete clinician: " + name + "?",
-                "Confirm Delete",
-                JOptionPane.YES_NO_OPTION);
-
-        if (choice == JOptionPane.YES_OPTION) {
-            ctrl.deleteClinician(id);
+        if (DeleteConfirmation.confirm(this, integrity, Clinician.class, id, name)) {
             loadTable();
             showMsg("Deleted!");
         }
@@ -243,7 +244,8 @@ public class ClinicianPanel extends JPanel {
         );
 
         if (picked != null) {
-            List<Clinician> filtered = ctrl.getCliniciansBySpecialization(picked);
+            List<Clinician> filtered = queries.execute(Query.from(Clinician.class)
+                    .where(Query.eq("specialization", picked)));
             populateTable(filtered);
             showMsg("Found " + filtered.size() + " clinicians in: " + picked);
         }
@@ -0,0 +1,127 @@
+package view;
+
+import controller.*;
+import model.*;
+import javax.swing.*;
+import java.awt.*;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Overview charts drawn from DashboardAggregates.
+ *
+ * The aggregates change with every edit, but the charts are only refreshed by a
+ * timer a few times a second, and only if something changed and the tab is
+ * showing, so a burst of writes costs one repaint per tick at most.
+ */
+public class DashboardPanel extends JPanel {
+
+    private static final int REFRESH_MILLIS = 250;
+    private static final int DAYS_AHEAD = 14;
+    private static final int TOP = 8;
+
+    private final DashboardAggregates aggregates;
+    private final ClinicianController clinCtrl;
+    private final FacilityController facCtrl;
+
+    private JLabel totalsLabel;
+    private BarChart apptByDay;
+    private BarChart apptByStatus;
+    private BarChart apptByClinician;
+    private BarChart apptByFacility;
+    private BarChart rxByMedication;
+    private BarChart rxByPharmacy;
+    private BarChart refByUrgency;
+    private BarChart refByStatus;
+
+    private long shownVersion = -1;
+    private LocalDate shownDay;
+
+    public DashboardPanel(DashboardAggregates aggregates, ClinicianController cc, FacilityController fc) {
+        this.aggregates = aggregates;
+        clinCtrl = cc;
+        facCtrl = fc;
+        initComponents();
+        refresh();
+
+        Timer timer = new Timer(REFRESH_MILLIS, e -> {
+            if (isShowing()) {
+                refresh();
+            }
+        });
+        timer.start();
+    }
+
+    private void initComponents() {
+        setLayout(new BorderLayout(10, 10));
+        setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        totalsLabel = new JLabel();
+        totalsLabel.setFont(totalsLabel.getFont().deriveFont(Font.BOLD, 14f));
+        add(totalsLabel, BorderLayout.NORTH);
+
+        apptByDay = new BarChart("Appointments - next " + DAYS_AHEAD + " days");
+        apptByStatus = new BarChart("Appointments by status");
+        apptByClinician = new BarChart("Appointments by clinician");
+        apptByFacility = new BarChart("Appointments by facility");
+        rxByMedication = new BarChart("Prescriptions by medication");
+        rxByPharmacy = new BarChart("Prescriptions by pharmacy");
+        refByUrgency = new BarChart("Referrals by urgency");
+        refByStatus = new BarChart("Referrals by status");
+
+        JPanel grid = new JPanel(new GridLayout(2, 4, 8, 8));
+        grid.add(apptByDay);
+        grid.add(apptByStatus);
+        grid.add(apptByClinician);
+        grid.add(apptByFacility);
+        grid.add(rxByMedication);
+        grid.add(rxByPharmacy);
+        grid.add(refByUrgency);
+        grid.add(refByStatus);
+        add(grid, BorderLayout.CENTER);
+    }
+
+    // Pull fresh copies of the counts, unless nothing has changed since the last time
+    private void refresh() {
+        long version = aggregates.getVersion();
+        LocalDate today = LocalDate.now();
+        if (version == shownVersion && today.equals(shownDay)) {
+            return;
+        }
+        shownVersion = version;
+        shownDay = today;
+
+        totalsLabel.setText(String.format("Appointments: %d    Prescriptions: %d    Referrals: %d",
+                aggregates.getAppointmentCount(), aggregates.getPrescriptionCount(),
+                aggregates.getReferralCount()));
+
+        apptByDay.setData(aggregates.getAppointmentsByDay(today, DAYS_AHEAD));
+        apptByStatus.setData(aggregates.getAppointmentsByStatus(TOP));
+        apptByClinician.setData(clinicianNames(aggregates.getAppointmentsByClinician(TOP)));
+        apptByFacility.setData(facilityNames(aggregates.getAppointmentsByFacility(TOP)));
+        rxByMedication.setData(aggregates.getPrescriptionsByMedication(TOP));
+        rxByPharmacy.setData(aggregates.getPrescriptionsByPharmacy(TOP));
+        refByUrgency.setData(aggregates.getReferralsByUrgency(TOP));
+        refByStatus.setData(aggregates.getReferralsByStatus(TOP));
+    }
+
+    // Only the few ids on show are looked up
+    private Map<String, Integer> clinicianNames(Map<String, Integer> byId) {
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : byId.entrySet()) {
+            Clinician c = clinCtrl.getClinicianById(e.getKey());
+            byName.merge(c != null ? c.getFullName() : e.getKey(), e.getValue(), Integer::sum);
+        }
+        return byName;
+    }
+
+    private Map<String, Integer> facilityNames(Map<String, Integer> byId) {
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : byId.entrySet()) {
+            Facility f = facCtrl.getFacilityById(e.getKey());
+            byName.merge(f != null ? f.getFacilityName() : e.getKey(), e.getValue(), Integer::sum);
+        }
+        return byName;
+    }
+}
@@ -0,0 +1,87 @@
+package view;
+
+import controller.ReferentialIntegrity;
+import controller.ReferentialIntegrity.Impact;
+import controller.ReferentialIntegrity.Policy;
+import controller.ReferentialIntegrity.Reference;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Confirms a delete, showing what still refers to the record. If nothing does
+ * it's the usual yes/no; otherwise the user picks between deleting the dependent
+ * records too and clearing the references (when none of them are required).
+ */
+class DeleteConfirmation {
+
+    private static final int SHOWN_REFERENCES = 10;
+
+    private DeleteConfirmation() {
+    }
+
+    // Returns true if the record was deleted
+    static boolean confirm(Component parent, ReferentialIntegrity integrity, Class<?> type, String id, String label) {
+        String what = type.getSimpleName().toLowerCase();
+        List<Reference> refs = integrity.referencesTo(type, id);
+
+        if (refs.isEmpty()) {
+            int choice = JOptionPane.showConfirmDialog(parent,
+                    "Delete " + what + ": " + label + "?",
+                    "Confirm Delete",
+                    JOptionPane.YES_NO_OPTION);
+            if (choice != JOptionPane.YES_OPTION) {
+                return false;
+            }
+            return !integrity.delete(type, id, Policy.BLOCK).isBlocked();
+        }
+
+        Impact cascade = integrity.impactOf(type, id, Policy.CASCADE);
+        Impact nullify = integrity.impactOf(type, id, Policy.NULLIFY);
+
+        StringBuilder msg = new StringBuilder();
+        msg.append(label).append(" is referred to by ").append(refs.size())
+                .append(refs.size() == 1 ? " record" : " records").append(":\n\n");
+        for (int i = 0; i < refs.size() && i < SHOWN_REFERENCES; i++) {
+            Reference ref = refs.get(i);
+            msg.append("  ").append(ref.getSourceType().getSimpleName()).append(" ").append(ref.getSourceId())
+                    .append(" (").append(ref.getField()).append(ref.isRequired() ? ", required" : "").append(")\n");
+        }
+        if (refs.size() > SHOWN_REFERENCES) {
+            msg.append("  ... and ").append(refs.size() - SHOWN_REFERENCES).append(" more\n");
+        }
+        msg.append("\nDelete all: ").append(cascade.describe()).append(".\n");
+        if (nullify.isBlocked()) {
+            msg.append("References can't just be cleared - ")
+                    .append(nullify.getBlockers().size()).append(" of them are required.");
+        } else {
+            msg.append("Clear references: ").append(nullify.describe()).append(".");
+        }
+
+        String[] options = nullify.isBlocked()
+                ? new String[]{"Delete all", "Cancel"}
+                : new String[]{"Delete all", "Clear references", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(parent, msg.toString(),
+                "Delete " + what, JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE,
+                null, options, options[options.length - 1]);
+
+        Policy policy;
+        if (choice == 0) {
+            policy = Policy.CASCADE;
+        } else if (choice == 1 && options.length == 3) {
+            policy = Policy.NULLIFY;
+        } else {
+            return false;
+        }
+
+        Impact done = integrity.delete(type, id, policy);
+        if (done.isBlocked()) {
+            // Something new started referring to it while the dialog was open
+            JOptionPane.showMessageDialog(parent, "Not deleted: " + done.describe() + ".",
+                    "Warning", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+package view;
+
+import controller.PatientLinkage;
+import controller.PatientLinkage.Cluster;
+import controller.PatientLinkage.MergeSummary;
+import controller.PatientLinkage.Result;
+import model.Patient;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Searches for duplicate patients in the background and lists what it found.
+ * Confident matches are ticked for merging; review pairs are left for the user
+ * to decide. getSummary() is null if nothing was merged.
+ */
+public class DuplicatesDialog extends JDialog {
+
+    private final PatientLinkage linkage;
+    private final DefaultTableModel model;
+    private final JLabel status;
+    private final JButton mergeBtn;
+    private List<Cluster> shown = new ArrayList<>();
+    private MergeSummary summary;
+
+    public DuplicatesDialog(Window owner, PatientLinkage linkage) {
+        super(owner, "Duplicate Patients", ModalityType.APPLICATION_MODAL);
+        this.linkage = linkage;
+
+        setLayout(new BorderLayout(10, 10));
+        setSize(900, 420);
+        setLocationRelativeTo(owner);
+
+        String[] cols = {"Merge", "Keep", "Merge Into It", "Score", "Matched On"};
+        model = new DefaultTableModel(cols, 0) {
+            @Override
+            public Class<?> getColumnClass(int col) {
+                return col == 0 ? Boolean.class : String.class;
+            }
+
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return col == 0;
+            }
+        };
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(0).setMaxWidth(50);
+        table.getColumnModel().getColumn(3).setMaxWidth(90);
+        table.getColumnModel().getColumn(4).setPreferredWidth(260);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        status = new JLabel("Searching...");
+        status.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(status, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        mergeBtn = new JButton("Merge Selected");
+        mergeBtn.setEnabled(false);
+        JButton closeBtn = new JButton("Close");
+        mergeBtn.addActionListener(e -> onMerge());
+        closeBtn.addActionListener(e -> dispose());
+        buttons.add(mergeBtn);
+        buttons.add(closeBtn);
+        bottom.add(buttons, BorderLayout.EAST);
+        add(bottom, BorderLayout.SOUTH);
+
+        search();
+    }
+
+    public MergeSummary getSummary() {
+        return summary;
+    }
+
+    private void search() {
+        new SwingWorker<Result, Void>() {
+            @Override
+            protected Result doInBackground() {
+                return linkage.findDuplicates();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    show(get());
+                } catch (Exception ex) {
+                    System.err.println("Duplicate search failed: " + ex.getMessage());
+                    status.setText("Search failed: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void show(Result result) {
+        shown = result.getClusters();
+        for (Cluster c : shown) {
+            StringJoiner dups = new StringJoiner("; ");
+            for (Patient p : c.getDuplicates()) {
+                dups.add(describe(p));
+            }
+            model.addRow(new Object[]{
+                    c.isCertain(),
+                    describe(c.getSurvivor()),
+                    dups.toString(),
+                    String.format("%.2f%s", c.getScore(), c.isCertain() ? "" : " (review)"),
+                    c.getLinks().get(0).getEvidence()
+            });
+        }
+        status.setText(result.summary());
+        mergeBtn.setEnabled(!shown.isEmpty());
+    }
+
+    private static String describe(Patient p) {
+        return p.getPatientId() + " " + p.getFullName() + " (" + p.getDateOfBirth() + ")";
+    }
+
+    private void onMerge() {
+        List<Cluster> selected = new ArrayList<>();
+        for (int i = 0; i < shown.size(); i++) {
+            if (Boolean.TRUE.equals(model.getValueAt(i, 0))) {
+                selected.add(shown.get(i));
+            }
+        }
+        if (selected.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Tick the duplicates to merge first.", "Warning",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        int ok = JOptionPane.showConfirmDialog(this,
+                "Merge " + selected.size() + " group(s) of patients? The duplicates' appointments,\n" +
+                        "prescriptions, referrals and medical history move to the patient kept,\n" +
+                        "and the duplicates are deleted.",
+                "Confirm Merge", JOptionPane.YES_NO_OPTION);
+        if (ok != JOptionPane.YES_OPTION) {
+            return;
+        }
+        summary = linkage.merge(selected);
+        JOptionPane.showMessageDialog(this, summary.toString(), "Merged", JOptionPane.INFORMATION_MESSAGE);
+        dispose();
+    }
+}
@@ -0,0 +1,171 @@
+package view;
+
+import controller.ClinicianController;
+import controller.FacilityController;
+import controller.ReportExporter;
+import controller.ReportExporter.Format;
+import controller.ReportExporter.Kind;
+import controller.ReportExporter.Report;
+import model.Clinician;
+import model.Facility;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Asks what to export. Defaults to last month's appointments for every
+ * facility and clinician; getReport() is null if the user cancelled.
+ */
+public class ExportDialog extends JDialog {
+
+    private static final String ALL = "All";
+
+    private Report report;
+
+    private JComboBox<Kind> kindCombo;
+    private JTextField fromField, toField, fileField;
+    private JComboBox<String> facilityCombo, clinicianCombo;
+    private JComboBox<Format> formatCombo;
+    private JCheckBox gzipBox;
+
+    public ExportDialog(Frame owner, FacilityController facCtrl, ClinicianController clinCtrl) {
+        super(owner, "New Export", true);
+        setupUI(facCtrl, clinCtrl);
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    private void setupUI(FacilityController facCtrl, ClinicianController clinCtrl) {
+        setLayout(new BorderLayout(10, 10));
+        setSize(480, 360);
+        setLocationRelativeTo(getOwner());
+
+        JPanel form = new JPanel(new GridLayout(8, 2, 5, 5));
+        form.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        LocalDate firstOfMonth = LocalDate.now().withDayOfMonth(1);
+        kindCombo = new JComboBox<>(Kind.values());
+        fromField = new JTextField(firstOfMonth.minusMonths(1).toString());
+        toField = new JTextField(firstOfMonth.minusDays(1).toString());
+
+        facilityCombo = new JComboBox<>();
+        facilityCombo.addItem(ALL);
+        for (Facility f : facCtrl.getAllFacilities()) {
+            facilityCombo.addItem(f.getFacilityId() + " - " + f.getFacilityName());
+        }
+        clinicianCombo = new JComboBox<>();
+        clinicianCombo.addItem(ALL);
+        for (Clinician c : clinCtrl.getAllClinicians()) {
+            clinicianCombo.addItem(c.getClinicianId() + " - " + c.getFullName());
+        }
+
+        formatCombo = new JComboBox<>(Format.values());
+        gzipBox = new JCheckBox("Compress (gzip)");
+        fileField = new JTextField();
+        suggestFilename();
+        kindCombo.addActionListener(e -> suggestFilename());
+        formatCombo.addActionListener(e -> suggestFilename());
+        gzipBox.addActionListener(e -> suggestFilename());
+        fromField.addActionListener(e -> suggestFilename());
+
+        JButton browseBtn = new JButton("...");
+        browseBtn.addActionListener(e -> browse());
+        JPanel filePanel = new JPanel(new BorderLayout(5, 0));
+        filePanel.add(fileField, BorderLayout.CENTER);
+        filePanel.add(browseBtn, BorderLayout.EAST);
+
+        form.add(new JLabel("Records:"));
+        form.add(kindCombo);
+        form.add(new JLabel("From (yyyy-mm-dd):"));
+        form.add(fromField);
+        form.add(new JLabel("To (yyyy-mm-dd):"));
+        form.add(toField);
+        form.add(new JLabel("Facility:"));
+        form.add(facilityCombo);
+        form.add(new JLabel("Clinician:"));
+        form.add(clinicianCombo);
+        form.add(new JLabel("Format:"));
+        form.add(formatCombo);
+        form.add(new JLabel(""));
+        form.add(gzipBox);
+        form.add(new JLabel("File:"));
+        form.add(filePanel);
+        add(form, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton startBtn = new JButton("Start Export");
+        JButton cancelBtn = new JButton("Cancel");
+        startBtn.addActionListener(e -> onStart());
+        cancelBtn.addActionListener(e -> dispose());
+        buttons.add(startBtn);
+        buttons.add(cancelBtn);
+        add(buttons, BorderLayout.SOUTH);
+    }
+
+    // e.g. appointments-2025-09.csv.gz
+    private void suggestFilename() {
+        Kind kind = (Kind) kindCombo.getSelectedItem();
+        Format format = (Format) formatCombo.getSelectedItem();
+        String month = fromField.getText().trim();
+        month = month.length() >= 7 ? month.substring(0, 7) : "all";
+        fileField.setText(kind.name().toLowerCase() + "-" + month + format.getExtension() +
+                (gzipBox.isSelected() ? ".gz" : ""));
+    }
+
+    private void browse() {
+        JFileChooser chooser = new JFileChooser(new File("."));
+        chooser.setSelectedFile(new File(fileField.getText()));
+        if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            fileField.setText(chooser.getSelectedFile().getPath());
+        }
+    }
+
+    private void onStart() {
+        LocalDate from, to;
+        try {
+            from = parseDate(fromField.getText());
+            to = parseDate(toField.getText());
+        } catch (DateTimeParseException e) {
+            showWarning("Dates must be yyyy-mm-dd (or blank for no limit).");
+            return;
+        }
+        if (from != null && to != null && to.isBefore(from)) {
+            showWarning("The end date is before the start date.");
+            return;
+        }
+        String file = fileField.getText().trim();
+        if (file.isEmpty()) {
+            showWarning("Choose a file to export to.");
+            return;
+        }
+
+        report = new ReportExporter.Report((Kind) kindCombo.getSelectedItem(), from, to,
+                idOf(facilityCombo), idOf(clinicianCombo),
+                (Format) formatCombo.getSelectedItem(), gzipBox.isSelected(), file);
+        dispose();
+    }
+
+    private static LocalDate parseDate(String text) {
+        text = text.trim();
+        return text.isEmpty() ? null : LocalDate.parse(text);
+    }
+
+    // "S001 - Name" -> "S001"; "All" -> null
+    private static String idOf(JComboBox<String> combo) {
+        String item = (String) combo.getSelectedItem();
+        if (item == null || item.equals(ALL)) {
+            return null;
+        }
+        int dash = item.indexOf(" - ");
+        return dash > 0 ? item.substring(0, dash) : item;
+    }
+
+    private void showWarning(String msg) {
+        JOptionPane.showMessageDialog(this, msg, "Warning", JOptionPane.WARNING_MESSAGE);
+    }
+}
@@ -0,0 +1,107 @@
+package view;
+
+import controller.ReportExporter;
+import controller.ReportExporter.Export;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Lists the exports with live row counts. Not modal, so it can stay open while
+ * exports run; it stops polling when closed.
+ */
+public class ExportStatusDialog extends JDialog {
+
+    private static final int REFRESH_MILLIS = 500;
+
+    private final ReportExporter exporter;
+    private final DefaultTableModel model;
+    private final JTable table;
+    private List<Export> shown;
+
+    public ExportStatusDialog(Frame owner, ReportExporter exporter) {
+        super(owner, "Exports", false);
+        this.exporter = exporter;
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setLayout(new BorderLayout(10, 10));
+        setSize(760, 300);
+        setLocationRelativeTo(owner);
+
+        String[] cols = {"#", "Report", "Format", "File", "Status", "Rows", "Time"};
+        model = new DefaultTableModel(cols, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+        };
+        table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setMaxWidth(40);
+        table.getColumnModel().getColumn(1).setPreferredWidth(260);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton cancelBtn = new JButton("Cancel Export");
+        JButton clearBtn = new JButton("Clear Finished");
+        JButton closeBtn = new JButton("Close");
+        cancelBtn.addActionListener(e -> onCancel());
+        clearBtn.addActionListener(e -> {
+            exporter.clearFinished();
+            refresh();
+        });
+        closeBtn.addActionListener(e -> dispose());
+        buttons.add(cancelBtn);
+        buttons.add(clearBtn);
+        buttons.add(closeBtn);
+        add(buttons, BorderLayout.SOUTH);
+
+        Timer timer = new Timer(REFRESH_MILLIS, e -> refresh());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                timer.stop();
+            }
+        });
+        refresh();
+        timer.start();
+    }
+
+    private void refresh() {
+        int selected = table.getSelectedRow();
+        shown = exporter.getExports();
+        model.setRowCount(0);
+        for (Export e : shown) {
+            ReportExporter.Report r = e.getReport();
+            String status = e.getState() == ReportExporter.State.FAILED && e.getError() != null
+                    ? "FAILED: " + e.getError() : e.getState().toString();
+            model.addRow(new Object[]{
+                    e.getNumber(),
+                    r.describe(),
+                    r.getFormat() + (r.isGzip() ? " (gzip)" : ""),
+                    r.getFilename(),
+                    status,
+                    e.getRows() + " / " + e.getCandidates(),
+                    String.format("%.1f s", e.getElapsedMillis() / 1000.0)
+            });
+        }
+        if (selected >= 0 && selected < model.getRowCount()) {
+            table.setRowSelectionInterval(selected, selected);
+        }
+    }
+
+    private void onCancel() {
+        int row = table.getSelectedRow();
+        if (row == -1) {
+            JOptionPane.showMessageDialog(this, "Select an export first.", "Warning",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        Export e = shown.get(row);
+        if (e.getState() == ReportExporter.State.RUNNING) {
+            e.cancel();
+        }
+    }
+}
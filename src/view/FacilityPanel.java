@@ -5,18 +5,21 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
 import controller.FacilityController;
+import controller.ReferentialIntegrity;
 import model.Facility;
 
 public class FacilityPanel extends JPanel {
 
     private FacilityController ctrl;
+    private ReferentialIntegrity integrity;
     private JTable table;
     private DefaultTableModel model;
     private JTextField searchBox;
     private JLabel countLabel;
 
-    public FacilityPanel(FacilityController ctrl) {
+    public FacilityPanel(FacilityController ctrl, ReferentialIntegrity integrity) {
         this.ctrl = ctrl;
+        this.integrity = integrity;
         buildUI();
         loadTable();
     }
@@ -93,7 +96,7 @@ public class FacilityPanel extends JPanel {
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         populateTable(ctrl.getAllFacilities());
     }
 
@@ -193,13 +196,7 @@ public class FacilityPanel extends JPanel {
         String id = (String) model.getValueAt(row, 0);
         String name = (String) model.getValueAt(row, 1);
 
-        int choice = JOptionPane.showConfirmDialog(this,
-                "Delete facility: " + name + "?",
-                "Confirm Delete",
-                JOptionPane.YES_NO_OPTION);
-
-        if (choice == JOptionPane.YES_OPTION) {
-            ctrl.deleteFacility(id);
+        if (DeleteConfirmation.confirm(this, integrity, Facility.class, id, name)) {
             loadTable();
             showMsg("Deleted!");
         }
@@ -1,7 +1,11 @@
 package view;
 
 import controller.PatientController;
+import controller.PatientLinkage;
+import controller.PatientTimeline;
+import controller.ReferentialIntegrity;
 import model.Patient;
+import model.TimelineEvent;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
@@ -9,14 +13,23 @@ import java.util.List;
 
 public class PatientPanel extends JPanel {
 
+    private static final int HISTORY_PAGE = 50;
+
     private PatientController ctrl;
+    private PatientTimeline timeline;
+    private ReferentialIntegrity integrity;
+    private PatientLinkage linkage;
     private JTable table;
     private DefaultTableModel model;
     private JTextField searchBox;
     private JLabel countLabel;
 
-    public PatientPanel(PatientController controller) {
+    public PatientPanel(PatientController controller, PatientTimeline timeline, ReferentialIntegrity integrity,
+                        PatientLinkage linkage) {
         ctrl = controller;
+        this.timeline = timeline;
+        this.integrity = integrity;
+        this.linkage = linkage;
         initComponents();
         loadTable();
     }
@@ -55,16 +68,22 @@ public class PatientPanel extends JPanel {
         JButton editBtn = new JButton("Edit Patient");
         JButton delBtn = new JButton("Delete Patient");
         JButton detailsBtn = new JButton("View Details");
+        JButton historyBtn = new JButton("History");
+        JButton duplicatesBtn = new JButton("Find Duplicates");
 
         addBtn.addActionListener(e -> onAdd());
         editBtn.addActionListener(e -> onEdit());
         delBtn.addActionListener(e -> onDelete());
         detailsBtn.addActionListener(e -> showDetails());
+        historyBtn.addActionListener(e -> showHistory());
+        duplicatesBtn.addActionListener(e -> findDuplicates());
 
         btnPanel.add(addBtn);
         btnPanel.add(editBtn);
         btnPanel.add(delBtn);
         btnPanel.add(detailsBtn);
+        btnPanel.add(historyBtn);
+        btnPanel.add(duplicatesBtn);
 
         topSection.add(btnPanel, BorderLayout.EAST);
         add(topSection, BorderLayout.NORTH);
@@ -93,7 +112,7 @@ public class PatientPanel extends JPanel {
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         model.setRowCount(0);
         List<Patient> list = ctrl.getAllPatients();
 
@@ -177,13 +196,7 @@ public class PatientPanel extends JPanel {
         String id = (String) model.getValueAt(row, 0);
         String name = (String) model.getValueAt(row, 1);
 
-        int choice = JOptionPane.showConfirmDialog(this,
-                "Delete patient: " + name + "?",
-                "Confirm Delete",
-                JOptionPane.YES_NO_OPTION);
-
-        if (choice == JOptionPane.YES_OPTION) {
-            ctrl.deletePatient(id);
+        if (DeleteConfirmation.confirm(this, integrity, Patient.class, id, name)) {
             loadTable();
             showInfo("Deleted!");
         }
@@ -224,7 +237,18 @@ public class PatientPanel extends JPanel {
 
         details.append(">> OTHER\n");
         details.append("GP Surgery: ").append(p.getGpSurgeryId()).append("\n");
-        details.append("Registered: ").append(p.getRegistrationDate()).append("\n");
+        details.append("Registered: ").append(p.getRegistrationDate()).append("\n\n");
+
+        details.append(">> RECENT HISTORY\n");
+        PatientTimeline.Page recent = timeline.firstPage(p, 10);
+        for (TimelineEvent e : recent.getEvents()) {
+            details.append(e).append("\n");
+        }
+        if (recent.getEvents().isEmpty()) {
+            details.append("No appointments, prescriptions or referrals\n");
+        } else if (recent.hasMore()) {
+            details.append("... use History for the rest\n");
+        }
         details.append("=====================================\n");
 
         JTextArea textArea = new JTextArea(details.toString());
@@ -238,6 +262,50 @@ public class PatientPanel extends JPanel {
                 "Details", JOptionPane.PLAIN_MESSAGE);
     }
 
+    // Full history, newest first, loaded a page at a time
+    private void findDuplicates() {
+        DuplicatesDialog dialog = new DuplicatesDialog(SwingUtilities.getWindowAncestor(this), linkage);
+        dialog.setVisible(true);
+        if (dialog.getSummary() != null) {
+            loadTable();
+        }
+    }
+
+    private void showHistory() {
+        int row = table.getSelectedRow();
+        if (row == -1) {
+            showWarning("Select a patient first.");
+            return;
+        }
+
+        Patient p = ctrl.getPatientById((String) model.getValueAt(row, 0));
+        DefaultListModel<TimelineEvent> events = new DefaultListModel<>();
+        JList<TimelineEvent> list = new JList<>(events);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+
+        JButton olderBtn = new JButton("Older");
+        String[] cursor = {null};
+        Runnable loadPage = () -> {
+            PatientTimeline.Page page = timeline.page(p, cursor[0], HISTORY_PAGE);
+            for (TimelineEvent e : page.getEvents()) {
+                events.addElement(e);
+            }
+            cursor[0] = page.getNextCursor();
+            olderBtn.setEnabled(page.hasMore());
+        };
+        olderBtn.addActionListener(e -> loadPage.run());
+        loadPage.run();
+
+        JPanel content = new JPanel(new BorderLayout(5, 5));
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(650, 400));
+        content.add(scroll, BorderLayout.CENTER);
+        content.add(olderBtn, BorderLayout.SOUTH);
+
+        JOptionPane.showMessageDialog(this, content,
+                "History - " + p.getFullName(), JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void updateCount() {
         countLabel.setText("Total Patients: " + model.getRowCount());
     }
@@ -6,6 +6,7 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
+import java.util.Map;
 
 public class PrescriptionPanel extends JPanel {
 
@@ -17,6 +18,10 @@ public class PrescriptionPanel extends JPanel {
     private DefaultTableModel model;
     private JTextField searchBox;
     private JLabel countLabel;
+    private JLabel collectionLabel;
+
+    // Expiry is by date, so checking hourly is plenty
+    private static final int LIFECYCLE_CHECK_MILLIS = 60 * 60 * 1000;
 
     public PrescriptionPanel(PrescriptionController pc,
                              PatientController patc,
@@ -25,7 +30,11 @@ public class PrescriptionPanel extends JPanel {
         patCtrl = patc;
         clinCtrl = cc;
         initComponents();
+        ctrl.advanceLifecycle();
         loadTable();
+
+        Timer lifecycleTimer = new Timer(LIFECYCLE_CHECK_MILLIS, e -> onLifecycleTick());
+        lifecycleTimer.start();
     }
 
     private void initComponents() {
@@ -63,16 +72,25 @@ public class PrescriptionPanel extends JPanel {
         JButton editBtn = new JButton("Edit Prescription");
         JButton delBtn = new JButton("Delete Prescription");
         JButton viewBtn = new JButton("View Details");
+        JButton docBtn = new JButton("View Document");
+        JButton screenBtn = new JButton("Re-screen All");
+        JButton pharmacyBtn = new JButton("Pharmacy Status");
 
         addBtn.addActionListener(e -> onAdd());
         editBtn.addActionListener(e -> onEdit());
         delBtn.addActionListener(e -> onDelete());
         viewBtn.addActionListener(e -> showDetails());
+        docBtn.addActionListener(e -> showDocument());
+        screenBtn.addActionListener(e -> onRescreen());
+        pharmacyBtn.addActionListener(e -> showPharmacyStatus());
 
         btnRow.add(addBtn);
         btnRow.add(editBtn);
         btnRow.add(delBtn);
         btnRow.add(viewBtn);
+        btnRow.add(docBtn);
+        btnRow.add(screenBtn);
+        btnRow.add(pharmacyBtn);
 
         topSection.add(btnRow);
         add(topSection, BorderLayout.NORTH);
@@ -98,10 +116,13 @@ public class PrescriptionPanel extends JPanel {
         JPanel bottom = new JPanel(new FlowLayout(FlowLayout.LEFT));
         countLabel = new JLabel("Total Prescriptions: 0");
         bottom.add(countLabel);
+        bottom.add(Box.createHorizontalStrut(20));
+        collectionLabel = new JLabel();
+        bottom.add(collectionLabel);
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         model.setRowCount(0);
         List<Prescription> list = ctrl.getAllPrescriptions();
 
@@ -164,9 +185,12 @@ public class PrescriptionPanel extends JPanel {
 
         if (dlg.isConfirmed()) {
             Prescription newRx = dlg.getPrescription();
+            if (!confirmAlerts(newRx)) {
+                return;
+            }
             ctrl.addPrescription(newRx);
             loadTable();
-            showInfo("Prescription added!\nE-prescription saved to output_prescriptions.txt");
+            showInfo("Prescription added!\nE-prescription stored - use View Document to open it.");
         }
     }
 
@@ -186,6 +210,9 @@ public class PrescriptionPanel extends JPanel {
         dlg.setVisible(true);
 
         if (dlg.isConfirmed()) {
+            if (!confirmAlerts(dlg.getPrescription())) {
+                return;
+            }
             ctrl.updatePrescription(dlg.getPrescription());
             loadTable();
             showInfo("Prescription updated!");
@@ -236,8 +263,122 @@ public class PrescriptionPanel extends JPanel {
                 "Prescription Details", JOptionPane.PLAIN_MESSAGE);
     }
 
+    // Show any allergy or duplicate therapy alerts; true if there were none or the user goes ahead
+    private boolean confirmAlerts(Prescription rx) {
+        List<String> alerts = ctrl.checkPrescription(rx);
+        if (alerts.isEmpty()) {
+            return true;
+        }
+        int choice = JOptionPane.showConfirmDialog(this,
+                String.join("\n", alerts) + "\n\nPrescribe anyway?",
+                "Prescribing Alerts",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+        return choice == JOptionPane.YES_OPTION;
+    }
+
+    // Reload the drug dictionary and check every active prescription again
+    private void onRescreen() {
+        Map<Prescription, List<String>> results = ctrl.rescreenActivePrescriptions();
+        if (results.isEmpty()) {
+            showInfo("No alerts found for any active prescription.");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Prescription, List<String>> e : results.entrySet()) {
+            Prescription rx = e.getKey();
+            text.append(rx.getPrescriptionId()).append("  ").append(rx.getPatientId())
+                    .append("  ").append(rx.getMedicationName()).append("\n");
+            for (String alert : e.getValue()) {
+                text.append("    ").append(alert).append("\n");
+            }
+        }
+
+        JTextArea textArea = new JTextArea(text.toString());
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        textArea.setCaretPosition(0);
+
+        JScrollPane scroll = new JScrollPane(textArea);
+        scroll.setPreferredSize(new Dimension(600, 350));
+        JOptionPane.showMessageDialog(this, scroll,
+                "Prescriptions with Alerts (" + results.size() + ")", JOptionPane.WARNING_MESSAGE);
+    }
+
+    // The e-prescription generated when it was added
+    private void showDocument() {
+        int row = table.getSelectedRow();
+        if (row == -1) {
+            showWarning("Select a prescription first.");
+            return;
+        }
+
+        String id = (String) model.getValueAt(row, 0);
+        String doc = ctrl.getStoredDocument(id);
+        if (doc == null) {
+            showInfo("No e-prescription has been stored for " + id + ".");
+            return;
+        }
+
+        JTextArea textArea = new JTextArea(doc);
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        textArea.setCaretPosition(0);
+
+        JScrollPane scroll = new JScrollPane(textArea);
+        scroll.setPreferredSize(new Dimension(500, 500));
+
+        JOptionPane.showMessageDialog(this, scroll,
+                "E-Prescription - " + id, JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void updateCount() {
         countLabel.setText("Total Prescriptions: " + model.getRowCount());
+
+        int uncollected = 0;
+        int expiring = 0;
+        for (PrescriptionLifecycle.PharmacyCounts c : ctrl.getPharmacyCounts()) {
+            uncollected += c.getUncollected();
+            expiring += c.getExpiringSoon();
+        }
+        collectionLabel.setText("Uncollected: " + uncollected + " (" + expiring + " expiring soon)");
+    }
+
+    // Runs on the EDT, like every other change to the prescriptions
+    private void onLifecycleTick() {
+        List<Prescription> changed = ctrl.advanceLifecycle();
+        if (!changed.isEmpty()) {
+            System.out.println("Prescription lifecycle: " + changed.size() + " expired or completed");
+            loadTable();
+        }
+    }
+
+    // Uncollected and expiring-soon items for each pharmacy
+    private void showPharmacyStatus() {
+        List<PrescriptionLifecycle.PharmacyCounts> counts = ctrl.getPharmacyCounts();
+        if (counts.isEmpty()) {
+            showInfo("No uncollected prescriptions at any pharmacy.");
+            return;
+        }
+
+        String[] cols = {"Pharmacy", "Uncollected",
+                "Expiring within " + ctrl.getExpiryWarningDays() + " days"};
+        DefaultTableModel countsModel = new DefaultTableModel(cols, 0) {
+            @Override
+            public boolean isCellEditable(int r, int c) {
+                return false;
+            }
+        };
+        for (PrescriptionLifecycle.PharmacyCounts c : counts) {
+            countsModel.addRow(new Object[]{c.getPharmacy(), c.getUncollected(), c.getExpiringSoon()});
+        }
+
+        JTable countsTable = new JTable(countsModel);
+        JScrollPane scroll = new JScrollPane(countsTable);
+        scroll.setPreferredSize(new Dimension(500, 250));
+        JOptionPane.showMessageDialog(this, scroll,
+                "Pharmacy Collection Status", JOptionPane.PLAIN_MESSAGE);
     }
 
     // Helper methods
@@ -5,7 +5,10 @@ import model.*;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ReferralPanel extends JPanel {
 
@@ -13,20 +16,44 @@ public class ReferralPanel extends JPanel {
     private PatientController patCtrl;
     private ClinicianController clinCtrl;
     private FacilityController facCtrl;
+    private QueryEngine queries;
 
     private JTable table;
     private DefaultTableModel model;
     private JTextField searchBox;
     private JLabel countLabel;
+    private JLabel docsLabel;
+    private JLabel slaLabel;
+    private final AtomicBoolean slaUpdateQueued = new AtomicBoolean();
+
+    private static final int DOCS_REFRESH_MILLIS = 250;
+    private DocumentProgress documents;
 
     public ReferralPanel(ReferralController rc, PatientController pc,
-                         ClinicianController cc, FacilityController fc) {
+                         ClinicianController cc, FacilityController fc, QueryEngine queries) {
         ctrl = rc;
         patCtrl = pc;
         clinCtrl = cc;
         facCtrl = fc;
+        this.queries = queries;
         initComponents();
         loadTable();
+
+        // Documents are written in the background - a bulk send completes thousands a second,
+        // so the writers only count them and the label catches up a few times a second
+        documents = ctrl.trackDocuments();
+        Timer docsTimer = new Timer(DOCS_REFRESH_MILLIS, e -> onDocumentsWritten());
+        docsTimer.start();
+        // A burst of breaches (e.g. on startup) queues one label update, not one each
+        ctrl.addSlaBreachListener(ref -> {
+            if (slaUpdateQueued.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    slaUpdateQueued.set(false);
+                    updateSlaLabel();
+                });
+            }
+        });
+        updateSlaLabel();
     }
 
     private void initComponents() {
@@ -64,19 +91,25 @@ public class ReferralPanel extends JPanel {
         JButton editBtn = new JButton("Edit Referral");
         JButton delBtn = new JButton("Delete Referral");
         JButton viewBtn = new JButton("View Details");
+        JButton docsBtn = new JButton("View Documents");
         JButton sendBtn = new JButton("Send Referral");
+        JButton sendAllBtn = new JButton("Send All Pending");
 
         addBtn.addActionListener(e -> onAdd());
         editBtn.addActionListener(e -> onEdit());
         delBtn.addActionListener(e -> onDelete());
         viewBtn.addActionListener(e -> showDetails());
+        docsBtn.addActionListener(e -> showDocuments());
         sendBtn.addActionListener(e -> onSendReferral());
+        sendAllBtn.addActionListener(e -> onSendAllPending(sendAllBtn));
 
         btnRow.add(addBtn);
         btnRow.add(editBtn);
         btnRow.add(delBtn);
         btnRow.add(viewBtn);
+        btnRow.add(docsBtn);
         btnRow.add(sendBtn);
+        btnRow.add(sendAllBtn);
 
         topSection.add(btnRow);
         add(topSection, BorderLayout.NORTH);
@@ -102,10 +135,25 @@ public class ReferralPanel extends JPanel {
         JPanel bottom = new JPanel(new FlowLayout(FlowLayout.LEFT));
         countLabel = new JLabel("Total Referrals: 0");
         bottom.add(countLabel);
+        docsLabel = new JLabel(" ");
+        bottom.add(Box.createHorizontalStrut(20));
+        bottom.add(docsLabel);
+        slaLabel = new JLabel(" ");
+        slaLabel.setForeground(Color.RED);
+        slaLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        slaLabel.setToolTipText("Click to list overdue referrals");
+        slaLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                showSlaBreaches();
+            }
+        });
+        bottom.add(Box.createHorizontalStrut(20));
+        bottom.add(slaLabel);
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         model.setRowCount(0);
         List<Referral> list = ctrl.getAllReferrals();
 
@@ -113,6 +161,7 @@ public class ReferralPanel extends JPanel {
             addRowToTable(r);
         }
         updateCount();
+        updateSlaLabel();
     }
 
     private void addRowToTable(Referral r) {
@@ -148,32 +197,20 @@ public class ReferralPanel extends JPanel {
 
         model.setRowCount(0);
 
-        for (Referral r : ctrl.getAllReferrals()) {
-            Patient pat = patCtrl.getPatientById(r.getPatientId());
-            Clinician clin = clinCtrl.getClinicianById(r.getReferringClinicianId());
-            Facility fac = facCtrl.getFacilityById(r.getReferredToFacilityId());
-
-            String patName = (pat != null) ? pat.getFullName().toLowerCase() : "";
-            String clinName = (clin != null) ? clin.getFullName().toLowerCase() : "";
-            String facName = (fac != null) ? fac.getFacilityName().toLowerCase() : "";
-
-            // Null-safe field checks
-            String refId = r.getReferralId() != null ? r.getReferralId().toLowerCase() : "";
-            String status = r.getStatus() != null ? r.getStatus().toLowerCase() : "";
-            String urgency = r.getUrgencyLevel() != null ? r.getUrgencyLevel().toLowerCase() : "";
-            String reason = r.getReferralReason() != null ? r.getReferralReason().toLowerCase() : "";
-
-            // Check if query matches any field
-            if (refId.contains(q) ||
-                    patName.contains(q) ||
-                    clinName.contains(q) ||
-                    facName.contains(q) ||
-                    status.contains(q) ||
-                    urgency.contains(q) ||
-                    reason.contains(q)) {
-
-                addRowToTable(r);
-            }
+        // Names are matched once per patient/clinician/facility, not once per referral
+        Query<Referral> search = Query.from(Referral.class).where(Query.anyOf(
+                Query.contains("referral_id", q),
+                Query.contains("status", q),
+                Query.contains("urgency_level", q),
+                Query.contains("referral_reason", q),
+                Query.in("patient_id", Query.from(Patient.class).where(Query.contains("full_name", q))),
+                Query.in("referring_clinician_id",
+                        Query.from(Clinician.class).where(Query.contains("full_name", q))),
+                Query.in("referred_to_facility_id",
+                        Query.from(Facility.class).where(Query.contains("facility_name", q)))));
+
+        for (Referral r : queries.execute(search)) {
+            addRowToTable(r);
         }
         updateCount();
     }
@@ -280,16 +317,112 @@ public class ReferralPanel extends JPanel {
 
             if (success) {
                 loadTable();
-                showInfo("Referral sent successfully!\nDocuments generated:\n" +
-                        "- output_referrals.txt\n" +
-                        "- output_emails.txt\n" +
-                        "- output_ehr_updates.txt");
+                updateDocsLabel(null);
+                showInfo("Referral sent successfully!\nThe referral letter, email and EHR update are\n" +
+                        "being stored - use View Documents to open them.");
             } else {
                 showError("Failed to send referral.");
             }
         }
     }
 
+    // Sends run on a worker thread so a long backlog never blocks the UI
+    private void onSendAllPending(JButton button) {
+        int count = ctrl.getPendingReferrals().size();
+        if (count == 0) {
+            showInfo("There are no pending referrals.");
+            return;
+        }
+
+        int choice = JOptionPane.showConfirmDialog(this,
+                "Send all " + count + " pending referrals to their target facilities?",
+                "Send All Pending",
+                JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        button.setEnabled(false);
+        docsLabel.setText("Sending " + count + " referrals...");
+
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() {
+                return ctrl.sendPendingReferrals();
+            }
+
+            @Override
+            protected void done() {
+                // Sending leaves the referrals dirty; save them here on the EDT
+                ctrl.flushChanges();
+                button.setEnabled(true);
+                loadTable();
+                try {
+                    int sent = get();
+                    updateDocsLabel(null);
+                    showInfo(sent + " of " + count + " referrals sent.\nDocuments are being written in the background.");
+                } catch (Exception e) {
+                    updateDocsLabel(null);
+                    showError("Sending failed: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    // Runs on the EDT timer; picks up every completion since the last tick
+    private void onDocumentsWritten() {
+        List<Referral> failed = documents.drainFailed();
+        if (documents.drainWritten() == 0 && failed.isEmpty()) {
+            return;
+        }
+        for (Referral ref : failed) {
+            System.err.println("Documents for " + ref.getReferralId() + " failed");
+        }
+        updateDocsLabel(failed.isEmpty() ? null : failed.get(failed.size() - 1));
+    }
+
+    private void updateSlaLabel() {
+        int breaches = ctrl.getSlaBreachCount();
+        slaLabel.setText(breaches > 0 ? "SLA breaches: " + breaches : " ");
+    }
+
+    private void showSlaBreaches() {
+        List<Referral> breaches = ctrl.getSlaBreaches();
+        if (breaches.isEmpty()) {
+            showInfo("No pending referrals are past their deadline.");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Referral r : breaches) {
+            text.append(r.getReferralId()).append("  ")
+                    .append(r.getUrgencyLevel()).append("  referred ")
+                    .append(r.getReferralDate()).append("  patient ")
+                    .append(r.getPatientId()).append("\n");
+        }
+
+        JTextArea textArea = new JTextArea(text.toString());
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        textArea.setCaretPosition(0);
+
+        JScrollPane scroll = new JScrollPane(textArea);
+        scroll.setPreferredSize(new Dimension(450, 300));
+        JOptionPane.showMessageDialog(this, scroll,
+                "Overdue Referrals (" + breaches.size() + ")", JOptionPane.WARNING_MESSAGE);
+    }
+
+    private void updateDocsLabel(Referral failed) {
+        int inFlight = ctrl.getDocumentsInFlight();
+        if (failed != null) {
+            docsLabel.setText("Document write failed for " + failed.getReferralId());
+        } else if (inFlight > 0) {
+            docsLabel.setText("Writing documents: " + inFlight + " referrals queued");
+        } else {
+            docsLabel.setText("All documents written");
+        }
+    }
+
     private void showDetails() {
         int row = table.getSelectedRow();
         if (row == -1) {
@@ -315,72 +448,45 @@ public class ReferralPanel extends JPanel {
         Facility targFac = ref.getReferredToFacilityId() != null ?
                 facCtrl.getFacilityById(ref.getReferredToFacilityId()) : null;
 
-        StringBuilder details = new StringBuilder();
-        details.append("=====================================\n");
-        details.append("         REFERRAL DETAILS\n");
-        details.append("=====================================\n\n");
-
-        details.append(">> REFERRAL INFO\n");
-        details.append("ID:          ").append(ref.getReferralId()).append("\n");
-        details.append("Date:        ").append(ref.getReferralDate()).append("\n");
-        details.append("Urgency:     ").append(ref.getUrgencyLevel()).append("\n");
-        details.append("Status:      ").append(ref.getStatus()).append("\n");
-        details.append("Created:     ").append(ref.getCreatedDate()).append("\n");
-        details.append("Updated:     ").append(ref.getLastUpdated()).append("\n\n");
-
-        details.append(">> PATIENT\n");
+        DocumentTemplate.Values details = DocumentTemplates.get(DocumentTemplates.REFERRAL_DETAILS).values()
+                .put("referralId", ref.getReferralId())
+                .put("referralDate", ref.getReferralDate())
+                .put("urgency", ref.getUrgencyLevel())
+                .put("status", ref.getStatus())
+                .put("created", ref.getCreatedDate())
+                .put("updated", ref.getLastUpdated())
+                .put("patientId", ref.getPatientId())
+                .put("clinicianId", ref.getReferringClinicianId())
+                .put("facilityId", ref.getReferringFacilityId())
+                .put("targetFacilityId", ref.getReferredToFacilityId())
+                .put("targetClinicianId", ref.getReferredToClinicianId())
+                .put("reasonOrNA", nullSafe(ref.getReferralReason()))
+                .put("clinicalSummaryOrNA", nullSafe(ref.getClinicalSummary()))
+                .put("investigationsOrNA", nullSafe(ref.getRequestedInvestigations()))
+                .put("notesOrNA", nullSafe(ref.getNotes()))
+                .put("appointmentId", ref.getAppointmentId());
         if (pat != null) {
-            details.append("Name:        ").append(pat.getFullName()).append("\n");
-            details.append("NHS#:        ").append(pat.getNhsNumber()).append("\n");
-            details.append("DOB:         ").append(pat.getDateOfBirth()).append("\n");
-        } else {
-            details.append("ID:          ").append(ref.getPatientId()).append("\n");
+            details.put("patientName", pat.getFullName())
+                    .put("nhsNumber", pat.getNhsNumber())
+                    .put("dateOfBirth", pat.getDateOfBirth());
         }
-        details.append("\n");
-
-        details.append(">> REFERRING FROM\n");
         if (refClin != null) {
-            details.append("Clinician:   Dr. ").append(refClin.getFullName()).append("\n");
-            details.append("Specialty:   ").append(refClin.getSpecialization()).append("\n");
-        } else {
-            details.append("Clinician ID: ").append(ref.getReferringClinicianId()).append("\n");
+            details.put("clinicianName", refClin.getFullName())
+                    .put("specialization", refClin.getSpecialization());
         }
         if (refFac != null) {
-            details.append("Facility:    ").append(refFac.getFacilityName()).append("\n");
-        } else if (ref.getReferringFacilityId() != null) {
-            details.append("Facility ID: ").append(ref.getReferringFacilityId()).append("\n");
+            details.put("facilityName", refFac.getFacilityName());
         }
-        details.append("\n");
-
-        details.append(">> REFERRED TO\n");
         if (targFac != null) {
-            details.append("Facility:    ").append(targFac.getFacilityName()).append("\n");
-            details.append("Address:     ").append(targFac.getAddress()).append("\n");
-            details.append("Phone:       ").append(targFac.getPhoneNumber()).append("\n");
-        } else if (ref.getReferredToFacilityId() != null) {
-            details.append("Facility ID: ").append(ref.getReferredToFacilityId()).append("\n");
+            details.put("targetFacilityName", targFac.getFacilityName())
+                    .put("targetAddress", targFac.getAddress())
+                    .put("targetPhone", targFac.getPhoneNumber());
         }
         if (targClin != null) {
-            details.append("Clinician:   Dr. ").append(targClin.getFullName()).append("\n");
-        } else if (ref.getReferredToClinicianId() != null && !ref.getReferredToClinicianId().isEmpty()) {
-            details.append("Clinician ID: ").append(ref.getReferredToClinicianId()).append("\n");
-        }
-        details.append("\n");
-
-        details.append(">> CLINICAL DETAILS\n");
-        details.append("Reason:\n").append(nullSafe(ref.getReferralReason())).append("\n\n");
-        details.append("Clinical Summary:\n").append(nullSafe(ref.getClinicalSummary())).append("\n\n");
-        details.append("Requested Investigations:\n").append(nullSafe(ref.getRequestedInvestigations())).append("\n\n");
-        details.append("Notes:\n").append(nullSafe(ref.getNotes())).append("\n");
-
-        if (ref.getAppointmentId() != null && !ref.getAppointmentId().isEmpty()) {
-            details.append("\n>> APPOINTMENT\n");
-            details.append("Appointment ID: ").append(ref.getAppointmentId()).append("\n");
+            details.put("targetClinicianName", targClin.getFullName());
         }
 
-        details.append("\n=====================================\n");
-
-        JTextArea textArea = new JTextArea(details.toString());
+        JTextArea textArea = new JTextArea(details.render());
         textArea.setEditable(false);
         textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
         textArea.setCaretPosition(0);
@@ -392,6 +498,42 @@ public class ReferralPanel extends JPanel {
                 "Referral Details - " + ref.getReferralId(), JOptionPane.PLAIN_MESSAGE);
     }
 
+    // The letter, email and EHR update stored when the referral was sent, one tab each
+    private void showDocuments() {
+        int row = table.getSelectedRow();
+        if (row == -1) {
+            showWarning("Select a referral first.");
+            return;
+        }
+
+        String id = (String) model.getValueAt(row, 0);
+        String[][] kinds = {
+                {"Referral Letter", ReferralManager.DOC_REFERRAL},
+                {"Email", ReferralManager.DOC_EMAIL},
+                {"EHR Update", ReferralManager.DOC_EHR}
+        };
+
+        JTabbedPane tabs = new JTabbedPane();
+        for (String[] kind : kinds) {
+            String doc = ctrl.getStoredDocument(id, kind[1]);
+            if (doc != null) {
+                JTextArea textArea = new JTextArea(doc);
+                textArea.setEditable(false);
+                textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+                textArea.setCaretPosition(0);
+                tabs.addTab(kind[0], new JScrollPane(textArea));
+            }
+        }
+        if (tabs.getTabCount() == 0) {
+            showInfo("No documents have been stored for " + id + " yet.\nThey are written when it is sent.");
+            return;
+        }
+
+        tabs.setPreferredSize(new Dimension(600, 550));
+        JOptionPane.showMessageDialog(this, tabs,
+                "Referral Documents - " + id, JOptionPane.PLAIN_MESSAGE);
+    }
+
     private String nullSafe(String value) {
         return (value != null && !value.isEmpty()) ? value : "N/A";
     }
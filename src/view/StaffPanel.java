@@ -100,7 +100,7 @@ public class StaffPanel extends JPanel {
         add(bottom, BorderLayout.SOUTH);
     }
 
-    private void loadTable() {
+    public void loadTable() {
         model.setRowCount(0);
         List<Staff> list = ctrl.getAllStaff();
         for (Staff s : list) {
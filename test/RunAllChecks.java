@@ -0,0 +1,45 @@
+import controller.CsvWriterCheck;
+import controller.IncrementalCsvReaderCheck;
+import controller.ParallelCsvLoaderCheck;
+import controller.PatientLinkageCheck;
+import controller.PatientTimelineCheck;
+import controller.QueryEngineCheck;
+import controller.ReferralControllerCheck;
+import controller.ReportExporterCheck;
+import harness.Checks;
+import model.AhoCorasickCheck;
+import model.DocumentArchiveCheck;
+import model.DocumentTemplateCheck;
+import model.EhrSyncClientCheck;
+import model.PatientRecordStoreCheck;
+import model.PrescriptionCheckerCheck;
+import model.ReferralManagerCheck;
+import model.ReferralManagerStressCheck;
+import model.SmtpDispatcherCheck;
+
+/**
+ * Runs every check under test/. Add new check classes here.
+ */
+public class RunAllChecks {
+
+    public static void main(String[] args) {
+        AhoCorasickCheck.run();
+        CsvWriterCheck.run();
+        DocumentArchiveCheck.run();
+        DocumentTemplateCheck.run();
+        IncrementalCsvReaderCheck.run();
+        ParallelCsvLoaderCheck.run();
+        PatientLinkageCheck.run();
+        PatientRecordStoreCheck.run();
+        PatientTimelineCheck.run();
+        PrescriptionCheckerCheck.run();
+        QueryEngineCheck.run();
+        ReferralControllerCheck.run();
+        ReportExporterCheck.run();
+        EhrSyncClientCheck.run();
+        ReferralManagerCheck.run();
+        ReferralManagerStressCheck.run();
+        SmtpDispatcherCheck.run();
+        Checks.finish();
+    }
+}
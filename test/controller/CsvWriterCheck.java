@@ -0,0 +1,84 @@
+package controller;
+
+import harness.Checks;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class CsvWriterCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("fields are quoted only when needed", () -> {
+            Path file = Checks.tempDir("csv").resolve("out.csv");
+            try (CsvWriter out = CsvWriter.open(file.toString())) {
+                out.header("a,b,c");
+                out.field("plain").field("with, comma").field("say \"hi\"").endRow();
+                out.field((String) null).field(-42).field("line\nbreak").endRow();
+                out.commit();
+            }
+            String text = new String(Files.readAllBytes(file), Charset.defaultCharset());
+            checkEquals("a,b,c\nplain,\"with, comma\",\"say \"\"hi\"\"\"\n,-42,\"line\nbreak\"\n", text, "file");
+        });
+
+        Checks.run("concurrent saves of one file each land whole", () -> {
+            Path dir = Checks.tempDir("csv");
+            Path file = dir.resolve("referrals.csv");
+            int writers = 8;
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+
+            for (int w = 0; w < writers; w++) {
+                String tag = "writer" + w;
+                Thread t = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int round = 0; round < 20; round++) {
+                            try (CsvWriter out = CsvWriter.open(file.toString())) {
+                                out.header("id,who");
+                                for (int i = 0; i < 2000; i++) {
+                                    out.field(i).field(tag).endRow();
+                                }
+                                out.commit();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                });
+                threads.add(t);
+                t.start();
+            }
+            start.countDown();
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            checkEquals(List.of(), errors, "errors from writers");
+            List<String> lines = Files.readAllLines(file);
+            checkEquals(2001, lines.size(), "lines in final file");
+            String tag = lines.get(1).split(",")[1];
+            for (String line : lines.subList(1, lines.size())) {
+                check(line.endsWith("," + tag), "rows from one writer only, got " + line);
+            }
+            try (Stream<Path> left = Files.list(dir)) {
+                checkEquals(1L, left.count(), "files left in directory (no stray temp files)");
+            }
+        });
+    }
+}
@@ -0,0 +1,149 @@
+package controller;
+
+import harness.Checks;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class IncrementalCsvReaderCheck {
+
+    private static final String HEADER = "id,patient,status\n";
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("tail read returns only appended rows", () -> {
+            Path file = write("a1,P1,Scheduled\na2,P2,Scheduled\n");
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+
+            IncrementalCsvReader.Chunk first = reader.read(file.toString());
+            check(first.isFullRead(), "first read is a full read");
+            checkEquals(2, first.getLines().size(), "rows on first read");
+
+            append(file, "a3,P3,Scheduled\n");
+            IncrementalCsvReader.Chunk next = reader.read(file.toString());
+            check(!next.isFullRead(), "append is read as a tail");
+            checkEquals("a3,P3,Scheduled", next.getLines().get(0), "appended row");
+            checkEquals(4, next.getLineNumber(0), "line number of appended row");
+        });
+
+        Checks.run("same-length edit to a middle row forces a full read", () -> {
+            Path file = write("a1,P1,Scheduled\na2,P2,Scheduled\na3,P3,Scheduled\n");
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+            reader.read(file.toString());
+
+            // Same length, header and last line untouched
+            write(file, "a1,P1,Scheduled\na2,P2,Cancelled\na3,P3,Scheduled\n");
+            check(reader.needsFullRead(file.toString()), "needsFullRead after middle edit");
+            IncrementalCsvReader.Chunk again = reader.read(file.toString());
+            check(again.isFullRead(), "middle edit is read in full");
+            checkEquals(3, again.getLines().size(), "rows after middle edit");
+            checkEquals("a2,P2,Cancelled", again.getLines().get(1), "edited row");
+        });
+
+        Checks.run("big file: tail reads and edits to sampled blocks", () -> {
+            StringBuilder rows = new StringBuilder();
+            for (int i = 0; i < 20_000; i++) {
+                rows.append('a').append(100_000 + i).append(",P1,Scheduled\n");
+            }
+            Path file = write(rows.toString());
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+            checkEquals(20_000, reader.read(file.toString()).getLines().size(), "rows on first read");
+
+            append(file, "b1,P2,Scheduled\n");
+            IncrementalCsvReader.Chunk tail = reader.read(file.toString());
+            check(!tail.isFullRead(), "append is read as a tail");
+            checkEquals(1, tail.getLines().size(), "rows after append");
+
+            // Same length, in the last record consumed
+            write(file, rows.toString() + "b1,P2,Cancelled\n");
+            check(reader.needsFullRead(file.toString()), "edit to the last record noticed");
+
+            // Same length, in the header and first block
+            reader.read(file.toString());
+            Files.write(file, ("ID,patient,status\n" + rows + "b1,P2,Cancelled\n").getBytes(StandardCharsets.UTF_8));
+            check(reader.read(file.toString()).isFullRead(), "edit to the first block is read in full");
+        });
+
+        Checks.run("unterminated last line is returned once", () -> {
+            Path file = write("a1,P1,Scheduled\na2,P2,Sched");
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+            checkEquals(2, reader.read(file.toString()).getLines().size(), "rows incl. partial");
+
+            // Writer finishes the line with the same bytes: nothing new
+            write(file, "a1,P1,Scheduled\na2,P2,Sched\n");
+            checkEquals(0, reader.read(file.toString()).getLines().size(), "rows after newline added");
+
+            append(file, "a3,P3,Scheduled\n");
+            IncrementalCsvReader.Chunk next = reader.read(file.toString());
+            check(!next.isFullRead(), "still a tail read");
+            checkEquals(1, next.getLines().size(), "rows after append");
+        });
+
+        Checks.run("markRead checkpoint catches middle edits", () -> {
+            String body = "a1,P1,Scheduled\na2,P2,Scheduled\n";
+            Path file = write(body);
+            long length = Files.size(file);
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+            reader.markRead(file.toString(), length, length, 3);
+
+            append(file, "a3,P3,Scheduled\n");
+            IncrementalCsvReader.Chunk tail = reader.read(file.toString());
+            check(!tail.isFullRead(), "append after markRead is a tail");
+            checkEquals(1, tail.getLines().size(), "rows after markRead");
+
+            write(file, "a1,P1,Cancelled\na2,P2,Scheduled\na3,P3,Scheduled\n");
+            check(reader.read(file.toString()).isFullRead(), "edit after markRead is read in full");
+        });
+
+        Checks.run("our own save moves the checkpoint to its end", () -> {
+            Path file = write("a1,P1,Scheduled\n");
+            IncrementalCsvReader reader = new IncrementalCsvReader();
+            reader.read(file.toString());
+
+            AtomicReference<CsvWriter.Saved> saved = new AtomicReference<>();
+            CsvWriter.addSaveListener(s -> {
+                if (s.getFile().equals(file.toAbsolutePath().normalize())) {
+                    saved.set(s);
+                }
+            });
+            try (CsvWriter out = CsvWriter.open(file.toString())) {
+                out.header("id,patient,status");
+                out.field("a1").field("P1").field("Cancelled").endRow();
+                out.field("a2").field("P2").field("multi\nline").endRow();
+                out.commit();
+            }
+            reader.markWritten(saved.get());
+            checkEquals(0, reader.read(file.toString()).getLines().size(), "rows right after own save");
+
+            append(file, "a3,P3,Scheduled\n");
+            IncrementalCsvReader.Chunk tail = reader.read(file.toString());
+            check(!tail.isFullRead(), "append after own save is a tail");
+            checkEquals("a3,P3,Scheduled", tail.getLines().get(0), "appended row");
+            checkEquals(5, tail.getLineNumber(0), "line number counts the quoted newline");
+        });
+    }
+
+    private static Path write(String rows) throws Exception {
+        Path file = Checks.tempDir("tail").resolve("appointments.csv");
+        write(file, rows);
+        return file;
+    }
+
+    private static void write(Path file, String rows) throws Exception {
+        Files.write(file, (HEADER + rows).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(Path file, String rows) throws Exception {
+        Files.write(file, rows.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
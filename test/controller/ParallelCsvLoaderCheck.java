@@ -0,0 +1,156 @@
+package controller;
+
+import harness.Checks;
+import model.Appointment;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class ParallelCsvLoaderCheck {
+
+    private static final String HEADER = "appointment_id,patient_id,clinician_id,facility_id,appointment_date," +
+            "appointment_time,duration_minutes,appointment_type,status,reason_for_visit,notes";
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("parallel load matches the sequential loader at every chunk size", () -> {
+            Path file = write(String.join("\n",
+                    HEADER,
+                    row("A1", "plain"),
+                    row("A2", "\"two\nlines\""),
+                    row("A3", "\"comma, and \"\"quotes\"\"\""),
+                    row("A4", "\"three\nphysical\nlines\""),
+                    row("A5", "last")) + "\n");
+            List<String> expected = describe(DataLoader.loadAppointments(file.toString()));
+            checkEquals(5, expected.size(), "sequential rows");
+
+            // Every target from one byte to the whole file puts a boundary at every offset,
+            // including inside each quoted field
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                long size = Files.size(file);
+                for (long target = 1; target <= size; target++) {
+                    ParallelCsvLoader.Result<Appointment> loaded =
+                            ParallelCsvLoader.load(file.toString(), DataLoader::parseAppointmentRow, pool, target);
+                    checkEquals(expected, describe(loaded.getRows()), "rows with chunk target " + target);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        });
+
+        Checks.run("CRLF files match the sequential tail read", () -> {
+            Path file = write(String.join("\r\n",
+                    HEADER,
+                    row("A1", "plain"),
+                    row("A2", "\"crlf\r\ninside\""),
+                    row("A3", "\"lf\ninside\""),
+                    row("A4", "last")) + "\r\n");
+            DataLoader.resetIncremental(file.toString());
+            IncrementalLoad<Appointment> tail = DataLoader.loadNewAppointments(file.toString());
+            List<String> expected = describe(tail.getRows());
+            checkEquals(4, expected.size(), "sequential rows");
+            check(expected.get(1).endsWith("|crlf\r\ninside"), "quoted CRLF kept: " + expected.get(1));
+            check(expected.get(3).endsWith("|last"), "record CR stripped: " + expected.get(3));
+
+            long size = Files.size(file);
+            for (long target = 1; target <= size; target++) {
+                ParallelCsvLoader.Result<Appointment> loaded = ParallelCsvLoader.load(file.toString(),
+                        DataLoader::parseAppointmentRow, ForkJoinPool.commonPool(), target);
+                checkEquals(expected, describe(loaded.getRows()), "rows with chunk target " + target);
+            }
+        });
+
+        Checks.run("records report the physical line they start on", () -> {
+            Path file = write(String.join("\n",
+                    HEADER,
+                    row("A1", "\"one\ntwo\nthree\""),
+                    "A2,too,short",
+                    row("A3", "\"x\r\ny\""),
+                    "A4,also,short") + "\n");
+
+            // Reference: the sequential tail reader's line numbers
+            IncrementalCsvReader.Chunk chunk = new IncrementalCsvReader().read(file.toString());
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < chunk.getLines().size(); i++) {
+                expected.add(chunk.getLineNumber(i) + ":" + chunk.getLines().get(i).substring(0, 2));
+            }
+            checkEquals(List.of("2:A1", "5:A2", "6:A3", "8:A4"), expected, "tail reader line numbers");
+
+            long size = Files.size(file);
+            for (long target = 1; target <= size; target++) {
+                ParallelCsvLoader.Result<String> loaded = ParallelCsvLoader.load(file.toString(),
+                        (record, line) -> line + ":" + record.substring(0, 2), ForkJoinPool.commonPool(), target);
+                checkEquals(expected, loaded.getRows(), "line numbers with chunk target " + target);
+            }
+        });
+
+        Checks.run("chunk counts at the edges", () -> {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+
+            ParallelCsvLoader.Result<String> empty = load(write(""), pool, 1);
+            checkEquals(0, empty.getChunks(), "chunks in an empty file");
+            checkEquals(0, empty.getCompleteLines(), "lines in an empty file");
+
+            ParallelCsvLoader.Result<String> bareHeader = load(write(HEADER), pool, 1);
+            checkEquals(0, bareHeader.getChunks(), "chunks with an unterminated header");
+            checkEquals(0, bareHeader.getRows().size(), "rows with an unterminated header");
+
+            ParallelCsvLoader.Result<String> headerOnly = load(write(HEADER + "\n"), pool, 1);
+            checkEquals(0, headerOnly.getChunks(), "chunks with only a header");
+            checkEquals(1, headerOnly.getCompleteLines(), "lines with only a header");
+
+            Path file = write(HEADER + "\na1\na2\n\"a3\nquoted\"\na4");
+            ParallelCsvLoader.Result<String> perRecord = load(file, pool, 1);
+            checkEquals(4, perRecord.getChunks(), "one chunk per record, unterminated tail included");
+            checkEquals(List.of("a1", "a2", "\"a3\nquoted\"", "a4"), perRecord.getRows(), "rows");
+            checkEquals(5, perRecord.getCompleteLines(), "terminated lines");
+            checkEquals(Files.size(file) - 2, perRecord.getRecordsEnd(), "records end before the partial row");
+
+            ParallelCsvLoader.Result<String> whole = load(file, pool, Files.size(file));
+            checkEquals(1, whole.getChunks(), "one chunk when the target covers the file");
+            checkEquals(perRecord.getRows(), whole.getRows(), "same rows in one chunk");
+
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                checkEquals(perRecord.getRows(), load(file, single, 1).getRows(), "rows on a one-thread pool");
+            } finally {
+                single.shutdown();
+            }
+        });
+    }
+
+    private static ParallelCsvLoader.Result<String> load(Path file, ForkJoinPool pool, long target) throws Exception {
+        return ParallelCsvLoader.load(file.toString(), (record, line) -> record, pool, target);
+    }
+
+    private static String row(String id, String notes) {
+        return id + ",P1,C1,F1,2024-01-05,09:30,15,Routine,Scheduled,Checkup," + notes;
+    }
+
+    private static List<String> describe(List<Appointment> appointments) {
+        List<String> out = new ArrayList<>();
+        for (Appointment a : appointments) {
+            out.add(a.getAppointmentId() + "|" + a.getAppointmentDate() + "|" + a.getDurationMinutes()
+                    + "|" + a.getReasonForVisit() + "|" + a.getNotes());
+        }
+        return out;
+    }
+
+    private static Path write(String text) throws Exception {
+        Path file = Checks.tempDir("parallel").resolve("appointments.csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
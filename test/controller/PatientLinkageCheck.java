@@ -0,0 +1,77 @@
+package controller;
+
+import harness.Checks;
+import model.Patient;
+import model.PatientRecord;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class PatientLinkageCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("merging keeps the duplicates' medical history, once each", () -> {
+            archivesInTempDirs();
+            PatientController patients = new PatientController();
+            ClinicianController clinicians = new ClinicianController();
+            PatientLinkage linkage = new PatientLinkage(patients, new AppointmentController(patients, clinicians),
+                    new PrescriptionController(patients, clinicians),
+                    new ReferralController(patients, clinicians, new FacilityController()));
+
+            Patient a = patient("PL1", "ada@example.test");
+            Patient b = patient("PL2", "");
+            patients.addPatient(a);
+            patients.addPatient(b);
+            a.getPatientRecord().addAllergy("Penicillin");
+            a.getPatientRecord().addCondition("Asthma");
+            b.getPatientRecord().addAllergy("penicillin ");
+            b.getPatientRecord().addAllergy("Latex");
+            b.getPatientRecord().updateMedications(Arrays.asList("Salbutamol"));
+            b.getPatientRecord().setBloodType("O+");
+
+            PatientLinkage.Result result = linkage.findDuplicates();
+            checkEquals(1, result.getClusters().size(), "clusters");
+            PatientLinkage.MergeSummary summary = linkage.merge(result.getClusters());
+            checkEquals(1, summary.getPatientsRemoved(), "patients removed");
+
+            List<Patient> left = patients.getAllPatients();
+            checkEquals(1, left.size(), "patients left");
+            PatientRecord rec = left.get(0).getPatientRecord();
+            checkEquals(2, rec.getAllergies().size(), "allergies " + rec.getAllergies());
+            check(rec.getAllergies().contains("Latex"), "Latex allergy kept");
+            checkEquals(Arrays.asList("Asthma"), rec.getConditions(), "conditions");
+            checkEquals(Arrays.asList("Salbutamol"), rec.getMedications(), "medications");
+            checkEquals("O+", rec.getBloodType(), "blood type");
+        });
+    }
+
+    // Both records must look like the same person: same NHS number, name and date of birth
+    private static Patient patient(String id, String email) {
+        return new Patient(id, "Ada", "Lovelace", email, "07700900123", id, LocalDate.of(1980, 1, 1),
+                "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456", LocalDate.of(2020, 1, 1), "S001");
+    }
+
+    // Controllers open their archives and output files on construction - keep them out of the working directory
+    static void archivesInTempDirs() throws IOException {
+        // The referral controller fixes the referral manager's output directory on first use
+        if (System.getProperty("referrals.dir") == null) {
+            System.setProperty("referrals.dir", Checks.tempDir("referrals").toString());
+        }
+        if (System.getProperty("prescriptions.dir") == null) {
+            System.setProperty("prescriptions.dir", Checks.tempDir("prescriptions").toString());
+        }
+        if (System.getProperty("patient.records.dir") == null) {
+            System.setProperty("patient.records.dir", Checks.tempDir("records").toString());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package controller;
+
+import harness.Checks;
+import model.Appointment;
+import model.Patient;
+import model.Prescription;
+import model.Referral;
+import model.ReferralManager;
+import model.TimelineEvent;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class PatientTimelineCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("pages cover the whole history newest first, once each", () -> {
+            PatientTimeline timeline = timeline();
+            Patient p = patient("PT1", 300, 120);
+            addReferrals(p, 40);
+
+            List<TimelineEvent> all = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                PatientTimeline.Page page = timeline.page(p, cursor, 25);
+                all.addAll(page.getEvents());
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+
+            checkEquals(460, all.size(), "events");
+            checkEquals(19, pages, "pages");
+            for (int i = 1; i < all.size(); i++) {
+                check(all.get(i - 1).compareTo(all.get(i)) < 0, "out of order at " + i);
+            }
+        });
+
+        Checks.run("records added between pages are picked up", () -> {
+            PatientTimeline timeline = timeline();
+            Patient p = patient("PT2", 10, 0);
+            PatientTimeline.Page first = timeline.firstPage(p, 5);
+
+            // Older than everything on the first page, so it belongs on the second
+            p.addAppointment(appointment("PT2", "A-old", LocalDate.of(1990, 1, 1)));
+            PatientTimeline.Page second = timeline.page(p, first.getNextCursor(), 10);
+            checkEquals(6, second.getEvents().size(), "second page");
+            checkEquals("A-old", second.getEvents().get(5).getId(), "oldest last");
+
+            addReferrals(p, 1);
+            checkEquals(12, timeline.firstPage(p, 100).getEvents().size(), "after a referral");
+        });
+
+        Checks.run("malformed cursors are rejected", () -> {
+            PatientTimeline timeline = timeline();
+            Patient p = patient("PT3", 3, 0);
+            for (String bad : new String[] {"", "garbage", "2024-13-01|x|Appointment|A1"}) {
+                try {
+                    timeline.page(p, bad, 10);
+                    check(false, "accepted cursor '" + bad + "'");
+                } catch (IllegalArgumentException expected) {
+                    // as it should be
+                }
+            }
+        });
+    }
+
+    private static PatientTimeline timeline() throws IOException {
+        if (System.getProperty("referrals.dir") == null) {
+            System.setProperty("referrals.dir", Checks.tempDir("referrals").toString());
+        }
+        ReferralManager.getInstance().clearAll();
+        return new PatientTimeline(new ReferralController(new PatientController(), new ClinicianController(),
+                new FacilityController()));
+    }
+
+    // Appointments on consecutive days from 2005, prescriptions every third day
+    private static Patient patient(String id, int appointments, int prescriptions) {
+        Patient p = new Patient(id, "Ada", "Lovelace", "ada@example.test", "0123", id, LocalDate.of(1980, 1, 1),
+                "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456", LocalDate.of(2020, 1, 1), "F1");
+        LocalDate start = LocalDate.of(2005, 1, 1);
+        for (int i = 0; i < appointments; i++) {
+            p.addAppointment(appointment(id, "A" + i, start.plusDays(i)));
+        }
+        for (int i = 0; i < prescriptions; i++) {
+            p.addPrescription(new Prescription("RX" + i, id, "C1", null, start.plusDays(3L * i), "Drug", "5mg",
+                    "daily", 7, "7", "", "Pharmacy", "Issued", null, null));
+        }
+        return p;
+    }
+
+    private static Appointment appointment(String patientId, String id, LocalDate date) {
+        return new Appointment(id, patientId, "C1", "F1", date, "09:00", 15, "Check-up", "Scheduled", "r", "");
+    }
+
+    private static void addReferrals(Patient p, int n) {
+        ReferralManager manager = ReferralManager.getInstance();
+        for (int i = 0; i < n; i++) {
+            manager.createSimpleReferral(p.getPatientId(), "C1", "F1", "Routine", "r", "", "");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package controller;
+
+import harness.Bench;
+import model.Appointment;
+import model.ChangeBus;
+import model.Patient;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Planned execute() against executeNaive() on a synthetic practice: 20,000
+ * patients over 40 GP surgeries and 200,000 appointments over five years.
+ */
+public class QueryEngineBench {
+
+    private static final String[] SURNAMES = {"Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson",
+            "Davies", "Patel", "Robinson", "Wright", "Thompson", "Evans", "Walker", "White", "Roberts", "Green",
+            "Hall", "Wood", "Jackson", "Clarke", "Khan", "Lewis", "Harris", "Martin", "Cooper", "King", "Lee"};
+    private static final String[] STATUSES = {"Scheduled", "Completed", "Cancelled", "No-show"};
+
+    public static void main(String[] args) {
+        QueryEngine engine = engine(20_000, 200_000);
+        LocalDate from = LocalDate.of(2024, 3, 1);
+
+        compare(engine, "appointments of one surgery's patients in a week", Query.from(Appointment.class)
+                .where(Query.between("appointment_date", from, from.plusDays(6)))
+                .where(Query.in("patient_id", Query.from(Patient.class).where(Query.eq("gp_surgery_id", "S007")))));
+        compare(engine, "one patient's appointments, by date", Query.from(Appointment.class)
+                .where(Query.eq("patient_id", "P12345"))
+                .orderBy("appointment_date"));
+        compare(engine, "surname prefix", Query.from(Patient.class)
+                .where(Query.prefix("last_name", "wil")));
+        compare(engine, "status only (planner scans)", Query.from(Appointment.class)
+                .where(Query.eq("status", "Cancelled")));
+    }
+
+    private static void compare(QueryEngine engine, String name, Query<?> query) {
+        int rows = engine.execute(query).size();
+        System.out.println(name + " - " + rows + " rows");
+        double naive = Bench.measure("  naive", 2, i -> engine.executeNaive(query));
+        double planned = Bench.measure("  planned", 200, i -> engine.execute(query));
+        Bench.compare("  planned vs naive", naive, planned);
+    }
+
+    // An engine over generated records, published through the change bus as a reload would be
+    static QueryEngine engine(int patients, int appointments) {
+        PatientController pc = new PatientController();
+        ClinicianController cc = new ClinicianController();
+        QueryEngine engine = new QueryEngine(pc, cc, new StaffController(), new FacilityController(),
+                new AppointmentController(pc, cc), new PrescriptionController(pc, cc),
+                new ReferralController(pc, cc, new FacilityController()));
+
+        Random random = new Random(42);
+        ChangeBus bus = ChangeBus.getInstance();
+        bus.transaction(() -> {
+            for (int i = 0; i < patients; i++) {
+                bus.inserted(Patient.class, patient(i, random));
+            }
+        });
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        bus.transaction(() -> {
+            for (int i = 0; i < appointments; i++) {
+                bus.inserted(Appointment.class, new Appointment("A" + i, "P" + random.nextInt(patients),
+                        "C" + random.nextInt(100), "S" + String.format("%03d", random.nextInt(40)),
+                        start.plusDays(random.nextInt(5 * 365)), "09:00", 15, "Consultation",
+                        STATUSES[random.nextInt(STATUSES.length)], "Review", ""));
+            }
+        });
+        return engine;
+    }
+
+    private static Patient patient(int i, Random random) {
+        String id = "P" + i;
+        return new Patient(id, "Pat" + i, SURNAMES[random.nextInt(SURNAMES.length)], id + "@example.test", "0123",
+                id, LocalDate.of(1940 + random.nextInt(80), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                String.valueOf(9_000_000_000L + i), random.nextBoolean() ? "F" : "M", "1 Street", "AB1 2CD",
+                "", "", LocalDate.of(2015, 1, 1), "S" + String.format("%03d", random.nextInt(40)));
+    }
+}
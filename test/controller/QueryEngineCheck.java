@@ -0,0 +1,63 @@
+package controller;
+
+import harness.Checks;
+import model.Appointment;
+import model.Patient;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class QueryEngineCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("empty prefix and contains match every value", () -> {
+            QueryEngine engine = QueryEngineBench.engine(500, 0);
+            List<Query<Patient>> queries = Arrays.asList(
+                    Query.from(Patient.class).where(Query.prefix("last_name", "")),
+                    Query.from(Patient.class).where(Query.prefix("last_name", null)),
+                    Query.from(Patient.class).where(Query.prefix("first_name", "")),
+                    Query.from(Patient.class).where(Query.contains("full_name", "")),
+                    Query.from(Patient.class).where(Query.contains("full_name", null)));
+            for (Query<Patient> q : queries) {
+                checkEquals(500, engine.execute(q).size(), q.describeConditions());
+                checkEquals(500, engine.executeNaive(q).size(), "naive " + q.describeConditions());
+            }
+        });
+
+        Checks.run("planned and naive runs agree", () -> {
+            QueryEngine engine = QueryEngineBench.engine(2_000, 20_000);
+            LocalDate from = LocalDate.of(2022, 6, 1);
+            List<Query<?>> queries = Arrays.asList(
+                    Query.from(Appointment.class)
+                            .where(Query.between("appointment_date", from, from.plusDays(30)))
+                            .where(Query.in("patient_id",
+                                    Query.from(Patient.class).where(Query.eq("gp_surgery_id", "S003")))),
+                    Query.from(Appointment.class).where(Query.eq("patient_id", "P17")).orderBy("appointment_date"),
+                    Query.from(Patient.class).where(Query.prefix("last_name", "wil")),
+                    Query.from(Patient.class).where(Query.anyOf(Query.eq("last_name", "Khan"),
+                            Query.prefix("patient_id", "p19"))),
+                    Query.from(Appointment.class).where(Query.eq("status", "Cancelled"))
+                            .where(Query.contains("appointment_id", "99")));
+            for (Query<?> q : queries) {
+                List<String> planned = ids(engine.execute(q));
+                check(!planned.isEmpty(), "no rows for " + q.describeConditions());
+                checkEquals(ids(engine.executeNaive(q)), planned, q.describeConditions());
+            }
+        });
+    }
+
+    private static List<String> ids(List<?> records) {
+        return records.stream().map(r -> r instanceof Patient ? ((Patient) r).getPatientId()
+                : ((Appointment) r).getAppointmentId()).sorted().collect(Collectors.toList());
+    }
+}
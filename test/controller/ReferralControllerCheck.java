@@ -0,0 +1,100 @@
+package controller;
+
+import harness.Checks;
+import model.ChangeBus;
+import model.Clinician;
+import model.Facility;
+import model.Patient;
+import model.Referral;
+import model.ReferralManager;
+
+import javax.swing.Timer;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class ReferralControllerCheck {
+
+    private static final int BULK = 10_000;
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run(BULK + " bulk sends reach the EDT as a handful of timer ticks", () -> {
+            PatientLinkageCheck.archivesInTempDirs();
+            PatientController patients = new PatientController();
+            ClinicianController clinicians = new ClinicianController();
+            FacilityController facilities = new FacilityController();
+            ReferralController referrals = new ReferralController(patients, clinicians, facilities);
+            ReferralManager.getInstance().clearAll();
+
+            patients.addPatient(new Patient("PB1", "Ada", "Lovelace", "ada@example.test", "0123", "PB1",
+                    LocalDate.of(1980, 1, 1), "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456",
+                    LocalDate.of(2020, 1, 1), "FB1"));
+            clinicians.addClinician(new Clinician("CB1", "Grace", "Hopper", "Dr", "GP", "GMC1", "0789",
+                    "gp@surgery.test", "FB1", "GP Surgery", "Full-time", LocalDate.of(2010, 1, 1)));
+            facilities.addFacility(new Facility("FB1", "General Hospital", "Hospital", "2 Road", "EF3 4GH",
+                    "0999", "referrals@hospital.test", "24/7", "Manager", 100));
+            for (int i = 0; i < BULK; i++) {
+                referrals.createSimpleReferral("PB1", "CB1", "FB1", "Routine", "bulk " + i, "", "");
+            }
+
+            // Count everything the EDT runs while the documents are written
+            CountingQueue edt = new CountingQueue();
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(edt);
+            AtomicInteger batches = new AtomicInteger();
+            AtomicInteger changes = new AtomicInteger();
+            ChangeBus.Subscription sub = ChangeBus.getInstance().subscribe(Referral.class, events -> {
+                batches.incrementAndGet();
+                changes.addAndGet(events.size());
+            });
+            try {
+                // Wired the way ReferralPanel wires it
+                DocumentProgress progress = referrals.trackDocuments();
+                AtomicInteger written = new AtomicInteger();
+                Timer timer = new Timer(250, e -> written.addAndGet(progress.drainWritten()));
+                timer.start();
+
+                checkEquals(BULK, referrals.sendPendingReferrals(), "referrals sent");
+                checkEquals(1, batches.get(), "change batches published by the send");
+                checkEquals(BULK, changes.get(), "changes in the batch");
+                long deadline = System.currentTimeMillis() + 60_000;
+                while (written.get() < BULK && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                timer.stop();
+
+                checkEquals(BULK, written.get(), "completions counted");
+                check(progress.drainFailed().isEmpty(), "no document failures");
+                check(edt.dispatched.get() < BULK / 10,
+                        "EDT events for " + BULK + " sends: " + edt.dispatched.get());
+            } finally {
+                ChangeBus.getInstance().unsubscribe(sub);
+                edt.remove();
+                ReferralManager.getInstance().clearAll();
+            }
+        });
+    }
+
+    private static class CountingQueue extends EventQueue {
+        final AtomicInteger dispatched = new AtomicInteger();
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            dispatched.incrementAndGet();
+            super.dispatchEvent(event);
+        }
+
+        void remove() {
+            pop();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package controller;
+
+import harness.Checks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class ReportExporterCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("a second export to a file still being written is refused", () -> {
+            ReportExporter exporter = exporter();
+            Path dir = Checks.tempDir("export");
+            Path target = dir.resolve("appointments.csv");
+
+            // Hold every pool thread in onDone so the next export stays queued
+            int threads = Integer.getInteger("reports.threads", 2);
+            CountDownLatch hold = new CountDownLatch(1);
+            CountDownLatch held = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                exporter.submit(report(dir.resolve("blocker" + i + ".csv")), e -> {
+                    held.countDown();
+                    awaitQuietly(hold);
+                });
+            }
+            check(held.await(10, TimeUnit.SECONDS), "pool threads held");
+
+            ReportExporter.Export first = exporter.submit(report(target), null);
+            ReportExporter.Export second = exporter.submit(report(target), null);
+            checkEquals(ReportExporter.State.FAILED, second.getState(), "second export");
+            check(second.getError().contains("export " + first.getNumber()), "error names the running export");
+
+            hold.countDown();
+            waitFor(first);
+            checkEquals(ReportExporter.State.DONE, first.getState(), "first export");
+            checkEquals("appointment_id", Files.readAllLines(target).get(0).split(",")[0], "header");
+
+            // Once the first has finished the file is free again
+            ReportExporter.Export third = exporter.submit(report(target), null);
+            waitFor(third);
+            checkEquals(ReportExporter.State.DONE, third.getState(), "export after the first finished");
+            try (Stream<Path> files = Files.list(dir)) {
+                checkEquals(0L, files.filter(p -> p.toString().endsWith(".part")).count(), "temp files left");
+            }
+        });
+    }
+
+    private static ReportExporter exporter() throws IOException {
+        PatientLinkageCheck.archivesInTempDirs();
+        PatientController patients = new PatientController();
+        ClinicianController clinicians = new ClinicianController();
+        return new ReportExporter(new AppointmentController(patients, clinicians),
+                new PrescriptionController(patients, clinicians),
+                new ReferralController(patients, clinicians, new FacilityController()), clinicians);
+    }
+
+    private static ReportExporter.Report report(Path file) {
+        return new ReportExporter.Report(ReportExporter.Kind.APPOINTMENTS, null, null, null, null,
+                ReportExporter.Format.CSV, false, file.toString());
+    }
+
+    private static void waitFor(ReportExporter.Export export) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (export.getState() == ReportExporter.State.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
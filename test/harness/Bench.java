@@ -0,0 +1,55 @@
+package harness;
+
+/**
+ * Timing helper for the XxxBench mains under test/. Each case is warmed up, then
+ * timed over several rounds, and the best round is reported as ns per operation.
+ * No substitute for JMH, but enough to compare two ways of doing the same work in
+ * one JVM. Build as for the checks (see Checks), then e.g.
+ *   java -cp out model.DocumentTemplateBench
+ */
+public final class Bench {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    // Results go here so the JIT can't discard the work being timed
+    private static volatile Object sink;
+
+    @FunctionalInterface
+    public interface Op {
+        Object run(int i);
+    }
+
+    private Bench() {
+    }
+
+    // Time ops calls of op per round; prints and returns the best ns per call
+    public static double measure(String name, int ops, Op op) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            round(ops, op);
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            best = Math.min(best, round(ops, op));
+        }
+        double nsPerOp = (double) best / ops;
+        System.out.printf("%-44s %12.1f ns/op %14.0f ops/s%n", name, nsPerOp, 1e9 / nsPerOp);
+        return nsPerOp;
+    }
+
+    // One line comparing two measure() results
+    public static void compare(String what, double baselineNs, double candidateNs) {
+        System.out.printf("%-44s %12.2fx%n", what, baselineNs / candidateNs);
+    }
+
+    private static long round(int ops, Op op) {
+        Object last = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            last = op.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = last;
+        return elapsed;
+    }
+}
@@ -0,0 +1,64 @@
+package harness;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Minimal runner for the plain-Java checks under test/. There is no framework:
+ * each XxxCheck class sits in the package of the code it checks (so it can reach
+ * package-private members) and has a static run() that calls {@link #run} once per
+ * case, plus a main so it can be run on its own. RunAllChecks runs them all.
+ *
+ * Build and run from the project root:
+ *   javac -d out $(find src test -name '*.java') && java -cp out RunAllChecks
+ */
+public final class Checks {
+
+    private static int passed;
+    private static int failed;
+
+    @FunctionalInterface
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    private Checks() {
+    }
+
+    // Run one case; a thrown exception or failed check marks it failed and moves on
+    public static void run(String name, Body body) {
+        try {
+            body.run();
+            passed++;
+            System.out.println("PASS " + name);
+        } catch (Throwable t) {
+            failed++;
+            System.out.println("FAIL " + name + ": " + t);
+        }
+    }
+
+    public static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + " - expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    // Fresh directory for a case's files, left in the system temp dir
+    public static Path tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory("hms-" + prefix);
+    }
+
+    // Print the totals; the exit status is non-zero if anything failed
+    public static void finish() {
+        System.out.println(passed + " passed, " + failed + " failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+import harness.Checks;
+
+import java.util.Set;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class AhoCorasickCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("matches whole words, ignoring case and punctuation", () -> {
+            AhoCorasick<String> matcher = matcher("amoxicillin", "co-amoxiclav");
+            checkEquals(Set.of("amoxicillin"), matcher.findAll("AMOXICILLIN, 500mg"), "upper case with comma");
+            checkEquals(Set.of("co-amoxiclav"), matcher.findAll("Co Amoxiclav 625"), "separator spelled as space");
+            check(matcher.findAll("Amoxicillinex 250mg").isEmpty(), "longer word is not a match");
+            check(matcher.findAll("preamoxicillin").isEmpty(), "word ending in a pattern is not a match");
+        });
+
+        Checks.run("reports a pattern nested inside a longer one", () -> {
+            AhoCorasick<String> matcher = matcher("co codamol", "codamol");
+            checkEquals(Set.of("co codamol", "codamol"), matcher.findAll("Co-codamol 30/500"), "both patterns");
+            checkEquals(Set.of("codamol"), matcher.findAll("codamol"), "shorter alone");
+        });
+
+        Checks.run("refuses to change once built", () -> {
+            AhoCorasick<String> matcher = matcher("aspirin");
+            try {
+                matcher.add("ibuprofen", "ibuprofen");
+                check(false, "add after build should throw");
+            } catch (IllegalStateException expected) {
+                // fine
+            }
+        });
+    }
+
+    private static AhoCorasick<String> matcher(String... patterns) {
+        AhoCorasick<String> matcher = new AhoCorasick<>();
+        for (String p : patterns) {
+            matcher.add(p, p);
+        }
+        matcher.build();
+        return matcher;
+    }
+}
@@ -0,0 +1,63 @@
+package model;
+
+import harness.Bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost per published change: with nobody listening, with a synchronous listener
+ * (one batch per change, and 100-change transactions), and with an asynchronous
+ * listener. Uses a record type of its own so no real listener is involved.
+ */
+public class ChangeBusBench {
+
+    private static final int OPS = 200_000;
+    private static final int BATCH = 100;
+
+    private static final class Tick {
+        final int n;
+
+        Tick(int n) {
+            this.n = n;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ChangeBus bus = ChangeBus.getInstance();
+
+        Bench.measure("no subscribers", OPS, i -> {
+            bus.inserted(Tick.class, new Tick(i));
+            return null;
+        });
+
+        long[] seen = {0};
+        ChangeBus.Subscription sync = bus.subscribe(Tick.class, changes -> seen[0] += changes.size());
+        Bench.measure("sync listener, one change per batch", OPS, i -> {
+            bus.inserted(Tick.class, new Tick(i));
+            return seen;
+        });
+        double batch = Bench.measure("sync listener, " + BATCH + "-change transaction", OPS / BATCH, i -> {
+            bus.transaction(() -> {
+                for (int j = 0; j < BATCH; j++) {
+                    bus.inserted(Tick.class, new Tick(j));
+                }
+            });
+            return seen;
+        });
+        System.out.printf("%-44s %12.1f ns/change%n", "  per change in the transaction", batch / BATCH);
+        bus.unsubscribe(sync);
+
+        long[] published = {0};
+        AtomicLong delivered = new AtomicLong();
+        ChangeBus.Subscription async = bus.subscribeAsync(Tick.class, changes -> delivered.addAndGet(changes.size()));
+        Bench.measure("async listener, publish side", OPS, i -> {
+            bus.inserted(Tick.class, new Tick(i));
+            return ++published[0];
+        });
+        // Let the listener catch up before the next case or exit
+        while (delivered.get() < published[0]) {
+            Thread.sleep(10);
+        }
+        bus.unsubscribe(async);
+    }
+}
@@ -0,0 +1,53 @@
+package model;
+
+import harness.Checks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class DocumentArchiveCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        for (boolean compress : new boolean[] {false, true}) {
+            Checks.run("latest versions survive sealing and relocation, compress=" + compress, () -> {
+                String dir = Checks.tempDir("archive").toString();
+                DocumentArchive archive = new DocumentArchive(dir, 4 * 1024, compress);
+                Map<String, String> latest = new HashMap<>();
+
+                // Rewrite most keys many times so sealed segments go mostly dead and get relocated
+                for (int round = 0; round < 30; round++) {
+                    for (int k = 0; k < 20; k++) {
+                        if (round > 0 && k % 5 == 0) {
+                            continue;   // a few keys keep their first version in an old segment
+                        }
+                        String key = "referral/R" + k;
+                        String doc = "Referral R" + k + " version " + round + "\n" + "x".repeat(100 + k);
+                        archive.put(key, doc);
+                        latest.put(key, doc);
+                    }
+                }
+                check(archive.getSegmentCount() <= 4, "old segments were relocated, segments=" + archive.getSegmentCount());
+                for (Map.Entry<String, String> e : latest.entrySet()) {
+                    checkEquals(e.getValue(), archive.get(e.getKey()), "read back " + e.getKey());
+                }
+
+                // A second instance sees exactly what is on disk - the first is never closed
+                DocumentArchive reopened = new DocumentArchive(dir, 4 * 1024, compress);
+                checkEquals(latest.size(), reopened.size(), "documents after reopening");
+                for (Map.Entry<String, String> e : latest.entrySet()) {
+                    checkEquals(e.getValue(), reopened.get(e.getKey()), "reopened " + e.getKey());
+                }
+                reopened.close();
+                archive.close();
+            });
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package model;
+
+import harness.Bench;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Referral letter rendering: the StringBuilder code ReferralManager used before
+ * the templates, the precompiled built-in template, and the template compiled on
+ * every render (what a parse-per-use engine would cost).
+ */
+public class DocumentTemplateBench {
+
+    private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int OPS = 20_000;
+
+    // Everything one referral letter is built from
+    static final class Sample {
+        Referral ref;
+        Patient patient;
+        PatientRecord record;
+        Clinician clin;
+        Facility fac;
+    }
+
+    public static void main(String[] args) {
+        Sample s = sample();
+        DocumentTemplate precompiled = DocumentTemplates.get(DocumentTemplates.REFERRAL);
+        String source = DocumentTemplates.builtIn(DocumentTemplates.REFERRAL);
+
+        double old = Bench.measure("hand-built StringBuilder", OPS,
+                i -> handBuilt(s, LocalDateTime.now().format(DTF)));
+        double compiled = Bench.measure("precompiled template", OPS,
+                i -> values(precompiled, s, DocumentTemplates.timestamp()).render());
+        double parsed = Bench.measure("template compiled per render", OPS,
+                i -> values(DocumentTemplate.compile("referral", source), s, DocumentTemplates.timestamp()).render());
+
+        Bench.compare("precompiled vs hand-built", old, compiled);
+        Bench.compare("precompiled vs compiled per render", parsed, compiled);
+    }
+
+    static Sample sample() {
+        Sample s = new Sample();
+        LocalDate today = LocalDate.of(2026, 1, 2);
+        s.ref = new Referral("R100", "P1", "C1", null, null, "F1", today, "Urgent",
+                "Suspected angina on exertion", "Chest pain for three weeks, worse on stairs", "ECG, troponin",
+                "Sent", null, "Patient prefers morning appointments", today, today);
+        s.patient = new Patient("P1", "Ada", "Lovelace", "ada@example.test", "0123", "P1", LocalDate.of(1980, 1, 1),
+                "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456", LocalDate.of(2020, 1, 1), "F1");
+        s.record = new PatientRecord(s.patient, "REC1", "O+", list("Penicillin", "Latex"),
+                list("Hypertension", "Type 2 diabetes"), list("Metformin 500mg", "Ramipril 5mg"), null);
+        s.clin = new Clinician("C1", "Grace", "Hopper", "Dr", "GP", "GMC1", "0789", "gp@surgery.test", "F1",
+                "GP Surgery", "Full-time", LocalDate.of(2010, 1, 1));
+        s.fac = new Facility("F1", "General Hospital", "Hospital", "2 Road", "EF3 4GH", "0999",
+                "referrals@hospital.test", "24/7", "Manager", 100);
+        return s;
+    }
+
+    private static List<String> list(String... items) {
+        return new java.util.ArrayList<>(Arrays.asList(items));
+    }
+
+    // The fields ReferralManager fills in for the referral letter
+    static DocumentTemplate.Values values(DocumentTemplate t, Sample s, String generated) {
+        Referral ref = s.ref;
+        Patient pat = s.patient;
+        DocumentTemplate.Values v = t.values()
+                .put("referralId", ref.getReferralId())
+                .put("referralDate", ref.getReferralDate())
+                .put("urgency", ref.getUrgencyLevel())
+                .put("status", ref.getStatus())
+                .put("reason", ref.getReferralReason())
+                .put("reasonOrNA", nullSafe(ref.getReferralReason()))
+                .put("clinicalSummaryOrNA", nullSafe(ref.getClinicalSummary()))
+                .put("investigations", ref.getRequestedInvestigations())
+                .put("investigationsOrNA", nullSafe(ref.getRequestedInvestigations()))
+                .put("notesOrNA", nullSafe(ref.getNotes()))
+                .put("facilityId", ref.getReferredToFacilityId())
+                .put("generated", generated)
+                .put("patientName", pat.getFullName())
+                .put("nhsNumber", pat.getNhsNumber())
+                .put("dateOfBirth", pat.getDateOfBirth())
+                .put("age", pat.getAge())
+                .put("gender", pat.getGender())
+                .put("patientPhone", pat.getPhoneNumber())
+                .put("patientEmail", pat.getEmail())
+                .put("clinicianName", s.clin.getFullName())
+                .put("licenseNumber", s.clin.getLicenseNumber())
+                .put("specialization", s.clin.getSpecialization())
+                .put("clinicianEmail", s.clin.getEmail())
+                .put("facilityName", s.fac.getFacilityName())
+                .put("facilityType", s.fac.getFacilityType())
+                .put("facilityAddress", s.fac.getAddress())
+                .put("facilityPhone", s.fac.getPhoneNumber())
+                .put("facilityEmail", s.fac.getEmail());
+        if (s.record != null) {
+            v.put("hasRecord", "yes")
+                    .put("allergies", listOrNone(s.record.getAllergies()))
+                    .put("conditions", listOrNone(s.record.getConditions()))
+                    .put("medications", listOrNone(s.record.getMedications()));
+        }
+        return v;
+    }
+
+    // ReferralManager.renderReferralDoc as it was before the templates
+    static String handBuilt(Sample s, String generated) {
+        Referral ref = s.ref;
+        Patient pat = s.patient;
+        Clinician clin = s.clin;
+        Facility fac = s.fac;
+        StringBuilder doc = new StringBuilder();
+
+        doc.append("=====================================\n");
+        doc.append("     MEDICAL REFERRAL DOCUMENT\n");
+        doc.append("=====================================\n\n");
+
+        doc.append(">> REFERRAL INFO\n");
+        doc.append("ID:       ").append(ref.getReferralId()).append("\n");
+        doc.append("Date:     ").append(ref.getReferralDate()).append("\n");
+        doc.append("Urgency:  ").append(ref.getUrgencyLevel()).append("\n");
+        doc.append("Status:   ").append(ref.getStatus()).append("\n\n");
+
+        doc.append(">> PATIENT\n");
+        doc.append("Name:     ").append(pat.getFullName()).append("\n");
+        doc.append("NHS#:     ").append(pat.getNhsNumber()).append("\n");
+        doc.append("DOB:      ").append(pat.getDateOfBirth()).append("\n");
+        doc.append("Age:      ").append(pat.getAge()).append(" years\n");
+        doc.append("Gender:   ").append(pat.getGender()).append("\n");
+        doc.append("Phone:    ").append(pat.getPhoneNumber()).append("\n");
+        doc.append("Email:    ").append(pat.getEmail()).append("\n\n");
+
+        doc.append(">> REFERRING CLINICIAN\n");
+        doc.append("Name:     Dr. ").append(clin.getFullName()).append("\n");
+        doc.append("License:  ").append(clin.getLicenseNumber()).append("\n");
+        doc.append("Specialty: ").append(clin.getSpecialization()).append("\n");
+        doc.append("Email:    ").append(clin.getEmail()).append("\n\n");
+
+        doc.append(">> DESTINATION FACILITY\n");
+        doc.append("Facility: ").append(fac.getFacilityName()).append("\n");
+        doc.append("Type:     ").append(fac.getFacilityType()).append("\n");
+        doc.append("Address:  ").append(fac.getAddress()).append("\n");
+        doc.append("Phone:    ").append(fac.getPhoneNumber()).append("\n");
+        doc.append("Email:    ").append(fac.getEmail()).append("\n\n");
+
+        doc.append(">> CLINICAL INFO\n");
+        doc.append("Reason:\n").append(nullSafe(ref.getReferralReason())).append("\n\n");
+        doc.append("Clinical Summary:\n").append(nullSafe(ref.getClinicalSummary())).append("\n\n");
+        doc.append("Requested Investigations:\n").append(nullSafe(ref.getRequestedInvestigations())).append("\n\n");
+        doc.append("Additional Notes:\n").append(nullSafe(ref.getNotes())).append("\n\n");
+
+        doc.append(">> MEDICAL HISTORY\n");
+        PatientRecord rec = s.record;
+        if (rec != null) {
+            doc.append("Allergies:   ").append(listOrNone(rec.getAllergies())).append("\n");
+            doc.append("Conditions:  ").append(listOrNone(rec.getConditions())).append("\n");
+            doc.append("Medications: ").append(listOrNone(rec.getMedications())).append("\n\n");
+        } else {
+            doc.append("No medical history available.\n\n");
+        }
+
+        doc.append("=====================================\n");
+        doc.append("Generated: ").append(generated).append("\n");
+        doc.append("=====================================\n\n\n");
+
+        return doc.toString();
+    }
+
+    private static String nullSafe(String value) {
+        return (value != null && !value.isEmpty()) ? value : "N/A";
+    }
+
+    private static String listOrNone(List<String> list) {
+        if (list == null || list.isEmpty()) {
+            return "None";
+        }
+        return String.join(", ", list);
+    }
+}
@@ -0,0 +1,68 @@
+package model;
+
+import harness.Checks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class DocumentTemplateCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("fields and sections", () -> {
+            DocumentTemplate t = DocumentTemplate.compile("t",
+                    "Hi ${name}.${#note} Note: ${note}.${/note}${^note} No note.${/note} $${literal}");
+            checkEquals("Hi Ann. Note: bring scans. ${literal}",
+                    t.values().put("name", "Ann").put("note", "bring scans").render(), "with note");
+            checkEquals("Hi Bob. No note. ${literal}", t.values().put("name", "Bob").render(), "without note");
+            checkEquals("Hi . No note. ${literal}", t.values().put("unused", "x").render(), "missing and unknown fields");
+        });
+
+        Checks.run("nested sections", () -> {
+            DocumentTemplate t = DocumentTemplate.compile("t", "${#a}A${#b}B${/b}${/a}.");
+            checkEquals("AB.", t.values().put("a", 1).put("b", 2).render(), "both");
+            checkEquals("A.", t.values().put("a", 1).render(), "outer only");
+            checkEquals(".", t.values().put("b", 2).render(), "inner only");
+        });
+
+        Checks.run("badly closed sections are rejected", () -> {
+            for (String bad : Arrays.asList("${#a}x", "x${/a}", "${#a}${#b}${/a}${/b}")) {
+                try {
+                    DocumentTemplate.compile("bad", bad);
+                    check(false, "accepted " + bad);
+                } catch (IllegalArgumentException expected) {
+                    // as it should be
+                }
+            }
+        });
+
+        Checks.run("referral letter matches the hand-built original", () -> {
+            DocumentTemplateBench.Sample s = DocumentTemplateBench.sample();
+            String generated = "2026-01-02 03:04:05";
+            checkEquals(DocumentTemplateBench.handBuilt(s, generated),
+                    DocumentTemplateBench.values(DocumentTemplates.get(DocumentTemplates.REFERRAL), s, generated).render(),
+                    "with medical history");
+
+            s.record = null;
+            checkEquals(DocumentTemplateBench.handBuilt(s, generated),
+                    DocumentTemplateBench.values(DocumentTemplates.get(DocumentTemplates.REFERRAL), s, generated).render(),
+                    "without medical history");
+        });
+
+        Checks.run("every built-in template compiles", () -> {
+            List<String> names = Arrays.asList(DocumentTemplates.REFERRAL, DocumentTemplates.EMAIL,
+                    DocumentTemplates.EMAIL_SUBJECT, DocumentTemplates.EMAIL_BODY, DocumentTemplates.EHR_UPDATE,
+                    DocumentTemplates.PRESCRIPTION, DocumentTemplates.REFERRAL_DETAILS);
+            for (String name : names) {
+                check(DocumentTemplate.compile(name, DocumentTemplates.builtIn(name)) != null, name);
+            }
+        });
+    }
+}
@@ -0,0 +1,171 @@
+package model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import harness.Checks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class EhrSyncClientCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("events go in one batch and are acknowledged", () -> {
+            try (StubEhr stub = new StubEhr()) {
+                EhrSyncClient client = new EhrSyncClient(queueFile());
+                for (int i = 1; i <= 5; i++) {
+                    client.enqueue(event("E" + i));
+                }
+                client.start(stub.uri(), 100);
+                try {
+                    waitFor(() -> client.getPendingCount() == 0);
+                } finally {
+                    client.stop();
+                }
+                checkEquals(1, stub.requests.get(), "requests");
+                checkEquals(5, stub.events.size(), "events received");
+                for (int i = 1; i <= 5; i++) {
+                    check(client.isAcknowledged("E" + i), "E" + i + " acknowledged");
+                }
+            }
+        });
+
+        Checks.run("rejected events are failed, not retried", () -> {
+            try (StubEhr stub = new StubEhr()) {
+                stub.reject = "bad";
+                String file = queueFile();
+                EhrSyncClient client = new EhrSyncClient(file);
+                client.enqueue(event("good-1"));
+                client.enqueue(event("bad-1"));
+                client.start(stub.uri(), 100);
+                try {
+                    waitFor(() -> client.getPendingCount() == 0);
+                } finally {
+                    client.stop();
+                }
+                check(client.isAcknowledged("good-1"), "good event acknowledged");
+                check(!client.isAcknowledged("bad-1"), "rejected event not acknowledged");
+                checkEquals(0, new EhrSyncClient(file).getPendingCount(), "pending after restart");
+            }
+        });
+
+        Checks.run("outage is retried over the same connection", () -> {
+            try (StubEhr stub = new StubEhr()) {
+                stub.failFirst = 1;
+                EhrSyncClient client = new EhrSyncClient(queueFile());
+                client.enqueue(event("E1"));
+                client.start(stub.uri(), 100);
+                try {
+                    waitFor(() -> client.isAcknowledged("E1"));
+                } finally {
+                    client.stop();
+                }
+                checkEquals(2, stub.requests.get(), "requests (one failed, one retried)");
+                checkEquals(1, stub.clientPorts.size(), "client connections");
+            }
+        });
+
+        Checks.run("unsent events survive a restart", () -> {
+            String file = queueFile();
+            EhrSyncClient client = new EhrSyncClient(file);
+            check(client.enqueue(event("E1")), "first enqueue");
+            check(!client.enqueue(event("E1")), "same event id refused");
+            client.enqueue(event("E2"));
+            checkEquals(2, new EhrSyncClient(file).getPendingCount(), "pending after restart");
+        });
+    }
+
+    private static EhrEvent event(String id) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("referralId", "R001");
+        fields.put("reason", "needs \"quotes\" and\nnewlines");
+        return new EhrEvent(id, "REFERRAL_SENT", fields);
+    }
+
+    private static String queueFile() throws IOException {
+        return Checks.tempDir("ehr").resolve("ehr_sync_queue.txt").toString();
+    }
+
+    private static void waitFor(BooleanSupplier done) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!done.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        check(done.getAsBoolean(), "timed out waiting");
+    }
+
+    // Local stand-in for the EHR endpoint: acknowledges every event unless told otherwise
+    private static class StubEhr implements AutoCloseable {
+        private static final Pattern EVENT_ID = Pattern.compile("\"eventId\":\"([^\"]*)\"");
+
+        final HttpServer server;
+        final AtomicInteger requests = new AtomicInteger();
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+        volatile String reject;     // ids containing this are rejected
+        volatile int failFirst;     // answer this many requests with 503
+
+        StubEhr() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/events", this::handle);
+            server.start();
+        }
+
+        URI uri() {
+            return URI.create("http://localhost:" + server.getAddress().getPort() + "/events");
+        }
+
+        private void handle(HttpExchange ex) throws IOException {
+            String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            if (requests.incrementAndGet() <= failFirst) {
+                respond(ex, 503, "{\"error\":\"unavailable\"}");
+                return;
+            }
+
+            StringJoiner acked = new StringJoiner(",");
+            StringJoiner rejected = new StringJoiner(",");
+            Matcher m = EVENT_ID.matcher(body);
+            while (m.find()) {
+                String id = m.group(1);
+                events.add(id);
+                if (reject != null && id.contains(reject)) {
+                    rejected.add("\"" + id + "\"");
+                } else {
+                    acked.add("\"" + id + "\"");
+                }
+            }
+            respond(ex, 200, "{\"acknowledged\":[" + acked + "],\"rejected\":[" + rejected + "]}");
+        }
+
+        private static void respond(HttpExchange ex, int status, String json) throws IOException {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
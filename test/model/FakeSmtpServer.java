@@ -0,0 +1,125 @@
+package model;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * In-process SMTP stand-in for the dispatcher checks. Speaks just enough ESMTP:
+ * EHLO (optionally offering PIPELINING), MAIL, RCPT, DATA, RSET and QUIT. Recipients
+ * in the rejected set get a 550, and the connection can be cut after a given number
+ * of accepted messages to simulate an outage.
+ */
+class FakeSmtpServer implements Closeable {
+
+    private final ServerSocket server;
+    private final boolean pipelining;
+    private final Set<String> rejected = new HashSet<>();
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    private volatile int dropAfter = -1;
+    private volatile int sessions;
+
+    FakeSmtpServer(boolean pipelining) throws IOException {
+        this.server = new ServerSocket(0);
+        this.pipelining = pipelining;
+        Thread t = new Thread(this::acceptLoop, "fake-smtp");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    void reject(String recipient) {
+        rejected.add(recipient);
+    }
+
+    // Close the connection instead of accepting message number n+1 (across all sessions)
+    void dropAfter(int n) {
+        dropAfter = n;
+    }
+
+    // Message texts accepted so far, in order
+    List<String> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    int getSessions() {
+        return sessions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket s = server.accept();
+                sessions++;
+                Thread t = new Thread(() -> session(s), "fake-smtp-session");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void session(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8);
+            reply(out, "220 fake ESMTP");
+            boolean recipientOk = false;
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String cmd = line.toUpperCase(Locale.ROOT);
+                if (cmd.startsWith("EHLO")) {
+                    reply(out, pipelining ? "250-fake\r\n250 PIPELINING" : "250 fake");
+                } else if (cmd.startsWith("MAIL FROM:") || cmd.startsWith("RSET")) {
+                    recipientOk = false;
+                    reply(out, "250 OK");
+                } else if (cmd.startsWith("RCPT TO:")) {
+                    String to = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                    recipientOk = !rejected.contains(to);
+                    reply(out, recipientOk ? "250 OK" : "550 No such user");
+                } else if (cmd.equals("DATA")) {
+                    if (!recipientOk) {
+                        reply(out, "554 No valid recipients");
+                        continue;
+                    }
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder text = new StringBuilder();
+                    while (!(line = in.readLine()).equals(".")) {
+                        text.append(line).append('\n');
+                    }
+                    if (dropAfter >= 0 && messages.size() >= dropAfter) {
+                        return;   // outage: hang up without answering
+                    }
+                    messages.add(text.toString());
+                    reply(out, "250 Queued");
+                } else if (cmd.equals("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "502 Not implemented");
+                }
+            }
+        } catch (IOException | NullPointerException e) {
+            // Client went away
+        }
+    }
+
+    private static void reply(Writer out, String text) throws IOException {
+        out.write(text + "\r\n");
+        out.flush();
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import harness.Checks;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class PatientRecordStoreCheck {
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    public static void main(String[] args) {
+        // A small cache when run alone; in RunAllChecks the store may already exist with the default
+        if (System.getProperty("patient.records.cache") == null) {
+            System.setProperty("patient.records.cache", "8");
+        }
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("the cache holds patient.records.cache records, least recently used dropped", () -> {
+            PatientRecordStore store = store();
+            int capacity = Integer.getInteger("patient.records.cache", 256);
+            Patient first = patient();
+            store.get(first);
+
+            int loads = store.getLoadCount();
+            fill(store, capacity);
+            checkEquals(capacity, store.getCachedCount(), "records cached");
+            checkEquals(loads + capacity, store.getLoadCount(), "loads while filling");
+
+            store.get(first);
+            checkEquals(loads + capacity + 1, store.getLoadCount(), "evicted record is read again");
+            Patient recent = patient();
+            store.get(recent);
+            loads = store.getLoadCount();
+            store.get(recent);
+            checkEquals(loads, store.getLoadCount(), "cached record is not read again");
+        });
+
+        Checks.run("a record read again after eviction has its saved changes", () -> {
+            PatientRecordStore store = store();
+            Patient patient = patient();
+            PatientRecord rec = store.get(patient);
+            rec.addAllergy("Latex");
+            rec.setBloodType("A+");
+
+            fill(store, Integer.getInteger("patient.records.cache", 256));
+            PatientRecord again = store.get(patient);
+            check(again != rec, "a new copy after eviction");
+            checkEquals(rec.getRecordId(), again.getRecordId(), "record id");
+            checkEquals(Arrays.asList("Latex"), again.getAllergies(), "allergies");
+            checkEquals("A+", again.getBloodType(), "blood type");
+            checkEquals(rec.getLastUpdated(), again.getLastUpdated(), "last updated");
+            check(again.getPatient() == patient, "attached to the patient");
+        });
+
+        Checks.run("the stored format round-trips every field", () -> {
+            PatientRecord rec = new PatientRecord(null, "REC-1", "O-",
+                    Arrays.asList("Penicillin", "Dust: house mites"), Arrays.asList("Asthma"),
+                    Arrays.asList("Salbutamol 100mcg", "Beclometasone"), LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123000));
+            PatientRecord back = PatientRecordStore.parse(null, PatientRecordStore.format(rec));
+            checkEquals("REC-1", back.getRecordId(), "record id");
+            checkEquals("O-", back.getBloodType(), "blood type");
+            checkEquals(rec.getAllergies(), back.getAllergies(), "allergies");
+            checkEquals(rec.getConditions(), back.getConditions(), "conditions");
+            checkEquals(rec.getMedications(), back.getMedications(), "medications");
+            checkEquals(rec.getLastUpdated(), back.getLastUpdated(), "last updated");
+        });
+
+        Checks.run("a damaged timestamp keeps the rest of the record", () -> {
+            LocalDateTime before = LocalDateTime.now();
+            PatientRecord back = PatientRecordStore.parse(null,
+                    "recordId: REC-2\nlastUpdated: yesterday-ish\nallergy: Latex\n");
+            checkEquals("REC-2", back.getRecordId(), "record id");
+            checkEquals(Arrays.asList("Latex"), back.getAllergies(), "allergies");
+            check(!back.getLastUpdated().isBefore(before), "stamped as read now");
+        });
+
+        Checks.run("an evicted copy saves only while the stored record is unchanged", () -> {
+            PatientRecordStore store = store();
+            int capacity = Integer.getInteger("patient.records.cache", 256);
+            Patient patient = patient();
+            PatientRecord stale = store.get(patient);
+            stale.addAllergy("Latex");
+
+            // Nothing newer stored: the change is saved and the copy cached again
+            fill(store, capacity);
+            stale.addAllergy("Nuts");
+            check(store.get(patient) == stale, "re-attached on save");
+
+            // Read again and changed meanwhile: the stale change is refused
+            fill(store, capacity);
+            PatientRecord fresh = store.get(patient);
+            fresh.addCondition("Asthma");
+            fill(store, capacity);
+            stale.addAllergy("Eggs");
+
+            PatientRecord stored = store.get(patient);
+            check(stored != stale, "stale copy not re-attached");
+            checkEquals(Arrays.asList("Latex", "Nuts"), stored.getAllergies(), "allergies");
+            checkEquals(Arrays.asList("Asthma"), stored.getConditions(), "conditions");
+        });
+    }
+
+    private static PatientRecordStore store() throws IOException {
+        if (System.getProperty("patient.records.dir") == null) {
+            System.setProperty("patient.records.dir", Checks.tempDir("records").toString());
+        }
+        return PatientRecordStore.getInstance();
+    }
+
+    // Read enough new patients' records to push every older one out of the cache
+    private static void fill(PatientRecordStore store, int count) {
+        for (int i = 0; i < count; i++) {
+            store.get(patient());
+        }
+    }
+
+    private static Patient patient() {
+        String id = "PRS" + ids.incrementAndGet();
+        return new Patient(id, "Ada", "Lovelace", "ada@example.test", "0123", id, LocalDate.of(1980, 1, 1),
+                "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456", LocalDate.of(2020, 1, 1), "F1");
+    }
+}
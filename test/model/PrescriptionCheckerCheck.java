@@ -0,0 +1,80 @@
+package model;
+
+import harness.Checks;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class PrescriptionCheckerCheck {
+
+    // A slice of drug_classes.csv, so the check doesn't depend on the working directory
+    private static final String DICTIONARY = String.join("\n",
+            "term,drug_class",
+            "penicillin,penicillin",
+            "amoxicillin,penicillin",
+            "co-amoxiclav,penicillin",
+            "ibuprofen,nsaid",
+            "naproxen,nsaid",
+            "nsaids,nsaid") + "\n";
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("co-amoxiclav is flagged against a penicillin allergy", () -> {
+            List<String> alerts = checker().check(rx("RX1", "Co-Amoxiclav 625mg"),
+                    allergicTo("Penicillin"), List.of());
+            checkEquals(1, alerts.size(), "alerts " + alerts);
+            check(alerts.get(0).startsWith("ALLERGY: Co-Amoxiclav 625mg (penicillin)"), alerts.get(0));
+        });
+
+        Checks.run("an allergy to the class name NSAIDs covers ibuprofen", () -> {
+            List<String> alerts = checker().check(rx("RX1", "Ibuprofen 400mg tablets"),
+                    allergicTo("NSAIDs"), List.of());
+            checkEquals(1, alerts.size(), "alerts " + alerts);
+            check(alerts.get(0).contains("(nsaid)"), alerts.get(0));
+        });
+
+        Checks.run("a word that only starts with a drug name does not match", () -> {
+            PrescriptionChecker checker = checker();
+            check(checker.classesOf("Amoxicillinex 250mg").isEmpty(), "Amoxicillinex has no class");
+            checkEquals(0, checker.check(rx("RX1", "Amoxicillinex 250mg"), allergicTo("Penicillin"),
+                    List.of()).size(), "alerts");
+        });
+
+        Checks.run("a prescription does not flag itself as duplicate therapy", () -> {
+            Prescription rx = rx("RX1", "Naproxen 250mg");
+            Prescription other = rx("RX2", "Ibuprofen 200mg");
+            PrescriptionChecker checker = checker();
+
+            checkEquals(0, checker.check(rx, allergicTo(), List.of(rx)).size(), "alerts against itself");
+            List<String> alerts = checker.check(rx, allergicTo(), List.of(rx, other));
+            checkEquals(1, alerts.size(), "alerts " + alerts);
+            check(alerts.get(0).contains("(RX2)"), alerts.get(0));
+        });
+    }
+
+    private static PrescriptionChecker checker() throws Exception {
+        return PrescriptionChecker.read(new StringReader(DICTIONARY));
+    }
+
+    // Built as if read back from the store, so nothing is saved
+    private static PatientRecord allergicTo(String... allergies) {
+        return new PatientRecord(null, "REC1", null, new ArrayList<>(Arrays.asList(allergies)),
+                new ArrayList<>(), new ArrayList<>(), null);
+    }
+
+    private static Prescription rx(String id, String medication) {
+        LocalDate today = LocalDate.now();
+        return new Prescription(id, "P1", "C1", "", today, medication, "1 tablet", "Twice daily", 7, "14",
+                "", "Pharmacy", "Issued", today, null);
+    }
+}
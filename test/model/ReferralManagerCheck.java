@@ -0,0 +1,112 @@
+package model;
+
+import harness.Checks;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class ReferralManagerCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("ids of deleted referrals are not handed out again", () -> {
+            ReferralManager manager = manager();
+            Referral a = manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", "");
+            Referral b = manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", "");
+            manager.removeReferral(b.getReferralId());
+            Referral c = manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", "");
+
+            check(!c.getReferralId().equals(b.getReferralId()), "new id differs from deleted " + b.getReferralId());
+            check(number(c) > number(b), "ids keep increasing");
+            check(manager.getReferralById(a.getReferralId()) == a, "earlier referral untouched");
+        });
+
+        Checks.run("ids continue after the highest loaded one", () -> {
+            ReferralManager manager = manager();
+            int last = number(manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", ""));
+            LocalDate today = LocalDate.now();
+            manager.addExistingReferral(new Referral("R" + (last + 100), "P1", "C1", null, null, "F1", today,
+                    "Routine", "r", "s", null, "Accepted", null, "", today, today));
+            checkEquals(last + 101, number(manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", "")),
+                    "next id number");
+        });
+
+        Checks.run("a reloaded referral keeps its place in the list", () -> {
+            ReferralManager manager = manager();
+            LocalDate today = LocalDate.now();
+            for (int i = 1; i <= 3; i++) {
+                manager.addExistingReferral(new Referral("R90" + i, "P1", "C1", null, null, "F1", today,
+                        "Routine", "r", "s", null, "Accepted", null, "", today, today));
+            }
+            Referral fresh = new Referral("R901", "P1", "C1", null, null, "F1", today,
+                    "Urgent", "r", "s", null, "Accepted", null, "", today, today);
+            check(manager.replaceReferral(manager.getReferralById("R901"), fresh), "replaced");
+
+            List<Referral> all = manager.getAllReferrals();
+            checkEquals(3, all.size(), "referrals");
+            check(all.get(0) == fresh, "first is still R901");
+            checkEquals("R903", all.get(2).getReferralId(), "last");
+        });
+
+        Checks.run("send queues its email before returning, once per send", () -> {
+            ReferralManager manager = manager();
+            Referral ref = manager.createSimpleReferral("P1", "C1", "F1", "Routine", "r", "", "");
+            int before = manager.getEmailsPending();
+
+            check(manager.sendReferral(ref, patient(), clinician(), facility()), "first send");
+            checkEquals(before + 1, manager.getEmailsPending(), "emails queued after first send");
+            check(!manager.sendReferral(ref, patient(), clinician(), facility()), "already sent");
+            checkEquals(before + 1, manager.getEmailsPending(), "emails queued after repeat send");
+
+            // Reopened and sent again is a new send
+            manager.editReferral(ref.getReferralId(), "reopen", r -> r.setStatus("Pending"));
+            check(manager.sendReferral(ref, patient(), clinician(), facility()), "send after reopening");
+            checkEquals(before + 2, manager.getEmailsPending(), "emails queued after second send");
+        });
+    }
+
+    /**
+     * The singleton, emptied, with its audit log, queues and archive in a temp
+     * directory rather than the working directory. The directory is fixed by the
+     * first call, so every check in the run shares it.
+     */
+    static ReferralManager manager() throws IOException {
+        if (System.getProperty("referrals.dir") == null) {
+            System.setProperty("referrals.dir", Checks.tempDir("referrals").toString());
+        }
+        // Letters read the patient's record
+        if (System.getProperty("patient.records.dir") == null) {
+            System.setProperty("patient.records.dir", Checks.tempDir("records").toString());
+        }
+        ReferralManager manager = ReferralManager.getInstance();
+        manager.clearAll();
+        return manager;
+    }
+
+    private static int number(Referral ref) {
+        return Integer.parseInt(ref.getReferralId().substring(1));
+    }
+
+    static Patient patient() {
+        return new Patient("P1", "Ada", "Lovelace", "ada@example.test", "0123", "P1", LocalDate.of(1980, 1, 1),
+                "9434765919", "F", "1 Street", "AB1 2CD", "Ben", "0456", LocalDate.of(2020, 1, 1), "F1");
+    }
+
+    static Clinician clinician() {
+        return new Clinician("C1", "Grace", "Hopper", "Dr", "GP", "GMC1", "0789", "gp@surgery.test", "F1",
+                "GP Surgery", "Full-time", LocalDate.of(2010, 1, 1));
+    }
+
+    static Facility facility() {
+        return new Facility("F1", "General Hospital", "Hospital", "2 Road", "EF3 4GH", "0999",
+                "referrals@hospital.test", "24/7", "Manager", 100);
+    }
+}
@@ -0,0 +1,154 @@
+package model;
+
+import harness.Checks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+/**
+ * 8 writers and 8 readers hammer the ReferralManager singleton at once. Writers
+ * create, edit (including the indexed status field) and finally delete referrals,
+ * and all of them keep incrementing a counter on one shared referral; readers keep
+ * checking snapshots and index lookups for torn state. Afterwards the counter must
+ * show no lost updates and every index must agree with the full list.
+ */
+public class ReferralManagerStressCheck {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 8;
+    private static final int PER_WRITER = 400;
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("16 threads: no lost updates, indexes consistent", () -> {
+            ReferralManager manager = ReferralManagerCheck.manager();
+            Referral shared = manager.createSimpleReferral("SHARED", "C0", "F0", "Routine", "stress", "", "0");
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicReference<String> problem = new AtomicReference<>();
+            AtomicLong reads = new AtomicLong();
+            CyclicBarrier created = new CyclicBarrier(WRITERS);
+            int[] deleted = new int[WRITERS];
+            List<Thread> threads = new ArrayList<>();
+
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                threads.add(new Thread(() -> {
+                    try {
+                        List<String> mine = new ArrayList<>();
+                        for (int i = 0; i < PER_WRITER; i++) {
+                            Referral r = manager.createSimpleReferral("P" + writer, "C" + writer, "F" + (i % 4),
+                                    "Routine", "stress", "", "");
+                            mine.add(r.getReferralId());
+                            if (i % 2 == 0) {
+                                manager.editReferral(r.getReferralId(), "accept", x -> x.setStatus("Accepted"));
+                            }
+                            manager.editReferral(shared.getReferralId(), "count",
+                                    x -> x.setNotes(String.valueOf(Integer.parseInt(x.getNotes()) + 1)));
+                        }
+                        // Deletes free ids, so they wait until every writer has finished creating
+                        created.await();
+                        for (int i = 0; i < mine.size(); i += 4) {
+                            if (manager.removeReferral(mine.get(i))) {
+                                deleted[writer]++;
+                            }
+                        }
+                    } catch (Exception e) {
+                        problem.compareAndSet(null, "writer " + writer + ": " + e);
+                    }
+                }));
+            }
+
+            for (int r = 0; r < READERS; r++) {
+                threads.add(new Thread(() -> {
+                    while (writing.get() && problem.get() == null) {
+                        String found = readOnce(manager, shared);
+                        if (found != null) {
+                            problem.compareAndSet(null, found);
+                        }
+                        reads.incrementAndGet();
+                    }
+                }));
+            }
+
+            List<Thread> writers = threads.subList(0, WRITERS);
+            threads.forEach(Thread::start);
+            for (Thread t : writers) {
+                t.join();
+            }
+            writing.set(false);
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            checkEquals(null, problem.get(), "problem seen while running");
+            checkEquals(String.valueOf(WRITERS * PER_WRITER), manager.getReferralById(shared.getReferralId()).getNotes(),
+                    "shared counter (lost updates)");
+
+            List<Referral> all = manager.getAllReferrals();
+            int totalDeleted = 0;
+            for (int w = 0; w < WRITERS; w++) {
+                totalDeleted += deleted[w];
+                checkEquals(PER_WRITER - deleted[w], manager.getReferralsByPatient("P" + w).size(), "referrals of P" + w);
+            }
+            checkEquals(1 + WRITERS * PER_WRITER - totalDeleted, all.size(), "total referrals");
+
+            int pendingCount = 0;
+            for (Referral r : all) {
+                check(manager.getReferralById(r.getReferralId()) == r, "id lookup finds " + r.getReferralId());
+                if ("Pending".equals(r.getStatus())) {
+                    pendingCount++;
+                }
+            }
+            checkEquals(pendingCount, manager.getReferralsByStatus("Pending").size(), "status index, Pending");
+            checkEquals(all.size() - pendingCount, manager.getReferralsByStatus("Accepted").size(),
+                    "status index, Accepted");
+            checkEquals(pendingCount, manager.getPendingReferrals().size(), "pending queue");
+            System.out.println("  " + reads.get() + " reader passes alongside " + WRITERS + " writers");
+
+            manager.clearAll();
+        });
+    }
+
+    // One pass of reader checks; returns what was wrong, or null
+    private static String readOnce(ReferralManager manager, Referral shared) {
+        List<Referral> all = manager.getAllReferrals();
+        Set<String> ids = new HashSet<>();
+        for (Referral r : all) {
+            if (!ids.add(r.getReferralId())) {
+                return "duplicate id in snapshot: " + r.getReferralId();
+            }
+        }
+        for (int w = 0; w < WRITERS; w++) {
+            String patient = "P" + w;
+            for (Referral r : manager.getReferralsByPatient(patient)) {
+                if (!patient.equals(r.getPatientId())) {
+                    return "patient index returned " + r.getReferralId() + " for " + patient;
+                }
+            }
+        }
+        // Status only ever moves Pending -> Accepted here, so this can't be a late read
+        for (Referral r : manager.getReferralsByStatus("Accepted")) {
+            if (!"Accepted".equals(r.getStatus())) {
+                return "status index returned " + r.getReferralId() + " as Accepted";
+            }
+        }
+        if (manager.getReferralById(shared.getReferralId()) != shared) {
+            return "shared referral missing";
+        }
+        return null;
+    }
+}
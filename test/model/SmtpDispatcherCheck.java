@@ -0,0 +1,116 @@
+package model;
+
+import harness.Checks;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static harness.Checks.check;
+import static harness.Checks.checkEquals;
+
+public class SmtpDispatcherCheck {
+
+    public static void main(String[] args) {
+        run();
+        Checks.finish();
+    }
+
+    public static void run() {
+        Checks.run("pipelined batch goes through one session", () -> {
+            try (FakeSmtpServer smtp = new FakeSmtpServer(true)) {
+                EmailOutbox outbox = new EmailOutbox(journal());
+                queue(outbox, 10, "ok@facility.test");
+                SmtpDispatcher dispatcher = new SmtpDispatcher(outbox, "localhost", smtp.getPort(), 1, 50);
+
+                checkEquals(10, dispatcher.deliver(take(outbox, 50)), "accepted");
+                checkEquals(10, smtp.getMessages().size(), "messages at server");
+                checkEquals(1, smtp.getSessions(), "sessions");
+                checkEquals(0, outbox.getPendingCount(), "pending after delivery");
+                check(smtp.getMessages().get(0).contains("Message-ID: <referral-R001-send0@"), "message id from send id");
+            }
+        });
+
+        Checks.run("5xx recipient fails only that email", () -> {
+            for (boolean pipelining : new boolean[] {true, false}) {
+                try (FakeSmtpServer smtp = new FakeSmtpServer(pipelining)) {
+                    smtp.reject("gone@facility.test");
+                    String file = journal();
+                    EmailOutbox outbox = new EmailOutbox(file);
+                    outbox.enqueue(email("R001-a", "ok@facility.test"));
+                    outbox.enqueue(email("R002-a", "gone@facility.test"));
+                    outbox.enqueue(email("R003-a", "ok@facility.test"));
+                    SmtpDispatcher dispatcher = new SmtpDispatcher(outbox, "localhost", smtp.getPort(), 1, 50);
+
+                    checkEquals(2, dispatcher.deliver(take(outbox, 50)), "accepted, pipelining=" + pipelining);
+                    checkEquals(0, outbox.getPendingCount(), "pending, pipelining=" + pipelining);
+
+                    // Failed for good - not retried after a restart either
+                    EmailOutbox reopened = new EmailOutbox(file);
+                    checkEquals(0, reopened.getPendingCount(), "pending after restart");
+                    check(reopened.isKnown("R002-a"), "rejected email remembered");
+                }
+            }
+        });
+
+        Checks.run("outage puts the rest of the batch back, durably", () -> {
+            try (FakeSmtpServer smtp = new FakeSmtpServer(true)) {
+                smtp.dropAfter(2);
+                String file = journal();
+                EmailOutbox outbox = new EmailOutbox(file);
+                queue(outbox, 5, "ok@facility.test");
+                SmtpDispatcher dispatcher = new SmtpDispatcher(outbox, "localhost", smtp.getPort(), 1, 50);
+
+                checkEquals(2, dispatcher.deliver(take(outbox, 50)), "accepted before the outage");
+                checkEquals(3, outbox.getPendingCount(), "pending after outage");
+                checkEquals(3, new EmailOutbox(file).getPendingCount(), "pending after restart");
+            }
+        });
+
+        Checks.run("same send queued twice is sent once", () -> {
+            EmailOutbox outbox = new EmailOutbox(journal());
+            check(outbox.enqueue(email("R001-x", "ok@facility.test")), "first enqueue");
+            check(!outbox.enqueue(email("R001-x", "ok@facility.test")), "second enqueue refused");
+            check(outbox.enqueue(email("R001-y", "ok@facility.test")), "another send of the same referral");
+            checkEquals(2, outbox.getPendingCount(), "pending");
+        });
+
+        Checks.run("dispatcher threads drain the outbox", () -> {
+            try (FakeSmtpServer smtp = new FakeSmtpServer(true)) {
+                EmailOutbox outbox = new EmailOutbox(journal());
+                SmtpDispatcher dispatcher = new SmtpDispatcher(outbox, "localhost", smtp.getPort(), 3, 10);
+                dispatcher.start();
+                try {
+                    queue(outbox, 60, "ok@facility.test");
+                    long deadline = System.currentTimeMillis() + 10_000;
+                    while (outbox.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(20);
+                    }
+                } finally {
+                    dispatcher.stop();
+                }
+                checkEquals(0, outbox.getPendingCount(), "pending");
+                checkEquals(60, smtp.getMessages().size(), "messages at server");
+            }
+        });
+    }
+
+    private static String journal() throws Exception {
+        Path dir = Checks.tempDir("outbox");
+        return dir.resolve("email_outbox.txt").toString();
+    }
+
+    private static void queue(EmailOutbox outbox, int n, String to) {
+        for (int i = 0; i < n; i++) {
+            outbox.enqueue(email(String.format("R%03d-send%d", i + 1, i), to));
+        }
+    }
+
+    private static OutboundEmail email(String id, String to) {
+        return new OutboundEmail(id, "gp@surgery.test", to, "Referral " + id, "Dear colleague,\n.leading dot\nRegards");
+    }
+
+    private static List<OutboundEmail> take(EmailOutbox outbox, int max) throws InterruptedException {
+        return outbox.takeBatch(max, 1, TimeUnit.SECONDS);
+    }
+}